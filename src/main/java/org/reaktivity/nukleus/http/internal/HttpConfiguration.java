@@ -15,6 +15,8 @@
  */
 package org.reaktivity.nukleus.http.internal;
 
+import java.util.Arrays;
+
 import org.reaktivity.nukleus.Configuration;
 
 public class HttpConfiguration extends Configuration
@@ -25,9 +27,199 @@ public class HttpConfiguration extends Configuration
 
     public static final String MAXIMUM_QUEUED_REQUESTS_PROPERTY_NAME = "nukleus.http.maximum.requests.queued";
 
+    // Class name of an optional FrameSampler notified of every frame written for a sampled trace
+    public static final String TRACE_SAMPLER_PROPERTY_NAME = "nukleus.http.trace.sampler";
+
+    // A trace is sampled when (trace & mask) == 0, so a mask of 2^n - 1 samples one trace in 2^n
+    public static final String TRACE_SAMPLING_MASK_PROPERTY_NAME = "nukleus.http.trace.sampling.mask";
+
+    // Path of the memory-mapped binary access log, access logging is disabled when not set
+    public static final String ACCESS_LOG_PROPERTY_NAME = "nukleus.http.access.log";
+
+    // Size in bytes of the access log ring, must be a power of two
+    public static final String ACCESS_LOG_CAPACITY_PROPERTY_NAME = "nukleus.http.access.log.capacity";
+
+    // Emit Java Flight Recorder events for the request lifecycle
+    public static final String JFR_EVENTS_PROPERTY_NAME = "nukleus.http.jfr.events";
+
+    // Maximum number of metric values (gauges, counters and histogram buckets) in the memory-mapped metrics file
+    public static final String METRICS_CAPACITY_PROPERTY_NAME = "nukleus.http.metrics.capacity";
+
+    // Maximum number of released objects of each kind kept for reuse, such as per request correlations
+    public static final String OBJECT_POOL_CAPACITY_PROPERTY_NAME = "nukleus.http.object.pool.capacity";
+
+    // Track pooled objects to detect double release and report objects dropped without release, at a cost per object
+    public static final String OBJECT_POOL_DEBUG_PROPERTY_NAME = "nukleus.http.object.pool.debug";
+
+    // Initial number of pending correlations (requests awaiting a reply to begin) for each role, grown as needed
+    public static final String CORRELATIONS_CAPACITY_PROPERTY_NAME = "nukleus.http.correlations.capacity";
+
+    // Seconds after which a correlation whose reply has not begun is reclaimed, failing its request
+    public static final String CORRELATION_TIMEOUT_PROPERTY_NAME = "nukleus.http.correlation.timeout";
+
+    // Seconds between sweeps for orphaned correlations
+    public static final String CORRELATION_SWEEP_INTERVAL_PROPERTY_NAME = "nukleus.http.correlation.sweep.interval";
+
+    // Maximum size in bytes of a request or response header block, when larger than the reaktor buffer slot capacity
+    // header blocks that outgrow a slot are promoted to a large slot of this size
+    public static final String MAXIMUM_HEADERS_SIZE_PROPERTY_NAME = "nukleus.http.maximum.headers.size";
+
+    // Number of large slots shared by the streams of each role, only allocated when maximum headers size needs them
+    public static final String LARGE_SLOTS_PROPERTY_NAME = "nukleus.http.large.slots";
+
+    // Size in bytes of the memory-mapped file that server request bodies are spooled to, spooling is disabled when zero
+    public static final String REQUEST_SPOOL_CAPACITY_PROPERTY_NAME = "nukleus.http.request.spool.capacity";
+
+    // Request bodies with a content length above this many bytes are spooled rather than flow controlled by the target
+    public static final String REQUEST_SPOOL_THRESHOLD_PROPERTY_NAME = "nukleus.http.request.spool.threshold";
+
+    // Comma separated server route references whose request bodies are spooled, all routes when not set
+    public static final String REQUEST_SPOOL_ROUTES_PROPERTY_NAME = "nukleus.http.request.spool.routes";
+
+    // Size in bytes of the memory-mapped file that client responses are spooled to, spooling is disabled when zero
+    public static final String RESPONSE_SPOOL_CAPACITY_PROPERTY_NAME = "nukleus.http.response.spool.capacity";
+
+    // Responses with a content length above this many bytes are spooled so their connection is released early
+    public static final String RESPONSE_SPOOL_THRESHOLD_PROPERTY_NAME = "nukleus.http.response.spool.threshold";
+
+    // Responses with a content length above this many bytes are never spooled
+    public static final String RESPONSE_SPOOL_MAXIMUM_PROPERTY_NAME = "nukleus.http.response.spool.maximum";
+
+    // Demote idle persistent server connections to compact off-heap records until their next request arrives, off by default
+    public static final String SERVER_HIBERNATION_PROPERTY_NAME = "nukleus.http.server.hibernation";
+
+    // Milliseconds a persistent server connection must stay idle before it is hibernated
+    public static final String SERVER_HIBERNATION_DELAY_PROPERTY_NAME = "nukleus.http.server.hibernation.delay";
+
+    // Initial number of hibernated server connections for each source, grown as needed
+    public static final String SERVER_HIBERNATION_CAPACITY_PROPERTY_NAME = "nukleus.http.server.hibernation.capacity";
+
+    // Shed new server requests early with 503 and Retry-After when buffer slots, correlations or routes are under pressure
+    public static final String SERVER_ADMISSION_PROPERTY_NAME = "nukleus.http.server.admission";
+
+    // Number of buffer slots in the reaktor buffer pool, learned from the first exhausted acquire when zero
+    public static final String SERVER_ADMISSION_SLOTS_PROPERTY_NAME = "nukleus.http.server.admission.slots";
+
+    // Maximum correlations awaiting a response, not limited when zero
+    public static final String SERVER_ADMISSION_CORRELATIONS_PROPERTY_NAME = "nukleus.http.server.admission.correlations";
+
+    // Maximum requests awaiting a response on each server route, not limited when zero
+    public static final String SERVER_ADMISSION_ROUTE_REQUESTS_PROPERTY_NAME = "nukleus.http.server.admission.route.requests";
+
+    // Load, as a percentage of the above limits, above which idle keep-alive connections are closed after their response
+    public static final String SERVER_ADMISSION_PRESSURE_PROPERTY_NAME = "nukleus.http.server.admission.pressure";
+
+    // Load, as a percentage of the above limits, above which new requests are shed
+    public static final String SERVER_ADMISSION_SHED_PROPERTY_NAME = "nukleus.http.server.admission.shed";
+
+    // Seconds sent in the Retry-After header of shed requests
+    public static final String SERVER_ADMISSION_RETRY_AFTER_PROPERTY_NAME = "nukleus.http.server.admission.retry.after";
+
+    // Sustained server requests per second allowed for each rate limit key, rate limiting is disabled when zero
+    public static final String SERVER_RATE_LIMIT_PROPERTY_NAME = "nukleus.http.server.rate.limit";
+
+    // Requests allowed in a burst above the sustained rate for each rate limit key
+    public static final String SERVER_RATE_LIMIT_BURST_PROPERTY_NAME = "nukleus.http.server.rate.limit.burst";
+
+    // Header whose value, per route, is the rate limit key, or :route to limit each route as a whole
+    public static final String SERVER_RATE_LIMIT_KEY_PROPERTY_NAME = "nukleus.http.server.rate.limit.key";
+
+    // Comma separated server route references that are rate limited, all routes when not set
+    public static final String SERVER_RATE_LIMIT_ROUTES_PROPERTY_NAME = "nukleus.http.server.rate.limit.routes";
+
+    // Maximum number of rate limit keys tracked at once, beyond which requests with new keys are not limited
+    public static final String SERVER_RATE_LIMIT_KEYS_PROPERTY_NAME = "nukleus.http.server.rate.limit.keys";
+
+    // Milliseconds per tick of the timer wheel driving timeouts, the precision with which timeouts expire
+    public static final String TIMER_TICK_PROPERTY_NAME = "nukleus.http.timer.tick";
+
+    // Number of ticks in one turn of the timer wheel, must be a power of two
+    public static final String TIMER_WHEEL_SIZE_PROPERTY_NAME = "nukleus.http.timer.wheel.size";
+
+    // Maximum number of timeouts pending at once, beyond which streams are not timed out
+    public static final String TIMERS_CAPACITY_PROPERTY_NAME = "nukleus.http.timers.capacity";
+
+    // Milliseconds allowed to receive a complete request header block once it has begun, disabled when zero
+    public static final String SERVER_HEADER_TIMEOUT_PROPERTY_NAME = "nukleus.http.server.header.timeout";
+
+    // Milliseconds allowed between request body data frames, disabled when zero
+    public static final String SERVER_BODY_TIMEOUT_PROPERTY_NAME = "nukleus.http.server.body.timeout";
+
+    // Milliseconds an idle keep-alive server connection is kept open awaiting the next request, disabled when zero
+    public static final String SERVER_KEEPALIVE_TIMEOUT_PROPERTY_NAME = "nukleus.http.server.keepalive.timeout";
+
+    // Milliseconds a client request may wait queued for a connection to its target, disabled when zero
+    public static final String CLIENT_QUEUE_TIMEOUT_PROPERTY_NAME = "nukleus.http.client.queue.timeout";
+
+    // Milliseconds allowed for the response header block to begin once a client request is sent, disabled when zero
+    public static final String CLIENT_HEADER_TIMEOUT_PROPERTY_NAME = "nukleus.http.client.header.timeout";
+
+    // Milliseconds an idle pooled client connection is kept open awaiting the next request, disabled when zero
+    public static final String CLIENT_KEEPALIVE_TIMEOUT_PROPERTY_NAME = "nukleus.http.client.keepalive.timeout";
+
+    // Accept HTTP/2 on server connections, by prior knowledge of the connection preface or by h2c upgrade
+    public static final String SERVER_HTTP2_PROPERTY_NAME = "nukleus.http.server.http2";
+
+    // Maximum number of concurrent streams a client may open on an HTTP/2 server connection
+    public static final String SERVER_HTTP2_MAX_CONCURRENT_STREAMS_PROPERTY_NAME =
+            "nukleus.http.server.http2.max.concurrent.streams";
+
+    // Speak HTTP/2 to targets of client routes, by prior knowledge, instead of HTTP/1.1
+    public static final String CLIENT_HTTP2_PROPERTY_NAME = "nukleus.http.client.http2";
+
+    // Comma separated client route references that speak HTTP/2 to their targets, all routes when not set
+    public static final String CLIENT_HTTP2_ROUTES_PROPERTY_NAME = "nukleus.http.client.http2.routes";
+
+    // Maximum number of HTTP/2 connections to a given target name and ref, each carrying many concurrent streams
+    public static final String CLIENT_HTTP2_MAXIMUM_CONNECTIONS_PROPERTY_NAME =
+            "nukleus.http.client.http2.maximum.connections";
+
+    // Maximum number of requests outstanding on a pooled HTTP/1.1 client connection, pipelining disabled when one
+    public static final String CLIENT_PIPELINE_DEPTH_PROPERTY_NAME = "nukleus.http.client.pipeline.depth";
+
+    // Comma separated client route references whose idempotent requests may be pipelined, all routes when not set
+    public static final String CLIENT_PIPELINE_ROUTES_PROPERTY_NAME = "nukleus.http.client.pipeline.routes";
 
     private static final int MAXIMUM_CONNECTIONS_DEFAULT = 10; // most browsers use 6, IE 11 uses 13
     private static final int MAXIMUM_REQUESTS_QUEUED_DEFAULT = 10000;
+    private static final int TRACE_SAMPLING_MASK_DEFAULT = 0;
+    private static final int ACCESS_LOG_CAPACITY_DEFAULT = 16 * 1024 * 1024;
+    private static final int METRICS_CAPACITY_DEFAULT = 4096;
+    private static final int OBJECT_POOL_CAPACITY_DEFAULT = 1024;
+    private static final int CORRELATIONS_CAPACITY_DEFAULT = 1024;
+    private static final int CORRELATION_TIMEOUT_DEFAULT = 300;
+    private static final int CORRELATION_SWEEP_INTERVAL_DEFAULT = 30;
+    private static final int SERVER_HIBERNATION_DELAY_DEFAULT = 5000;
+    private static final int SERVER_HIBERNATION_CAPACITY_DEFAULT = 1024;
+    private static final int SERVER_ADMISSION_SLOTS_DEFAULT = 0;
+    private static final int SERVER_ADMISSION_CORRELATIONS_DEFAULT = 0;
+    private static final int SERVER_ADMISSION_ROUTE_REQUESTS_DEFAULT = 0;
+    private static final int SERVER_ADMISSION_PRESSURE_DEFAULT = 75;
+    private static final int SERVER_ADMISSION_SHED_DEFAULT = 90;
+    private static final int SERVER_ADMISSION_RETRY_AFTER_DEFAULT = 1;
+    private static final int SERVER_RATE_LIMIT_DEFAULT = 0;
+    private static final int SERVER_RATE_LIMIT_BURST_DEFAULT = 10;
+    private static final String SERVER_RATE_LIMIT_KEY_DEFAULT = ":authority";
+    private static final int SERVER_RATE_LIMIT_KEYS_DEFAULT = 4096;
+    private static final int TIMER_TICK_DEFAULT = 100;
+    private static final int TIMER_WHEEL_SIZE_DEFAULT = 512;
+    private static final int TIMERS_CAPACITY_DEFAULT = 64 * 1024;
+    private static final int SERVER_HEADER_TIMEOUT_DEFAULT = 0;
+    private static final int SERVER_BODY_TIMEOUT_DEFAULT = 0;
+    private static final int SERVER_KEEPALIVE_TIMEOUT_DEFAULT = 0;
+    private static final int CLIENT_QUEUE_TIMEOUT_DEFAULT = 0;
+    private static final int CLIENT_HEADER_TIMEOUT_DEFAULT = 0;
+    private static final int CLIENT_KEEPALIVE_TIMEOUT_DEFAULT = 0;
+    private static final int SERVER_HTTP2_MAX_CONCURRENT_STREAMS_DEFAULT = 100;
+    private static final int CLIENT_HTTP2_MAXIMUM_CONNECTIONS_DEFAULT = 1;
+    private static final int CLIENT_PIPELINE_DEPTH_DEFAULT = 1;
+    private static final int MAXIMUM_HEADERS_SIZE_DEFAULT = 0; // reaktor buffer slot capacity
+    private static final int LARGE_SLOTS_DEFAULT = 64;
+    private static final int REQUEST_SPOOL_CAPACITY_DEFAULT = 0;
+    private static final int REQUEST_SPOOL_THRESHOLD_DEFAULT = 64 * 1024;
+    private static final int RESPONSE_SPOOL_CAPACITY_DEFAULT = 0;
+    private static final int RESPONSE_SPOOL_THRESHOLD_DEFAULT = 64 * 1024;
+    private static final int RESPONSE_SPOOL_MAXIMUM_DEFAULT = 1024 * 1024;
 
 
     public HttpConfiguration(
@@ -45,4 +237,271 @@ public class HttpConfiguration extends Configuration
     {
         return getInteger(MAXIMUM_QUEUED_REQUESTS_PROPERTY_NAME, MAXIMUM_REQUESTS_QUEUED_DEFAULT);
     }
+
+    public String traceSampler()
+    {
+        return getProperty(TRACE_SAMPLER_PROPERTY_NAME, (String) null);
+    }
+
+    public int traceSamplingMask()
+    {
+        return getInteger(TRACE_SAMPLING_MASK_PROPERTY_NAME, TRACE_SAMPLING_MASK_DEFAULT);
+    }
+
+    public String accessLog()
+    {
+        return getProperty(ACCESS_LOG_PROPERTY_NAME, (String) null);
+    }
+
+    public int accessLogCapacity()
+    {
+        return getInteger(ACCESS_LOG_CAPACITY_PROPERTY_NAME, ACCESS_LOG_CAPACITY_DEFAULT);
+    }
+
+    public boolean flightRecorderEvents()
+    {
+        return getBoolean(JFR_EVENTS_PROPERTY_NAME, false);
+    }
+
+    public int metricsCapacity()
+    {
+        return getInteger(METRICS_CAPACITY_PROPERTY_NAME, METRICS_CAPACITY_DEFAULT);
+    }
+
+    public int objectPoolCapacity()
+    {
+        return getInteger(OBJECT_POOL_CAPACITY_PROPERTY_NAME, OBJECT_POOL_CAPACITY_DEFAULT);
+    }
+
+    public boolean objectPoolDebug()
+    {
+        return getBoolean(OBJECT_POOL_DEBUG_PROPERTY_NAME, false);
+    }
+
+    public int correlationsCapacity()
+    {
+        return getInteger(CORRELATIONS_CAPACITY_PROPERTY_NAME, CORRELATIONS_CAPACITY_DEFAULT);
+    }
+
+    public int correlationTimeout()
+    {
+        return getInteger(CORRELATION_TIMEOUT_PROPERTY_NAME, CORRELATION_TIMEOUT_DEFAULT);
+    }
+
+    public int correlationSweepInterval()
+    {
+        return getInteger(CORRELATION_SWEEP_INTERVAL_PROPERTY_NAME, CORRELATION_SWEEP_INTERVAL_DEFAULT);
+    }
+
+    public boolean serverHibernation()
+    {
+        return getBoolean(SERVER_HIBERNATION_PROPERTY_NAME, false);
+    }
+
+    public int serverHibernationDelay()
+    {
+        return getInteger(SERVER_HIBERNATION_DELAY_PROPERTY_NAME, SERVER_HIBERNATION_DELAY_DEFAULT);
+    }
+
+    public int serverHibernationCapacity()
+    {
+        return getInteger(SERVER_HIBERNATION_CAPACITY_PROPERTY_NAME, SERVER_HIBERNATION_CAPACITY_DEFAULT);
+    }
+
+    public int maximumHeadersSize()
+    {
+        return getInteger(MAXIMUM_HEADERS_SIZE_PROPERTY_NAME, MAXIMUM_HEADERS_SIZE_DEFAULT);
+    }
+
+    public int largeSlots()
+    {
+        return getInteger(LARGE_SLOTS_PROPERTY_NAME, LARGE_SLOTS_DEFAULT);
+    }
+
+    public int requestSpoolCapacity()
+    {
+        return getInteger(REQUEST_SPOOL_CAPACITY_PROPERTY_NAME, REQUEST_SPOOL_CAPACITY_DEFAULT);
+    }
+
+    public int requestSpoolThreshold()
+    {
+        return getInteger(REQUEST_SPOOL_THRESHOLD_PROPERTY_NAME, REQUEST_SPOOL_THRESHOLD_DEFAULT);
+    }
+
+    public long[] requestSpoolRoutes()
+    {
+        return routeRefs(getProperty(REQUEST_SPOOL_ROUTES_PROPERTY_NAME, (String) null));
+    }
+
+    public int responseSpoolCapacity()
+    {
+        return getInteger(RESPONSE_SPOOL_CAPACITY_PROPERTY_NAME, RESPONSE_SPOOL_CAPACITY_DEFAULT);
+    }
+
+    public int responseSpoolThreshold()
+    {
+        return getInteger(RESPONSE_SPOOL_THRESHOLD_PROPERTY_NAME, RESPONSE_SPOOL_THRESHOLD_DEFAULT);
+    }
+
+    public int responseSpoolMaximum()
+    {
+        return getInteger(RESPONSE_SPOOL_MAXIMUM_PROPERTY_NAME, RESPONSE_SPOOL_MAXIMUM_DEFAULT);
+    }
+
+    public boolean serverAdmission()
+    {
+        return getBoolean(SERVER_ADMISSION_PROPERTY_NAME, false);
+    }
+
+    public int serverAdmissionSlots()
+    {
+        return getInteger(SERVER_ADMISSION_SLOTS_PROPERTY_NAME, SERVER_ADMISSION_SLOTS_DEFAULT);
+    }
+
+    public int serverAdmissionCorrelations()
+    {
+        return getInteger(SERVER_ADMISSION_CORRELATIONS_PROPERTY_NAME, SERVER_ADMISSION_CORRELATIONS_DEFAULT);
+    }
+
+    public int serverAdmissionRouteRequests()
+    {
+        return getInteger(SERVER_ADMISSION_ROUTE_REQUESTS_PROPERTY_NAME, SERVER_ADMISSION_ROUTE_REQUESTS_DEFAULT);
+    }
+
+    public int serverAdmissionPressure()
+    {
+        return getInteger(SERVER_ADMISSION_PRESSURE_PROPERTY_NAME, SERVER_ADMISSION_PRESSURE_DEFAULT);
+    }
+
+    public int serverAdmissionShed()
+    {
+        return getInteger(SERVER_ADMISSION_SHED_PROPERTY_NAME, SERVER_ADMISSION_SHED_DEFAULT);
+    }
+
+    public int serverAdmissionRetryAfter()
+    {
+        return getInteger(SERVER_ADMISSION_RETRY_AFTER_PROPERTY_NAME, SERVER_ADMISSION_RETRY_AFTER_DEFAULT);
+    }
+
+    public int serverRateLimit()
+    {
+        return getInteger(SERVER_RATE_LIMIT_PROPERTY_NAME, SERVER_RATE_LIMIT_DEFAULT);
+    }
+
+    public int serverRateLimitBurst()
+    {
+        return getInteger(SERVER_RATE_LIMIT_BURST_PROPERTY_NAME, SERVER_RATE_LIMIT_BURST_DEFAULT);
+    }
+
+    public String serverRateLimitKey()
+    {
+        return getProperty(SERVER_RATE_LIMIT_KEY_PROPERTY_NAME, SERVER_RATE_LIMIT_KEY_DEFAULT);
+    }
+
+    public long[] serverRateLimitRoutes()
+    {
+        return routeRefs(getProperty(SERVER_RATE_LIMIT_ROUTES_PROPERTY_NAME, (String) null));
+    }
+
+    public int serverRateLimitKeys()
+    {
+        return getInteger(SERVER_RATE_LIMIT_KEYS_PROPERTY_NAME, SERVER_RATE_LIMIT_KEYS_DEFAULT);
+    }
+
+    public int timerTick()
+    {
+        return getInteger(TIMER_TICK_PROPERTY_NAME, TIMER_TICK_DEFAULT);
+    }
+
+    public int timerWheelSize()
+    {
+        return getInteger(TIMER_WHEEL_SIZE_PROPERTY_NAME, TIMER_WHEEL_SIZE_DEFAULT);
+    }
+
+    public int timersCapacity()
+    {
+        return getInteger(TIMERS_CAPACITY_PROPERTY_NAME, TIMERS_CAPACITY_DEFAULT);
+    }
+
+    public int serverHeaderTimeout()
+    {
+        return getInteger(SERVER_HEADER_TIMEOUT_PROPERTY_NAME, SERVER_HEADER_TIMEOUT_DEFAULT);
+    }
+
+    public int serverBodyTimeout()
+    {
+        return getInteger(SERVER_BODY_TIMEOUT_PROPERTY_NAME, SERVER_BODY_TIMEOUT_DEFAULT);
+    }
+
+    public int serverKeepAliveTimeout()
+    {
+        return getInteger(SERVER_KEEPALIVE_TIMEOUT_PROPERTY_NAME, SERVER_KEEPALIVE_TIMEOUT_DEFAULT);
+    }
+
+    public int clientQueueTimeout()
+    {
+        return getInteger(CLIENT_QUEUE_TIMEOUT_PROPERTY_NAME, CLIENT_QUEUE_TIMEOUT_DEFAULT);
+    }
+
+    public int clientHeaderTimeout()
+    {
+        return getInteger(CLIENT_HEADER_TIMEOUT_PROPERTY_NAME, CLIENT_HEADER_TIMEOUT_DEFAULT);
+    }
+
+    public int clientKeepAliveTimeout()
+    {
+        return getInteger(CLIENT_KEEPALIVE_TIMEOUT_PROPERTY_NAME, CLIENT_KEEPALIVE_TIMEOUT_DEFAULT);
+    }
+
+    public boolean serverHttp2()
+    {
+        return getBoolean(SERVER_HTTP2_PROPERTY_NAME, false);
+    }
+
+    public int serverHttp2MaxConcurrentStreams()
+    {
+        return getInteger(SERVER_HTTP2_MAX_CONCURRENT_STREAMS_PROPERTY_NAME, SERVER_HTTP2_MAX_CONCURRENT_STREAMS_DEFAULT);
+    }
+
+    public boolean clientHttp2()
+    {
+        return getBoolean(CLIENT_HTTP2_PROPERTY_NAME, false);
+    }
+
+    public long[] clientHttp2Routes()
+    {
+        return routeRefs(getProperty(CLIENT_HTTP2_ROUTES_PROPERTY_NAME, (String) null));
+    }
+
+    public int clientHttp2MaximumConnections()
+    {
+        return getInteger(CLIENT_HTTP2_MAXIMUM_CONNECTIONS_PROPERTY_NAME, CLIENT_HTTP2_MAXIMUM_CONNECTIONS_DEFAULT);
+    }
+
+    public int clientPipelineDepth()
+    {
+        return getInteger(CLIENT_PIPELINE_DEPTH_PROPERTY_NAME, CLIENT_PIPELINE_DEPTH_DEFAULT);
+    }
+
+    public long[] clientPipelineRoutes()
+    {
+        return routeRefs(getProperty(CLIENT_PIPELINE_ROUTES_PROPERTY_NAME, (String) null));
+    }
+
+    // sorted, for binary search, or null when not set
+    private static long[] routeRefs(
+        String routes)
+    {
+        long[] routeRefs = null;
+        if (routes != null)
+        {
+            routeRefs = Arrays.stream(routes.split(","))
+                              .map(String::trim)
+                              .filter(s -> !s.isEmpty())
+                              .mapToLong(Long::decode)
+                              .sorted()
+                              .toArray();
+        }
+        return routeRefs;
+    }
 }
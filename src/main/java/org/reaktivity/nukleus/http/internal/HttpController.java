@@ -18,6 +18,7 @@ package org.reaktivity.nukleus.http.internal;
 import static java.nio.ByteBuffer.allocateDirect;
 import static java.nio.ByteOrder.nativeOrder;
 
+import java.io.File;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
@@ -26,10 +27,14 @@ import java.util.function.ToIntFunction;
 
 import org.agrona.concurrent.AtomicBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.Configuration;
 import org.reaktivity.nukleus.Controller;
 import org.reaktivity.nukleus.ControllerSpi;
 import org.reaktivity.nukleus.function.MessageConsumer;
 import org.reaktivity.nukleus.function.MessagePredicate;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetricsReader;
+import org.reaktivity.nukleus.http.internal.metrics.MetricsSnapshot;
 import org.reaktivity.nukleus.http.internal.types.OctetsFW;
 import org.reaktivity.nukleus.http.internal.types.control.FreezeFW;
 import org.reaktivity.nukleus.http.internal.types.control.HttpRouteExFW;
@@ -41,6 +46,12 @@ public final class HttpController implements Controller
 {
     private static final int MAX_SEND_LENGTH = 1024; // TODO: Configuration and Context
 
+    private static final String[] NUKLEUS_COUNTERS =
+    {
+        "routes", "streams", "enqueues", "dequeues", "requests", "requests.rejected", "requests.abandoned",
+        "responses", "responses.abandoned", "access.log.drops"
+    };
+
     // TODO: thread-safe flyweights or command queue from public methods
     private final RouteFW.Builder routeRW = new RouteFW.Builder();
     private final UnrouteFW.Builder unrouteRW = new UnrouteFW.Builder();
@@ -50,12 +61,17 @@ public final class HttpController implements Controller
 
     private final ControllerSpi controllerSpi;
     private final AtomicBuffer atomicBuffer;
+    private final File metricsFile;
+
+    private HttpMetricsReader metrics;
 
     public HttpController(
-        ControllerSpi controllerSpi)
+        ControllerSpi controllerSpi,
+        Configuration config)
     {
         this.controllerSpi = controllerSpi;
         this.atomicBuffer = new UnsafeBuffer(allocateDirect(MAX_SEND_LENGTH).order(nativeOrder()));
+        this.metricsFile = HttpMetrics.file(config);
     }
 
     @Override
@@ -67,6 +83,10 @@ public final class HttpController implements Controller
     @Override
     public void close() throws Exception
     {
+        if (metrics != null)
+        {
+            metrics.close();
+        }
         controllerSpi.doClose();
     }
 
@@ -152,6 +172,75 @@ public final class HttpController implements Controller
         return controllerSpi.doCount(name);
     }
 
+    public HttpMetricsReader metrics()
+    {
+        if (metrics == null)
+        {
+            metrics = HttpMetricsReader.map(metricsFile);
+        }
+        return metrics;
+    }
+
+    /*
+     * Copies the nukleus counters and all metrics in the metrics file into the given snapshot, in a single pass over
+     * the metrics file. The nukleus counters are shared by both roles, so they have no role in the snapshot.
+     */
+    public MetricsSnapshot snapshot(
+        MetricsSnapshot snapshot)
+    {
+        snapshot.reset();
+        metrics().forEach(snapshot);
+        for (String name : NUKLEUS_COUNTERS)
+        {
+            snapshot.onMetric(HttpMetrics.COUNTER_TYPE_ID, name, null, "", 0L, 0, count(name));
+        }
+        return snapshot.sort();
+    }
+
+    /*
+     * @param name one of the metric names in ConnectionPoolMetrics
+     */
+    public long connectionPool(
+        String name,
+        String target,
+        long targetRef)
+    {
+        return metrics().value(Role.CLIENT, name, target, targetRef);
+    }
+
+    /*
+     * @param name one of the metric names in BufferSlotMetrics
+     */
+    public long serverBufferSlots(
+        String name)
+    {
+        return metrics().value(Role.SERVER, name, "", 0L);
+    }
+
+    public long clientBufferSlots(
+        String name)
+    {
+        return metrics().value(Role.CLIENT, name, "", 0L);
+    }
+
+    /*
+     * @param name one of the metric names in FlowControlMetrics
+     */
+    public long serverFlowControl(
+        String name,
+        long sourceRef)
+    {
+        return metrics().value(Role.SERVER, name, "", sourceRef);
+    }
+
+    public long clientFlowControl(
+        String name,
+        String target,
+        long targetRef)
+    {
+        return metrics().value(Role.CLIENT, name, target, targetRef);
+    }
+
     private Consumer<OctetsFW.Builder> extension(
         Map<String, String> headers)
     {
@@ -39,7 +39,7 @@ public final class HttpControllerFactorySpi implements ControllerFactorySpi<Http
         ControllerBuilder<HttpController> builder)
     {
         return builder.setName(name())
-                .setFactory(HttpController::new)
+                .setFactory(spi -> new HttpController(spi, config))
                 .build();
     }
 }
@@ -22,8 +22,12 @@ import org.reaktivity.nukleus.Configuration;
 import org.reaktivity.nukleus.Nukleus;
 import org.reaktivity.nukleus.NukleusBuilder;
 import org.reaktivity.nukleus.NukleusFactorySpi;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
 import org.reaktivity.nukleus.http.internal.stream.ClientStreamFactoryBuilder;
+import org.reaktivity.nukleus.http.internal.stream.CorrelationSweeper;
 import org.reaktivity.nukleus.http.internal.stream.ServerStreamFactoryBuilder;
+import org.reaktivity.nukleus.http.internal.stream.TimerWheel;
 
 public final class HttpNukleusFactorySpi implements NukleusFactorySpi
 {
@@ -41,9 +45,21 @@ public final class HttpNukleusFactorySpi implements NukleusFactorySpi
         NukleusBuilder builder)
     {
         HttpConfiguration httpConfig = new HttpConfiguration(config);
+        AccessLog accessLog = AccessLog.newInstance(httpConfig);
+        HttpMetrics metrics = HttpMetrics.newInstance(httpConfig);
+        CorrelationSweeper sweeper = new CorrelationSweeper(httpConfig);
+        TimerWheel timers = TimerWheel.newInstance(httpConfig);
 
-        return builder.streamFactory(CLIENT, new ClientStreamFactoryBuilder(httpConfig))
-                      .streamFactory(SERVER, new ServerStreamFactoryBuilder(httpConfig))
-                      .build();
+        NukleusBuilder nukleus = builder
+                .streamFactory(CLIENT, new ClientStreamFactoryBuilder(httpConfig, accessLog, metrics, sweeper, timers))
+                .streamFactory(SERVER, new ServerStreamFactoryBuilder(httpConfig, accessLog, metrics, sweeper, timers))
+                .inject(sweeper);
+
+        if (timers != null)
+        {
+            nukleus = nukleus.inject(timers);
+        }
+
+        return nukleus.build();
     }
 }
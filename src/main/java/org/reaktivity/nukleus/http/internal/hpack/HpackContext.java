@@ -0,0 +1,371 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.hpack;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * The header table of RFC 7541, the static table followed by a dynamic table of the most recently indexed headers.
+ * <p>
+ * Dynamic entries are copied into a byte array sized for the largest table allowed, newest last, with their offsets and
+ * lengths in rings of primitive arrays, so that indexing a header does not allocate. Entries are evicted from the
+ * front and the remaining entries moved back to the start of the array when the newest would not fit at the end.
+ */
+public final class HpackContext
+{
+    public static final int DEFAULT_TABLE_SIZE = 4096;
+
+    static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[][] STATIC_ENTRIES =
+    {
+        { ":authority", "" },
+        { ":method", "GET" },
+        { ":method", "POST" },
+        { ":path", "/" },
+        { ":path", "/index.html" },
+        { ":scheme", "http" },
+        { ":scheme", "https" },
+        { ":status", "200" },
+        { ":status", "204" },
+        { ":status", "206" },
+        { ":status", "304" },
+        { ":status", "400" },
+        { ":status", "404" },
+        { ":status", "500" },
+        { "accept-charset", "" },
+        { "accept-encoding", "gzip, deflate" },
+        { "accept-language", "" },
+        { "accept-ranges", "" },
+        { "accept", "" },
+        { "access-control-allow-origin", "" },
+        { "age", "" },
+        { "allow", "" },
+        { "authorization", "" },
+        { "cache-control", "" },
+        { "content-disposition", "" },
+        { "content-encoding", "" },
+        { "content-language", "" },
+        { "content-length", "" },
+        { "content-location", "" },
+        { "content-range", "" },
+        { "content-type", "" },
+        { "cookie", "" },
+        { "date", "" },
+        { "etag", "" },
+        { "expect", "" },
+        { "expires", "" },
+        { "from", "" },
+        { "host", "" },
+        { "if-match", "" },
+        { "if-modified-since", "" },
+        { "if-none-match", "" },
+        { "if-range", "" },
+        { "if-unmodified-since", "" },
+        { "last-modified", "" },
+        { "link", "" },
+        { "location", "" },
+        { "max-forwards", "" },
+        { "proxy-authenticate", "" },
+        { "proxy-authorization", "" },
+        { "range", "" },
+        { "referer", "" },
+        { "refresh", "" },
+        { "retry-after", "" },
+        { "server", "" },
+        { "set-cookie", "" },
+        { "strict-transport-security", "" },
+        { "transfer-encoding", "" },
+        { "user-agent", "" },
+        { "vary", "" },
+        { "via", "" },
+        { "www-authenticate", "" }
+    };
+
+    public static final int STATIC_TABLE_LENGTH = STATIC_ENTRIES.length;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private static final DirectBuffer STATIC_BUFFER;
+    private static final int[] STATIC_NAME_OFFSETS = new int[STATIC_TABLE_LENGTH + 1];
+    private static final int[] STATIC_NAME_LENGTHS = new int[STATIC_TABLE_LENGTH + 1];
+    private static final int[] STATIC_VALUE_LENGTHS = new int[STATIC_TABLE_LENGTH + 1];
+
+    static
+    {
+        final StringBuilder entries = new StringBuilder();
+        for (int index = 1; index <= STATIC_TABLE_LENGTH; index++)
+        {
+            final String[] entry = STATIC_ENTRIES[index - 1];
+            STATIC_NAME_OFFSETS[index] = entries.length();
+            STATIC_NAME_LENGTHS[index] = entry[0].length();
+            STATIC_VALUE_LENGTHS[index] = entry[1].length();
+            entries.append(entry[0]).append(entry[1]);
+        }
+        STATIC_BUFFER = new UnsafeBuffer(entries.toString().getBytes(US_ASCII));
+    }
+
+    private final byte[] bytes;
+    private final UnsafeBuffer buffer;
+    private final int[] nameOffsets;
+    private final int[] nameLengths;
+    private final int[] valueLengths;
+
+    private int oldest;
+    private int count;
+    private int limit;
+    private int size;
+    private int maxSize;
+
+    public HpackContext(
+        int capacity)
+    {
+        this.bytes = new byte[capacity];
+        this.buffer = new UnsafeBuffer(bytes);
+        this.nameOffsets = new int[capacity / ENTRY_OVERHEAD + 1];
+        this.nameLengths = new int[nameOffsets.length];
+        this.valueLengths = new int[nameOffsets.length];
+        this.maxSize = capacity;
+    }
+
+    public int capacity()
+    {
+        return bytes.length;
+    }
+
+    public int maxSize()
+    {
+        return maxSize;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int length()
+    {
+        return STATIC_TABLE_LENGTH + count;
+    }
+
+    /*
+     * Returns false when the size exceeds the capacity agreed with the peer
+     */
+    public boolean maxSize(
+        int maxSize)
+    {
+        final boolean valid = maxSize >= 0 && maxSize <= bytes.length;
+        if (valid)
+        {
+            this.maxSize = maxSize;
+            evict(0);
+        }
+        return valid;
+    }
+
+    /*
+     * Wraps the name of the entry at a valid index, between 1 and length() inclusive, without copying it
+     */
+    public void name(
+        int index,
+        UnsafeBuffer name)
+    {
+        if (index <= STATIC_TABLE_LENGTH)
+        {
+            wrap(name, STATIC_BUFFER, STATIC_NAME_OFFSETS[index], STATIC_NAME_LENGTHS[index]);
+        }
+        else
+        {
+            final int entry = entryOf(index);
+            wrap(name, buffer, nameOffsets[entry], nameLengths[entry]);
+        }
+    }
+
+    public void value(
+        int index,
+        UnsafeBuffer value)
+    {
+        if (index <= STATIC_TABLE_LENGTH)
+        {
+            wrap(value, STATIC_BUFFER, STATIC_NAME_OFFSETS[index] + STATIC_NAME_LENGTHS[index], STATIC_VALUE_LENGTHS[index]);
+        }
+        else
+        {
+            final int entry = entryOf(index);
+            wrap(value, buffer, nameOffsets[entry] + nameLengths[entry], valueLengths[entry]);
+        }
+    }
+
+    public boolean isDynamic(
+        int index)
+    {
+        return index > STATIC_TABLE_LENGTH;
+    }
+
+    /*
+     * Indexes a header, the name and value must not refer to this table as they may be evicted to make room
+     */
+    public void add(
+        DirectBuffer name,
+        int nameOffset,
+        int nameLength,
+        DirectBuffer value,
+        int valueOffset,
+        int valueLength)
+    {
+        final int entrySize = nameLength + valueLength + ENTRY_OVERHEAD;
+        evict(entrySize);
+
+        if (entrySize > maxSize)
+        {
+            // a header larger than the table empties it rather than being indexed
+            return;
+        }
+
+        if (limit + nameLength + valueLength > bytes.length)
+        {
+            compact();
+        }
+
+        final int entry = (oldest + count) % nameOffsets.length;
+        nameOffsets[entry] = limit;
+        nameLengths[entry] = nameLength;
+        valueLengths[entry] = valueLength;
+        buffer.putBytes(limit, name, nameOffset, nameLength);
+        buffer.putBytes(limit + nameLength, value, valueOffset, valueLength);
+        limit += nameLength + valueLength;
+        size += entrySize;
+        count++;
+    }
+
+    /*
+     * Returns the static index of the first entry with the name, or 0 when there is none
+     */
+    public static int staticNameIndex(
+        DirectBuffer name,
+        int nameOffset,
+        int nameLength)
+    {
+        for (int index = 1; index <= STATIC_TABLE_LENGTH; index++)
+        {
+            if (equals(name, nameOffset, nameLength, STATIC_NAME_OFFSETS[index], STATIC_NAME_LENGTHS[index]))
+            {
+                return index;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Returns the static index of the entry with the name, found by staticNameIndex, and value, or 0 when there is none
+     */
+    public static int staticIndex(
+        int nameIndex,
+        DirectBuffer value,
+        int valueOffset,
+        int valueLength)
+    {
+        int found = 0;
+        if (nameIndex != 0)
+        {
+            // entries with the same name are adjacent in the static table
+            final String name = STATIC_ENTRIES[nameIndex - 1][0];
+            for (int index = nameIndex;
+                 found == 0 && index <= STATIC_TABLE_LENGTH && name.equals(STATIC_ENTRIES[index - 1][0]);
+                 index++)
+            {
+                final int staticValueOffset = STATIC_NAME_OFFSETS[index] + STATIC_NAME_LENGTHS[index];
+                if (equals(value, valueOffset, valueLength, staticValueOffset, STATIC_VALUE_LENGTHS[index]))
+                {
+                    found = index;
+                }
+            }
+        }
+        return found;
+    }
+
+    /*
+     * Wraps a view, including an empty view at the limit of the buffer which the buffer bounds checks reject
+     */
+    static void wrap(
+        UnsafeBuffer view,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (length == 0)
+        {
+            view.wrap(EMPTY_BYTES);
+        }
+        else
+        {
+            view.wrap(buffer, offset, length);
+        }
+    }
+
+    private static boolean equals(
+        DirectBuffer buffer,
+        int offset,
+        int length,
+        int staticOffset,
+        int staticLength)
+    {
+        boolean equal = length == staticLength;
+        for (int i = 0; equal && i < length; i++)
+        {
+            equal = buffer.getByte(offset + i) == STATIC_BUFFER.getByte(staticOffset + i);
+        }
+        return equal;
+    }
+
+    // index 1 past the static table is the newest entry
+    private int entryOf(
+        int index)
+    {
+        return (oldest + count - (index - STATIC_TABLE_LENGTH)) % nameOffsets.length;
+    }
+
+    private void evict(
+        int required)
+    {
+        while (count > 0 && size + required > maxSize)
+        {
+            size -= nameLengths[oldest] + valueLengths[oldest] + ENTRY_OVERHEAD;
+            oldest = (oldest + 1) % nameOffsets.length;
+            count--;
+        }
+
+        if (count == 0)
+        {
+            oldest = 0;
+            limit = 0;
+        }
+    }
+
+    private void compact()
+    {
+        final int start = nameOffsets[oldest];
+        System.arraycopy(bytes, start, bytes, 0, limit - start);
+        limit -= start;
+        for (int i = 0; i < count; i++)
+        {
+            nameOffsets[(oldest + i) % nameOffsets.length] -= start;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.hpack;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Decodes HPACK header blocks, RFC 7541, into name and value views over the block itself, the header table or, for
+ * Huffman encoded strings, a scratch buffer, so that decoding does not allocate.
+ * <p>
+ * The views are only valid during the call to the {@link HeaderConsumer}. A decoder holds the dynamic table of one
+ * connection, the scratch buffer can be shared by the decoders of streams handled on the same thread.
+ */
+public final class HpackDecoder
+{
+    @FunctionalInterface
+    public interface HeaderConsumer
+    {
+        void accept(
+            DirectBuffer name,
+            DirectBuffer value);
+    }
+
+    private final HpackContext context;
+    private final MutableDirectBuffer scratch;
+    private final UnsafeBuffer name = new UnsafeBuffer(new byte[0]);
+    private final UnsafeBuffer value = new UnsafeBuffer(new byte[0]);
+
+    private int position;
+    private int scratchPosition;
+    private int integer;
+
+    public HpackDecoder(
+        int tableSize,
+        MutableDirectBuffer scratch)
+    {
+        this.context = new HpackContext(tableSize);
+        this.scratch = scratch;
+    }
+
+    public HpackContext context()
+    {
+        return context;
+    }
+
+    /*
+     * Returns false when the header block is malformed, a connection error as the dynamic table can no longer be
+     * kept in step with that of the encoder
+     */
+    public boolean decode(
+        DirectBuffer buffer,
+        int offset,
+        int length,
+        HeaderConsumer headers)
+    {
+        final int limit = offset + length;
+        boolean valid = true;
+        boolean headerSeen = false;
+        position = offset;
+
+        while (valid && position < limit)
+        {
+            final int octet = buffer.getByte(position) & 0xff;
+            scratchPosition = 0;
+
+            if ((octet & 0x80) != 0)
+            {
+                valid = decodeInteger(buffer, limit, 7) && decodeIndexed(integer, headers);
+                headerSeen = true;
+            }
+            else if ((octet & 0x40) != 0)
+            {
+                valid = decodeInteger(buffer, limit, 6) && decodeLiteral(buffer, limit, integer, true, headers);
+                headerSeen = true;
+            }
+            else if ((octet & 0x20) != 0)
+            {
+                // table size updates only precede the headers of a block
+                valid = !headerSeen && decodeInteger(buffer, limit, 5) && context.maxSize(integer);
+            }
+            else
+            {
+                valid = decodeInteger(buffer, limit, 4) && decodeLiteral(buffer, limit, integer, false, headers);
+                headerSeen = true;
+            }
+        }
+
+        return valid;
+    }
+
+    private boolean decodeIndexed(
+        int index,
+        HeaderConsumer headers)
+    {
+        final boolean valid = index > 0 && index <= context.length();
+        if (valid)
+        {
+            context.name(index, name);
+            context.value(index, value);
+            headers.accept(name, value);
+        }
+        return valid;
+    }
+
+    private boolean decodeLiteral(
+        DirectBuffer buffer,
+        int limit,
+        int nameIndex,
+        boolean indexed,
+        HeaderConsumer headers)
+    {
+        boolean valid = nameIndex <= context.length();
+        if (valid)
+        {
+            if (nameIndex == 0)
+            {
+                valid = decodeString(buffer, limit, name);
+            }
+            else if (indexed && context.isDynamic(nameIndex))
+            {
+                // the name may be evicted to make room for the new entry
+                context.name(nameIndex, value);
+                valid = value.capacity() <= scratch.capacity();
+                if (valid)
+                {
+                    scratch.putBytes(0, value, 0, value.capacity());
+                    HpackContext.wrap(name, scratch, 0, value.capacity());
+                    scratchPosition = value.capacity();
+                }
+            }
+            else
+            {
+                context.name(nameIndex, name);
+            }
+        }
+
+        valid = valid && decodeString(buffer, limit, value);
+
+        if (valid)
+        {
+            if (indexed)
+            {
+                context.add(name, 0, name.capacity(), value, 0, value.capacity());
+            }
+            headers.accept(name, value);
+        }
+
+        return valid;
+    }
+
+    private boolean decodeString(
+        DirectBuffer buffer,
+        int limit,
+        UnsafeBuffer string)
+    {
+        final boolean huffman = position < limit && (buffer.getByte(position) & 0x80) != 0;
+        boolean valid = decodeInteger(buffer, limit, 7) && integer <= limit - position;
+        if (valid)
+        {
+            final int length = integer;
+            if (huffman)
+            {
+                final int decoded = HpackHuffman.decode(buffer, position, length, scratch, scratchPosition);
+                valid = decoded != -1;
+                if (valid)
+                {
+                    HpackContext.wrap(string, scratch, scratchPosition, decoded);
+                    scratchPosition += decoded;
+                }
+            }
+            else
+            {
+                HpackContext.wrap(string, buffer, position, length);
+            }
+            position += length;
+        }
+        return valid;
+    }
+
+    private boolean decodeInteger(
+        DirectBuffer buffer,
+        int limit,
+        int prefixBits)
+    {
+        boolean valid = position < limit;
+        if (valid)
+        {
+            final int mask = (1 << prefixBits) - 1;
+            integer = buffer.getByte(position++) & mask;
+            if (integer == mask)
+            {
+                int shift = 0;
+                int octet;
+                do
+                {
+                    valid = position < limit && shift <= 21;
+                    octet = valid ? buffer.getByte(position++) & 0xff : 0;
+                    integer += (octet & 0x7f) << shift;
+                    shift += 7;
+                }
+                while (valid && (octet & 0x80) != 0);
+            }
+        }
+        return valid;
+    }
+}
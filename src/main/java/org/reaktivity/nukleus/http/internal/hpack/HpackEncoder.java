@@ -0,0 +1,118 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.hpack;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Encodes HPACK header blocks, RFC 7541, referring to the static table where it can and Huffman encoding strings when
+ * shorter.
+ * <p>
+ * Headers are never added to the dynamic table, so the encoder keeps no state in step with the peer decoder and one
+ * encoder can be shared by all connections handled on the same thread.
+ */
+public final class HpackEncoder
+{
+    // representation, name length and value length prefixes, each at most five bytes for lengths below 2^28
+    private static final int MAXIMUM_OVERHEAD = 15;
+
+    /*
+     * Returns the offset after the encoded header, or -1 when the header does not fit the buffer
+     */
+    public int encode(
+        MutableDirectBuffer buffer,
+        int offset,
+        DirectBuffer name,
+        int nameOffset,
+        int nameLength,
+        DirectBuffer value,
+        int valueOffset,
+        int valueLength)
+    {
+        int position = -1;
+        if (offset + MAXIMUM_OVERHEAD + nameLength + valueLength <= buffer.capacity())
+        {
+            final int nameIndex = HpackContext.staticNameIndex(name, nameOffset, nameLength);
+            final int index = HpackContext.staticIndex(nameIndex, value, valueOffset, valueLength);
+            if (index != 0)
+            {
+                position = encodeInteger(buffer, offset, 0x80, 7, index);
+            }
+            else
+            {
+                // literal without indexing
+                position = encodeInteger(buffer, offset, 0x00, 4, nameIndex);
+                if (nameIndex == 0)
+                {
+                    position = encodeString(buffer, position, name, nameOffset, nameLength);
+                }
+                position = encodeString(buffer, position, value, valueOffset, valueLength);
+            }
+        }
+        return position;
+    }
+
+    private static int encodeString(
+        MutableDirectBuffer buffer,
+        int offset,
+        DirectBuffer string,
+        int stringOffset,
+        int stringLength)
+    {
+        final int huffmanLength = HpackHuffman.encodedLength(string, stringOffset, stringLength);
+        int position;
+        if (huffmanLength < stringLength)
+        {
+            position = encodeInteger(buffer, offset, 0x80, 7, huffmanLength);
+            position += HpackHuffman.encode(string, stringOffset, stringLength, buffer, position);
+        }
+        else
+        {
+            position = encodeInteger(buffer, offset, 0x00, 7, stringLength);
+            buffer.putBytes(position, string, stringOffset, stringLength);
+            position += stringLength;
+        }
+        return position;
+    }
+
+    static int encodeInteger(
+        MutableDirectBuffer buffer,
+        int offset,
+        int pattern,
+        int prefixBits,
+        int value)
+    {
+        final int mask = (1 << prefixBits) - 1;
+        int position = offset;
+        if (value < mask)
+        {
+            buffer.putByte(position++, (byte) (pattern | value));
+        }
+        else
+        {
+            buffer.putByte(position++, (byte) (pattern | mask));
+            int remaining = value - mask;
+            while (remaining >= 0x80)
+            {
+                buffer.putByte(position++, (byte) ((remaining & 0x7f) | 0x80));
+                remaining >>>= 7;
+            }
+            buffer.putByte(position++, (byte) remaining);
+        }
+        return position;
+    }
+}
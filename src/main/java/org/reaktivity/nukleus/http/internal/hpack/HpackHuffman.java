@@ -0,0 +1,186 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.hpack;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * The static Huffman code of RFC 7541 Appendix B. The code is canonical, so it is derived from the code lengths
+ * alone, and strings are decoded bit by bit through a binary tree held in a single array.
+ */
+public final class HpackHuffman
+{
+    private static final int EOS = 256;
+
+    private static final byte[] LENGTHS =
+    {
+        13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+        28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+        6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+        5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+        13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+        7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+        15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+        6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+        20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+        24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+        22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+        21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+        26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+        19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+        20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+        26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+        30
+    };
+
+    private static final int[] CODES = new int[LENGTHS.length];
+
+    // children of internal node n at 2n and 2n + 1, either the index of another internal node or -(symbol + 1)
+    private static final int[] TREE = new int[2 * (LENGTHS.length - 1)];
+
+    static
+    {
+        int code = 0;
+        int length = 0;
+        int nodes = 1;
+        for (int bits = 1; bits <= 30; bits++)
+        {
+            for (int symbol = 0; symbol < LENGTHS.length; symbol++)
+            {
+                if (LENGTHS[symbol] == bits)
+                {
+                    code <<= bits - length;
+                    length = bits;
+                    CODES[symbol] = code++;
+
+                    int node = 0;
+                    for (int bit = bits - 1; bit > 0; bit--)
+                    {
+                        final int child = (node << 1) | ((CODES[symbol] >>> bit) & 1);
+                        if (TREE[child] == 0)
+                        {
+                            TREE[child] = nodes++;
+                        }
+                        node = TREE[child];
+                    }
+                    TREE[(node << 1) | (CODES[symbol] & 1)] = -(symbol + 1);
+                }
+            }
+        }
+    }
+
+    private HpackHuffman()
+    {
+        // utility class
+    }
+
+    /*
+     * Returns the decoded length, or -1 when the string is not validly encoded or does not fit the destination
+     */
+    public static int decode(
+        DirectBuffer src,
+        int offset,
+        int length,
+        MutableDirectBuffer dst,
+        int dstOffset)
+    {
+        final int dstLimit = dst.capacity();
+        int dstPosition = dstOffset;
+        int node = 0;
+        int depth = 0;
+        boolean ones = true;
+
+        for (int index = offset; index < offset + length; index++)
+        {
+            final int octet = src.getByte(index) & 0xff;
+            for (int shift = 7; shift >= 0; shift--)
+            {
+                final int bit = (octet >>> shift) & 1;
+                final int child = TREE[(node << 1) | bit];
+                if (child < 0)
+                {
+                    final int symbol = -child - 1;
+                    if (symbol == EOS || dstPosition == dstLimit)
+                    {
+                        return -1;
+                    }
+                    dst.putByte(dstPosition++, (byte) symbol);
+                    node = 0;
+                    depth = 0;
+                    ones = true;
+                }
+                else
+                {
+                    node = child;
+                    depth++;
+                    ones &= bit == 1;
+                }
+            }
+        }
+
+        // padding is the most significant bits of EOS, so strictly shorter than a byte and all ones
+        return depth < 8 && ones ? dstPosition - dstOffset : -1;
+    }
+
+    public static int encodedLength(
+        DirectBuffer src,
+        int offset,
+        int length)
+    {
+        long bits = 0L;
+        for (int index = offset; index < offset + length; index++)
+        {
+            bits += LENGTHS[src.getByte(index) & 0xff];
+        }
+        return (int) ((bits + 7L) >>> 3);
+    }
+
+    /*
+     * Returns the encoded length, the destination having room for at least encodedLength(src, offset, length)
+     */
+    public static int encode(
+        DirectBuffer src,
+        int offset,
+        int length,
+        MutableDirectBuffer dst,
+        int dstOffset)
+    {
+        int dstPosition = dstOffset;
+        long pending = 0L;
+        int pendingBits = 0;
+
+        for (int index = offset; index < offset + length; index++)
+        {
+            final int symbol = src.getByte(index) & 0xff;
+            pending = (pending << LENGTHS[symbol]) | CODES[symbol];
+            pendingBits += LENGTHS[symbol];
+            while (pendingBits >= 8)
+            {
+                pendingBits -= 8;
+                dst.putByte(dstPosition++, (byte) (pending >>> pendingBits));
+            }
+            pending &= (1L << pendingBits) - 1L;
+        }
+
+        if (pendingBits > 0)
+        {
+            dst.putByte(dstPosition++, (byte) ((pending << (8 - pendingBits)) | (0xff >>> pendingBits)));
+        }
+
+        return dstPosition - dstOffset;
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.jfr;
+
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the HTTP request lifecycle.
+ * <p>
+ * Only instantiated when enabled by configuration, so the streams pay a single null check when the events are
+ * off. When on, each event is only populated and committed if a recording is enabled for its type.
+ */
+public final class HttpEvents
+{
+    public static final String SERVER = "server";
+    public static final String CLIENT = "client";
+
+    public static HttpEvents newInstance(
+        HttpConfiguration config)
+    {
+        return config.flightRecorderEvents() && isFlightRecorderAvailable() ? new HttpEvents() : null;
+    }
+
+    public void requestReceived(
+        String role,
+        long routeRef,
+        long traceId,
+        String method,
+        int headersLength)
+    {
+        final RequestReceived event = new RequestReceived();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.trace = traceId;
+            event.method = method;
+            event.headersSize = headersLength;
+            event.commit();
+        }
+    }
+
+    public void requestRouted(
+        String role,
+        long routeRef,
+        long traceId,
+        String target,
+        long targetRef)
+    {
+        final RequestRouted event = new RequestRouted();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.trace = traceId;
+            event.target = target;
+            event.targetRef = targetRef;
+            event.commit();
+        }
+    }
+
+    public void requestQueued(
+        String role,
+        long routeRef,
+        long traceId,
+        int queueDepth)
+    {
+        final RequestQueued event = new RequestQueued();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.trace = traceId;
+            event.queueDepth = queueDepth;
+            event.commit();
+        }
+    }
+
+    public void responseBegun(
+        String role,
+        long routeRef,
+        long traceId,
+        int status,
+        int headersLength)
+    {
+        final ResponseBegun event = new ResponseBegun();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.trace = traceId;
+            event.status = status;
+            event.headersSize = headersLength;
+            event.commit();
+        }
+    }
+
+    public void exchangeCompleted(
+        String role,
+        AccessLogRecord record)
+    {
+        final ExchangeCompleted event = new ExchangeCompleted();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = record.routeRef();
+            event.trace = record.traceId();
+            event.method = AccessLogRecord.method(record.method());
+            event.status = record.status();
+            event.requestSize = record.requestBytes();
+            event.responseSize = record.responseBytes();
+            event.latency = record.totalNanos();
+            event.commit();
+        }
+    }
+
+    public void streamReset(
+        String role,
+        long routeRef,
+        long traceId,
+        long streamId)
+    {
+        final StreamReset event = new StreamReset();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.trace = traceId;
+            event.streamId = streamId;
+            event.commit();
+        }
+    }
+
+    public void streamAborted(
+        String role,
+        long routeRef,
+        long traceId,
+        long streamId)
+    {
+        final StreamAborted event = new StreamAborted();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.trace = traceId;
+            event.streamId = streamId;
+            event.commit();
+        }
+    }
+
+    public void flowControlStalled(
+        String role,
+        long routeRef,
+        long streamId,
+        String budget,
+        long nanos)
+    {
+        final FlowControlStalled event = new FlowControlStalled();
+        if (event.shouldCommit())
+        {
+            event.role = role;
+            event.route = routeRef;
+            event.streamId = streamId;
+            event.budget = budget;
+            event.stall = nanos;
+            event.commit();
+        }
+    }
+
+    private static boolean isFlightRecorderAvailable()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return true;
+        }
+        catch (ClassNotFoundException ex)
+        {
+            return false;
+        }
+    }
+
+    @Category({ "Reaktivity", "HTTP" })
+    @StackTrace(false)
+    abstract static class HttpEvent extends Event
+    {
+        @Label("Role")
+        String role;
+
+        @Label("Route")
+        long route;
+
+        @Label("Trace")
+        long trace;
+    }
+
+    @Name("org.reaktivity.nukleus.http.RequestReceived")
+    @Label("HTTP Request Received")
+    static final class RequestReceived extends HttpEvent
+    {
+        @Label("Method")
+        String method;
+
+        @Label("Headers Size")
+        @DataAmount
+        int headersSize;
+    }
+
+    @Name("org.reaktivity.nukleus.http.RequestRouted")
+    @Label("HTTP Request Routed")
+    static final class RequestRouted extends HttpEvent
+    {
+        @Label("Target")
+        String target;
+
+        @Label("Target Route")
+        long targetRef;
+    }
+
+    @Name("org.reaktivity.nukleus.http.RequestQueued")
+    @Label("HTTP Request Queued")
+    static final class RequestQueued extends HttpEvent
+    {
+        @Label("Queue Depth")
+        int queueDepth;
+    }
+
+    @Name("org.reaktivity.nukleus.http.ResponseBegun")
+    @Label("HTTP Response Begun")
+    static final class ResponseBegun extends HttpEvent
+    {
+        @Label("Status")
+        int status;
+
+        @Label("Headers Size")
+        @DataAmount
+        int headersSize;
+    }
+
+    @Name("org.reaktivity.nukleus.http.ExchangeCompleted")
+    @Label("HTTP Exchange Completed")
+    static final class ExchangeCompleted extends HttpEvent
+    {
+        @Label("Method")
+        String method;
+
+        @Label("Status")
+        int status;
+
+        @Label("Request Size")
+        @DataAmount
+        long requestSize;
+
+        @Label("Response Size")
+        @DataAmount
+        long responseSize;
+
+        @Label("Latency")
+        @Timespan
+        long latency;
+    }
+
+    @Name("org.reaktivity.nukleus.http.StreamReset")
+    @Label("HTTP Stream Reset")
+    static final class StreamReset extends HttpEvent
+    {
+        @Label("Stream")
+        long streamId;
+    }
+
+    @Name("org.reaktivity.nukleus.http.FlowControlStalled")
+    @Label("HTTP Flow Control Stalled")
+    static final class FlowControlStalled extends HttpEvent
+    {
+        @Label("Stream")
+        long streamId;
+
+        @Label("Budget")
+        String budget;
+
+        @Label("Stall")
+        @Timespan
+        long stall;
+    }
+
+    @Name("org.reaktivity.nukleus.http.StreamAborted")
+    @Label("HTTP Stream Aborted")
+    static final class StreamAborted extends HttpEvent
+    {
+        @Label("Stream")
+        long streamId;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.log;
+
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TRAILER_LENGTH;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+/**
+ * Binary access log backed by a memory-mapped ring buffer file. Completed records are appended without
+ * blocking: when the ring is full the record is dropped and {@link #append(int, AccessLogRecord)}
+ * returns {@code false}. Records are consumed offline, see {@code AccessLogDecoder} in the test tools.
+ */
+public final class AccessLog implements AutoCloseable
+{
+    public static final int SERVER_RECORD_TYPE_ID = 1;
+    public static final int CLIENT_RECORD_TYPE_ID = 2;
+
+    private final MappedByteBuffer mapped;
+    private final RingBuffer records;
+
+    private AccessLog(
+        MappedByteBuffer mapped)
+    {
+        this.mapped = mapped;
+        this.records = new ManyToOneRingBuffer(new UnsafeBuffer(mapped));
+    }
+
+    public boolean append(
+        int typeId,
+        AccessLogRecord record)
+    {
+        return records.write(typeId, record.buffer(), 0, AccessLogRecord.LENGTH);
+    }
+
+    public int read(
+        MessageHandler handler)
+    {
+        return records.read(handler);
+    }
+
+    @Override
+    public void close()
+    {
+        IoUtil.unmap(mapped);
+    }
+
+    public static AccessLog newInstance(
+        HttpConfiguration config)
+    {
+        final String path = config.accessLog();
+        return path != null ? map(new File(path), config.accessLogCapacity()) : null;
+    }
+
+    public static AccessLog map(
+        File file,
+        int capacity)
+    {
+        final long length = capacity + TRAILER_LENGTH;
+        final MappedByteBuffer mapped;
+
+        if (file.exists() && file.length() == length)
+        {
+            // continue appending after the records not yet consumed by a previous run
+            mapped = IoUtil.mapExistingFile(file, "access log");
+        }
+        else
+        {
+            final File directory = file.getAbsoluteFile().getParentFile();
+            IoUtil.ensureDirectoryExists(directory, directory.getPath());
+            mapped = IoUtil.mapNewFile(file, length);
+        }
+
+        return new AccessLog(mapped);
+    }
+
+    public static AccessLog map(
+        File file)
+    {
+        return new AccessLog(IoUtil.mapExistingFile(file, "access log"));
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.log;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Fixed layout access log record for one request / response exchange, reused across exchanges
+ * on the same connection so that recording does not allocate.
+ */
+public final class AccessLogRecord
+{
+    public static final int TIMESTAMP_OFFSET = 0;
+    public static final int ROUTE_REF_OFFSET = TIMESTAMP_OFFSET + Long.BYTES;
+    public static final int TRACE_ID_OFFSET = ROUTE_REF_OFFSET + Long.BYTES;
+    public static final int REQUEST_BYTES_OFFSET = TRACE_ID_OFFSET + Long.BYTES;
+    public static final int RESPONSE_BYTES_OFFSET = REQUEST_BYTES_OFFSET + Long.BYTES;
+    public static final int REQUEST_NANOS_OFFSET = RESPONSE_BYTES_OFFSET + Long.BYTES;
+    public static final int RESPONSE_LATENCY_NANOS_OFFSET = REQUEST_NANOS_OFFSET + Long.BYTES;
+    public static final int TOTAL_NANOS_OFFSET = RESPONSE_LATENCY_NANOS_OFFSET + Long.BYTES;
+    public static final int METHOD_OFFSET = TOTAL_NANOS_OFFSET + Long.BYTES;
+    public static final int STATUS_OFFSET = METHOD_OFFSET + Integer.BYTES;
+    public static final int LENGTH = STATUS_OFFSET + Integer.BYTES;
+
+    public static final int UNKNOWN_METHOD = -1;
+
+    private static final String[] METHODS =
+    {
+        "GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH"
+    };
+
+    private final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[LENGTH]);
+
+    private long requestBeginAt;
+
+    public void requestBegin(
+        long routeRef,
+        long traceId,
+        String method,
+        int headersLength)
+    {
+        requestBeginAt = System.nanoTime();
+        buffer.setMemory(0, LENGTH, (byte) 0);
+        buffer.putLong(ROUTE_REF_OFFSET, routeRef);
+        buffer.putLong(TRACE_ID_OFFSET, traceId);
+        buffer.putLong(REQUEST_BYTES_OFFSET, headersLength);
+        buffer.putInt(METHOD_OFFSET, methodId(method));
+    }
+
+    public void requestData(
+        int length)
+    {
+        buffer.putLong(REQUEST_BYTES_OFFSET, buffer.getLong(REQUEST_BYTES_OFFSET) + length);
+    }
+
+    public void requestEnd()
+    {
+        buffer.putLong(REQUEST_NANOS_OFFSET, System.nanoTime() - requestBeginAt);
+    }
+
+    public void responseBegin(
+        String status,
+        int headersLength)
+    {
+        buffer.putLong(RESPONSE_LATENCY_NANOS_OFFSET, System.nanoTime() - requestBeginAt);
+        buffer.putLong(RESPONSE_BYTES_OFFSET, headersLength);
+        buffer.putInt(STATUS_OFFSET, statusCode(status));
+    }
+
+    public void responseBegin(
+        int status,
+        int headersLength)
+    {
+        buffer.putLong(RESPONSE_LATENCY_NANOS_OFFSET, System.nanoTime() - requestBeginAt);
+        buffer.putLong(RESPONSE_BYTES_OFFSET, headersLength);
+        buffer.putInt(STATUS_OFFSET, status);
+    }
+
+    public void responseData(
+        int length)
+    {
+        buffer.putLong(RESPONSE_BYTES_OFFSET, buffer.getLong(RESPONSE_BYTES_OFFSET) + length);
+    }
+
+    public void complete()
+    {
+        buffer.putLong(TIMESTAMP_OFFSET, System.currentTimeMillis());
+        buffer.putLong(TOTAL_NANOS_OFFSET, System.nanoTime() - requestBeginAt);
+    }
+
+    public long routeRef()
+    {
+        return buffer.getLong(ROUTE_REF_OFFSET);
+    }
+
+    public long traceId()
+    {
+        return buffer.getLong(TRACE_ID_OFFSET);
+    }
+
+    public int method()
+    {
+        return buffer.getInt(METHOD_OFFSET);
+    }
+
+    public int status()
+    {
+        return buffer.getInt(STATUS_OFFSET);
+    }
+
+    public long requestBytes()
+    {
+        return buffer.getLong(REQUEST_BYTES_OFFSET);
+    }
+
+    public long responseBytes()
+    {
+        return buffer.getLong(RESPONSE_BYTES_OFFSET);
+    }
+
+    public long totalNanos()
+    {
+        return buffer.getLong(TOTAL_NANOS_OFFSET);
+    }
+
+    DirectBuffer buffer()
+    {
+        return buffer;
+    }
+
+    public static int methodId(
+        String method)
+    {
+        int methodId = UNKNOWN_METHOD;
+        for (int i = 0; i < METHODS.length; i++)
+        {
+            if (METHODS[i].equals(method))
+            {
+                methodId = i;
+                break;
+            }
+        }
+        return methodId;
+    }
+
+    public static String method(
+        int methodId)
+    {
+        return methodId >= 0 && methodId < METHODS.length ? METHODS[methodId] : "-";
+    }
+
+    private static int statusCode(
+        String status)
+    {
+        int code = 0;
+        for (int i = 0; i < status.length(); i++)
+        {
+            final int digit = status.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+            {
+                code = 0;
+                break;
+            }
+            code = code * 10 + digit;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import org.agrona.concurrent.status.AtomicCounter;
+import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Buffer pool slot occupancy for one role, broken down by the reason each slot is held.
+ * <p>
+ * The acquired slots gauge and its high-water mark track the whole (shared) buffer pool, so that the slab can be
+ * sized from the peak, while the per reason gauges only count the slots held by streams of this role.
+ */
+public final class BufferSlotMetrics
+{
+    public static final int HEADERS = 0;
+    public static final int DATA = 1;
+    public static final int RESPONSE_HEADERS = 2;
+
+    public static final String SLOTS_HEADERS = "slots.headers";
+    public static final String SLOTS_DATA = "slots.data";
+    public static final String SLOTS_RESPONSE_HEADERS = "slots.response.headers";
+    public static final String SLOTS_ACQUIRED = "slots.acquired";
+    public static final String SLOTS_HIGH_WATER = "slots.high.water";
+    public static final String SLOTS_FAILED = "slots.failed";
+    public static final String HEADERS_BYTES = "headers.bytes";
+    public static final String DATA_BUFFERED_BYTES = "slots.data.bytes";
+
+    private static final String[] SLOTS_BY_REASON = { SLOTS_HEADERS, SLOTS_DATA, SLOTS_RESPONSE_HEADERS };
+
+    private final BufferPool bufferPool;
+    private final int[] held;
+    private final AtomicCounter[] slots;
+    private final AtomicCounter acquired;
+    private final AtomicCounter highWater;
+    private final AtomicCounter failed;
+    private final Histogram headersBytes;
+    private final Histogram dataBufferedBytes;
+
+    private int highWaterMark;
+
+    BufferSlotMetrics(
+        HttpMetrics metrics,
+        Role role,
+        BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+        this.held = new int[SLOTS_BY_REASON.length];
+        this.slots = new AtomicCounter[SLOTS_BY_REASON.length];
+        for (int reason = 0; reason < SLOTS_BY_REASON.length; reason++)
+        {
+            slots[reason] = metrics.gauge(SLOTS_BY_REASON[reason], role, "", 0L);
+        }
+        this.acquired = metrics.gauge(SLOTS_ACQUIRED, role, "", 0L);
+        this.highWater = metrics.gauge(SLOTS_HIGH_WATER, role, "", 0L);
+        this.failed = metrics.counter(SLOTS_FAILED, role, "", 0L);
+        this.headersBytes = metrics.histogram(HEADERS_BYTES, role, "", 0L);
+        this.dataBufferedBytes = metrics.histogram(DATA_BUFFERED_BYTES, role, "", 0L);
+    }
+
+    public void acquired(
+        int reason)
+    {
+        held[reason]++;
+        slots[reason].setOrdered(held[reason]);
+
+        final int acquiredSlots = bufferPool.acquiredSlots();
+        acquired.setOrdered(acquiredSlots);
+        if (acquiredSlots > highWaterMark)
+        {
+            highWaterMark = acquiredSlots;
+            highWater.setOrdered(acquiredSlots);
+        }
+    }
+
+    public void released(
+        int reason)
+    {
+        held[reason]--;
+        assert held[reason] >= 0;
+        slots[reason].setOrdered(held[reason]);
+        acquired.setOrdered(bufferPool.acquiredSlots());
+    }
+
+    public void failed()
+    {
+        failed.orderedIncrement();
+    }
+
+    public void headers(
+        int length)
+    {
+        headersBytes.record(length);
+    }
+
+    public void dataBuffered(
+        int length)
+    {
+        dataBufferedBytes.record(length);
+    }
+}
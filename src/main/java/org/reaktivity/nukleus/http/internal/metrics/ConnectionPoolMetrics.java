@@ -0,0 +1,98 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.reaktivity.nukleus.http.internal.types.control.Role.CLIENT;
+
+import org.agrona.concurrent.status.AtomicCounter;
+
+/**
+ * Gauges, counters and histograms for one client connection pool, identified by its target name and route.
+ * <p>
+ * Connections in use include idle connections, matching how they count against the maximum connections per route.
+ */
+public final class ConnectionPoolMetrics
+{
+    public static final String CONNECTIONS_IN_USE = "pool.connections.in.use";
+    public static final String CONNECTIONS_IDLE = "pool.connections.idle";
+    public static final String REQUESTS_QUEUED = "pool.requests.queued";
+    public static final String CONNECTIONS_CREATED = "pool.connections.created";
+    public static final String CONNECTIONS_REUSED = "pool.connections.reused";
+    public static final String CONNECTIONS_CLOSED = "pool.connections.closed";
+    public static final String QUEUE_WAIT_MICROS = "pool.queue.wait.micros";
+    public static final String REQUESTS_PER_CONNECTION = "pool.requests.per.connection";
+
+    private final AtomicCounter connectionsInUse;
+    private final AtomicCounter connectionsIdle;
+    private final AtomicCounter requestsQueued;
+    private final AtomicCounter connectionsCreated;
+    private final AtomicCounter connectionsReused;
+    private final AtomicCounter connectionsClosed;
+    private final Histogram queueWait;
+    private final Histogram requestsPerConnection;
+
+    ConnectionPoolMetrics(
+        HttpMetrics metrics,
+        String target,
+        long targetRef)
+    {
+        this.connectionsInUse = metrics.gauge(CONNECTIONS_IN_USE, CLIENT, target, targetRef);
+        this.connectionsIdle = metrics.gauge(CONNECTIONS_IDLE, CLIENT, target, targetRef);
+        this.requestsQueued = metrics.gauge(REQUESTS_QUEUED, CLIENT, target, targetRef);
+        this.connectionsCreated = metrics.counter(CONNECTIONS_CREATED, CLIENT, target, targetRef);
+        this.connectionsReused = metrics.counter(CONNECTIONS_REUSED, CLIENT, target, targetRef);
+        this.connectionsClosed = metrics.counter(CONNECTIONS_CLOSED, CLIENT, target, targetRef);
+        this.queueWait = metrics.histogram(QUEUE_WAIT_MICROS, CLIENT, target, targetRef);
+        this.requestsPerConnection = metrics.histogram(REQUESTS_PER_CONNECTION, CLIENT, target, targetRef);
+    }
+
+    public void connectionAcquired(
+        int previousRequests)
+    {
+        if (previousRequests == 0)
+        {
+            connectionsCreated.orderedIncrement();
+        }
+        else
+        {
+            connectionsReused.orderedIncrement();
+        }
+    }
+
+    public void connectionClosed(
+        int requests)
+    {
+        connectionsClosed.orderedIncrement();
+        requestsPerConnection.record(requests);
+    }
+
+    public void requestDequeued(
+        long waitNanos)
+    {
+        queueWait.record(NANOSECONDS.toMicros(waitNanos));
+    }
+
+    public void update(
+        int inUse,
+        int idle,
+        int queued)
+    {
+        connectionsInUse.setOrdered(inUse);
+        connectionsIdle.setOrdered(idle);
+        requestsQueued.setOrdered(queued);
+    }
+}
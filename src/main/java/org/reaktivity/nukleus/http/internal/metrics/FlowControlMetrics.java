@@ -0,0 +1,99 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import org.agrona.concurrent.status.AtomicCounter;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Flow control stalls aggregated for one route: how often and for how long streams on the route had no budget left
+ * on each of their windows, and how many bytes were parked in buffer slots waiting for credit.
+ */
+public final class FlowControlMetrics
+{
+    public static final int TARGET = 0;
+    public static final int SOURCE = 1;
+    public static final int ACCEPT_REPLY = 2;
+    public static final int CONNECT = 3;
+    public static final int CONNECT_REPLY = 4;
+
+    public static final String PARKED_BYTES = "slots.parked.bytes";
+
+    private static final String[] BUDGETS = { "target", "source", "accept.reply", "connect", "connect.reply" };
+
+    private final HttpMetrics metrics;
+    private final Role role;
+    private final String target;
+    private final long routeRef;
+    private final AtomicCounter[] stalls;
+    private final Histogram[] stallMicros;
+    private final AtomicCounter parkedBytes;
+
+    FlowControlMetrics(
+        HttpMetrics metrics,
+        Role role,
+        String target,
+        long routeRef)
+    {
+        this.metrics = metrics;
+        this.role = role;
+        this.target = target;
+        this.routeRef = routeRef;
+        this.stalls = new AtomicCounter[BUDGETS.length];
+        this.stallMicros = new Histogram[BUDGETS.length];
+        this.parkedBytes = metrics.counter(PARKED_BYTES, role, target, routeRef);
+    }
+
+    public void stalled(
+        int budget,
+        long nanos)
+    {
+        if (stalls[budget] == null)
+        {
+            // only allocate metrics for the windows that actually stall on this route
+            stalls[budget] = metrics.counter(stalls(budget), role, target, routeRef);
+            stallMicros[budget] = metrics.histogram(stallMicros(budget), role, target, routeRef);
+        }
+        stalls[budget].orderedIncrement();
+        stallMicros[budget].record(NANOSECONDS.toMicros(nanos));
+    }
+
+    public void parked(
+        int bytes)
+    {
+        parkedBytes.addOrdered(bytes);
+    }
+
+    public static String budget(
+        int budget)
+    {
+        return BUDGETS[budget];
+    }
+
+    public static String stalls(
+        int budget)
+    {
+        return "stalls." + BUDGETS[budget];
+    }
+
+    public static String stallMicros(
+        int budget)
+    {
+        return "stall." + BUDGETS[budget] + ".micros";
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import org.agrona.concurrent.status.AtomicCounter;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Histogram with power of two buckets: bucket {@code n} counts the values in {@code [2^(n-1), 2^n - 1]}, and bucket
+ * zero counts values less than one. Buckets are allocated on first use, recording a value never allocates after that.
+ */
+public final class Histogram
+{
+    public static final int BUCKETS = Long.SIZE;
+
+    private final HttpMetrics metrics;
+    private final String name;
+    private final Role role;
+    private final String target;
+    private final long routeRef;
+    private final AtomicCounter[] buckets;
+    private final AtomicCounter count;
+    private final AtomicCounter sum;
+
+    Histogram(
+        HttpMetrics metrics,
+        String name,
+        Role role,
+        String target,
+        long routeRef)
+    {
+        this.metrics = metrics;
+        this.name = name;
+        this.role = role;
+        this.target = target;
+        this.routeRef = routeRef;
+        this.buckets = new AtomicCounter[BUCKETS];
+        this.count = metrics.newCounter(name, HttpMetrics.HISTOGRAM_COUNT_TYPE_ID, role, target, routeRef, 0);
+        this.sum = metrics.newCounter(name, HttpMetrics.HISTOGRAM_SUM_TYPE_ID, role, target, routeRef, 0);
+    }
+
+    public void record(
+        long value)
+    {
+        final int index = bucket(value);
+        AtomicCounter bucket = buckets[index];
+        if (bucket == null)
+        {
+            bucket = metrics.newCounter(name, HttpMetrics.HISTOGRAM_BUCKET_TYPE_ID, role, target, routeRef, index);
+            buckets[index] = bucket;
+        }
+        bucket.orderedIncrement();
+        sum.addOrdered(value);
+        count.orderedIncrement();
+    }
+
+    public static int bucket(
+        long value)
+    {
+        return value > 0L ? Long.SIZE - Long.numberOfLeadingZeros(value) : 0;
+    }
+
+    public static long upperBound(
+        int bucket)
+    {
+        return (1L << bucket) - 1L;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static org.agrona.concurrent.status.CountersReader.COUNTER_LENGTH;
+import static org.agrona.concurrent.status.CountersReader.MAX_KEY_LENGTH;
+import static org.agrona.concurrent.status.CountersReader.METADATA_LENGTH;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Metrics written by the HTTP nukleus to a memory-mapped counters file next to its control file, so they can be
+ * read by {@code HttpController} without consuming the (small, shared) reaktor counters buffer.
+ * <p>
+ * Each value is an Agrona counter whose key identifies the role, target and route it belongs to, and whose type
+ * identifies the kind of metric. Values are written by the nukleus thread only, readers see ordered updates.
+ */
+public final class HttpMetrics
+{
+    public static final String FILE_NAME = "metrics";
+
+    public static final int COUNTER_TYPE_ID = 1;
+    public static final int GAUGE_TYPE_ID = 2;
+    public static final int HISTOGRAM_BUCKET_TYPE_ID = 3;
+    public static final int HISTOGRAM_COUNT_TYPE_ID = 4;
+    public static final int HISTOGRAM_SUM_TYPE_ID = 5;
+
+    public static final int ROUTE_REF_OFFSET = 0;
+    public static final int ROLE_OFFSET = ROUTE_REF_OFFSET + Long.BYTES;
+    public static final int BUCKET_OFFSET = ROLE_OFFSET + Integer.BYTES;
+    public static final int TARGET_OFFSET = BUCKET_OFFSET + Integer.BYTES;
+    public static final int MAX_TARGET_LENGTH = MAX_KEY_LENGTH - TARGET_OFFSET - Integer.BYTES;
+
+    public static final String METRICS_UNALLOCATED = "metrics.unallocated";
+
+    private final CountersManager manager;
+    private final AtomicCounter unallocated;
+    private final AtomicCounter sink;
+
+    private HttpMetrics(
+        MappedByteBuffer mapped,
+        int capacity)
+    {
+        final int metaDataLength = capacity * METADATA_LENGTH;
+        final int valuesLength = capacity * COUNTER_LENGTH;
+        this.manager = new CountersManager(
+                new UnsafeBuffer(mapped, 0, metaDataLength),
+                new UnsafeBuffer(mapped, metaDataLength, valuesLength));
+        this.unallocated = manager.newCounter(METRICS_UNALLOCATED, COUNTER_TYPE_ID, k -> { });
+
+        // absorbs updates for metrics that did not fit in the metrics file
+        final CountersManager overflow = new CountersManager(
+                new UnsafeBuffer(allocateDirect(METADATA_LENGTH)),
+                new UnsafeBuffer(allocateDirect(COUNTER_LENGTH)));
+        this.sink = overflow.newCounter(METRICS_UNALLOCATED);
+    }
+
+    public ConnectionPoolMetrics supplyConnectionPool(
+        String target,
+        long targetRef)
+    {
+        return new ConnectionPoolMetrics(this, target, targetRef);
+    }
+
+    public BufferSlotMetrics supplyBufferSlots(
+        Role role,
+        BufferPool bufferPool)
+    {
+        return new BufferSlotMetrics(this, role, bufferPool);
+    }
+
+    public FlowControlMetrics supplyFlowControl(
+        Role role,
+        String target,
+        long routeRef)
+    {
+        return new FlowControlMetrics(this, role, target, routeRef);
+    }
+
+    public AtomicCounter counter(
+        String name,
+        Role role,
+        String target,
+        long routeRef)
+    {
+        return newCounter(name, COUNTER_TYPE_ID, role, target, routeRef, 0);
+    }
+
+    public AtomicCounter gauge(
+        String name,
+        Role role,
+        String target,
+        long routeRef)
+    {
+        return newCounter(name, GAUGE_TYPE_ID, role, target, routeRef, 0);
+    }
+
+    public Histogram histogram(
+        String name,
+        Role role,
+        String target,
+        long routeRef)
+    {
+        return new Histogram(this, name, role, target, routeRef);
+    }
+
+    AtomicCounter newCounter(
+        String name,
+        int typeId,
+        Role role,
+        String target,
+        long routeRef,
+        int bucket)
+    {
+        final String targetName = target.length() > MAX_TARGET_LENGTH ? target.substring(0, MAX_TARGET_LENGTH) : target;
+
+        try
+        {
+            return manager.newCounter(name, typeId, k ->
+            {
+                k.putLong(ROUTE_REF_OFFSET, routeRef);
+                k.putInt(ROLE_OFFSET, role.ordinal());
+                k.putInt(BUCKET_OFFSET, bucket);
+                k.putStringUtf8(TARGET_OFFSET, targetName, MAX_TARGET_LENGTH);
+            });
+        }
+        catch (IllegalArgumentException ex)
+        {
+            unallocated.increment();
+            return sink;
+        }
+    }
+
+    public static File file(
+        Configuration config)
+    {
+        return config.directory().resolve("http").resolve(FILE_NAME).toFile();
+    }
+
+    public static HttpMetrics newInstance(
+        HttpConfiguration config)
+    {
+        return map(file(config), config.metricsCapacity());
+    }
+
+    public static HttpMetrics map(
+        File file,
+        int capacity)
+    {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        IoUtil.ensureDirectoryExists(directory, directory.getPath());
+
+        final long length = (long) capacity * (METADATA_LENGTH + COUNTER_LENGTH);
+        return new HttpMetrics(IoUtil.mapNewFile(file, length), capacity);
+    }
+}
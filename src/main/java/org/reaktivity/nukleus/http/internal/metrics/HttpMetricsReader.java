@@ -0,0 +1,108 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static org.agrona.concurrent.status.CountersReader.COUNTER_LENGTH;
+import static org.agrona.concurrent.status.CountersReader.METADATA_LENGTH;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.CountersReader;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Reads the metrics file written by {@link HttpMetrics}, possibly from another thread or process.
+ */
+public final class HttpMetricsReader implements AutoCloseable
+{
+    private final MappedByteBuffer mapped;
+    private final CountersReader counters;
+
+    private HttpMetricsReader(
+        MappedByteBuffer mapped)
+    {
+        final int capacity = mapped.capacity() / (METADATA_LENGTH + COUNTER_LENGTH);
+        final int metaDataLength = capacity * METADATA_LENGTH;
+        final int valuesLength = capacity * COUNTER_LENGTH;
+        this.mapped = mapped;
+        this.counters = new CountersReader(
+                new UnsafeBuffer(mapped, 0, metaDataLength),
+                new UnsafeBuffer(mapped, metaDataLength, valuesLength));
+    }
+
+    public void forEach(
+        MetricHandler handler)
+    {
+        counters.forEach((id, typeId, key, name) ->
+        {
+            final long routeRef = key.getLong(HttpMetrics.ROUTE_REF_OFFSET);
+            final Role role = Role.valueOf(key.getInt(HttpMetrics.ROLE_OFFSET));
+            final int bucket = key.getInt(HttpMetrics.BUCKET_OFFSET);
+            final String target = key.getStringUtf8(HttpMetrics.TARGET_OFFSET);
+            handler.onMetric(typeId, name, role, target, routeRef, bucket, counters.getCounterValue(id));
+        });
+    }
+
+    /*
+     * @return the value of a counter or gauge, or the number of values recorded by a histogram
+     */
+    public long value(
+        Role role,
+        String name,
+        String target,
+        long routeRef)
+    {
+        final long[] value = new long[1];
+        forEach((typeId, name0, role0, target0, routeRef0, bucket, value0) ->
+        {
+            if (typeId != HttpMetrics.HISTOGRAM_BUCKET_TYPE_ID &&
+                typeId != HttpMetrics.HISTOGRAM_SUM_TYPE_ID &&
+                role0 == role && routeRef0 == routeRef && name0.equals(name) && target0.equals(target))
+            {
+                value[0] += value0;
+            }
+        });
+        return value[0];
+    }
+
+    @Override
+    public void close()
+    {
+        IoUtil.unmap(mapped);
+    }
+
+    public static HttpMetricsReader map(
+        File file)
+    {
+        return new HttpMetricsReader(IoUtil.mapExistingFile(file, "metrics"));
+    }
+
+    @FunctionalInterface
+    public interface MetricHandler
+    {
+        void onMetric(
+            int typeId,
+            String name,
+            Role role,
+            String target,
+            long routeRef,
+            int bucket,
+            long value);
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetricsReader.MetricHandler;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Point in time copy of all metrics, taken in a single pass and ordered by name, role, target and route so that
+ * the values of one metric family are adjacent, with histogram buckets in ascending order followed by the count
+ * and sum. Duplicate entries for the same series are summed.
+ * <p>
+ * The snapshot is intended to be reused across scrapes, its entries are only allocated as it grows.
+ */
+public final class MetricsSnapshot implements MetricHandler
+{
+    private static final Comparator<Entry> ORDER = MetricsSnapshot::compare;
+
+    private Entry[] entries = new Entry[0];
+    private int size;
+
+    public MetricsSnapshot reset()
+    {
+        size = 0;
+        return this;
+    }
+
+    @Override
+    public void onMetric(
+        int typeId,
+        String name,
+        Role role,
+        String target,
+        long routeRef,
+        int bucket,
+        long value)
+    {
+        if (size == entries.length)
+        {
+            entries = Arrays.copyOf(entries, Math.max(64, size << 1));
+        }
+
+        Entry entry = entries[size];
+        if (entry == null)
+        {
+            entry = new Entry();
+            entries[size] = entry;
+        }
+
+        entry.typeId = typeId;
+        entry.name = name;
+        entry.role = role;
+        entry.target = target;
+        entry.routeRef = routeRef;
+        entry.bucket = bucket;
+        entry.value = value;
+        size++;
+    }
+
+    public MetricsSnapshot sort()
+    {
+        Arrays.sort(entries, 0, size, ORDER);
+
+        int merged = 0;
+        for (int i = 0; i < size; i++)
+        {
+            final Entry entry = entries[i];
+            if (merged != 0 && compare(entries[merged - 1], entry) == 0)
+            {
+                entries[merged - 1].value += entry.value;
+            }
+            else
+            {
+                entries[i] = entries[merged];
+                entries[merged++] = entry;
+            }
+        }
+        size = merged;
+
+        return this;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int typeId(
+        int index)
+    {
+        return entries[index].typeId;
+    }
+
+    public String name(
+        int index)
+    {
+        return entries[index].name;
+    }
+
+    /*
+     * @return the role, or null for metrics shared by both roles
+     */
+    public Role role(
+        int index)
+    {
+        return entries[index].role;
+    }
+
+    public String target(
+        int index)
+    {
+        return entries[index].target;
+    }
+
+    public long routeRef(
+        int index)
+    {
+        return entries[index].routeRef;
+    }
+
+    public int bucket(
+        int index)
+    {
+        return entries[index].bucket;
+    }
+
+    public long value(
+        int index)
+    {
+        return entries[index].value;
+    }
+
+    public void forEach(
+        MetricHandler handler)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            final Entry entry = entries[i];
+            handler.onMetric(entry.typeId, entry.name, entry.role, entry.target, entry.routeRef, entry.bucket, entry.value);
+        }
+    }
+
+    private static int compare(
+        Entry a,
+        Entry b)
+    {
+        int comparison = a.name.compareTo(b.name);
+        if (comparison == 0)
+        {
+            comparison = Integer.compare(ordinal(a.role), ordinal(b.role));
+        }
+        if (comparison == 0)
+        {
+            comparison = a.target.compareTo(b.target);
+        }
+        if (comparison == 0)
+        {
+            comparison = Long.compare(a.routeRef, b.routeRef);
+        }
+        if (comparison == 0)
+        {
+            comparison = Integer.compare(a.typeId, b.typeId);
+        }
+        if (comparison == 0)
+        {
+            comparison = Integer.compare(a.bucket, b.bucket);
+        }
+        return comparison;
+    }
+
+    private static int ordinal(
+        Role role)
+    {
+        return role != null ? role.ordinal() : -1;
+    }
+
+    private static final class Entry
+    {
+        private int typeId;
+        private String name;
+        private Role role;
+        private String target;
+        private long routeRef;
+        private int bucket;
+        private long value;
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static org.reaktivity.nukleus.http.internal.metrics.HttpMetrics.COUNTER_TYPE_ID;
+import static org.reaktivity.nukleus.http.internal.metrics.HttpMetrics.GAUGE_TYPE_ID;
+import static org.reaktivity.nukleus.http.internal.metrics.HttpMetrics.HISTOGRAM_BUCKET_TYPE_ID;
+import static org.reaktivity.nukleus.http.internal.metrics.HttpMetrics.HISTOGRAM_COUNT_TYPE_ID;
+import static org.reaktivity.nukleus.http.internal.metrics.HttpMetrics.HISTOGRAM_SUM_TYPE_ID;
+
+import java.util.Locale;
+
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Renders a {@link MetricsSnapshot} in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Metric names are prefixed and have any character outside {@code [a-zA-Z0-9_]} replaced by {@code _}, counters
+ * are suffixed with {@code _total}. Each series is labelled with its {@code role}, its {@code route} when bound to
+ * a route and its {@code target} when bound to a target. Histogram buckets are rendered cumulatively, with the
+ * inclusive upper bound of each power of two bucket as {@code le}.
+ */
+public final class PrometheusFormatter
+{
+    public static final String DEFAULT_PREFIX = "reaktivity_http_";
+
+    private static final int NO_BUCKET = -1;
+    private static final int INF_BUCKET = -2;
+
+    private static final String[] ROLES = new String[Role.values().length];
+
+    static
+    {
+        for (Role role : Role.values())
+        {
+            ROLES[role.ordinal()] = role.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String prefix;
+
+    public PrometheusFormatter()
+    {
+        this(DEFAULT_PREFIX);
+    }
+
+    public PrometheusFormatter(
+        String prefix)
+    {
+        this.prefix = prefix;
+    }
+
+    public StringBuilder format(
+        MetricsSnapshot snapshot,
+        StringBuilder out)
+    {
+        String family = null;
+        long cumulative = 0L;
+
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            final int typeId = snapshot.typeId(i);
+            final String name = snapshot.name(i);
+
+            if (!name.equals(family))
+            {
+                family = name;
+                out.append("# TYPE ");
+                appendName(out, name, typeId == COUNTER_TYPE_ID ? "_total" : "");
+                out.append(' ').append(type(typeId)).append('\n');
+            }
+
+            switch (typeId)
+            {
+            case HISTOGRAM_BUCKET_TYPE_ID:
+                cumulative += snapshot.value(i);
+                appendSample(out, snapshot, i, "_bucket", snapshot.bucket(i), cumulative);
+                break;
+            case HISTOGRAM_COUNT_TYPE_ID:
+                // buckets and count are read without a barrier in between, so never let +Inf fall below the buckets
+                appendSample(out, snapshot, i, "_bucket", INF_BUCKET, Math.max(cumulative, snapshot.value(i)));
+                appendSample(out, snapshot, i, "_count", NO_BUCKET, snapshot.value(i));
+                cumulative = 0L;
+                break;
+            case HISTOGRAM_SUM_TYPE_ID:
+                appendSample(out, snapshot, i, "_sum", NO_BUCKET, snapshot.value(i));
+                break;
+            case COUNTER_TYPE_ID:
+                appendSample(out, snapshot, i, "_total", NO_BUCKET, snapshot.value(i));
+                break;
+            default:
+                appendSample(out, snapshot, i, "", NO_BUCKET, snapshot.value(i));
+                break;
+            }
+        }
+
+        return out;
+    }
+
+    private void appendSample(
+        StringBuilder out,
+        MetricsSnapshot snapshot,
+        int index,
+        String suffix,
+        int bucket,
+        long value)
+    {
+        appendName(out, snapshot.name(index), suffix);
+
+        final Role role = snapshot.role(index);
+        final String target = snapshot.target(index);
+        final long routeRef = snapshot.routeRef(index);
+
+        char separator = '{';
+        if (role != null)
+        {
+            out.append(separator).append("role=\"").append(ROLES[role.ordinal()]).append('"');
+            separator = ',';
+        }
+        if (routeRef != 0L)
+        {
+            out.append(separator).append("route=\"").append(routeRef).append('"');
+            separator = ',';
+        }
+        if (!target.isEmpty())
+        {
+            out.append(separator).append("target=\"");
+            appendLabelValue(out, target);
+            out.append('"');
+            separator = ',';
+        }
+        if (bucket != NO_BUCKET)
+        {
+            out.append(separator).append("le=\"");
+            if (bucket == INF_BUCKET)
+            {
+                out.append("+Inf");
+            }
+            else
+            {
+                out.append(Histogram.upperBound(bucket));
+            }
+            out.append('"');
+            separator = ',';
+        }
+        if (separator == ',')
+        {
+            out.append('}');
+        }
+
+        out.append(' ').append(value).append('\n');
+    }
+
+    private void appendName(
+        StringBuilder out,
+        String name,
+        String suffix)
+    {
+        out.append(prefix);
+        for (int i = 0; i < name.length(); i++)
+        {
+            final char ch = name.charAt(i);
+            final boolean valid = (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+            out.append(valid ? ch : '_');
+        }
+        out.append(suffix);
+    }
+
+    private static void appendLabelValue(
+        StringBuilder out,
+        String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char ch = value.charAt(i);
+            switch (ch)
+            {
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            default:
+                out.append(ch);
+                break;
+            }
+        }
+    }
+
+    private static String type(
+        int typeId)
+    {
+        switch (typeId)
+        {
+        case COUNTER_TYPE_ID:
+            return "counter";
+        case GAUGE_TYPE_ID:
+            return "gauge";
+        case HISTOGRAM_BUCKET_TYPE_ID:
+        case HISTOGRAM_COUNT_TYPE_ID:
+        case HISTOGRAM_SUM_TYPE_ID:
+            return "histogram";
+        default:
+            return "untyped";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+
+/**
+ * Tracks the stalls of one window of one stream, i.e. the periods during which its budget did not cover the padding
+ * of a single byte of data. Budget updates only read the clock when a stall begins or ends.
+ * <p>
+ * The stream starts out unstalled, so waiting for the initial window is not counted as a stall.
+ */
+public final class StallTracker
+{
+    private final int budget;
+    private final FlowControlMetrics metrics;
+    private final HttpEvents events;
+    private final String role;
+    private final long routeRef;
+    private final long streamId;
+
+    private boolean stalled;
+    private long stalledAt;
+    private int stalls;
+    private long stalledNanos;
+
+    public StallTracker(
+        int budget,
+        FlowControlMetrics metrics,
+        HttpEvents events,
+        String role,
+        long routeRef,
+        long streamId)
+    {
+        this.budget = budget;
+        this.metrics = metrics;
+        this.events = events;
+        this.role = role;
+        this.routeRef = routeRef;
+        this.streamId = streamId;
+    }
+
+    public void onBudget(
+        int budget,
+        int padding)
+    {
+        if (budget <= padding)
+        {
+            if (!stalled)
+            {
+                stalled = true;
+                stalledAt = System.nanoTime();
+            }
+        }
+        else if (stalled)
+        {
+            final long nanos = System.nanoTime() - stalledAt;
+            stalled = false;
+            stalls++;
+            stalledNanos += nanos;
+            metrics.stalled(this.budget, nanos);
+            if (events != null)
+            {
+                events.flowControlStalled(role, routeRef, streamId, FlowControlMetrics.budget(this.budget), nanos);
+            }
+        }
+    }
+
+    public void reset()
+    {
+        stalled = false;
+    }
+
+    public void onParked(
+        int bytes)
+    {
+        metrics.parked(bytes);
+    }
+
+    public int stalls()
+    {
+        return stalls;
+    }
+
+    public long stalledNanos()
+    {
+        return stalledNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[budget=%s, stalled=%b, stalls=%d, stalledNanos=%d]",
+                getClass().getSimpleName(), FlowControlMetrics.budget(budget), stalled, stalls, stalledNanos);
+    }
+}
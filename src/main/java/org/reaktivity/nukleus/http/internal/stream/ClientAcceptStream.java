@@ -15,17 +15,16 @@
  */
 package org.reaktivity.nukleus.http.internal.stream;
 
-import static org.reaktivity.nukleus.http.internal.util.HttpUtil.appendHeader;
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Map;
 import java.util.function.Consumer;
 
 import org.agrona.DirectBuffer;
 import org.agrona.collections.Long2ObjectHashMap;
-import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
 import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.CloseAction;
 import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.Connection;
 import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.ConnectionRequest;
@@ -40,44 +39,67 @@ import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
 
 final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection>, MessageConsumer
 {
+    // hexadecimal size of an int and the CRLF after both the size and the data
+    private static final int MAXIMUM_CHUNK_OVERHEAD = 12;
+
     private final ClientStreamFactory factory;
 
-    private MessageConsumer streamState;
-    private MessageConsumer throttleState;
+    private enum StreamState
+    {
+        BEFORE_BEGIN, AFTER_END_OR_ABORT, BEFORE_HEADERS_WRITTEN, AFTER_REPLY_OR_RESET, AFTER_BEGIN_OR_DATA
+    }
+
+    private enum ThrottleState
+    {
+        BEFORE_BEGIN, BEFORE_HEADERS_WRITTEN, NEXT_WINDOW, BEFORE_LAST_CHUNK_WRITTEN
+    }
+
+    private StreamState streamState;
+    private ThrottleState throttleState;
 
     private final long acceptId;
+    private final long acceptRef;
     private final String acceptName;
     private final long acceptCorrelationId;
     private final MessageConsumer acceptThrottle;
+    private final MessageConsumer throttle = this::handleThrottle;
+    private final Runnable onTimeout;
     private final String connectName;
     private final long connectRef;
-    private Map<String, String> headers;
     private MessageConsumer target;
     private Connection connection;
     private ConnectionRequest nextConnectionRequest;
     private ConnectionPool connectionPool;
     private int sourceBudget;
-    private DirectBuffer headersBuffer;
+    private int headersSlot = NO_SLOT;
     private int headersPosition;
     private int headersOffset;
     private boolean endDeferred;
     private boolean persistent = true;
+    private boolean pipelinable;
+    private boolean chunked;
+    private AccessLogRecord accessLogRecord;
+    private String method;
     private long traceId;
+    private long queuedAt;
+    private long timerId = TimerWheel.NO_TIMER; // while queued for a connection
 
     ClientAcceptStream(ClientStreamFactory factory, MessageConsumer acceptThrottle,
-            long acceptId, long acceptRef, String acceptName, long acceptCorrelationId,
-            String connectName, long connectRef, Map<String, String> headers)
+            long acceptId, long traceId, long acceptRef, String acceptName, long acceptCorrelationId,
+            String connectName, long connectRef)
     {
         this.factory = factory;
         this.acceptThrottle = acceptThrottle;
         this.acceptId = this.factory.beginRO.streamId();
+        this.traceId = traceId;
+        this.acceptRef = acceptRef;
         this.acceptName = acceptName;
         this.acceptCorrelationId = acceptCorrelationId;
         this.connectName = connectName;
         this.connectRef = connectRef;
-        this.headers = headers;
-        this.streamState = this::streamBeforeBegin;
-        this.throttleState = this::throttleBeforeBegin;
+        this.streamState = StreamState.BEFORE_BEGIN;
+        this.throttleState = ThrottleState.BEFORE_BEGIN;
+        this.onTimeout = factory.timers != null ? this::onTimeout : null;
     }
 
     @Override
@@ -87,7 +109,26 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         int index,
         int length)
     {
-        streamState.accept(msgTypeId, buffer, index, length);
+        switch (streamState)
+        {
+        case BEFORE_BEGIN:
+            streamBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_END_OR_ABORT:
+            streamAfterEndOrAbort(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_HEADERS_WRITTEN:
+            streamBeforeHeadersWritten(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_REPLY_OR_RESET:
+            streamAfterReplyOrReset(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_BEGIN_OR_DATA:
+            streamAfterBeginOrData(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected stream state " + streamState);
+        }
     }
 
     private void streamBeforeBegin(
@@ -169,15 +210,15 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         case DataFW.TYPE_ID:
             DataFW data = this.factory.dataRO.wrap(buffer, index, index + length);
             final long streamId = data.streamId();
-            factory.writer.doWindow(acceptThrottle, streamId, 0L, data.length(), 0);
+            factory.writer.doWindow(acceptThrottle, streamId, data.trace(), data.length(), 0);
             break;
         case EndFW.TYPE_ID:
             factory.endRO.wrap(buffer, index, index + length);
-            this.streamState = this::streamAfterEndOrAbort;
+            this.streamState = StreamState.AFTER_END_OR_ABORT;
             break;
         case AbortFW.TYPE_ID:
             factory.abortRO.wrap(buffer, index, index + length);
-            this.streamState = this::streamAfterEndOrAbort;
+            this.streamState = StreamState.AFTER_END_OR_ABORT;
             break;
         }
     }
@@ -189,124 +230,138 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
     {
         // count all requests
         factory.countRequests.getAsLong();
-        byte[] bytes = encodeHeaders(headers, buffer, index, length);
-        headers = null; // allow gc
-        headersPosition = 0;
-        if (bytes.length > factory.bufferPool.slotCapacity())
+        final BeginFW begin = factory.beginRO.wrap(buffer, index, index + length);
+        traceId = begin.trace();
+
+        final OctetsFW extension = begin.extension();
+        final RequestHeadEncoder requestHead = factory.requestHead;
+        if (extension.sizeof() == 0 ||
+            !requestHead.scan(factory.beginExRO.wrap(extension.buffer(), extension.offset(), extension.limit()).headers()))
+        {
+            processUnexpected(buffer, index, length);
+        }
+        else if (requestHead.length() > factory.maximumHeadersSize)
         {
             // TODO: diagnostics (reset reason?)
-            factory.writer.doReset(acceptThrottle, acceptId, 0L);
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
         }
         else
         {
-            traceId = factory.frameRO.wrap(buffer, index, index + length).trace();
-            headersBuffer = new UnsafeBuffer(bytes);
-            headersPosition = bytes.length;
-            headersOffset = 0;
-            this.streamState = this::streamBeforeHeadersWritten;
-            this.throttleState = this::throttleBeforeHeadersWritten;
-            target = factory.router.supplyTarget(connectName);
-            connectionPool = getConnectionPool(connectName, connectRef);
-            boolean acquired = connectionPool.acquire(this);
-            // No backend connection or cannot store in queue, send 503 with Retry-After
-            if (!acquired)
+            method = requestHead.method();
+            persistent = requestHead.persistent();
+            chunked = requestHead.chunked();
+            pipelinable = persistent && factory.isPipelinable(acceptRef, method);
+            if (factory.events != null)
+            {
+                factory.events.requestReceived(HttpEvents.CLIENT, acceptRef, traceId, method, requestHead.length());
+            }
+
+            if (acquireHeadersSlot(requestHead.length()))
+            {
+                headersPosition = requestHead.encode(factory.bufferPool.buffer(headersSlot), 0);
+                headersOffset = 0;
+                acquireConnection();
+            }
+            else
+            {
+                this.streamState = StreamState.AFTER_REPLY_OR_RESET;
+                doServiceUnavailable();
+            }
+        }
+    }
+
+    /*
+     * Acquires a slot for the encoded request head, promoted to a large slot when it does not fit a small slot
+     */
+    private boolean acquireHeadersSlot(
+        int length)
+    {
+        headersSlot = factory.bufferPool.acquire(acceptId);
+        if (headersSlot != NO_SLOT && length > factory.bufferPool.slotCapacity(headersSlot))
+        {
+            final int promoted = factory.bufferPool.promote(headersSlot, acceptId, 0, 0);
+            if (promoted == NO_SLOT)
             {
-                // count all responses
-                factory.countResponses.getAsLong();
-
-                MessageConsumer acceptReply = factory.router.supplyTarget(acceptName);
-                long targetId = factory.supplyStreamId.getAsLong();
-                factory.writer.doHttpBegin(acceptReply, targetId, 0L, 0L, acceptCorrelationId,
-                        hs -> hs.item(h -> h.name(":status").value("503"))
-                                .item(h -> h.name("retry-after").value("0")));
-                factory.writer.doHttpEnd(acceptReply, targetId, 0L);
-
-                // count rejected requests (no connection or no space in the queue)
-                factory.countRequestsRejected.getAsLong();
+                factory.bufferPool.release(headersSlot);
             }
+            headersSlot = promoted;
         }
 
+        if (headersSlot == NO_SLOT)
+        {
+            factory.slots.failed();
+        }
+        else
+        {
+            factory.slots.acquired(BufferSlotMetrics.HEADERS);
+        }
+        return headersSlot != NO_SLOT;
     }
 
-    private byte[] encodeHeaders(Map<String, String> headers,
-                                 DirectBuffer buffer,
-                                 int index,
-                                 int length)
+    private void releaseHeadersSlot()
     {
-        String[] pseudoHeaders = new String[4];
+        if (headersSlot != NO_SLOT)
+        {
+            factory.bufferPool.release(headersSlot);
+            factory.slots.released(BufferSlotMetrics.HEADERS);
+            headersSlot = NO_SLOT;
+        }
+    }
 
-        StringBuilder headersChars = new StringBuilder();
-        headers.forEach((name, value) ->
+    private void acquireConnection()
+    {
+        this.streamState = StreamState.BEFORE_HEADERS_WRITTEN;
+        this.throttleState = ThrottleState.BEFORE_HEADERS_WRITTEN;
+        target = factory.router.supplyTarget(connectName);
+        connectionPool = getConnectionPool(connectName, connectRef);
+        boolean acquired = connectionPool.acquire(this);
+        if (acquired && connection == null)
         {
-            switch(name.toLowerCase())
+            scheduleTimeout(factory.queueTimeout);
+            if (factory.events != null)
             {
-            case ":method":
-                pseudoHeaders[ClientStreamFactory.METHOD] = value;
-                switch(value.toLowerCase())
-                {
-                case "post":
-                case "insert":
-                    this.persistent = false;
-                }
-                break;
-            case ":scheme":
-                pseudoHeaders[ClientStreamFactory.SCHEME] = value;
-                break;
-            case ":authority":
-                pseudoHeaders[ClientStreamFactory.AUTHORITY] = value;
-                break;
-            case ":path":
-                pseudoHeaders[ClientStreamFactory.PATH] = value;
-                break;
-            case "host":
-                if (pseudoHeaders[ClientStreamFactory.AUTHORITY] == null)
-                {
-                    pseudoHeaders[ClientStreamFactory.AUTHORITY] = value;
-                }
-                else if (!pseudoHeaders[ClientStreamFactory.AUTHORITY].equals(value))
-                {
-                    processUnexpected(buffer, index, length);
-                }
-                break;
-            case "connection":
-                Arrays.asList(value.toLowerCase().split(",")).stream().forEach((element) ->
-                {
-                    switch(element)
-                    {
-                    case "close":
-                        this.persistent = false;
-                        break;
-                    }
-                });
-                appendHeader(headersChars, name, value);
-                break;
-            default:
-                appendHeader(headersChars, name, value);
+                factory.events.requestQueued(HttpEvents.CLIENT, acceptRef, traceId, connectionPool.queueDepth());
             }
-        });
-
-        if (pseudoHeaders[ClientStreamFactory.METHOD] == null ||
-            pseudoHeaders[ClientStreamFactory.SCHEME] == null ||
-            pseudoHeaders[ClientStreamFactory.PATH] == null ||
-            pseudoHeaders[ClientStreamFactory.AUTHORITY] == null)
+        }
+        // No backend connection or cannot store in queue, send 503 with Retry-After
+        if (!acquired)
         {
-            processUnexpected(buffer, index, length);
+            releaseHeadersSlot();
+            doServiceUnavailable();
         }
+    }
 
-        String payloadChars = new StringBuilder()
-                   .append(pseudoHeaders[ClientStreamFactory.METHOD]).append(" ").append(pseudoHeaders[ClientStreamFactory.PATH])
-                   .append(" HTTP/1.1").append("\r\n")
-                   .append("Host").append(": ").append(pseudoHeaders[ClientStreamFactory.AUTHORITY]).append("\r\n")
-                   .append(headersChars).append("\r\n").toString();
-        return payloadChars.getBytes(StandardCharsets.US_ASCII);
+    private void doServiceUnavailable()
+    {
+        // count all responses
+        factory.countResponses.getAsLong();
+
+        MessageConsumer acceptReply = factory.router.supplyTarget(acceptName);
+        long targetId = factory.supplyStreamId.getAsLong();
+        factory.writer.doHttpBegin(acceptReply, targetId, traceId, 0L, acceptCorrelationId,
+                ClientStreamFactory.SERVICE_UNAVAILABLE_HEADERS);
+        factory.writer.doHttpEnd(acceptReply, targetId, traceId);
+
+        // count rejected requests (no connection, no space in the queue or no slot for the request head)
+        factory.countRequestsRejected.getAsLong();
     }
 
     private ConnectionPool getConnectionPool(final String targetName, long targetRef)
     {
-        Map<Long, ConnectionPool> connectionsByRef = this.factory.connectionPools.
-                computeIfAbsent(targetName, (n) -> new Long2ObjectHashMap<ConnectionPool>());
-        return connectionsByRef.computeIfAbsent(targetRef, (r) ->
-            new ConnectionPool(factory, targetName, targetRef));
+        Long2ObjectHashMap<ConnectionPool> connectionsByRef = factory.connectionPools.get(targetName);
+        if (connectionsByRef == null)
+        {
+            connectionsByRef = new Long2ObjectHashMap<>();
+            factory.connectionPools.put(targetName, connectionsByRef);
+        }
+
+        ConnectionPool connectionPool = connectionsByRef.get(targetRef);
+        if (connectionPool == null)
+        {
+            connectionPool = new ConnectionPool(factory, targetName, targetRef);
+            connectionsByRef.put(targetRef, connectionPool);
+        }
+        return connectionPool;
     }
 
     private void processData(
@@ -315,7 +370,7 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         int length)
     {
         DataFW data = factory.dataRO.wrap(buffer, index, index + length);
-        final long traceId = data.trace();
+        traceId = data.trace();
 
         sourceBudget -= data.length() + data.padding();
         if (sourceBudget < 0)
@@ -325,9 +380,27 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         else
         {
             final OctetsFW payload = this.factory.dataRO.payload();
-            factory.writer.doData(target, connection.connectStreamId, traceId, connection.padding, payload);
-            connection.budget -= payload.sizeof() + connection.padding;
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.requestData(payload.sizeof());
+            }
+            if (chunked)
+            {
+                // an empty chunk would end the body
+                if (payload.sizeof() > 0)
+                {
+                    final int written = factory.writer.doChunk(target, connection.connectStreamId, traceId,
+                            connection.padding, payload.buffer(), payload.offset(), payload.sizeof());
+                    connection.budget -= written + connection.padding;
+                }
+            }
+            else
+            {
+                factory.writer.doData(target, connection.connectStreamId, traceId, connection.padding, payload);
+                connection.budget -= payload.sizeof() + connection.padding;
+            }
             assert connection.budget >= 0;
+            connection.onBudget();
         }
     }
 
@@ -336,14 +409,43 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         int index,
         int length)
     {
-        this.factory.endRO.wrap(buffer, index, index + length);
+        EndFW end = this.factory.endRO.wrap(buffer, index, index + length);
+        traceId = end.trace();
         doEnd();
     }
 
     private void doEnd()
     {
-        connectionPool.setDefaultThrottle(connection);
-        this.streamState = this::streamAfterEndOrAbort;
+        this.streamState = StreamState.AFTER_END_OR_ABORT;
+        if (chunked && !writeLastChunk())
+        {
+            throttleState = ThrottleState.BEFORE_LAST_CHUNK_WRITTEN;
+        }
+        else
+        {
+            requestWritten();
+        }
+    }
+
+    private boolean writeLastChunk()
+    {
+        final boolean writable = connection.budget >= MessageWriter.LAST_CHUNK_LENGTH + connection.padding;
+        if (writable)
+        {
+            factory.writer.doLastChunk(target, connection.connectStreamId, traceId, connection.padding);
+            connection.budget -= MessageWriter.LAST_CHUNK_LENGTH + connection.padding;
+            connection.onBudget();
+        }
+        return writable;
+    }
+
+    private void requestWritten()
+    {
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestEnd();
+        }
+        connectionPool.requestWritten(connection);
     }
 
     private void processUnexpected(
@@ -353,10 +455,11 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
     {
         FrameFW frame = this.factory.frameRO.wrap(buffer, index, index + length);
         final long streamId = frame.streamId();
+        releaseHeadersSlot();
 
-        factory.writer.doReset(acceptThrottle, streamId, 0);
+        factory.writer.doReset(acceptThrottle, streamId, traceId);
 
-        this.streamState = this::streamAfterReplyOrReset;
+        this.streamState = StreamState.AFTER_REPLY_OR_RESET;
     }
 
     private void handleThrottle(
@@ -365,7 +468,23 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         int index,
         int length)
     {
-        throttleState.accept(msgTypeId, buffer, index, length);
+        switch (throttleState)
+        {
+        case BEFORE_BEGIN:
+            throttleBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_HEADERS_WRITTEN:
+            throttleBeforeHeadersWritten(msgTypeId, buffer, index, length);
+            break;
+        case NEXT_WINDOW:
+            throttleNextWindow(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_LAST_CHUNK_WRITTEN:
+            throttleBeforeLastChunkWritten(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected throttle state " + throttleState);
+        }
     }
 
     private void throttleBeforeBegin(
@@ -397,6 +516,7 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
             this.factory.windowRO.wrap(buffer, index, index + length);
             connection.budget += this.factory.windowRO.credit();
             connection.padding = this.factory.windowRO.padding();
+            connection.onBudget();
             useWindowToWriteRequestHeaders();
             break;
         case ResetFW.TYPE_ID:
@@ -422,6 +542,7 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
             int padding = this.factory.windowRO.padding();
             connection.budget += credit;
             connection.padding = padding;
+            connection.onBudget();
             doSourceWindow(padding, windowFW.trace());
             break;
         case ResetFW.TYPE_ID:
@@ -433,30 +554,59 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         }
     }
 
+    private void throttleBeforeLastChunkWritten(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            this.factory.windowRO.wrap(buffer, index, index + length);
+            connection.budget += this.factory.windowRO.credit();
+            connection.padding = this.factory.windowRO.padding();
+            connection.onBudget();
+            if (writeLastChunk())
+            {
+                requestWritten();
+            }
+            break;
+        case ResetFW.TYPE_ID:
+            processReset(buffer, index, length);
+            break;
+        default:
+            // ignore
+            break;
+        }
+    }
+
     private void useWindowToWriteRequestHeaders()
     {
         int writableBytes = Math.min(headersPosition - headersOffset, connection.budget - connection.padding);
-        if (writableBytes > 0)
+        if (writableBytes > 0 && headersSlot != NO_SLOT)
         {
-            factory.writer.doData(target, connection.connectStreamId, traceId, connection.padding, headersBuffer,
-                    headersOffset, writableBytes);
+            factory.writer.doData(target, connection.connectStreamId, traceId, connection.padding,
+                    factory.bufferPool.buffer(headersSlot), headersOffset, writableBytes);
             connection.budget -= writableBytes + connection.padding;
             assert connection.budget >= 0;
+            connection.onBudget();
             headersOffset += writableBytes;
             int bytesDeferred = headersPosition - headersOffset;
             if (bytesDeferred == 0)
             {
+                releaseHeadersSlot();
                 if (endDeferred)
                 {
                     doEnd();
                 }
                 else
                 {
-                    streamState = this::streamAfterBeginOrData;
-                    throttleState = this::throttleNextWindow;
+                    streamState = StreamState.AFTER_BEGIN_OR_DATA;
+                    throttleState = ThrottleState.NEXT_WINDOW;
                     if (connection.budget > 0)
                     {
-                        doSourceWindow(connection.padding, 0L);
+                        doSourceWindow(connection.padding, traceId);
                     }
                 }
             }
@@ -469,7 +619,9 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         if (credit > 0)
         {
             sourceBudget += credit;
-            factory.writer.doWindow(acceptThrottle, acceptId, traceId, credit, padding);
+            // the source pays for chunk framing with the padding, so each chunk fits the connection budget
+            factory.writer.doWindow(acceptThrottle, acceptId, traceId, credit,
+                    chunked ? padding + MAXIMUM_CHUNK_OVERHEAD : padding);
         }
     }
 
@@ -478,8 +630,14 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         int index,
         int length)
     {
-        factory.abortRO.wrap(buffer, index, index + length);
+        final AbortFW abort = factory.abortRO.wrap(buffer, index, index + length);
+        if (factory.events != null)
+        {
+            factory.events.streamAborted(HttpEvents.CLIENT, acceptRef, abort.trace(), acceptId);
+        }
 
+        cancelTimeout();
+        releaseHeadersSlot();
         if (connection == null)
         {
             // request still enqueued, remove it from the queue
@@ -487,7 +645,11 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         }
         else
         {
-            factory.correlations.remove(connection.correlationId);
+            final Correlation<?> correlation = removeCorrelation();
+            if (correlation != null)
+            {
+                factory.releaseCorrelation(correlation);
+            }
             connection.persistent = false;
             connectionPool.release(connection, CloseAction.ABORT);
         }
@@ -499,27 +661,169 @@ final class ClientAcceptStream implements ConnectionRequest, Consumer<Connection
         int length)
     {
         ResetFW resetFW = factory.resetRO.wrap(buffer, index, index + length);
+        if (factory.events != null)
+        {
+            factory.events.streamReset(HttpEvents.CLIENT, acceptRef, resetFW.trace(), resetFW.streamId());
+        }
+        cancelTimeout();
+        releaseHeadersSlot();
         connection.persistent = false;
         connectionPool.release(connection);
         factory.writer.doReset(acceptThrottle, acceptId, resetFW.trace());
     }
 
+    private void scheduleTimeout(
+        int millis)
+    {
+        if (millis > 0)
+        {
+            timerId = factory.timers.schedule(millis, onTimeout);
+        }
+    }
+
+    private void cancelTimeout()
+    {
+        if (timerId != TimerWheel.NO_TIMER)
+        {
+            timerId = factory.timers.cancel(timerId);
+        }
+    }
+
+    /*
+     * Answers with 504 when still queued for a connection, or when the response has not begun, in which case
+     * the request is abandoned together with its connection
+     */
+    private void onTimeout()
+    {
+        timerId = TimerWheel.NO_TIMER;
+        if (connection == null)
+        {
+            if (streamState == StreamState.BEFORE_HEADERS_WRITTEN)
+            {
+                connectionPool.cancel(this);
+                doGatewayTimeout();
+            }
+        }
+        else
+        {
+            final Correlation<?> correlation = removeCorrelation();
+            if (correlation != null)
+            {
+                // responses arrive in order, so requests pipelined behind this one are abandoned with the connection
+                factory.releaseCorrelation(correlation);
+                connection.persistent = false;
+                connectionPool.release(connection, CloseAction.ABORT);
+                doGatewayTimeout();
+            }
+        }
+    }
+
+    /*
+     * Removes the correlation of this request when its response has not begun, whether it is the pending
+     * correlation of the connection or still behind earlier pipelined requests
+     */
+    private Correlation<?> removeCorrelation()
+    {
+        Correlation<?> correlation = factory.correlations.get(connection.correlationId);
+        if (correlation != null && correlation.id() == acceptCorrelationId)
+        {
+            factory.correlations.remove(connection.correlationId);
+        }
+        else
+        {
+            correlation = connection.removePipelined(acceptCorrelationId);
+        }
+        return correlation;
+    }
+
+    private void doGatewayTimeout()
+    {
+        factory.timeoutsExpired.increment();
+        releaseHeadersSlot();
+
+        // count all responses
+        factory.countResponses.getAsLong();
+
+        MessageConsumer acceptReply = factory.router.supplyTarget(acceptName);
+        long targetId = factory.supplyStreamId.getAsLong();
+        factory.writer.doHttpBegin(acceptReply, targetId, traceId, 0L, acceptCorrelationId,
+                ClientStreamFactory.GATEWAY_TIMEOUT_HEADERS);
+        factory.writer.doHttpEnd(acceptReply, targetId, traceId);
+
+        if (streamState != StreamState.AFTER_END_OR_ABORT)
+        {
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
+        }
+        streamState = StreamState.AFTER_REPLY_OR_RESET;
+    }
+
     @Override
     public Consumer<Connection> getConsumer()
     {
         return this;
     }
 
+    @Override
+    public long traceId()
+    {
+        return traceId;
+    }
+
+    @Override
+    public boolean pipelinable()
+    {
+        return pipelinable;
+    }
+
+    @Override
+    public long queuedAt()
+    {
+        return queuedAt;
+    }
+
+    @Override
+    public void queuedAt(
+        long timestamp)
+    {
+        this.queuedAt = timestamp;
+    }
+
     @Override
     public void accept(Connection connection)
     {
         this.connection = connection;
         connection.persistent = persistent;
-        ClientConnectReplyState state = new ClientConnectReplyState(connectionPool, connection);
+        connection.traceId = traceId;
+
+        final boolean pipelined = connection.outstanding > 1;
+        accessLogRecord = connection.nextAccessLogRecord();
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestBegin(acceptRef, traceId, method, headersPosition);
+        }
+        if (factory.events != null)
+        {
+            factory.events.requestRouted(HttpEvents.CLIENT, acceptRef, traceId, connectName, connectRef);
+        }
         final Correlation<ClientConnectReplyState> correlation =
-                new Correlation<>(acceptCorrelationId, acceptName, state);
-        factory.correlations.put(connection.correlationId, correlation);
-        factory.router.setThrottle(connectName, connection.connectStreamId, this::handleThrottle);
+                factory.newCorrelation(acceptCorrelationId, acceptName, connectionPool, connection, accessLogRecord, acceptId,
+                        onTimeout);
+        cancelTimeout();
+        if (pipelined)
+        {
+            // the header timeout starts once the connection pool promotes the correlation to the head of the line
+            connection.pipeline.add(correlation);
+        }
+        else
+        {
+            final Correlation<?> replaced = factory.correlations.put(connection.correlationId, correlation, acceptId);
+            if (replaced != null)
+            {
+                factory.releaseCorrelation(replaced);
+            }
+            factory.scheduleHeaderTimeout(correlation);
+        }
+        factory.router.setThrottle(connectName, connection.connectStreamId, throttle);
         if (connection.budget > 0)
         {
             useWindowToWriteRequestHeaders();
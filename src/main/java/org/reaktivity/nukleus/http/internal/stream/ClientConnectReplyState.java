@@ -15,18 +15,41 @@
  */
 package org.reaktivity.nukleus.http.internal.stream;
 
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
 import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.Connection;
 
 final class ClientConnectReplyState
 {
-    final ConnectionPool connectionPool;
-    final Connection connection;
+    ConnectionPool connectionPool;
+    Connection connection;
+    AccessLogRecord accessLogRecord;
+    long acceptId;
+    Runnable onTimeout;
+    long timerId = TimerWheel.NO_TIMER;
 
-    ClientConnectReplyState(ConnectionPool connectionPool,
-                            Connection connection)
+    ClientConnectReplyState init(ConnectionPool connectionPool,
+                                 Connection connection,
+                                 AccessLogRecord accessLogRecord,
+                                 long acceptId,
+                                 Runnable onTimeout)
     {
        this.connectionPool = connectionPool;
        this.connection = connection;
+       this.accessLogRecord = accessLogRecord;
+       this.acceptId = acceptId;
+       this.onTimeout = onTimeout;
+       this.timerId = TimerWheel.NO_TIMER;
+       return this;
+    }
+
+    void reset()
+    {
+        this.connectionPool = null;
+        this.connection = null;
+        this.accessLogRecord = null;
+        this.acceptId = 0L;
+        this.onTimeout = null;
+        this.timerId = TimerWheel.NO_TIMER;
     }
 
     @Override
@@ -21,11 +21,11 @@ import static org.reaktivity.nukleus.http.internal.stream.ClientStreamFactory.CR
 import static org.reaktivity.nukleus.http.internal.stream.ClientStreamFactory.CRLF_BYTES;
 import static org.reaktivity.nukleus.http.internal.stream.ClientStreamFactory.SEMICOLON_BYTES;
 import static org.reaktivity.nukleus.http.internal.util.BufferUtil.limitOfBytes;
+import static org.reaktivity.nukleus.http.internal.util.BufferUtil.parseHex;
 
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,6 +33,11 @@ import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.reaktivity.nukleus.buffer.BufferPool;
 import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.FlowControlMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.StallTracker;
 import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.CloseAction;
 import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.Connection;
 import org.reaktivity.nukleus.http.internal.types.OctetsFW;
@@ -49,9 +54,26 @@ final class ClientConnectReplyStream implements MessageConsumer
     private final ClientStreamFactory factory;
     private final String connectReplyName;
     private final MessageConsumer connectReplyThrottle;
+    private final MessageConsumer throttle;
 
-    private MessageConsumer streamState;
-    private MessageConsumer throttleState;
+    private enum StreamState
+    {
+        BEFORE_BEGIN, AFTER_END, AFTER_RESET, WHEN_BUFFERING, WHEN_NOT_BUFFERING, BEFORE_END
+    }
+
+    private enum ThrottleState
+    {
+        BEFORE_BEGIN, AFTER_BEGIN
+    }
+
+    private enum DecoderState
+    {
+        HTTP_BEGIN, HTTP_DATA, HTTP_DATA_SPOOLED, HTTP_DATA_AFTER_UPGRADE, HTTP_CHUNK, HTTP_CHUNK_DATA,
+        HTTP_CHUNK_END, SKIP_DATA, AFTER_END
+    }
+
+    private StreamState streamState;
+    private ThrottleState throttleState;
     private DecoderState decoderState;
 
     private enum ResponseState
@@ -63,6 +85,7 @@ final class ClientConnectReplyStream implements MessageConsumer
     private int slotIndex = BufferPool.NO_SLOT;
     private int slotOffset = 0;
     private int slotPosition;
+    private int slotReason;
     private boolean endDeferred;
 
     private long sourceId;
@@ -78,12 +101,15 @@ final class ClientConnectReplyStream implements MessageConsumer
     private int chunkSizeRemaining;
     private ConnectionPool connectionPool;
     private Connection connection;
+    private ClientSpooledResponse spooledResponse;
+    private AccessLogRecord accessLogRecord;
 
     private int connectReplyBudget;
     private int acceptReplyBudget;
-    private Consumer<WindowFW> windowHandler;
 
     private int acceptReplyPadding;
+    private StallTracker connectReplyStall;
+    private StallTracker acceptReplyStall;
 
     @Override
     public String toString()
@@ -96,21 +122,45 @@ final class ClientConnectReplyStream implements MessageConsumer
             ClientStreamFactory factory,
             MessageConsumer connectReplyThrottle,
             long connectReplyId,
+            long traceId,
             String connectReplyName)
     {
         this.factory = factory;
         this.connectReplyThrottle = connectReplyThrottle;
         this.acceptReplyId = connectReplyId;
+        this.traceId = traceId;
         this.connectReplyName = connectReplyName;
-        this.streamState = this::handleStreamBeforeBegin;
-        this.throttleState = this::handleThrottleBeforeBegin;
-        this.windowHandler = this::handleWindow;
+        this.streamState = StreamState.BEFORE_BEGIN;
+        this.throttleState = ThrottleState.BEFORE_BEGIN;
+        this.throttle = this::handleThrottle;
     }
 
     @Override
     public void accept(int msgTypeId, DirectBuffer buffer, int index, int length)
     {
-        streamState.accept(msgTypeId, buffer, index, length);
+        switch (streamState)
+        {
+        case BEFORE_BEGIN:
+            handleStreamBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_END:
+            handleStreamAfterEnd(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_RESET:
+            handleStreamAfterReset(msgTypeId, buffer, index, length);
+            break;
+        case WHEN_BUFFERING:
+            handleStreamWhenBuffering(msgTypeId, buffer, index, length);
+            break;
+        case WHEN_NOT_BUFFERING:
+            handleStreamWhenNotBuffering(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_END:
+            handleStreamBeforeEnd(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected stream state " + streamState);
+        }
     }
 
     private void handleStreamBeforeBegin(
@@ -222,15 +272,15 @@ final class ClientConnectReplyStream implements MessageConsumer
         {
         case DataFW.TYPE_ID:
             final DataFW data = this.factory.dataRO.wrap(buffer, index, index + length);
-            factory.writer.doWindow(connectReplyThrottle, data.streamId(), 0, data.length(), 0);
+            factory.writer.doWindow(connectReplyThrottle, data.streamId(), data.trace(), data.length(), 0);
             break;
         case EndFW.TYPE_ID:
             this.factory.endRO.wrap(buffer, index, index + length);
-            this.streamState = this::handleStreamAfterEnd;
+            this.streamState = StreamState.AFTER_END;
             break;
         case AbortFW.TYPE_ID:
             this.factory.abortRO.wrap(buffer, index, length);
-            this.streamState = this::handleStreamAfterEnd;
+            this.streamState = StreamState.AFTER_END;
             break;
         default:
             break;
@@ -251,25 +301,29 @@ final class ClientConnectReplyStream implements MessageConsumer
     private void handleUnexpected(
         long streamId)
     {
-        factory.writer.doReset(connectReplyThrottle, streamId, 0);
+        factory.writer.doReset(connectReplyThrottle, streamId, traceId);
         if (acceptReply != null)
         {
-            factory.writer.doAbort(acceptReply, acceptReplyId, 0);
+            factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
         }
 
-        this.streamState = this::handleStreamAfterReset;
+        this.streamState = StreamState.AFTER_RESET;
+        if (connection != null)
+        {
+            connection.persistent = false;
+        }
         doCleanup(CloseAction.ABORT);
     }
 
     private void handleInvalidResponseAndReset()
     {
-        this.decoderState = this::decodeSkipData;
-        this.streamState = this::handleStreamAfterReset;
+        this.decoderState = DecoderState.SKIP_DATA;
+        this.streamState = StreamState.AFTER_RESET;
 
         // Drain data from source before resetting to allow its writes to complete
         int window = factory.maximumHeadersSize;
-        factory.writer.doWindow(connectReplyThrottle, sourceId, 0L, window, 0);
-        factory.writer.doReset(connectReplyThrottle, sourceId, 0L);
+        factory.writer.doWindow(connectReplyThrottle, sourceId, traceId, window, 0);
+        factory.writer.doReset(connectReplyThrottle, sourceId, traceId);
 
         connection.persistent = false;
         doCleanup(CloseAction.ABORT);
@@ -279,14 +333,23 @@ final class ClientConnectReplyStream implements MessageConsumer
     {
         if (acceptReply != null)
         {
-            factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
+            if (spooledResponse != null)
+            {
+                // deliver what was received before aborting, as when buffered in a slot
+                spooledResponse.onAbandoned(traceId);
+                spooledResponse = null;
+            }
+            else
+            {
+                factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
+            }
 
             // count abandoned responses
             factory.countResponsesAbandoned.getAsLong();
         }
 
-        this.decoderState = this::decodeSkipData;
-        this.streamState = this::handleStreamAfterReset;
+        this.decoderState = DecoderState.SKIP_DATA;
+        this.streamState = StreamState.AFTER_RESET;
 
         connection.persistent = false;
         doCleanup(action);
@@ -303,16 +366,27 @@ final class ClientConnectReplyStream implements MessageConsumer
         @SuppressWarnings("unchecked")
         final Correlation<ClientConnectReplyState> correlation =
                 (Correlation<ClientConnectReplyState>) factory.correlations.get(connectCorrelationId);
-        connection = correlation.state().connection;
-        connectionPool = correlation.state().connectionPool;
-        connection.setInput(connectReplyThrottle, sourceId);
-        if (sourceRef == 0L && correlation != null)
+        if (correlation == null)
         {
-            httpResponseBegin();
+            // reclaimed as orphaned before the connection replied
+            factory.writer.doReset(connectReplyThrottle, sourceId, traceId);
+            this.streamState = StreamState.AFTER_RESET;
         }
         else
         {
-            handleUnexpected(sourceId);
+            connection = correlation.state().connection;
+            connectionPool = correlation.state().connectionPool;
+            connection.setInput(connectReplyThrottle, sourceId);
+            connectReplyStall = connectionPool.newStallTracker(FlowControlMetrics.CONNECT_REPLY, sourceId);
+            acceptReplyStall = connectionPool.newStallTracker(FlowControlMetrics.ACCEPT_REPLY, sourceId);
+            if (sourceRef == 0L)
+            {
+                httpResponseBegin();
+            }
+            else
+            {
+                handleUnexpected(sourceId);
+            }
         }
     }
 
@@ -321,6 +395,7 @@ final class ClientConnectReplyStream implements MessageConsumer
     {
         traceId = data.trace();
         connectReplyBudget -= data.length() + data.padding();
+        connectReplyStall.onBudget(connectReplyBudget, 0);
 
         if (connectReplyBudget < 0)
         {
@@ -347,6 +422,7 @@ final class ClientConnectReplyStream implements MessageConsumer
     {
         final long streamId = end.streamId();
         assert streamId == sourceId;
+        traceId = end.trace();
 
         if (responseState == ResponseState.BEFORE_HEADERS && acceptReply == null
                 && factory.correlations.get(connection.correlationId) == null)
@@ -373,6 +449,11 @@ final class ClientConnectReplyStream implements MessageConsumer
     {
         final long streamId = abort.streamId();
         assert streamId == sourceId;
+        traceId = abort.trace();
+        if (factory.events != null)
+        {
+            factory.events.streamAborted(HttpEvents.CLIENT, routeRef(), traceId, streamId);
+        }
 
         if (responseState == ResponseState.BEFORE_HEADERS && acceptReply == null
                 && factory.correlations.get(connection.correlationId) == null)
@@ -396,12 +477,45 @@ final class ClientConnectReplyStream implements MessageConsumer
 
     private int decode(DirectBuffer buffer, int offset, int limit)
     {
-        boolean decoderStateChanged = true;
-        while (offset < limit && decoderStateChanged)
+        boolean decoderProgressed = true;
+        while (offset < limit && decoderProgressed)
         {
-            DecoderState previous = decoderState;
-            offset = decoderState.decode(buffer, offset, limit);
-            decoderStateChanged = previous != decoderState;
+            final DecoderState previous = decoderState;
+            final int previousOffset = offset;
+            switch (decoderState)
+            {
+            case SKIP_DATA:
+                offset = decodeSkipData(buffer, offset, limit);
+                break;
+            case HTTP_DATA_AFTER_UPGRADE:
+                offset = decodeHttpDataAfterUpgrade(buffer, offset, limit);
+                break;
+            case HTTP_DATA:
+                offset = decodeHttpData(buffer, offset, limit);
+                break;
+            case HTTP_DATA_SPOOLED:
+                offset = decodeHttpDataSpooled(buffer, offset, limit);
+                break;
+            case HTTP_CHUNK:
+                offset = decodeHttpChunk(buffer, offset, limit);
+                break;
+            case HTTP_CHUNK_DATA:
+                offset = decodeHttpChunkData(buffer, offset, limit);
+                break;
+            case HTTP_CHUNK_END:
+                offset = decodeHttpChunkEnd(buffer, offset, limit);
+                break;
+            case HTTP_BEGIN:
+                offset = decodeHttpBegin(buffer, offset, limit);
+                break;
+            case AFTER_END:
+                offset = decodeAfterEnd(buffer, offset, limit);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected decoder state " + decoderState);
+            }
+            // a complete response returns to HTTP_BEGIN, then the next pipelined response is decoded
+            decoderProgressed = previous != decoderState || previousOffset != offset;
         }
         return offset;
     }
@@ -415,13 +529,16 @@ final class ClientConnectReplyStream implements MessageConsumer
         if (slotIndex == NO_SLOT)
         {
             // Out of slab memory
-            factory.writer.doReset(connectReplyThrottle, sourceId, 0L);
+            factory.slots.failed();
+            factory.writer.doReset(connectReplyThrottle, sourceId, traceId);
             connection.persistent = false;
             doCleanup(CloseAction.ABORT);
         }
         else
         {
-            streamState = this::handleStreamWhenBuffering;
+            slotReason = responseState == ResponseState.DATA ? BufferSlotMetrics.DATA : BufferSlotMetrics.HEADERS;
+            factory.slots.acquired(slotReason);
+            streamState = StreamState.WHEN_BUFFERING;
 
             handleDataPayloadWhenBuffering(payload);
         }
@@ -432,6 +549,7 @@ final class ClientConnectReplyStream implements MessageConsumer
     {
         traceId = data.trace();
         connectReplyBudget -= data.length() + data.padding();
+        connectReplyStall.onBudget(connectReplyBudget, 0);
 
         if (connectReplyBudget < 0)
         {
@@ -439,25 +557,40 @@ final class ClientConnectReplyStream implements MessageConsumer
         }
         else
         {
-            handleDataPayloadWhenBuffering(data.payload());
-
-            decodeBufferedData();
+            if (handleDataPayloadWhenBuffering(data.payload()))
+            {
+                decodeBufferedData();
+            }
         }
     }
 
-    private void handleDataPayloadWhenBuffering(
+    private boolean handleDataPayloadWhenBuffering(
         final OctetsFW payload)
     {
         final int payloadSize = payload.sizeof();
 
-        if (slotPosition + payloadSize > factory.bufferPool.slotCapacity())
+        if (slotPosition + payloadSize > factory.bufferPool.slotCapacity(slotIndex))
         {
             alignSlotData();
         }
 
+        if (slotPosition + payloadSize > factory.bufferPool.slotCapacity(slotIndex) && !promoteSlot())
+        {
+            // Out of large slots for headers beyond a small slot
+            factory.slots.failed();
+            handleInvalidResponseAndReset();
+            return false;
+        }
+
         MutableDirectBuffer slot = factory.bufferPool.buffer(slotIndex);
         slot.putBytes(slotPosition, payload.buffer(), payload.offset(), payloadSize);
         slotPosition += payloadSize;
+        if (slotReason == BufferSlotMetrics.DATA)
+        {
+            factory.slots.dataBuffered(slotPosition - slotOffset);
+            acceptReplyStall.onParked(payloadSize);
+        }
+        return true;
     }
 
     private void decodeBufferedData()
@@ -468,13 +601,13 @@ final class ClientConnectReplyStream implements MessageConsumer
         {
             releaseSlotIfNecessary();
             slotIndex = NO_SLOT;
-            streamState = this::handleStreamWhenNotBuffering;
+            streamState = StreamState.WHEN_NOT_BUFFERING;
             if (endDeferred)
             {
                 connection.persistent = false;
                 if (contentRemaining > 0)
                 {
-                    factory.writer.doAbort(acceptReply, acceptReplyId, 0);
+                    factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
                 }
                 doCleanup(CloseAction.END);
             }
@@ -502,6 +635,18 @@ final class ClientConnectReplyStream implements MessageConsumer
         }
     }
 
+    private boolean promoteSlot()
+    {
+        final int promoted = factory.bufferPool.promote(slotIndex, sourceId, slotOffset, slotPosition);
+        if (promoted != NO_SLOT)
+        {
+            slotIndex = promoted;
+            slotPosition -= slotOffset;
+            slotOffset = 0;
+        }
+        return promoted != NO_SLOT;
+    }
+
     private void alignSlotData()
     {
         int dataLength = slotPosition - slotOffset;
@@ -514,10 +659,11 @@ final class ClientConnectReplyStream implements MessageConsumer
 
     private void doCleanup(CloseAction action)
     {
-        decoderState = (b, o, l) -> o;
-        streamState = this::handleStreamAfterEnd;
+        decoderState = DecoderState.AFTER_END;
+        streamState = StreamState.AFTER_END;
         responseState = ResponseState.FINAL;
         releaseSlotIfNecessary();
+        releaseSpooledResponseIfNecessary();
         if (connection != null)
         {
             connectionPool.release(connection, action);
@@ -545,6 +691,7 @@ final class ClientConnectReplyStream implements MessageConsumer
         else
         {
             final int sizeofHeaders = endOfHeadersAt - offset;
+            factory.slots.headers(sizeofHeaders);
             decodeCompleteHttpBegin(payload, offset, sizeofHeaders);
             result = endOfHeadersAt;
         }
@@ -563,8 +710,9 @@ final class ClientConnectReplyStream implements MessageConsumer
 
         Pattern versionPattern = Pattern.compile("HTTP/1\\.(\\d)");
         Matcher versionMatcher = versionPattern.matcher(start[0]);
-        if (!versionMatcher.matches())
+        if (!versionMatcher.matches() || factory.correlations.get(connection.correlationId) == null)
         {
+            // also when the request correlation was reclaimed as orphaned, there is no accept reply to respond on
             handleInvalidResponseAndReset();
         }
         else
@@ -574,10 +722,17 @@ final class ClientConnectReplyStream implements MessageConsumer
 
             resolveTarget();
 
-            FrameFW frameFW = factory.frameRO.wrap(payload, offset, payload.capacity());
-            factory.writer.doHttpBegin(acceptReply, acceptReplyId, frameFW.trace(), 0L, acceptCorrelationId,
-                    hs -> headers.forEach((k, v) -> hs.item(i -> i.representation((byte) 0).name(k).value(v))));
-            factory.router.setThrottle(acceptReplyName, acceptReplyId, this::handleThrottle);
+            factory.writer.doHttpBegin(acceptReply, acceptReplyId, traceId, 0L, acceptCorrelationId, headers);
+            factory.router.setThrottle(acceptReplyName, acceptReplyId, throttle);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.responseBegin(headers.get(":status"), length);
+            }
+            if (factory.events != null)
+            {
+                factory.events.responseBegun(HttpEvents.CLIENT, accessLogRecord.routeRef(), traceId,
+                        accessLogRecord.status(), length);
+            }
 
             // count all responses
             factory.countResponses.getAsLong();
@@ -599,30 +754,51 @@ final class ClientConnectReplyStream implements MessageConsumer
             {
                 connection.persistent = false;
                 connectionPool.release(connection);
-                this.decoderState = this::decodeHttpDataAfterUpgrade;
-                throttleState = this::handleThrottleAfterBegin;
-                windowHandler = this::handleWindow;
+                this.decoderState = DecoderState.HTTP_DATA_AFTER_UPGRADE;
+                throttleState = ThrottleState.AFTER_BEGIN;
                 this.responseState = ResponseState.DATA;
             }
             else if (contentRemaining > 0)
             {
-                decoderState = this::decodeHttpData;
-                throttleState = this::handleThrottleAfterBegin;
-                windowHandler = this::handleWindow;
+                decoderState = DecoderState.HTTP_DATA;
+                throttleState = ThrottleState.AFTER_BEGIN;
                 this.responseState = ResponseState.DATA;
+                spoolIfNecessary();
             }
             else if (isChunkedTransfer)
             {
-                decoderState = this::decodeHttpChunk;
-                throttleState = this::handleThrottleAfterBegin;
-                windowHandler = this::handleWindow;
+                decoderState = DecoderState.HTTP_CHUNK;
+                throttleState = ThrottleState.AFTER_BEGIN;
                 this.responseState = ResponseState.DATA;
             }
             else
             {
                 // no content
                 httpResponseComplete();
-                windowHandler = this::handleWindow;
+            }
+        }
+    }
+
+    private void spoolIfNecessary()
+    {
+        final Spool responseSpool = factory.responseSpool;
+        if (responseSpool != null && responseSpool.shouldSpool(routeRef(), contentRemaining))
+        {
+            final Spool.Body body = responseSpool.reserve(contentRemaining);
+            if (body != null)
+            {
+                spooledResponse = new ClientSpooledResponse(factory, acceptReply, acceptReplyName, acceptReplyId, body,
+                        this::handleSpooledResponseReset);
+                decoderState = DecoderState.HTTP_DATA_SPOOLED;
+
+                // the whole body fits in the spool, so let the backend send it regardless of the accept reply window
+                final int connectReplyCredit = contentRemaining - connectReplyBudget;
+                if (connectReplyCredit > 0)
+                {
+                    connectReplyBudget += connectReplyCredit;
+                    connectReplyStall.onBudget(connectReplyBudget, 0);
+                    factory.writer.doWindow(connectReplyThrottle, sourceId, traceId, connectReplyCredit, 0);
+                }
             }
         }
     }
@@ -698,7 +874,9 @@ final class ClientConnectReplyStream implements MessageConsumer
         {
             factory.writer.doHttpData(acceptReply, acceptReplyId, traceId, acceptReplyPadding, payload,
                     offset, writableBytes);
+            logResponseData(writableBytes);
             acceptReplyBudget -= writableBytes + acceptReplyPadding;
+            acceptReplyStall.onBudget(acceptReplyBudget, acceptReplyPadding);
             contentRemaining -= writableBytes;
         }
 
@@ -710,6 +888,24 @@ final class ClientConnectReplyStream implements MessageConsumer
         return offset + Math.max(writableBytes, 0);
     };
 
+    private int decodeHttpDataSpooled(
+        final DirectBuffer payload,
+        final int offset,
+        final int limit)
+    {
+        final int spoolableBytes = Math.min(limit - offset, contentRemaining);
+        spooledResponse.onData(traceId, payload, offset, spoolableBytes);
+        logResponseData(spoolableBytes);
+        contentRemaining -= spoolableBytes;
+
+        if (contentRemaining == 0)
+        {
+            httpResponseComplete();
+        }
+
+        return offset + spoolableBytes;
+    }
+
     private int decodeHttpChunk(
         final DirectBuffer payload,
         final int offset,
@@ -728,14 +924,14 @@ final class ClientConnectReplyStream implements MessageConsumer
             final int chunkSizeLimit = semicolonAt == -1 ? chunkHeaderLimit - 2 : semicolonAt - 1;
             final int chunkSizeLength = chunkSizeLimit - offset;
 
-            try
+            final int chunkSize = parseHex(payload, offset, offset + chunkSizeLength);
+            if (chunkSize == -1)
             {
-                final String chunkSizeHex = payload.getStringWithoutLengthUtf8(offset, chunkSizeLength);
-                chunkSizeRemaining = Integer.parseInt(chunkSizeHex, 16);
+                handleInvalidResponseAndReset();
             }
-            catch (NumberFormatException ex)
+            else
             {
-                handleInvalidResponseAndReset();
+                chunkSizeRemaining = chunkSize;
             }
 
             if (chunkSizeRemaining == 0)
@@ -747,7 +943,7 @@ final class ClientConnectReplyStream implements MessageConsumer
                 final int chunkHeaderLength = chunkHeaderLimit - offset;
                 contentRemaining += chunkSizeRemaining;
 
-                decoderState = this::decodeHttpChunkData;
+                decoderState = DecoderState.HTTP_CHUNK_DATA;
                 result = chunkHeaderLimit;
             }
         }
@@ -772,7 +968,7 @@ final class ClientConnectReplyStream implements MessageConsumer
             }
             else
             {
-                decoderState = this::decodeHttpChunk;
+                decoderState = DecoderState.HTTP_CHUNK;
                 result = offset + 2;
             }
         }
@@ -793,14 +989,16 @@ final class ClientConnectReplyStream implements MessageConsumer
         if (writableBytes > 0)
         {
             factory.writer.doHttpData(acceptReply, acceptReplyId, traceId, acceptReplyPadding, payload, offset, writableBytes);
+            logResponseData(writableBytes);
             acceptReplyBudget -= writableBytes + acceptReplyPadding;
+            acceptReplyStall.onBudget(acceptReplyBudget, acceptReplyPadding);
             chunkSizeRemaining -= writableBytes;
             contentRemaining -= writableBytes;
         }
 
         if (chunkSizeRemaining == 0)
         {
-            decoderState = this::decodeHttpChunkEnd;
+            decoderState = DecoderState.HTTP_CHUNK_END;
         }
 
         return offset + Math.max(writableBytes, 0);
@@ -819,7 +1017,9 @@ final class ClientConnectReplyStream implements MessageConsumer
         {
             factory.writer.doData(acceptReply, acceptReplyId, traceId, acceptReplyPadding,
                     payload, offset, writableBytes);
+            logResponseData(writableBytes);
             acceptReplyBudget -= writableBytes + acceptReplyPadding;
+            acceptReplyStall.onBudget(acceptReplyBudget, acceptReplyPadding);
         }
 
         return offset + Math.max(writableBytes, 0);
@@ -833,6 +1033,14 @@ final class ClientConnectReplyStream implements MessageConsumer
         return limit;
     };
 
+    private int decodeAfterEnd(
+        final DirectBuffer payload,
+        final int offset,
+        final int limit)
+    {
+        return offset;
+    };
+
     @SuppressWarnings("unused")
     private int decodeHttpEnd(
         DirectBuffer payload,
@@ -847,8 +1055,8 @@ final class ClientConnectReplyStream implements MessageConsumer
 
     private void httpResponseBegin()
     {
-        this.streamState = this::handleStreamWhenNotBuffering;
-        this.decoderState = this::decodeHttpBegin;
+        this.streamState = StreamState.WHEN_NOT_BUFFERING;
+        this.decoderState = DecoderState.HTTP_BEGIN;
         this.responseState = ResponseState.BEFORE_HEADERS;
         this.acceptReplyPadding = 0;
 
@@ -857,17 +1065,31 @@ final class ClientConnectReplyStream implements MessageConsumer
         if (connectReplyCredit > 0)
         {
             this.connectReplyBudget += connectReplyCredit;
-            factory.writer.doWindow(connectReplyThrottle, sourceId, 0, connectReplyCredit, 0);
+            connectReplyStall.onBudget(connectReplyBudget, 0);
+            factory.writer.doWindow(connectReplyThrottle, sourceId, traceId, connectReplyCredit, 0);
         }
 
-        // TODO: Support HTTP/1.1 Pipelined Responses (may be buffered already)
+        // the next response, to a pipelined request, may be buffered already
         this.contentRemaining = 0;
     }
 
     private void httpResponseComplete()
     {
-        factory.writer.doHttpEnd(acceptReply, acceptReplyId, 0);
+        if (spooledResponse != null)
+        {
+            // ends the accept reply once replayed, without holding on to the connection
+            spooledResponse.onReceived(traceId);
+            spooledResponse = null;
+        }
+        else
+        {
+            factory.writer.doHttpEnd(acceptReply, acceptReplyId, traceId);
+        }
         acceptReply = null;
+        if (accessLogRecord != null)
+        {
+            factory.exchangeComplete(accessLogRecord);
+        }
 
         if (connection.persistent)
         {
@@ -875,21 +1097,42 @@ final class ClientConnectReplyStream implements MessageConsumer
         }
         else
         {
-            this.streamState = this::handleStreamBeforeEnd;
+            this.streamState = StreamState.BEFORE_END;
             this.responseState = ResponseState.FINAL;
         }
 
         connectionPool.release(connection, CloseAction.END);
     }
 
+    private long routeRef()
+    {
+        final AccessLogRecord record = accessLogRecord != null ? accessLogRecord :
+                connection != null ? connection.accessLogRecord() : null;
+        return record != null ? record.routeRef() : 0L;
+    }
+
+    private void logResponseData(
+        int length)
+    {
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.responseData(length);
+        }
+    }
+
     private void resolveTarget()
     {
-        final Correlation<?> correlation = factory.correlations.remove(connection.correlationId);
+        @SuppressWarnings("unchecked")
+        final Correlation<ClientConnectReplyState> correlation =
+                (Correlation<ClientConnectReplyState>) factory.correlations.remove(connection.correlationId);
         this.acceptReplyName = correlation.source();
+        this.accessLogRecord = correlation.state().accessLogRecord;
         this.acceptReply = factory.router.supplyTarget(acceptReplyName);
         this.acceptReplyId = factory.supplyStreamId.getAsLong();
         this.acceptCorrelationId = correlation.id();
+        factory.releaseCorrelation(correlation);
         this.acceptReplyBudget = 0;
+        acceptReplyStall.reset();
     }
 
     private void handleThrottle(
@@ -898,7 +1141,17 @@ final class ClientConnectReplyStream implements MessageConsumer
         int index,
         int length)
     {
-        throttleState.accept(msgTypeId, buffer, index, length);
+        switch (throttleState)
+        {
+        case BEFORE_BEGIN:
+            handleThrottleBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_BEGIN:
+            handleThrottleAfterBegin(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected throttle state " + throttleState);
+        }
     }
 
     private void handleThrottleBeforeBegin(
@@ -929,7 +1182,7 @@ final class ClientConnectReplyStream implements MessageConsumer
         {
         case WindowFW.TYPE_ID:
             final WindowFW window = this.factory.windowRO.wrap(buffer, index, index + length);
-            windowHandler.accept(window);
+            handleWindow(window);
             break;
         case ResetFW.TYPE_ID:
             final ResetFW reset = this.factory.resetRO.wrap(buffer, index, index + length);
@@ -946,6 +1199,7 @@ final class ClientConnectReplyStream implements MessageConsumer
     {
         acceptReplyBudget += window.credit();
         acceptReplyPadding = window.padding();
+        acceptReplyStall.onBudget(acceptReplyBudget, acceptReplyPadding);
 
         if (slotIndex != NO_SLOT)
         {
@@ -958,6 +1212,7 @@ final class ClientConnectReplyStream implements MessageConsumer
         if (connectReplyCredit > 0)
         {
             connectReplyBudget += connectReplyCredit;
+            connectReplyStall.onBudget(connectReplyBudget, 0);
             int connectReplyPadding = acceptReplyPadding;
             factory.writer.doWindow(connectReplyThrottle, sourceId, window.trace(), connectReplyCredit, connectReplyPadding);
         }
@@ -967,23 +1222,42 @@ final class ClientConnectReplyStream implements MessageConsumer
         ResetFW reset)
     {
         releaseSlotIfNecessary();
+        if (factory.events != null)
+        {
+            factory.events.streamReset(HttpEvents.CLIENT, routeRef(), reset.trace(), reset.streamId());
+        }
         factory.writer.doReset(connectReplyThrottle, sourceId, reset.trace());
         connection.persistent = false;
         connectionPool.release(connection, CloseAction.ABORT);
     }
 
+    private void handleSpooledResponseReset()
+    {
+        spooledResponse = null;
+        decoderState = DecoderState.SKIP_DATA;
+        streamState = StreamState.AFTER_RESET;
+        releaseSlotIfNecessary();
+        factory.writer.doReset(connectReplyThrottle, sourceId, traceId);
+        connection.persistent = false;
+        connectionPool.release(connection, CloseAction.ABORT);
+    }
+
+    private void releaseSpooledResponseIfNecessary()
+    {
+        if (spooledResponse != null)
+        {
+            spooledResponse.release();
+            spooledResponse = null;
+        }
+    }
+
     private void releaseSlotIfNecessary()
     {
         if (slotIndex != NO_SLOT)
         {
             factory.bufferPool.release(slotIndex);
+            factory.slots.released(slotReason);
             slotIndex = NO_SLOT;
         }
     }
-
-    @FunctionalInterface interface DecoderState
-    {
-        int decode(DirectBuffer buffer, int offset, int limit);
-    }
-
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+
+/**
+ * Response body received from a backend connection into the response spool and replayed to the accept reply
+ * as it grants window. Takes over the accept reply throttle from the connect reply stream, so that the connection
+ * can be released to its pool as soon as the whole body has been received, while a slow client is still reading.
+ */
+final class ClientSpooledResponse
+{
+    private final ClientStreamFactory factory;
+    private final MessageConsumer acceptReply;
+    private final long acceptReplyId;
+    private final Spool.Body body;
+    private final int maximumDataLength;
+
+    private Runnable onReset;
+    private int acceptReplyBudget;
+    private int acceptReplyPadding;
+    private long traceId;
+    private boolean received;
+    private boolean abandoned;
+
+    ClientSpooledResponse(
+        ClientStreamFactory factory,
+        MessageConsumer acceptReply,
+        String acceptReplyName,
+        long acceptReplyId,
+        Spool.Body body,
+        Runnable onReset)
+    {
+        this.factory = factory;
+        this.acceptReply = acceptReply;
+        this.acceptReplyId = acceptReplyId;
+        this.body = body;
+        this.onReset = onReset;
+        this.maximumDataLength = factory.bufferPool.slotCapacity();
+        factory.router.setThrottle(acceptReplyName, acceptReplyId, this::handleThrottle);
+    }
+
+    void onData(
+        long traceId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        this.traceId = traceId;
+        body.write(buffer, offset, length);
+        flush();
+    }
+
+    /*
+     * Whole body received, from now on the response no longer depends on its connection
+     */
+    void onReceived(
+        long traceId)
+    {
+        this.traceId = traceId;
+        this.received = true;
+        this.onReset = null;
+        flush();
+    }
+
+    /*
+     * Connection ended before the whole body was received, abort once what was received has been replayed
+     */
+    void onAbandoned(
+        long traceId)
+    {
+        this.traceId = traceId;
+        this.abandoned = true;
+        this.onReset = null;
+        flush();
+    }
+
+    /*
+     * Response failed before the whole body was received, the accept reply is aborted by the caller
+     */
+    void release()
+    {
+        body.release();
+    }
+
+    private void handleThrottle(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+            acceptReplyBudget += window.credit();
+            acceptReplyPadding = window.padding();
+            traceId = window.trace();
+            flush();
+            break;
+        case ResetFW.TYPE_ID:
+            factory.resetRO.wrap(buffer, index, index + length);
+            body.release();
+            if (onReset != null)
+            {
+                onReset.run();
+            }
+            break;
+        default:
+            // ignore
+            break;
+        }
+    }
+
+    private void flush()
+    {
+        int writableBytes = Math.min(Math.min(body.readable(), maximumDataLength), acceptReplyBudget - acceptReplyPadding);
+        while (writableBytes > 0)
+        {
+            factory.writer.doHttpData(acceptReply, acceptReplyId, traceId, acceptReplyPadding,
+                    body.buffer(), body.readOffset(), writableBytes);
+            acceptReplyBudget -= writableBytes + acceptReplyPadding;
+            body.consume(writableBytes);
+            writableBytes = Math.min(Math.min(body.readable(), maximumDataLength), acceptReplyBudget - acceptReplyPadding);
+        }
+
+        if ((received || abandoned) && body.size() == 0L)
+        {
+            body.release();
+            if (abandoned)
+            {
+                factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
+            }
+            else
+            {
+                factory.writer.doHttpEnd(acceptReply, acceptReplyId, traceId);
+            }
+            received = abandoned = false;
+        }
+    }
+}
@@ -19,11 +19,11 @@ import static java.util.Objects.requireNonNull;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.LongSupplier;
 
@@ -31,12 +31,21 @@ import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.collections.Long2ObjectHashMap;
 import org.agrona.concurrent.UnsafeBuffer;
-import org.reaktivity.nukleus.buffer.BufferPool;
+import org.agrona.concurrent.status.AtomicCounter;
 import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessageFunction;
 import org.reaktivity.nukleus.function.MessagePredicate;
 import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.stream.ConnectionPool.Connection;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
 import org.reaktivity.nukleus.http.internal.types.OctetsFW;
-import org.reaktivity.nukleus.http.internal.types.control.HttpRouteExFW;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
 import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
 import org.reaktivity.nukleus.http.internal.types.stream.AbortFW;
 import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
@@ -46,28 +55,40 @@ import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
 import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
 import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.http.internal.util.ObjectPool;
+import org.reaktivity.nukleus.http.internal.util.TieredBufferPool;
 import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
 
 public final class ClientStreamFactory implements StreamFactory
 {
-    static final Map<String, String> EMPTY_HEADERS = Collections.emptyMap();
     static final byte[] CRLFCRLF_BYTES = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
     static final byte[] CRLF_BYTES = "\r\n".getBytes(StandardCharsets.US_ASCII);
     static final byte[] SEMICOLON_BYTES = ";".getBytes(StandardCharsets.US_ASCII);
+    static final Map<String, String> SERVICE_UNAVAILABLE_HEADERS;
+    static final Map<String, String> GATEWAY_TIMEOUT_HEADERS =
+            Collections.singletonMap(":status", "504");
 
-    // Pseudo-headers
-    static final int METHOD = 0;
-    static final int SCHEME = 1;
-    static final int AUTHORITY = 2;
-    static final int PATH = 3;
+    static
+    {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(":status", "503");
+        headers.put("retry-after", "0");
+        SERVICE_UNAVAILABLE_HEADERS = Collections.unmodifiableMap(headers);
+    }
 
     final FrameFW frameRO = new FrameFW();
     final RouteFW routeRO = new RouteFW();
-    private HttpRouteExFW routeExRO = new HttpRouteExFW();
+    private final RouteHeadersMatcher routeHeaders = new RouteHeadersMatcher();
 
     final BeginFW beginRO = new BeginFW();
     final HttpBeginExFW beginExRO = new HttpBeginExFW();
+    final RequestHeadEncoder requestHead = new RequestHeadEncoder();
+
+    private final MessagePredicate routeFilter = this::routeMatches;
+    private final MessageFunction<RouteFW> wrapRoute = this::wrapRoute;
+    private long routeSourceRef;
+    private ListFW<HttpHeaderFW> requestHeaders;
 
     final DataFW dataRO = new DataFW();
     final EndFW endRO = new EndFW();
@@ -81,18 +102,37 @@ public final class ClientStreamFactory implements StreamFactory
     final LongSupplier supplyCorrelationId;
     final LongSupplier enqueues;
     final LongSupplier dequeues;
-    final BufferPool bufferPool;
+    final TieredBufferPool bufferPool;
+    final Spool responseSpool;
     final MessageWriter writer;
-    long supplyTraceId;
+    final AccessLog accessLog;
+    final HttpEvents events;
+    final BufferSlotMetrics slots;
+    final HttpMetrics metrics;
+    final TimerWheel timers;
+    final AtomicCounter timeoutsExpired;
+    final int queueTimeout;
+    final int headerTimeout;
+    final int keepAliveTimeout;
 
     final int maximumHeadersSize;
 
-    Long2ObjectHashMap<Correlation<?>> correlations;
+    CorrelationStore correlations;
+    final ObjectPool<Correlation<ClientConnectReplyState>> correlationPool;
 
-    final Map<String, Map<Long, ConnectionPool>> connectionPools;
+    final Map<String, Long2ObjectHashMap<ConnectionPool>> connectionPools;
     final int maximumConnectionsPerRoute;
     final int maximumQueuedRequestsPerRoute;
+    final int pipelineDepth;
+    final long[] pipelineRoutes;
 
+    final boolean http2;
+    final long[] http2Routes;
+    final int http2MaximumConnections;
+    final Http2Codec http2Codec;
+    final Http2RequestHeadEncoder http2RequestHead;
+    final Map<String, Long2ObjectHashMap<Http2ClientPool>> http2Pools;
+    final Long2ObjectHashMap<Http2ClientConnection> http2Connections;
 
     final UnsafeBuffer temporarySlot;
     final LongSupplier countRequests;
@@ -100,28 +140,39 @@ public final class ClientStreamFactory implements StreamFactory
     final LongSupplier countRequestsAbandoned;
     final LongSupplier countResponses;
     final LongSupplier countResponsesAbandoned;
+    final LongSupplier countAccessLogDrops;
 
     public ClientStreamFactory(
         HttpConfiguration configuration,
         RouteManager router,
         MutableDirectBuffer writeBuffer,
-        BufferPool bufferPool,
+        TieredBufferPool bufferPool,
         LongSupplier supplyStreamId,
         LongSupplier supplyCorrelationId,
-        Long2ObjectHashMap<Correlation<?>> correlations,
-        Function<String, LongSupplier> supplyCounter)
+        CorrelationStore correlations,
+        ObjectPool<Correlation<ClientConnectReplyState>> correlationPool,
+        Function<String, LongSupplier> supplyCounter,
+        AccessLog accessLog,
+        HttpMetrics metrics,
+        Spool responseSpool,
+        TimerWheel timers,
+        AtomicCounter timeoutsExpired)
     {
         this.router = requireNonNull(router);
-        this.writer = new MessageWriter(requireNonNull(writeBuffer));
+        this.writer = new MessageWriter(requireNonNull(writeBuffer),
+                FrameSampler.newInstance(configuration.traceSampler()), configuration.traceSamplingMask());
         this.bufferPool = requireNonNull(bufferPool);
         this.supplyStreamId = requireNonNull(supplyStreamId);
         this.supplyCorrelationId = supplyCorrelationId;
         this.correlations = requireNonNull(correlations);
+        this.correlationPool = requireNonNull(correlationPool);
         this.connectionPools = new HashMap<>();
         this.maximumConnectionsPerRoute = configuration.maximumConnectionsPerRoute();
         this.maximumQueuedRequestsPerRoute = configuration.maximumRequestsQueuedPerRoute();
-        this.maximumHeadersSize = bufferPool.slotCapacity();
-        this.temporarySlot = new UnsafeBuffer(ByteBuffer.allocateDirect(bufferPool.slotCapacity()));
+        this.pipelineDepth = configuration.clientPipelineDepth();
+        this.pipelineRoutes = configuration.clientPipelineRoutes();
+        this.maximumHeadersSize = bufferPool.maximumSlotCapacity();
+        this.temporarySlot = new UnsafeBuffer(ByteBuffer.allocateDirect(bufferPool.maximumSlotCapacity()));
         this.countRequests = supplyCounter.apply("requests");
         this.countRequestsRejected = supplyCounter.apply("requests.rejected");
         this.countRequestsAbandoned = supplyCounter.apply("requests.abandoned");
@@ -129,6 +180,24 @@ public final class ClientStreamFactory implements StreamFactory
         this.countResponsesAbandoned = supplyCounter.apply("responses.abandoned");
         this.enqueues = supplyCounter.apply("enqueues");
         this.dequeues = supplyCounter.apply("dequeues");
+        this.accessLog = accessLog;
+        this.events = HttpEvents.newInstance(configuration);
+        this.countAccessLogDrops = supplyCounter.apply("access.log.drops");
+        this.metrics = metrics;
+        this.slots = metrics.supplyBufferSlots(Role.CLIENT, bufferPool);
+        this.responseSpool = responseSpool;
+        this.timers = timers;
+        this.timeoutsExpired = timeoutsExpired;
+        this.queueTimeout = timers != null ? configuration.clientQueueTimeout() : 0;
+        this.headerTimeout = timers != null ? configuration.clientHeaderTimeout() : 0;
+        this.keepAliveTimeout = timers != null ? configuration.clientKeepAliveTimeout() : 0;
+        this.http2 = configuration.clientHttp2();
+        this.http2Routes = configuration.clientHttp2Routes();
+        this.http2MaximumConnections = configuration.clientHttp2MaximumConnections();
+        this.http2Codec = http2 ? new Http2Codec(bufferPool.maximumSlotCapacity()) : null;
+        this.http2RequestHead = http2 ? new Http2RequestHeadEncoder(http2Codec) : null;
+        this.http2Pools = new HashMap<>();
+        this.http2Connections = new Long2ObjectHashMap<>();
     }
 
     @Override
@@ -141,7 +210,6 @@ public final class ClientStreamFactory implements StreamFactory
     {
         final BeginFW begin = beginRO.wrap(buffer, index, index + length);
         final long sourceRef = begin.sourceRef();
-        this.supplyTraceId = begin.trace();
 
         MessageConsumer newStream;
 
@@ -162,18 +230,11 @@ public final class ClientStreamFactory implements StreamFactory
         final long acceptRef = begin.sourceRef();
         final String acceptName = begin.source().asString();
         final long authorization = begin.authorization();
+        final long acceptTraceId = begin.trace();
 
         final OctetsFW extension = begin.extension();
-
-        // TODO: avoid object creation
-        Map<String, String> headers = EMPTY_HEADERS;
-        if (extension.sizeof() > 0)
-        {
-            final HttpBeginExFW beginEx = extension.get(beginExRO::wrap);
-            Map<String, String> headers0 = new LinkedHashMap<>();
-            beginEx.headers().forEach(h -> headers0.put(h.name().asString(), h.value().asString()));
-            headers = headers0;
-        }
+        final ListFW<HttpHeaderFW> headers = extension.sizeof() > 0 ?
+                beginExRO.wrap(extension.buffer(), extension.offset(), extension.limit()).headers() : null;
 
         final RouteFW route = resolveTarget(acceptRef, authorization, headers);
 
@@ -186,9 +247,20 @@ public final class ClientStreamFactory implements StreamFactory
             final String connectName = route.target().asString();
             final long connectRef = route.targetRef();
 
-            newStream = new ClientAcceptStream(this,
-                    acceptThrottle, acceptId, acceptRef, acceptName, acceptCorrelationId,
-                    connectName, connectRef, headers);
+            if (http2 && (http2Routes == null || Arrays.binarySearch(http2Routes, acceptRef) >= 0))
+            {
+                // the request headers are held from the begin extension until the stream is opened
+                newStream = new Http2ClientStream(this, http2Pool(connectName, connectRef),
+                        acceptThrottle, acceptId, acceptTraceId, acceptRef, acceptName, acceptCorrelationId,
+                        connectName, connectRef);
+            }
+            else
+            {
+                // the request head is encoded from the begin extension when the stream begins
+                newStream = new ClientAcceptStream(this,
+                        acceptThrottle, acceptId, acceptTraceId, acceptRef, acceptName, acceptCorrelationId,
+                        connectName, connectRef);
+            }
         }
 
         return newStream;
@@ -198,32 +270,173 @@ public final class ClientStreamFactory implements StreamFactory
     {
         final String connectReplyName = begin.source().asString();
         final long connectReplyId = begin.streamId();
+        final long connectReplyTraceId = begin.trace();
+
+        if (http2)
+        {
+            final Http2ClientConnection connection = http2Connections.remove(begin.correlationId());
+            if (connection != null)
+            {
+                return connection.newReplyStream(connectReplyThrottle, connectReplyId);
+            }
+        }
 
-        return new ClientConnectReplyStream(this, connectReplyThrottle, connectReplyId,
+        return new ClientConnectReplyStream(this, connectReplyThrottle, connectReplyId, connectReplyTraceId,
                 connectReplyName);
     }
 
+    private Http2ClientPool http2Pool(
+        String connectName,
+        long connectRef)
+    {
+        Long2ObjectHashMap<Http2ClientPool> poolsByRef = http2Pools.get(connectName);
+        if (poolsByRef == null)
+        {
+            poolsByRef = new Long2ObjectHashMap<>();
+            http2Pools.put(connectName, poolsByRef);
+        }
+
+        Http2ClientPool pool = poolsByRef.get(connectRef);
+        if (pool == null)
+        {
+            pool = new Http2ClientPool(this, connectName, connectRef);
+            poolsByRef.put(connectRef, pool);
+        }
+        return pool;
+    }
+
+    Correlation<ClientConnectReplyState> newCorrelation(
+        long acceptCorrelationId,
+        String acceptName,
+        ConnectionPool connectionPool,
+        Connection connection,
+        AccessLogRecord accessLogRecord,
+        long acceptId,
+        Runnable onTimeout)
+    {
+        final Correlation<ClientConnectReplyState> correlation = correlationPool.acquire();
+        correlation.state().init(connectionPool, connection, accessLogRecord, acceptId, onTimeout);
+        return correlation.init(acceptCorrelationId, acceptName);
+    }
+
+    /*
+     * Starts the header timeout of a correlation once it is the pending correlation of its connection, so that time
+     * spent pipelined behind earlier responses does not count against it
+     */
+    void scheduleHeaderTimeout(
+        Correlation<ClientConnectReplyState> correlation)
+    {
+        if (headerTimeout > 0)
+        {
+            final ClientConnectReplyState state = correlation.state();
+            state.timerId = timers.schedule(headerTimeout, state.onTimeout);
+        }
+    }
+
+    /*
+     * Releases a correlation once removed from correlations, cancelling its header timeout as the response has begun
+     * or been abandoned; the client role only correlates connection replies
+     */
+    @SuppressWarnings("unchecked")
+    void releaseCorrelation(
+        Correlation<?> correlation)
+    {
+        final Correlation<ClientConnectReplyState> released = (Correlation<ClientConnectReplyState>) correlation;
+        if (timers != null)
+        {
+            timers.cancel(released.state().timerId);
+        }
+        correlationPool.release(released);
+    }
+
+    /*
+     * Returns true when requests with the given method on the given route may be written to a connection ahead of
+     * the responses to earlier requests, as RFC 7230 6.3.2 only allows for idempotent methods
+     * <p>
+     * HEAD is excluded, as the connect reply stream does not know the method of the request its response answers, so
+     * it cannot tell that a HEAD response carries no body before the next pipelined response
+     */
+    boolean isPipelinable(
+        long acceptRef,
+        String method)
+    {
+        return pipelineDepth > 1 &&
+                (pipelineRoutes == null || Arrays.binarySearch(pipelineRoutes, acceptRef) >= 0) &&
+                method != null && isIdempotent(method);
+    }
+
+    AccessLogRecord newAccessLogRecord()
+    {
+        return accessLog != null || events != null ? new AccessLogRecord() : null;
+    }
+
+    void exchangeComplete(
+        AccessLogRecord record)
+    {
+        record.complete();
+
+        if (accessLog != null && !accessLog.append(AccessLog.CLIENT_RECORD_TYPE_ID, record))
+        {
+            countAccessLogDrops.getAsLong();
+        }
+
+        if (events != null)
+        {
+            events.exchangeCompleted(HttpEvents.CLIENT, record);
+        }
+    }
+
+    /*
+     * Method names are case-sensitive (RFC 7230 3.1.1) and RequestHeadEncoder returns the standard method constants
+     */
+    private static boolean isIdempotent(
+        String method)
+    {
+        switch (method)
+        {
+        case "GET":
+        case "OPTIONS":
+        case "TRACE":
+        case "PUT":
+        case "DELETE":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /*
+     * Resolves the route whose headers are all present in the request headers, without allocating
+     */
     private RouteFW resolveTarget(
         long sourceRef,
         long authorization,
-        Map<String, String> headers)
+        ListFW<HttpHeaderFW> headers)
     {
-        final MessagePredicate filter = (t, b, o, l) ->
-        {
-            final RouteFW route = routeRO.wrap(b, o, l);
-            final OctetsFW extension = route.extension();
-            boolean headersMatch = true;
-            if (extension.sizeof() > 0)
-            {
-                final HttpRouteExFW routeEx = extension.get(routeExRO::wrap);
-                headersMatch = routeEx.headers().anyMatch(
-                        h -> !Objects.equals(h.value(), headers.get(h.name())));
-            }
-            return route.sourceRef() == sourceRef && headersMatch;
-        };
+        this.routeSourceRef = sourceRef;
+        this.requestHeaders = headers;
+        final RouteFW route = router.resolve(authorization, routeFilter, wrapRoute);
+        this.requestHeaders = null;
+        return route;
+    }
 
-        return router.resolve(authorization, filter, (msgTypeId, buffer, index, length) ->
-            routeRO.wrap(buffer, index, index + length));
+    private boolean routeMatches(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final RouteFW route = routeRO.wrap(buffer, index, index + length);
+        return route.sourceRef() == routeSourceRef && routeHeaders.matches(route.extension(), requestHeaders);
+    }
+
+    private RouteFW wrapRoute(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        return routeRO.wrap(buffer, index, index + length);
     }
 
 }
@@ -22,10 +22,16 @@ import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 import org.agrona.MutableDirectBuffer;
-import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.status.AtomicCounter;
 import org.reaktivity.nukleus.Configuration;
 import org.reaktivity.nukleus.buffer.BufferPool;
 import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.util.ObjectPool;
+import org.reaktivity.nukleus.http.internal.util.SlabBufferPool;
+import org.reaktivity.nukleus.http.internal.util.TieredBufferPool;
 import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
 import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
@@ -33,7 +39,13 @@ import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
 public final class ClientStreamFactoryBuilder implements StreamFactoryBuilder
 {
     private final Configuration config;
-    private final Long2ObjectHashMap<Correlation<?>> correlations;
+    private final AccessLog accessLog;
+    private final HttpMetrics metrics;
+    private final TimerWheel timers;
+    private final AtomicCounter timeoutsExpired;
+    private final CorrelationStore correlations;
+    private final Spool responseSpool;
+    private final ObjectPool<Correlation<ClientConnectReplyState>> correlationPool;
 
     private RouteManager router;
     private MutableDirectBuffer writeBuffer;
@@ -41,12 +53,26 @@ public final class ClientStreamFactoryBuilder implements StreamFactoryBuilder
     private LongSupplier supplyCorrelationId;
     private Supplier<BufferPool> supplyBufferPool;
     private Function<String, LongSupplier> supplyCounter;
+    private BufferPool largeSlots;
 
     public ClientStreamFactoryBuilder(
-        Configuration config)
+        Configuration config,
+        AccessLog accessLog,
+        HttpMetrics metrics,
+        CorrelationSweeper sweeper,
+        TimerWheel timers)
     {
         this.config = config;
-        this.correlations = new Long2ObjectHashMap<>();
+        this.accessLog = accessLog;
+        this.metrics = metrics;
+        this.timers = timers;
+        this.timeoutsExpired = timers != null ? metrics.counter(TimerWheel.TIMEOUTS_EXPIRED, Role.CLIENT, "", 0L) : null;
+        this.correlationPool = newCorrelationPool((HttpConfiguration) config);
+        this.correlations = sweeper.register(new CorrelationStore(((HttpConfiguration) config).correlationsCapacity(),
+                metrics.gauge(CorrelationStore.CORRELATIONS_LIVE, Role.CLIENT, "", 0L),
+                metrics.counter(CorrelationStore.CORRELATIONS_RECLAIMED, Role.CLIENT, "", 0L),
+                (correlationId, ownerId, correlation) -> onReclaimed(correlation)));
+        this.responseSpool = Spool.newResponseSpool((HttpConfiguration) config, metrics);
     }
 
     @Override
@@ -114,9 +140,41 @@ public final class ClientStreamFactoryBuilder implements StreamFactoryBuilder
     @Override
     public StreamFactory build()
     {
-        final BufferPool bufferPool = supplyBufferPool.get();
+        final TieredBufferPool bufferPool = newTieredBufferPool(supplyBufferPool.get());
 
         return new ClientStreamFactory((HttpConfiguration) config, router, writeBuffer, bufferPool,
-                supplyStreamId, supplyCorrelationId, correlations, supplyCounter);
+                supplyStreamId, supplyCorrelationId, correlations, correlationPool, supplyCounter, accessLog, metrics,
+                responseSpool, timers, timeoutsExpired);
+    }
+
+    // a request reclaimed before its response began is answered, and its connection released
+    @SuppressWarnings("unchecked")
+    private void onReclaimed(
+        Correlation<?> correlation)
+    {
+        final ClientConnectReplyState state = ((Correlation<ClientConnectReplyState>) correlation).state();
+        state.connectionPool.reclaim(state.connection, correlation);
+    }
+
+    // shared like correlations, since the connect reply stream releases what the accept stream acquired
+    private static ObjectPool<Correlation<ClientConnectReplyState>> newCorrelationPool(
+        HttpConfiguration config)
+    {
+        return new ObjectPool<>(() -> new Correlation<>(0L, "", new ClientConnectReplyState()),
+                c -> c.state().reset(), config.objectPoolCapacity(),
+                config.objectPoolDebug() ? Throwable::printStackTrace : null);
+    }
+
+    // large slots are shared like correlations, each factory using its own duplicate
+    private TieredBufferPool newTieredBufferPool(
+        BufferPool smallSlots)
+    {
+        final HttpConfiguration httpConfig = (HttpConfiguration) config;
+        final int maximumHeadersSize = httpConfig.maximumHeadersSize();
+        if (largeSlots == null && maximumHeadersSize > smallSlots.slotCapacity())
+        {
+            largeSlots = new SlabBufferPool(httpConfig.largeSlots(), maximumHeadersSize);
+        }
+        return new TieredBufferPool(smallSlots, largeSlots != null ? largeSlots.duplicate() : null);
     }
 }
@@ -16,17 +16,32 @@
 package org.reaktivity.nukleus.http.internal.stream;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.function.Consumer;
 
 import org.agrona.DirectBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.ConnectionPoolMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.FlowControlMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.StallTracker;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
 import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
 
 /**
  * A set of connections (target streams) to be used to talk to a given target on a given route (targetRef)
+ * <p>
+ * When pipelining is configured, a pipelinable request may also be written to a busy connection once the previous
+ * request on it has been written, choosing the connection with the fewest outstanding requests. The correlations of
+ * requests written ahead of their responses wait in a FIFO on the connection, each taking its turn as the pending
+ * correlation of the connection once the previous response completes.
  */
 final class ConnectionPool
 {
@@ -35,10 +50,13 @@ final class ConnectionPool
         END, ABORT
     }
     private final Deque<Connection> availableConnections;
+    private final List<Connection> connections;
     private final String connectName;
     private final long connectRef;
     private final ClientStreamFactory factory;
     private final Queue<ConnectionRequest> queuedRequests;
+    private final ConnectionPoolMetrics metrics;
+    private final FlowControlMetrics flowControl;
 
     private int connectionsInUse;
 
@@ -48,7 +66,10 @@ final class ConnectionPool
         this.connectName = connectName;
         this.connectRef = connectRef;
         this.availableConnections = new ArrayDeque<>(factory.maximumConnectionsPerRoute);
+        this.connections = new ArrayList<>(factory.maximumConnectionsPerRoute);
         this.queuedRequests = new ArrayDeque<>(factory.maximumQueuedRequestsPerRoute);
+        this.metrics = factory.metrics.supplyConnectionPool(connectName, connectRef);
+        this.flowControl = factory.metrics.supplyFlowControl(Role.CLIENT, connectName, connectRef);
     }
 
     /*
@@ -56,18 +77,14 @@ final class ConnectionPool
      */
     boolean acquire(ConnectionRequest request)
     {
-        Connection connection = availableConnections.poll();
-        if (connection == null && connectionsInUse < factory.maximumConnectionsPerRoute)
-        {
-            connection = newConnection();
-        }
+        final Connection connection = selectConnection(request);
         if (connection != null)
         {
-            connection.noRequests++;
-            request.getConsumer().accept(connection);
+            assign(connection, request);
         }
         else if (queuedRequests.size() < factory.maximumQueuedRequestsPerRoute)
         {
+            request.queuedAt(System.nanoTime());
             queuedRequests.add(request);
             factory.enqueues.getAsLong();
         }
@@ -76,6 +93,7 @@ final class ConnectionPool
             return false;
         }
 
+        updateMetrics();
         return true;
     }
 
@@ -83,40 +101,129 @@ final class ConnectionPool
     {
         if (!queuedRequests.isEmpty())
         {
-            Connection connection = availableConnections.poll();
-            if (connection == null && connectionsInUse < factory.maximumConnectionsPerRoute)
-            {
-                connection = newConnection();
-            }
-
+            final Connection connection = selectConnection(queuedRequests.peek());
             if (connection != null)
             {
                 ConnectionRequest nextRequest = queuedRequests.poll();
                 factory.dequeues.getAsLong();
-                nextRequest.getConsumer().accept(connection);
-                connection.noRequests++;
+                metrics.requestDequeued(System.nanoTime() - nextRequest.queuedAt());
+                assign(connection, nextRequest);
             }
         }
     }
 
+    /*
+     * Prefers an idle connection, then pipelining on a busy one, then a new connection
+     */
+    private Connection selectConnection(
+        ConnectionRequest request)
+    {
+        Connection connection = pollAvailableConnection();
+        if (connection == null && request.pipelinable())
+        {
+            connection = pipelinedConnection();
+        }
+        if (connection == null && connectionsInUse < factory.maximumConnectionsPerRoute)
+        {
+            connection = newConnection(request.traceId());
+        }
+        return connection;
+    }
+
+    private Connection pipelinedConnection()
+    {
+        Connection selected = null;
+        for (int i = 0; i < connections.size(); i++)
+        {
+            final Connection connection = connections.get(i);
+            if (connection.isPipelinable() && (selected == null || connection.outstanding < selected.outstanding))
+            {
+                selected = connection;
+            }
+        }
+        return selected;
+    }
+
+    private void assign(
+        Connection connection,
+        ConnectionRequest request)
+    {
+        metrics.connectionAcquired(connection.noRequests);
+        connection.noRequests++;
+        connection.outstanding++;
+        connection.writing = true;
+        connection.pipelinable = (connection.outstanding == 1 || connection.pipelinable) && request.pipelinable();
+        request.getConsumer().accept(connection);
+    }
+
+    private Connection pollAvailableConnection()
+    {
+        final Connection connection = availableConnections.poll();
+        if (connection != null && connection.timerId != TimerWheel.NO_TIMER)
+        {
+            connection.timerId = factory.timers.cancel(connection.timerId);
+        }
+        return connection;
+    }
+
+    int queueDepth()
+    {
+        return queuedRequests.size();
+    }
+
     void cancel(ConnectionRequest request)
     {
         queuedRequests.remove(request);
         factory.dequeues.getAsLong();
+        updateMetrics();
     }
 
-    private Connection newConnection()
+    private Connection newConnection(long traceId)
     {
         final long correlationId = factory.supplyCorrelationId.getAsLong();
         final long streamId = factory.supplyStreamId.getAsLong();
         Connection connection = new Connection(streamId, correlationId);
+        connection.traceId = traceId;
         MessageConsumer output = factory.router.supplyTarget(connectName);
-        factory.writer.doBegin(output, streamId, factory.supplyTraceId, connectRef, correlationId);
-        factory.router.setThrottle(connectName, streamId, connection::handleThrottleDefault);
+        factory.writer.doBegin(output, streamId, traceId, connectRef, correlationId);
+        factory.router.setThrottle(connectName, streamId, connection.throttleDefault);
         connectionsInUse++;
+        connections.add(connection);
         return connection;
     }
 
+    /*
+     * Frees the connection for the next request once the current request has been written, which may be pipelined
+     */
+    void requestWritten(
+        Connection connection)
+    {
+        connection.writing = false;
+        setDefaultThrottle(connection);
+        if (connection.isPipelinable())
+        {
+            acquireNextIfQueued();
+            updateMetrics();
+        }
+        else if (connection.outstanding == 0 && connection.persistent && !connection.released)
+        {
+            makeAvailable(connection);
+            acquireNextIfQueued();
+            updateMetrics();
+        }
+    }
+
+    private void makeAvailable(
+        Connection connection)
+    {
+        setDefaultThrottle(connection);
+        availableConnections.add(connection);
+        if (factory.keepAliveTimeout > 0 && connection.timerId == TimerWheel.NO_TIMER)
+        {
+            connection.timerId = factory.timers.schedule(factory.keepAliveTimeout, connection.onIdleTimeout);
+        }
+    }
+
     void release(Connection connection)
     {
         release(connection, null);
@@ -129,39 +236,53 @@ final class ConnectionPool
         {
             // We did not yet send response headers (high level begin) to the client accept reply stream.
             // This implies we got an incomplete response. We report this as service unavailable (503).
-            MessageConsumer acceptReply = factory.router.supplyTarget(correlation.source());
-            long targetId = factory.supplyStreamId.getAsLong();
-            long traceId = factory.supplyTraceId;
-
-            // count abandoned requests
-            factory.countRequestsAbandoned.getAsLong();
-
-            // count all responses
-            factory.countResponses.getAsLong();
-
-            long sourceCorrelationId = correlation.id();
-            factory.writer.doHttpBegin(acceptReply, targetId, traceId, 0L, sourceCorrelationId,
-                                       hs -> hs.item(h -> h.name(":status").value("503"))
-                                               .item(h -> h.name("retry-after").value("0")));
-            factory.writer.doHttpEnd(acceptReply, targetId, 0L);
+            abandon(correlation, connection.traceId, ClientStreamFactory.SERVICE_UNAVAILABLE_HEADERS);
+        }
+        if (connection.outstanding > 0)
+        {
+            connection.outstanding--;
         }
         if (connection.persistent)
         {
-            setDefaultThrottle(connection);
-            availableConnections.add(connection);
+            final Correlation<ClientConnectReplyState> pipelined = connection.pipeline.poll();
+            if (pipelined != null)
+            {
+                // the next response on the connection is for the next pipelined request, timed from now on
+                factory.correlations.put(connection.correlationId, pipelined, pipelined.state().acceptId);
+                factory.scheduleHeaderTimeout(pipelined);
+            }
+
+            // the response may complete before the request, as for a non-idempotent request refused early
+            if (connection.outstanding == 0 && !connection.writing)
+            {
+                makeAvailable(connection);
+            }
         }
         else
         {
+            // pipelined requests are never replayed, as the server may have processed them
+            for (Correlation<?> pipelined = connection.pipeline.poll(); pipelined != null;
+                    pipelined = connection.pipeline.poll())
+            {
+                abandon(pipelined, connection.traceId, ClientStreamFactory.SERVICE_UNAVAILABLE_HEADERS);
+            }
+            connection.outstanding = 0;
+
             // release() gets called multiple times for a connection
             if (!connection.released)
             {
                 connection.released = true;
                 connectionsInUse--;
                 assert connectionsInUse >= 0;
+                connections.remove(connection);
+                metrics.connectionClosed(connection.noRequests);
             }
 
             // In case the connection was previously released when it was still persistent
-            availableConnections.removeFirstOccurrence(connection);
+            if (availableConnections.removeFirstOccurrence(connection) && connection.timerId != TimerWheel.NO_TIMER)
+            {
+                connection.timerId = factory.timers.cancel(connection.timerId);
+            }
 
             if (action != null && !connection.endOrAbortSent)
             {
@@ -169,34 +290,98 @@ final class ConnectionPool
                 switch(action)
                 {
                 case END:
-                    factory.writer.doEnd(connect, connection.connectStreamId, 0);
+                    factory.writer.doEnd(connect, connection.connectStreamId, connection.traceId);
                     break;
                 case ABORT:
-                    factory.writer.doAbort(connect, connection.connectStreamId, 0);
+                    factory.writer.doAbort(connect, connection.connectStreamId, connection.traceId);
                 }
                 connection.endOrAbortSent = true;
             }
         }
 
         acquireNextIfQueued();
+        updateMetrics();
+    }
+
+    /*
+     * Answers a request whose correlation was reclaimed before its response began with gateway timeout (504), then
+     * aborts its connection, as the late response would otherwise be taken for the response to the next request
+     */
+    void reclaim(
+        Connection connection,
+        Correlation<?> correlation)
+    {
+        abandon(correlation, connection.traceId, ClientStreamFactory.GATEWAY_TIMEOUT_HEADERS);
+        connection.persistent = false;
+        release(connection, CloseAction.ABORT);
+    }
+
+    /*
+     * Answers a request abandoned before its response began with service unavailable (503) or the given status
+     */
+    private void abandon(
+        Correlation<?> correlation,
+        long traceId,
+        Map<String, String> headers)
+    {
+        MessageConsumer acceptReply = factory.router.supplyTarget(correlation.source());
+        long targetId = factory.supplyStreamId.getAsLong();
+
+        // count abandoned requests
+        factory.countRequestsAbandoned.getAsLong();
+
+        // count all responses
+        factory.countResponses.getAsLong();
+
+        long sourceCorrelationId = correlation.id();
+        factory.releaseCorrelation(correlation);
+        factory.writer.doHttpBegin(acceptReply, targetId, traceId, 0L, sourceCorrelationId,
+                                   headers);
+        factory.writer.doHttpEnd(acceptReply, targetId, traceId);
     }
 
     void setDefaultThrottle(Connection connection)
     {
-        factory.router.setThrottle(connectName, connection.connectStreamId, connection::handleThrottleDefault);
+        factory.router.setThrottle(connectName, connection.connectStreamId, connection.throttleDefault);
+    }
+
+    StallTracker newStallTracker(
+        int budget,
+        long streamId)
+    {
+        return new StallTracker(budget, flowControl, factory.events, HttpEvents.CLIENT, connectRef, streamId);
+    }
+
+    private void updateMetrics()
+    {
+        metrics.update(connectionsInUse, availableConnections.size(), queuedRequests.size());
     }
 
     public interface ConnectionRequest
     {
         Consumer<Connection> getConsumer();
+
+        long traceId();
+
+        boolean pipelinable();
+
+        long queuedAt();
+
+        void queuedAt(long timestamp);
     }
 
     class Connection
     {
         final long connectStreamId;
         final long correlationId;
+        final Deque<Correlation<ClientConnectReplyState>> pipeline = new ArrayDeque<>(2);
+        private final AccessLogRecord[] accessLogRecords;
+        final StallTracker budgetStall;
+        final MessageConsumer throttleDefault = this::handleThrottleDefault;
+        final Runnable onIdleTimeout = this::onIdleTimeout;
         int budget;
         int padding;
+        long traceId;
         boolean persistent = true;
         boolean released;
         private boolean endOrAbortSent;
@@ -204,11 +389,102 @@ final class ConnectionPool
         private long connectReplyStreamId;
         private MessageConsumer connectReplyThrottle;
         int noRequests;
+        int outstanding;
+        boolean writing;
+        boolean pipelinable;
+        long timerId = TimerWheel.NO_TIMER;
+        private int accessLogRecordIndex;
 
         Connection(long outputStreamId, long outputCorrelationId)
         {
             this.connectStreamId = outputStreamId;
             this.correlationId = outputCorrelationId;
+            this.accessLogRecords = newAccessLogRecords();
+            this.budgetStall = newStallTracker(FlowControlMetrics.CONNECT, outputStreamId);
+        }
+
+        /*
+         * Returns the access log record of the request just assigned, or null when access logging is disabled
+         * <p>
+         * At most pipelineDepth requests are outstanding and their responses complete in order, so the records
+         * are reused round robin without one being overwritten while its response is still in flight
+         */
+        AccessLogRecord nextAccessLogRecord()
+        {
+            AccessLogRecord record = null;
+            if (accessLogRecords != null)
+            {
+                accessLogRecordIndex = (accessLogRecordIndex + 1) % accessLogRecords.length;
+                record = accessLogRecords[accessLogRecordIndex];
+            }
+            return record;
+        }
+
+        /*
+         * Returns the access log record of the latest request, or null when access logging is disabled
+         */
+        AccessLogRecord accessLogRecord()
+        {
+            return accessLogRecords != null ? accessLogRecords[accessLogRecordIndex] : null;
+        }
+
+        private AccessLogRecord[] newAccessLogRecords()
+        {
+            AccessLogRecord[] records = null;
+            final AccessLogRecord record = factory.newAccessLogRecord();
+            if (record != null)
+            {
+                records = new AccessLogRecord[Math.max(factory.pipelineDepth, 1)];
+                records[0] = record;
+                for (int i = 1; i < records.length; i++)
+                {
+                    records[i] = factory.newAccessLogRecord();
+                }
+            }
+            return records;
+        }
+
+        /*
+         * Returns true while the next request may be written ahead of the responses outstanding on the connection
+         */
+        boolean isPipelinable()
+        {
+            return pipelinable && persistent && !writing && outstanding > 0 && outstanding < factory.pipelineDepth;
+        }
+
+        /*
+         * Removes the correlation of a pipelined request whose response has not begun, or returns null
+         */
+        Correlation<?> removePipelined(
+            long acceptCorrelationId)
+        {
+            Correlation<?> removed = null;
+            for (Iterator<Correlation<ClientConnectReplyState>> i = pipeline.iterator(); removed == null && i.hasNext();)
+            {
+                final Correlation<?> correlation = i.next();
+                if (correlation.id() == acceptCorrelationId)
+                {
+                    i.remove();
+                    removed = correlation;
+                }
+            }
+            return removed;
+        }
+
+        void onBudget()
+        {
+            budgetStall.onBudget(budget, padding);
+        }
+
+        private void onIdleTimeout()
+        {
+            timerId = TimerWheel.NO_TIMER;
+            if (availableConnections.contains(this))
+            {
+                factory.timeoutsExpired.increment();
+                persistent = false;
+                release(this, CloseAction.END);
+            }
         }
 
         void setInput(MessageConsumer connectReplyThrottle, long connectReplyStreamId)
@@ -238,6 +514,7 @@ final class ConnectionPool
                 final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
                 this.budget += window.credit();
                 this.padding = window.padding();
+                onBudget();
                 break;
             default:
                 // ignore
@@ -21,10 +21,11 @@ import java.util.Objects;
 
 public class Correlation<S>
 {
-    private final String source;
-    private final long id;
     private final S state;
 
+    private String source;
+    private long id;
+
     public Correlation(
         long id,
         String source,
@@ -42,6 +43,18 @@ public class Correlation<S>
         this(id, source, null);
     }
 
+    /*
+     * Reinitializes a pooled correlation, keeping its state which is reset separately
+     */
+    Correlation<S> init(
+        long id,
+        String source)
+    {
+        this.id = id;
+        this.source = requireNonNull(source, "source");
+        return this;
+    }
+
     public String source()
     {
         return source;
@@ -85,6 +98,6 @@ public class Correlation<S>
     @Override
     public String toString()
     {
-        return String.format("[id=%s, source=\"%s\", established=%s]", id, source);
+        return String.format("[id=%s, source=\"%s\"]", id, source);
     }
 }
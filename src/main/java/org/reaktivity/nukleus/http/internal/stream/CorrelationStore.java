@@ -0,0 +1,239 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import org.agrona.BitUtil;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.status.AtomicCounter;
+
+/**
+ * Pending correlations by correlation id, in an open addressing table with linear probing over parallel primitive
+ * arrays, so that no entry object is allocated per correlation.
+ * <p>
+ * Each correlation is tagged with the time it was stored and the stream that stored it, so that correlations
+ * never removed because their reply did not arrive can be reclaimed by {@link #sweep(long, long)}. The store cannot
+ * tell a slow reply from one that will never arrive, so the reclaim handler fails the request that owns each
+ * reclaimed correlation rather than leaving it waiting on a reply that can no longer be correlated.
+ */
+final class CorrelationStore
+{
+    static final String CORRELATIONS_LIVE = "correlations.live";
+    static final String CORRELATIONS_RECLAIMED = "correlations.reclaimed";
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final AtomicCounter live;
+    private final AtomicCounter reclaimed;
+    private final ReclaimHandler onReclaimed;
+
+    private long[] correlationIds;
+    private long[] ownerIds;
+    private long[] storedAts;
+    private Correlation<?>[] correlations;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+
+    @FunctionalInterface
+    interface ReclaimHandler
+    {
+        void onReclaimed(
+            long correlationId,
+            long ownerId,
+            Correlation<?> correlation);
+    }
+
+    CorrelationStore(
+        int initialCapacity,
+        AtomicCounter live,
+        AtomicCounter reclaimed,
+        ReclaimHandler onReclaimed)
+    {
+        this.live = live;
+        this.reclaimed = reclaimed;
+        this.onReclaimed = onReclaimed;
+        allocate(BitUtil.findNextPositivePowerOfTwo(Math.max(initialCapacity, 2)));
+    }
+
+    Correlation<?> put(
+        long correlationId,
+        Correlation<?> correlation,
+        long ownerId)
+    {
+        int index = Hashing.hash(correlationId, mask);
+        while (correlations[index] != null && correlationIds[index] != correlationId)
+        {
+            index = (index + 1) & mask;
+        }
+
+        final Correlation<?> previous = correlations[index];
+        correlationIds[index] = correlationId;
+        ownerIds[index] = ownerId;
+        storedAts[index] = System.nanoTime();
+        correlations[index] = correlation;
+
+        if (previous == null)
+        {
+            live.setOrdered(++size);
+            if (size > resizeThreshold)
+            {
+                resize();
+            }
+        }
+
+        return previous;
+    }
+
+    Correlation<?> get(
+        long correlationId)
+    {
+        final int index = indexOf(correlationId);
+        return index != -1 ? correlations[index] : null;
+    }
+
+    Correlation<?> remove(
+        long correlationId)
+    {
+        final int index = indexOf(correlationId);
+        Correlation<?> correlation = null;
+        if (index != -1)
+        {
+            correlation = correlations[index];
+            removeAt(index);
+        }
+        return correlation;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /*
+     * Reclaims the correlations stored before the given time, returning how many were reclaimed
+     */
+    int sweep(
+        long now,
+        long maximumAge)
+    {
+        int count = 0;
+        int index = 0;
+        while (index < correlations.length)
+        {
+            final Correlation<?> correlation = correlations[index];
+            if (correlation != null && now - storedAts[index] > maximumAge)
+            {
+                final long correlationId = correlationIds[index];
+                final long ownerId = ownerIds[index];
+                removeAt(index);
+                count++;
+                if (onReclaimed != null)
+                {
+                    onReclaimed.onReclaimed(correlationId, ownerId, correlation);
+                }
+                // removal may shift a later entry of the same probe sequence into this index
+            }
+            else
+            {
+                index++;
+            }
+        }
+
+        if (count != 0)
+        {
+            reclaimed.addOrdered(count);
+        }
+
+        return count;
+    }
+
+    private int indexOf(
+        long correlationId)
+    {
+        int index = Hashing.hash(correlationId, mask);
+        while (correlations[index] != null)
+        {
+            if (correlationIds[index] == correlationId)
+            {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    // backward shift deletion, keeping every entry reachable from its hash without tombstones
+    private void removeAt(
+        int index)
+    {
+        correlations[index] = null;
+        live.setOrdered(--size);
+
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (correlations[next] != null)
+        {
+            final int home = Hashing.hash(correlationIds[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                correlationIds[hole] = correlationIds[next];
+                ownerIds[hole] = ownerIds[next];
+                storedAts[hole] = storedAts[next];
+                correlations[hole] = correlations[next];
+                correlations[next] = null;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void resize()
+    {
+        final long[] oldCorrelationIds = correlationIds;
+        final long[] oldOwnerIds = ownerIds;
+        final long[] oldStoredAts = storedAts;
+        final Correlation<?>[] oldCorrelations = correlations;
+
+        allocate(oldCorrelations.length << 1);
+
+        for (int i = 0; i < oldCorrelations.length; i++)
+        {
+            if (oldCorrelations[i] != null)
+            {
+                int index = Hashing.hash(oldCorrelationIds[i], mask);
+                while (correlations[index] != null)
+                {
+                    index = (index + 1) & mask;
+                }
+                correlationIds[index] = oldCorrelationIds[i];
+                ownerIds[index] = oldOwnerIds[i];
+                storedAts[index] = oldStoredAts[i];
+                correlations[index] = oldCorrelations[i];
+            }
+        }
+    }
+
+    private void allocate(
+        int capacity)
+    {
+        this.correlationIds = new long[capacity];
+        this.ownerIds = new long[capacity];
+        this.storedAts = new long[capacity];
+        this.correlations = new Correlation<?>[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
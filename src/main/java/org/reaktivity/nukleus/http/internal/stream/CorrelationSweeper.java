@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.reaktivity.nukleus.Nukleus;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+/**
+ * Periodically reclaims correlations left behind by streams that ended without their reply ever beginning,
+ * run on the reaktor duty cycle of the stream factories that own the swept stores.
+ */
+public final class CorrelationSweeper implements Nukleus
+{
+    private final List<CorrelationStore> stores;
+    private final long maximumAge;
+    private final long interval;
+
+    private long nextSweepAt;
+
+    public CorrelationSweeper(
+        HttpConfiguration config)
+    {
+        this.stores = new ArrayList<>();
+        this.maximumAge = SECONDS.toNanos(config.correlationTimeout());
+        this.interval = SECONDS.toNanos(config.correlationSweepInterval());
+        this.nextSweepAt = System.nanoTime() + interval;
+    }
+
+    @Override
+    public int process()
+    {
+        int workCount = 0;
+
+        final long now = System.nanoTime();
+        if (now - nextSweepAt >= 0)
+        {
+            nextSweepAt = now + interval;
+            for (int i = 0; i < stores.size(); i++)
+            {
+                workCount += stores.get(i).sweep(now, maximumAge);
+            }
+        }
+
+        return workCount;
+    }
+
+    CorrelationStore register(
+        CorrelationStore store)
+    {
+        stores.add(store);
+        return store;
+    }
+}
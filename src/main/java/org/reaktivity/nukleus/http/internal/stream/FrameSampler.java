@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import org.agrona.LangUtil;
+
+/**
+ * Receives the emission time of every frame written by the HTTP nukleus for a sampled trace.
+ */
+@FunctionalInterface
+public interface FrameSampler
+{
+    void onFrame(
+        int msgTypeId,
+        long streamId,
+        long traceId,
+        long timestamp);
+
+    static FrameSampler newInstance(
+        String className)
+    {
+        FrameSampler sampler = null;
+
+        if (className != null)
+        {
+            try
+            {
+                sampler = (FrameSampler) Class.forName(className).newInstance();
+            }
+            catch (ReflectiveOperationException ex)
+            {
+                LangUtil.rethrowUnchecked(ex);
+            }
+        }
+
+        return sampler;
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.ByteBuffer.allocateDirect;
+
+import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+
+/**
+ * Idle persistent server connections, as fixed length records in an off-heap open addressing table keyed by
+ * accept stream id, so that an idle connection costs one record here rather than its accept stream and state.
+ * <p>
+ * Record offsets returned by {@link #put(long)} and {@link #offsetOf(long)} are only valid until the next
+ * call to {@link #put(long)} or {@link #remove(long)}.
+ */
+final class HibernatedConnections
+{
+    static final int ACCEPT_ID_OFFSET = 0;
+    static final int ACCEPT_REF_OFFSET = ACCEPT_ID_OFFSET + Long.BYTES;
+    static final int ACCEPT_CORRELATION_ID_OFFSET = ACCEPT_REF_OFFSET + Long.BYTES;
+    static final int AUTHORIZATION_OFFSET = ACCEPT_CORRELATION_ID_OFFSET + Long.BYTES;
+    static final int REPLY_STREAM_ID_OFFSET = AUTHORIZATION_OFFSET + Long.BYTES;
+    static final int TRACE_ID_OFFSET = REPLY_STREAM_ID_OFFSET + Long.BYTES;
+    static final int SOURCE_BUDGET_OFFSET = TRACE_ID_OFFSET + Long.BYTES;
+    static final int REPLY_BUDGET_OFFSET = SOURCE_BUDGET_OFFSET + Integer.BYTES;
+    static final int REPLY_PADDING_OFFSET = REPLY_BUDGET_OFFSET + Integer.BYTES;
+    static final int SOURCE_INDEX_OFFSET = REPLY_PADDING_OFFSET + Integer.BYTES;
+    static final int RECORD_LENGTH = SOURCE_INDEX_OFFSET + Integer.BYTES;
+
+    static final String CONNECTIONS_HIBERNATED = "connections.hibernated";
+
+    // stream ids are never zero, so a zero accept id marks a free record
+    private static final long FREE = 0L;
+
+    private final AtomicCounter hibernated;
+
+    private MutableDirectBuffer records;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+
+    HibernatedConnections(
+        int initialCapacity,
+        AtomicCounter hibernated)
+    {
+        this.hibernated = hibernated;
+        allocate(BitUtil.findNextPositivePowerOfTwo(Math.max(initialCapacity, 2)));
+    }
+
+    MutableDirectBuffer buffer()
+    {
+        return records;
+    }
+
+    int put(
+        long acceptId)
+    {
+        assert acceptId != FREE;
+
+        if (size + 1 > resizeThreshold)
+        {
+            resize();
+        }
+
+        int index = Hashing.hash(acceptId, mask);
+        long candidateId;
+        while ((candidateId = records.getLong(index * RECORD_LENGTH + ACCEPT_ID_OFFSET)) != FREE &&
+                candidateId != acceptId)
+        {
+            index = (index + 1) & mask;
+        }
+
+        final int offset = index * RECORD_LENGTH;
+        if (candidateId == FREE)
+        {
+            records.putLong(offset + ACCEPT_ID_OFFSET, acceptId);
+            hibernated.setOrdered(++size);
+        }
+        return offset;
+    }
+
+    int offsetOf(
+        long acceptId)
+    {
+        int index = Hashing.hash(acceptId, mask);
+        long candidateId;
+        while ((candidateId = records.getLong(index * RECORD_LENGTH + ACCEPT_ID_OFFSET)) != FREE)
+        {
+            if (candidateId == acceptId)
+            {
+                return index * RECORD_LENGTH;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    boolean remove(
+        long acceptId)
+    {
+        final int offset = offsetOf(acceptId);
+        if (offset != -1)
+        {
+            removeAt(offset / RECORD_LENGTH);
+        }
+        return offset != -1;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    // backward shift deletion, keeping every record reachable from its hash without tombstones
+    private void removeAt(
+        int index)
+    {
+        records.putLong(index * RECORD_LENGTH + ACCEPT_ID_OFFSET, FREE);
+        hibernated.setOrdered(--size);
+
+        int hole = index;
+        int next = (hole + 1) & mask;
+        long nextId;
+        while ((nextId = records.getLong(next * RECORD_LENGTH + ACCEPT_ID_OFFSET)) != FREE)
+        {
+            final int home = Hashing.hash(nextId, mask);
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                records.putBytes(hole * RECORD_LENGTH, records, next * RECORD_LENGTH, RECORD_LENGTH);
+                records.putLong(next * RECORD_LENGTH + ACCEPT_ID_OFFSET, FREE);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void resize()
+    {
+        final MutableDirectBuffer oldRecords = records;
+        final int oldCapacity = mask + 1;
+
+        allocate(oldCapacity << 1);
+
+        for (int i = 0; i < oldCapacity; i++)
+        {
+            final long acceptId = oldRecords.getLong(i * RECORD_LENGTH + ACCEPT_ID_OFFSET);
+            if (acceptId != FREE)
+            {
+                int index = Hashing.hash(acceptId, mask);
+                while (records.getLong(index * RECORD_LENGTH + ACCEPT_ID_OFFSET) != FREE)
+                {
+                    index = (index + 1) & mask;
+                }
+                records.putBytes(index * RECORD_LENGTH, oldRecords, i * RECORD_LENGTH, RECORD_LENGTH);
+            }
+        }
+    }
+
+    private void allocate(
+        int capacity)
+    {
+        // direct buffers are zeroed, so every record starts free
+        this.records = new UnsafeBuffer(allocateDirect(capacity * RECORD_LENGTH));
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * 0.75f);
+    }
+}
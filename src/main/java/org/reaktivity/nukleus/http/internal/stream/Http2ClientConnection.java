@@ -0,0 +1,235 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.COMPRESSION_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_END_STREAM;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PREFACE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PROTOCOL_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS_ENABLE_PUSH;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.hpack.HpackDecoder;
+
+/**
+ * An HTTP/2 client connection, RFC 7540, to the target of a client route by prior knowledge, carrying the requests
+ * of many {@link Http2ClientStream}s as concurrent streams.
+ * <p>
+ * Frames are written to the connect stream and decoded from its reply, stalling the input when the accept reply of a
+ * stream has no window. The connection is correlated with its reply by the factory rather than by a correlation.
+ */
+final class Http2ClientConnection extends Http2Connection<Http2ClientStream>
+{
+    // stream identifiers are 31 bits, client initiated streams being odd
+    private static final int MAXIMUM_STREAM_ID = Integer.MAX_VALUE;
+
+    private final ClientStreamFactory factory;
+    private final Http2ClientPool pool;
+    private final MessageConsumer target;
+    private final String connectName;
+    private final long connectRef;
+    private final long connectId;
+    private final long correlationId;
+    private final ResponseHeaders responseHeaders;
+
+    private int nextStreamId;
+    int streamsOpened;
+
+    Http2ClientConnection(
+        ClientStreamFactory factory,
+        Http2ClientPool pool,
+        String connectName,
+        long connectRef,
+        long traceId)
+    {
+        this(factory, pool, factory.router.supplyTarget(connectName), connectName, connectRef,
+                factory.supplyStreamId.getAsLong(), traceId);
+    }
+
+    private Http2ClientConnection(
+        ClientStreamFactory factory,
+        Http2ClientPool pool,
+        MessageConsumer target,
+        String connectName,
+        long connectRef,
+        long connectId,
+        long traceId)
+    {
+        // our settings precede any stream, so streams start with our initial window
+        super(factory.writer, factory.bufferPool, factory.slots, factory.temporarySlot, factory.http2Codec,
+                target, connectId, 0, 0, false, LOCAL_INITIAL_WINDOW_SIZE, traceId);
+        this.factory = factory;
+        this.pool = pool;
+        this.target = target;
+        this.connectName = connectName;
+        this.connectRef = connectRef;
+        this.connectId = connectId;
+        this.correlationId = factory.supplyCorrelationId.getAsLong();
+        this.responseHeaders = new ResponseHeaders();
+        this.nextStreamId = 1;
+    }
+
+    /*
+     * Begins the connect stream with the client connection preface and our settings, queued until it has window
+     */
+    void onBegin()
+    {
+        factory.http2Connections.put(correlationId, this);
+        factory.writer.doBegin(target, connectId, traceId, connectRef, correlationId);
+        factory.router.setThrottle(connectName, connectId, this);
+        write(PREFACE, 0, PREFACE.capacity());
+        writeSettings(SETTINGS_ENABLE_PUSH, 0);
+    }
+
+    MessageConsumer newReplyStream(
+        MessageConsumer throttle,
+        long streamId)
+    {
+        setSource(throttle, streamId, 0);
+        return this;
+    }
+
+    /*
+     * Returns true while the server allows another stream on the connection
+     */
+    boolean isAvailable()
+    {
+        return !goaway && !isClosed() && nextStreamId <= MAXIMUM_STREAM_ID && streams.size() < peerMaxConcurrentStreams;
+    }
+
+    void open(
+        Http2ClientStream stream)
+    {
+        final int streamId = nextStreamId;
+        nextStreamId += 2;
+        lastStreamId = streamId;
+        streamsOpened++;
+        stream.streamId = streamId;
+        stream.sendWindow = initialSendWindow;
+        stream.receiveWindow = initialReceiveWindow;
+        addStream(stream);
+        stream.onOpen(this);
+    }
+
+    @Override
+    void onHeaderBlock(
+        int streamId,
+        int flags,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        final Http2ClientStream stream = streams.get(streamId);
+
+        responseHeaders.reset();
+        if (!decoder.decode(buffer, offset, length, responseHeaders))
+        {
+            connectionError(COMPRESSION_ERROR);
+        }
+        else if (streamId > lastStreamId)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if (stream == null)
+        {
+            // the stream was closed by us, so its header block is decoded to keep the header table in step
+        }
+        else if (responseHeaders.malformed)
+        {
+            resetStream(streamId, PROTOCOL_ERROR);
+        }
+        else
+        {
+            stream.onHeaders(responseHeaders.headers, length, (flags & FLAG_END_STREAM) != 0);
+        }
+    }
+
+    @Override
+    void onPeerGoaway(
+        int lastProcessedId)
+    {
+        for (int i = streamList.size() - 1; i >= 0; i--)
+        {
+            final Http2ClientStream stream = streamList.get(i);
+            if (stream.streamId > lastProcessedId)
+            {
+                // never processed by the server, though not retried as it may not be idempotent
+                stream.abort();
+            }
+        }
+    }
+
+    @Override
+    void onStreamCapacity()
+    {
+        if (isAvailable())
+        {
+            pool.onCapacity(this);
+        }
+    }
+
+    @Override
+    void onClosed()
+    {
+        factory.http2Connections.remove(correlationId);
+        pool.onClosed(this);
+    }
+
+    /*
+     * Collects the decoded response headers, joining repeated headers and checking them as RFC 7540 8.1.2 requires
+     */
+    private static final class ResponseHeaders implements HpackDecoder.HeaderConsumer
+    {
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private boolean malformed;
+        private boolean regular;
+
+        void reset()
+        {
+            headers.clear();
+            malformed = false;
+            regular = false;
+        }
+
+        @Override
+        public void accept(
+            DirectBuffer name,
+            DirectBuffer value)
+        {
+            final String headerName = name.getStringWithoutLengthUtf8(0, name.capacity());
+            final String headerValue = value.getStringWithoutLengthUtf8(0, value.capacity());
+
+            if (headerName.startsWith(":"))
+            {
+                malformed |= regular || !":status".equals(headerName) || headers.containsKey(headerName);
+                headers.put(headerName, headerValue);
+            }
+            else
+            {
+                regular = true;
+                malformed |= isConnectionSpecific(headerName) || !headerName.equals(headerName.toLowerCase());
+
+                final String previous = headers.get(headerName);
+                headers.put(headerName, previous == null ? headerValue : previous + ", " + headerValue);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.reaktivity.nukleus.http.internal.metrics.ConnectionPoolMetrics;
+
+/**
+ * The HTTP/2 connections to a given target name and ref (i.e. route), each stream going to the connection with the
+ * fewest streams that the server still allows more of. A new connection is only opened when none allows more, up to
+ * the maximum, and otherwise streams are queued until a stream closes or the server settings allow more.
+ */
+final class Http2ClientPool
+{
+    private final ClientStreamFactory factory;
+    private final String connectName;
+    private final long connectRef;
+    private final List<Http2ClientConnection> connections;
+    private final Queue<Http2ClientStream> queuedStreams;
+    private final ConnectionPoolMetrics metrics;
+
+    Http2ClientPool(
+        ClientStreamFactory factory,
+        String connectName,
+        long connectRef)
+    {
+        this.factory = factory;
+        this.connectName = connectName;
+        this.connectRef = connectRef;
+        this.connections = new ArrayList<>(factory.http2MaximumConnections);
+        this.queuedStreams = new ArrayDeque<>();
+        this.metrics = factory.metrics.supplyConnectionPool(connectName, connectRef);
+    }
+
+    /*
+     * @return true if the given stream is opened immediately or later, otherwise false
+     */
+    boolean acquire(
+        Http2ClientStream stream)
+    {
+        Http2ClientConnection connection = availableConnection();
+        if (connection == null && connections.size() < factory.http2MaximumConnections)
+        {
+            connection = newConnection(stream.traceId());
+        }
+
+        if (connection != null)
+        {
+            open(connection, stream);
+        }
+        else if (queuedStreams.size() < factory.maximumQueuedRequestsPerRoute)
+        {
+            stream.queuedAt(System.nanoTime());
+            queuedStreams.add(stream);
+            factory.enqueues.getAsLong();
+        }
+        else
+        {
+            return false;
+        }
+
+        updateMetrics();
+        return true;
+    }
+
+    int queueDepth()
+    {
+        return queuedStreams.size();
+    }
+
+    void cancel(
+        Http2ClientStream stream)
+    {
+        if (queuedStreams.remove(stream))
+        {
+            updateMetrics();
+        }
+    }
+
+    /*
+     * Opens queued streams on a connection that allows more
+     */
+    void onCapacity(
+        Http2ClientConnection connection)
+    {
+        while (!queuedStreams.isEmpty() && connection.isAvailable())
+        {
+            final Http2ClientStream stream = queuedStreams.poll();
+            factory.dequeues.getAsLong();
+            metrics.requestDequeued(System.nanoTime() - stream.queuedAt());
+            open(connection, stream);
+        }
+        updateMetrics();
+    }
+
+    /*
+     * Forgets a connection that can carry no more streams, opening another for queued streams
+     */
+    void onClosed(
+        Http2ClientConnection connection)
+    {
+        if (connections.remove(connection))
+        {
+            metrics.connectionClosed(connection.streamsOpened);
+            if (!queuedStreams.isEmpty() && connections.size() < factory.http2MaximumConnections)
+            {
+                onCapacity(newConnection(queuedStreams.peek().traceId()));
+            }
+            updateMetrics();
+        }
+    }
+
+    private Http2ClientConnection availableConnection()
+    {
+        Http2ClientConnection available = null;
+        for (int i = 0; i < connections.size(); i++)
+        {
+            final Http2ClientConnection connection = connections.get(i);
+            if (connection.isAvailable() && (available == null || connection.streams.size() < available.streams.size()))
+            {
+                available = connection;
+            }
+        }
+        return available;
+    }
+
+    private Http2ClientConnection newConnection(
+        long traceId)
+    {
+        final Http2ClientConnection connection = new Http2ClientConnection(factory, this, connectName, connectRef, traceId);
+        connections.add(connection);
+        connection.onBegin();
+        return connection;
+    }
+
+    private void open(
+        Http2ClientConnection connection,
+        Http2ClientStream stream)
+    {
+        metrics.connectionAcquired(connection.streamsOpened);
+        connection.open(stream);
+    }
+
+    private void updateMetrics()
+    {
+        metrics.update(connections.size(), 0, queuedStreams.size());
+    }
+}
@@ -0,0 +1,660 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.CANCEL;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PROTOCOL_ERROR;
+
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+import org.reaktivity.nukleus.http.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+
+/**
+ * An accept stream of a client route speaking HTTP/2 to its target, sent as a stream of an
+ * {@link Http2ClientConnection} once the {@link Http2ClientPool} finds a connection the server allows it on.
+ * <p>
+ * The request headers become a HEADERS frame and each DATA frame of the request one DATA frame, granted window
+ * within the send window of the stream by the connection. The receive window of the stream follows the window of the
+ * accept reply, so the server only sends what the accept reply can accept.
+ */
+final class Http2ClientStream extends Http2Stream implements MessageConsumer
+{
+    private enum RequestState
+    {
+        BEFORE_BEGIN, QUEUED, OPEN, CLOSED
+    }
+
+    private enum ResponseState
+    {
+        PENDING, OPEN, CLOSED
+    }
+
+    private final ClientStreamFactory factory;
+    private final Http2ClientPool pool;
+    private final MessageConsumer acceptThrottle;
+    private final long acceptId;
+    private final long acceptRef;
+    private final String acceptName;
+    private final long acceptCorrelationId;
+    private final String connectName;
+    private final long connectRef;
+    private final MessageConsumer onAcceptReplyThrottle;
+    private final Runnable onTimeout;
+
+    private int headersSlot = NO_SLOT; // holds the begin extension until the stream is opened
+    private int headersLimit;
+    private RequestState requestState;
+    private ResponseState responseState;
+    private Http2ClientConnection connection;
+    private MessageConsumer acceptReply;
+    private long acceptReplyId;
+    private int replyBudget;
+    private int replyPadding;
+    private boolean requestEnded;
+    private String method;
+    private AccessLogRecord accessLogRecord;
+    private long traceId;
+    private long queuedAt;
+    private long timerId = TimerWheel.NO_TIMER; // while queued for a connection
+
+    Http2ClientStream(
+        ClientStreamFactory factory,
+        Http2ClientPool pool,
+        MessageConsumer acceptThrottle,
+        long acceptId,
+        long traceId,
+        long acceptRef,
+        String acceptName,
+        long acceptCorrelationId,
+        String connectName,
+        long connectRef)
+    {
+        super(0, 0, 0);
+        this.factory = factory;
+        this.pool = pool;
+        this.acceptThrottle = acceptThrottle;
+        this.acceptId = acceptId;
+        this.traceId = traceId;
+        this.acceptRef = acceptRef;
+        this.acceptName = acceptName;
+        this.acceptCorrelationId = acceptCorrelationId;
+        this.connectName = connectName;
+        this.connectRef = connectRef;
+        this.requestState = RequestState.BEFORE_BEGIN;
+        this.responseState = ResponseState.PENDING;
+        this.onAcceptReplyThrottle = this::onAcceptReplyThrottle;
+        this.onTimeout = factory.timers != null ? this::onTimeout : null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[streamId=%d, request=%s, response=%s, sendWindow=%d, receiveWindow=%d]",
+                getClass().getSimpleName(), streamId, requestState, responseState, sendWindow, receiveWindow);
+    }
+
+    @Override
+    Http2ClientConnection connection()
+    {
+        return connection;
+    }
+
+    @Override
+    boolean isReceiving()
+    {
+        return responseState != ResponseState.CLOSED;
+    }
+
+    @Override
+    boolean isForwarding()
+    {
+        return responseState == ResponseState.OPEN;
+    }
+
+    @Override
+    int writable()
+    {
+        return Math.max(replyBudget - replyPadding, 0);
+    }
+
+    @Override
+    boolean isSending()
+    {
+        return requestState == RequestState.OPEN;
+    }
+
+    long traceId()
+    {
+        return traceId;
+    }
+
+    long queuedAt()
+    {
+        return queuedAt;
+    }
+
+    void queuedAt(
+        long timestamp)
+    {
+        this.queuedAt = timestamp;
+    }
+
+    @Override
+    public void accept(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            onRequestBegin(factory.beginRO.wrap(buffer, index, index + length));
+            break;
+        case DataFW.TYPE_ID:
+            onRequestData(factory.dataRO.wrap(buffer, index, index + length));
+            break;
+        case EndFW.TYPE_ID:
+            traceId = factory.endRO.wrap(buffer, index, index + length).trace();
+            onRequestEnd();
+            break;
+        case AbortFW.TYPE_ID:
+            traceId = factory.abortRO.wrap(buffer, index, index + length).trace();
+            onRequestAbort();
+            break;
+        default:
+            final FrameFW frame = factory.frameRO.wrap(buffer, index, index + length);
+            factory.writer.doReset(acceptThrottle, frame.streamId(), frame.trace());
+            break;
+        }
+    }
+
+    private void onRequestBegin(
+        BeginFW begin)
+    {
+        // count all requests
+        factory.countRequests.getAsLong();
+        traceId = begin.trace();
+        final OctetsFW extension = begin.extension();
+        if (extension.sizeof() > 0)
+        {
+            method = factory.http2RequestHead.method(headers(extension.buffer(), extension.offset(), extension.limit()));
+        }
+        if (factory.events != null)
+        {
+            factory.events.requestReceived(HttpEvents.CLIENT, acceptRef, traceId, method, extension.sizeof());
+        }
+
+        requestState = RequestState.QUEUED;
+        if (!holdHeaders(extension) || !pool.acquire(this))
+        {
+            // no slot to hold the request headers, or no connection allows another stream and no space in the queue
+            releaseHeadersSlot();
+            requestState = RequestState.CLOSED;
+            respond(ClientStreamFactory.SERVICE_UNAVAILABLE_HEADERS);
+            factory.countRequestsRejected.getAsLong();
+        }
+        else if (connection == null)
+        {
+            if (factory.queueTimeout > 0)
+            {
+                timerId = factory.timers.schedule(factory.queueTimeout, onTimeout);
+            }
+            if (factory.events != null)
+            {
+                factory.events.requestQueued(HttpEvents.CLIENT, acceptRef, traceId, pool.queueDepth());
+            }
+        }
+    }
+
+    /*
+     * Sends the request headers once the stream is opened on a connection, ending the stream as well when the
+     * request already ended
+     */
+    void onOpen(
+        Http2ClientConnection connection)
+    {
+        this.connection = connection;
+        if (timerId != TimerWheel.NO_TIMER)
+        {
+            timerId = factory.timers.cancel(timerId);
+        }
+
+        final int length = headersLimit > 0 ?
+                factory.http2RequestHead.encode(headers(factory.bufferPool.buffer(headersSlot), 0, headersLimit)) : 0;
+        releaseHeadersSlot();
+        if (length == -1)
+        {
+            // TODO: diagnostics (reset reason?)
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
+            closeStream();
+        }
+        else
+        {
+            accessLogRecord = factory.newAccessLogRecord();
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.requestBegin(acceptRef, traceId, method, length);
+            }
+            if (factory.events != null)
+            {
+                factory.events.requestRouted(HttpEvents.CLIENT, acceptRef, traceId, connectName, connectRef);
+            }
+
+            connection.traceId = traceId;
+            connection.writeHeaders(streamId, factory.http2Codec.block, length, requestEnded);
+            if (requestEnded)
+            {
+                requestState = RequestState.CLOSED;
+                if (accessLogRecord != null)
+                {
+                    accessLogRecord.requestEnd();
+                }
+            }
+            else
+            {
+                requestState = RequestState.OPEN;
+                connection.creditStreams();
+            }
+        }
+    }
+
+    /*
+     * Keeps the begin extension in a slot until the stream is opened, promoted to a large slot when it does not fit
+     * a small slot
+     */
+    private boolean holdHeaders(
+        OctetsFW extension)
+    {
+        final int length = extension.sizeof();
+        if (length > 0)
+        {
+            headersSlot = factory.bufferPool.acquire(acceptId);
+            if (headersSlot != NO_SLOT && length > factory.bufferPool.slotCapacity(headersSlot))
+            {
+                final int promoted = length <= factory.maximumHeadersSize ?
+                        factory.bufferPool.promote(headersSlot, acceptId, 0, 0) : NO_SLOT;
+                if (promoted == NO_SLOT)
+                {
+                    factory.bufferPool.release(headersSlot);
+                }
+                headersSlot = promoted;
+            }
+
+            if (headersSlot == NO_SLOT)
+            {
+                factory.slots.failed();
+            }
+            else
+            {
+                factory.slots.acquired(BufferSlotMetrics.HEADERS);
+                factory.bufferPool.buffer(headersSlot).putBytes(0, extension.buffer(), extension.offset(), length);
+                headersLimit = length;
+            }
+        }
+        return length == 0 || headersSlot != NO_SLOT;
+    }
+
+    private void releaseHeadersSlot()
+    {
+        if (headersSlot != NO_SLOT)
+        {
+            factory.bufferPool.release(headersSlot);
+            factory.slots.released(BufferSlotMetrics.HEADERS);
+            headersSlot = NO_SLOT;
+        }
+        headersLimit = 0;
+    }
+
+    private ListFW<HttpHeaderFW> headers(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return factory.beginExRO.wrap(buffer, offset, limit).headers();
+    }
+
+    private void onRequestData(
+        DataFW data)
+    {
+        traceId = data.trace();
+        sendBudget -= data.length() + data.padding();
+
+        if (requestState != RequestState.OPEN || sendBudget < 0)
+        {
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
+            if (requestState == RequestState.OPEN)
+            {
+                requestState = RequestState.CLOSED;
+                connection.resetStream(streamId, CANCEL);
+            }
+        }
+        else
+        {
+            final OctetsFW payload = data.payload();
+            final int payloadLength = payload.sizeof();
+            sendWindow -= payloadLength;
+            connection.traceId = traceId;
+            connection.writeData(streamId, payload.buffer(), payload.offset(), payloadLength, false);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.requestData(payloadLength);
+            }
+            connection.creditStreams();
+        }
+    }
+
+    private void onRequestEnd()
+    {
+        if (requestState == RequestState.QUEUED)
+        {
+            // ends the stream with the request headers
+            requestEnded = true;
+        }
+        else if (requestState == RequestState.OPEN)
+        {
+            requestState = RequestState.CLOSED;
+            connection.traceId = traceId;
+            connection.writeData(streamId, factory.http2Codec.block, 0, 0, true);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.requestEnd();
+            }
+        }
+    }
+
+    private void onRequestAbort()
+    {
+        if (factory.events != null)
+        {
+            factory.events.streamAborted(HttpEvents.CLIENT, acceptRef, traceId, acceptId);
+        }
+
+        if (requestState == RequestState.QUEUED)
+        {
+            pool.cancel(this);
+            if (timerId != TimerWheel.NO_TIMER)
+            {
+                timerId = factory.timers.cancel(timerId);
+            }
+            releaseHeadersSlot();
+            requestState = RequestState.CLOSED;
+            responseState = ResponseState.CLOSED;
+        }
+        else if (requestState == RequestState.OPEN)
+        {
+            requestState = RequestState.CLOSED;
+            if (responseState == ResponseState.OPEN)
+            {
+                factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
+            }
+            connection.writeRstStream(streamId, CANCEL);
+            closeStream();
+        }
+    }
+
+    /*
+     * Answers with 504 when still queued for a connection
+     */
+    private void onTimeout()
+    {
+        timerId = TimerWheel.NO_TIMER;
+        if (requestState == RequestState.QUEUED)
+        {
+            factory.timeoutsExpired.increment();
+            pool.cancel(this);
+            releaseHeadersSlot();
+            if (!requestEnded)
+            {
+                factory.writer.doReset(acceptThrottle, acceptId, traceId);
+            }
+            requestState = RequestState.CLOSED;
+            respond(ClientStreamFactory.GATEWAY_TIMEOUT_HEADERS);
+        }
+    }
+
+    /*
+     * Begins the response with the final response headers, skipping informational responses
+     */
+    void onHeaders(
+        Map<String, String> responseHeaders,
+        int length,
+        boolean endStream)
+    {
+        if (responseState == ResponseState.OPEN)
+        {
+            // trailers end the response, then are dropped
+            if (endStream)
+            {
+                onEnd();
+            }
+            else
+            {
+                connection.resetStream(streamId, PROTOCOL_ERROR);
+            }
+        }
+        else
+        {
+            final String status = responseHeaders.get(":status");
+            if (status == null)
+            {
+                connection.resetStream(streamId, PROTOCOL_ERROR);
+            }
+            else if (!status.startsWith("1") || endStream)
+            {
+                responseState = ResponseState.OPEN;
+                acceptReply = factory.router.supplyTarget(acceptName);
+                acceptReplyId = factory.supplyStreamId.getAsLong();
+                factory.writer.doHttpBegin(acceptReply, acceptReplyId, connection.traceId, 0L, acceptCorrelationId,
+                        responseHeaders);
+                factory.router.setThrottle(acceptName, acceptReplyId, onAcceptReplyThrottle);
+                if (accessLogRecord != null)
+                {
+                    accessLogRecord.responseBegin(status, length);
+                }
+                if (factory.events != null)
+                {
+                    factory.events.responseBegun(HttpEvents.CLIENT, acceptRef, connection.traceId,
+                            accessLogRecord.status(), length);
+                }
+
+                // count all responses
+                factory.countResponses.getAsLong();
+
+                if (endStream)
+                {
+                    onEnd();
+                }
+            }
+        }
+    }
+
+    @Override
+    void onData(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (responseState == ResponseState.OPEN)
+        {
+            replyBudget -= length + replyPadding;
+            factory.writer.doHttpData(acceptReply, acceptReplyId, connection.traceId, replyPadding, buffer, offset, length);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.responseData(length);
+            }
+        }
+    }
+
+    @Override
+    void onEnd()
+    {
+        if (responseState == ResponseState.OPEN)
+        {
+            responseState = ResponseState.CLOSED;
+            factory.writer.doHttpEnd(acceptReply, acceptReplyId, connection.traceId);
+            if (accessLogRecord != null)
+            {
+                factory.exchangeComplete(accessLogRecord);
+            }
+
+            if (requestState == RequestState.OPEN)
+            {
+                // the server need not receive the rest of the request
+                requestState = RequestState.CLOSED;
+                factory.writer.doReset(acceptThrottle, acceptId, connection.traceId);
+                connection.writeRstStream(streamId, CANCEL);
+            }
+            closeStream();
+        }
+        else
+        {
+            // the stream ended without response headers
+            connection.resetStream(streamId, PROTOCOL_ERROR);
+        }
+    }
+
+    @Override
+    void onReset(
+        int errorCode)
+    {
+        abort();
+    }
+
+    /*
+     * Answers with 503 when the response has not begun, the request having been refused or abandoned
+     */
+    @Override
+    void abort()
+    {
+        if (requestState == RequestState.OPEN)
+        {
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
+        }
+        releaseHeadersSlot();
+        requestState = RequestState.CLOSED;
+
+        if (responseState == ResponseState.PENDING)
+        {
+            // count abandoned requests
+            factory.countRequestsAbandoned.getAsLong();
+            respond(ClientStreamFactory.SERVICE_UNAVAILABLE_HEADERS);
+        }
+        else if (responseState == ResponseState.OPEN)
+        {
+            // count abandoned responses
+            factory.countResponsesAbandoned.getAsLong();
+            factory.writer.doAbort(acceptReply, acceptReplyId, traceId);
+        }
+        closeStream();
+    }
+
+    @Override
+    void creditSend(
+        int credit,
+        int padding)
+    {
+        sendBudget += credit;
+        factory.writer.doWindow(acceptThrottle, acceptId, traceId, credit, padding);
+    }
+
+    private void onAcceptReplyThrottle(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+            replyBudget += window.credit();
+            replyPadding = window.padding();
+            if (responseState == ResponseState.OPEN)
+            {
+                connection.onStreamWritable(this);
+                updateReceiveWindow();
+            }
+            break;
+        case ResetFW.TYPE_ID:
+            final ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
+            onAcceptReplyReset(reset.trace());
+            break;
+        default:
+            // ignore
+            break;
+        }
+    }
+
+    private void onAcceptReplyReset(
+        long traceId)
+    {
+        if (factory.events != null)
+        {
+            factory.events.streamReset(HttpEvents.CLIENT, acceptRef, traceId, acceptReplyId);
+        }
+
+        if (responseState == ResponseState.OPEN)
+        {
+            responseState = ResponseState.CLOSED;
+            if (requestState == RequestState.OPEN)
+            {
+                requestState = RequestState.CLOSED;
+                factory.writer.doReset(acceptThrottle, acceptId, traceId);
+            }
+            connection.writeRstStream(streamId, CANCEL);
+            closeStream();
+        }
+    }
+
+    private void respond(
+        Map<String, String> responseHeaders)
+    {
+        // count all responses
+        factory.countResponses.getAsLong();
+
+        final MessageConsumer reply = factory.router.supplyTarget(acceptName);
+        final long replyId = factory.supplyStreamId.getAsLong();
+        factory.writer.doHttpBegin(reply, replyId, traceId, 0L, acceptCorrelationId, responseHeaders);
+        factory.writer.doHttpEnd(reply, replyId, traceId);
+        responseState = ResponseState.CLOSED;
+    }
+
+    private void closeStream()
+    {
+        requestState = RequestState.CLOSED;
+        responseState = ResponseState.CLOSED;
+        if (connection != null)
+        {
+            connection.onStreamClosed(this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.DEFAULT_MAX_FRAME_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FRAME_HEADER_LENGTH;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.http.internal.hpack.HpackEncoder;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+
+/**
+ * The flyweights, HPACK encoder and scratch buffers shared by the HTTP/2 connections of a stream factory, each buffer
+ * only used while a single frame or header block is encoded or decoded.
+ */
+final class Http2Codec
+{
+    static final int MAXIMUM_HEADER_NAME_BYTES = 255;
+
+    final FrameFW frameRO = new FrameFW();
+    final DataFW dataRO = new DataFW();
+    final WindowFW windowRO = new WindowFW();
+
+    final HpackEncoder encoder;
+    final MutableDirectBuffer frame;
+    final MutableDirectBuffer block;
+    final MutableDirectBuffer name;
+    final MutableDirectBuffer value;
+    final MutableDirectBuffer scratch;
+
+    Http2Codec(
+        int maximumBlockSize)
+    {
+        this.encoder = new HpackEncoder();
+        this.frame = new UnsafeBuffer(new byte[FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE]);
+        this.block = new UnsafeBuffer(new byte[maximumBlockSize]);
+        this.name = new UnsafeBuffer(new byte[MAXIMUM_HEADER_NAME_BYTES]);
+        this.value = new UnsafeBuffer(new byte[maximumBlockSize]);
+        this.scratch = new UnsafeBuffer(new byte[2 * maximumBlockSize]);
+    }
+}
@@ -0,0 +1,1447 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.CONTINUATION;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.DATA;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.DEFAULT_MAX_FRAME_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.DEFAULT_WINDOW_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.ENHANCE_YOUR_CALM;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_ACK;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_END_HEADERS;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_END_STREAM;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_PADDED;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_PRIORITY;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLOW_CONTROL_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FRAME_HEADER_LENGTH;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FRAME_SIZE_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.GOAWAY;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.HEADERS;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.MAXIMUM_MAX_FRAME_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.MAXIMUM_WINDOW_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.NO_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PING;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PREFACE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PRIORITY;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PROTOCOL_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PUSH_PROMISE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.RST_STREAM;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS_ENABLE_PUSH;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS_INITIAL_WINDOW_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS_MAX_CONCURRENT_STREAMS;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS_MAX_FRAME_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTING_LENGTH;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.STREAM_CLOSED;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.WINDOW_UPDATE;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.hpack.HpackContext;
+import org.reaktivity.nukleus.http.internal.hpack.HpackDecoder;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
+import org.reaktivity.nukleus.http.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.http.internal.util.TieredBufferPool;
+
+/**
+ * An HTTP/2 connection, RFC 7540, decoding frames from the peer received on a source stream and writing frames to
+ * the peer on a sink stream, for either role.
+ * <p>
+ * Frames other than DATA are decoded once complete in the input slot, while DATA payload is forwarded as it arrives,
+ * stalling the input when the {@link Http2Stream} it belongs to has nowhere to write. Frames are written to the sink
+ * while it has window and are otherwise queued, in order, in the output slot. Header blocks are left to the role.
+ */
+abstract class Http2Connection<S extends Http2Stream> implements MessageConsumer
+{
+    // streams start with no window after our settings are acknowledged, opened as their targets grant window
+    static final int LOCAL_INITIAL_WINDOW_SIZE = 0;
+
+    private static final DirectBuffer[] CONNECTION_SPECIFIC_NAMES =
+    {
+        new UnsafeBuffer("connection".getBytes(US_ASCII)),
+        new UnsafeBuffer("keep-alive".getBytes(US_ASCII)),
+        new UnsafeBuffer("proxy-connection".getBytes(US_ASCII)),
+        new UnsafeBuffer("transfer-encoding".getBytes(US_ASCII)),
+        new UnsafeBuffer("upgrade".getBytes(US_ASCII))
+    };
+
+    private enum DecoderState
+    {
+        PREFACE, FRAME_HEADER, DATA_PAYLOAD, DATA_PADDING, CLOSED
+    }
+
+    final MessageWriter writer;
+    final Http2Codec codec;
+    final HpackDecoder decoder;
+    final Int2ObjectHashMap<S> streams;
+    final List<S> streamList;
+
+    private final TieredBufferPool bufferPool;
+    private final BufferSlotMetrics slots;
+    private final MutableDirectBuffer temporarySlot;
+    private final MessageConsumer sink;
+    private final long sinkId;
+    private final Slot input;
+    private final Slot output;
+    private final Slot block;
+
+    private MessageConsumer sourceThrottle;
+    private long sourceId;
+    private DecoderState decoderState;
+    private boolean decoding;
+    private int sourceBudget;
+    private int inputNeeded;
+    private int blockStreamId;
+    private int blockFlags;
+    private int sinkBudget;
+    private int sinkPadding;
+    private int sendWindow;
+    private int receiveWindow;
+    private int receiveConsumed;
+    private boolean settingsAcknowledged;
+    private S dataStream;
+    private int dataFlags;
+    private int dataLength;
+    private int dataRemaining;
+    private int paddingRemaining;
+    private boolean sourceEnded;
+    private boolean sinkEnding;
+    private boolean sinkEnded;
+    private boolean closed;
+    private int creditIndex;
+
+    int initialSendWindow;
+    int initialReceiveWindow;
+    int peerMaxConcurrentStreams;
+    int lastStreamId;
+    boolean goaway;
+    long traceId;
+
+    Http2Connection(
+        MessageWriter writer,
+        TieredBufferPool bufferPool,
+        BufferSlotMetrics slots,
+        MutableDirectBuffer temporarySlot,
+        Http2Codec codec,
+        MessageConsumer sink,
+        long sinkId,
+        int sinkBudget,
+        int sinkPadding,
+        boolean awaitPreface,
+        int initialReceiveWindow,
+        long traceId)
+    {
+        this.writer = writer;
+        this.bufferPool = bufferPool;
+        this.slots = slots;
+        this.temporarySlot = temporarySlot;
+        this.codec = codec;
+        this.sink = sink;
+        this.sinkId = sinkId;
+        this.sinkBudget = sinkBudget;
+        this.sinkPadding = sinkPadding;
+        this.traceId = traceId;
+        this.decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE, codec.scratch);
+        this.streams = new Int2ObjectHashMap<>();
+        this.streamList = new ArrayList<>();
+        this.input = new Slot(BufferSlotMetrics.DATA);
+        this.output = new Slot(BufferSlotMetrics.DATA);
+        this.block = new Slot(BufferSlotMetrics.HEADERS);
+        this.decoderState = awaitPreface ? DecoderState.PREFACE : DecoderState.FRAME_HEADER;
+        this.sendWindow = DEFAULT_WINDOW_SIZE;
+        this.receiveWindow = DEFAULT_WINDOW_SIZE;
+        this.initialSendWindow = DEFAULT_WINDOW_SIZE;
+        this.initialReceiveWindow = initialReceiveWindow;
+        this.peerMaxConcurrentStreams = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[sinkId=%016x, streams=%d, sendWindow=%d, sinkBudget=%d, queued=%d]",
+                getClass().getSimpleName(), sinkId, streams.size(), sendWindow, sinkBudget, output.length());
+    }
+
+    /*
+     * Decodes the peer header block of a stream, once all its fragments are received
+     */
+    abstract void onHeaderBlock(
+        int streamId,
+        int flags,
+        DirectBuffer buffer,
+        int offset,
+        int length);
+
+    /*
+     * Notifies that the peer will process no stream above the given identifier
+     */
+    void onPeerGoaway(
+        int lastProcessedId)
+    {
+    }
+
+    /*
+     * Notifies that a stream closed or the peer settings changed, so more streams may be opened
+     */
+    void onStreamCapacity()
+    {
+    }
+
+    /*
+     * Notifies, once, that the sink is ending or was aborted, so the connection can carry no more streams
+     */
+    void onClosed()
+    {
+    }
+
+    /*
+     * Sets the source of frames from the peer, with the window already granted to it
+     */
+    void setSource(
+        MessageConsumer throttle,
+        long streamId,
+        int budget)
+    {
+        this.sourceThrottle = throttle;
+        this.sourceId = streamId;
+        this.sourceBudget = budget;
+    }
+
+    boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public void accept(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            traceId = codec.frameRO.wrap(buffer, index, index + length).trace();
+            ensureSourceWindow();
+            break;
+        case DataFW.TYPE_ID:
+            onSourceData(codec.dataRO.wrap(buffer, index, index + length));
+            break;
+        case EndFW.TYPE_ID:
+            traceId = codec.frameRO.wrap(buffer, index, index + length).trace();
+            onSourceEnd();
+            break;
+        case AbortFW.TYPE_ID:
+            traceId = codec.frameRO.wrap(buffer, index, index + length).trace();
+            onSourceAbort();
+            break;
+        case WindowFW.TYPE_ID:
+            onSinkWindow(codec.windowRO.wrap(buffer, index, index + length));
+            break;
+        case ResetFW.TYPE_ID:
+            traceId = codec.frameRO.wrap(buffer, index, index + length).trace();
+            onSinkReset();
+            break;
+        default:
+            final FrameFW frame = codec.frameRO.wrap(buffer, index, index + length);
+            writer.doReset(sourceThrottle, frame.streamId(), frame.trace());
+            break;
+        }
+    }
+
+    private void onSourceData(
+        DataFW data)
+    {
+        traceId = data.trace();
+        sourceBudget -= data.length() + data.padding();
+
+        if (sourceBudget < 0)
+        {
+            resetSource();
+            abortStreams();
+            closeSource();
+        }
+        else if (decoderState != DecoderState.CLOSED)
+        {
+            final OctetsFW payload = data.payload();
+            onSourceData(payload.buffer(), payload.offset(), payload.limit());
+        }
+    }
+
+    /*
+     * Decodes bytes received from the peer, including those handed over by another stream
+     */
+    void onSourceData(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        if (input.isEmpty())
+        {
+            final int progress = decode(buffer, offset, limit);
+            if (progress < limit && decoderState != DecoderState.CLOSED && !input.append(buffer, progress, limit))
+            {
+                connectionError(ENHANCE_YOUR_CALM);
+            }
+        }
+        else if (input.append(buffer, offset, limit))
+        {
+            decodeInput();
+        }
+        else
+        {
+            connectionError(ENHANCE_YOUR_CALM);
+        }
+        ensureSourceWindow();
+    }
+
+    void onSourceEnd()
+    {
+        sourceEnded = true;
+        if (decoderState != DecoderState.CLOSED)
+        {
+            decoderState = DecoderState.CLOSED;
+            input.release();
+            block.release();
+            for (int i = streamList.size() - 1; i >= 0; i--)
+            {
+                final S stream = streamList.get(i);
+                if (stream.isReceiving())
+                {
+                    // the stream can no longer complete
+                    stream.abort();
+                }
+            }
+        }
+        closeIfDone();
+    }
+
+    private void onSourceAbort()
+    {
+        abortStreams();
+        closeSource();
+        if (!sinkEnded)
+        {
+            sinkEnded = true;
+            writer.doAbort(sink, sinkId, traceId);
+        }
+        notifyClosed();
+    }
+
+    private void onSinkWindow(
+        WindowFW window)
+    {
+        traceId = window.trace();
+        sinkBudget += window.credit();
+        sinkPadding = window.padding();
+        flush();
+        creditStreams();
+    }
+
+    private void onSinkReset()
+    {
+        sinkEnded = true;
+        output.release();
+        abortStreams();
+        if (decoderState != DecoderState.CLOSED)
+        {
+            resetSource();
+        }
+        closeSource();
+        notifyClosed();
+    }
+
+    private void decodeInput()
+    {
+        if (!decoding && !input.isEmpty())
+        {
+            final int progress = decode(input.buffer(), input.offset, input.limit);
+            input.consume(progress);
+        }
+    }
+
+    private int decode(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        decoding = true;
+        boolean progress = true;
+        while (progress && decoderState != DecoderState.CLOSED)
+        {
+            final int previousOffset = offset;
+            final DecoderState previousState = decoderState;
+            switch (decoderState)
+            {
+            case PREFACE:
+                offset = decodePreface(buffer, offset, limit);
+                break;
+            case FRAME_HEADER:
+                offset = decodeFrame(buffer, offset, limit);
+                break;
+            case DATA_PAYLOAD:
+                offset = decodeDataPayload(buffer, offset, limit);
+                break;
+            case DATA_PADDING:
+                offset = decodeDataPadding(buffer, offset, limit);
+                break;
+            default:
+                break;
+            }
+            progress = offset != previousOffset || decoderState != previousState;
+        }
+        decoding = false;
+        return offset;
+    }
+
+    private int decodePreface(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        final int matched = Http2Frames.prefaceMatch(buffer, offset, limit);
+        if (matched == PREFACE.capacity())
+        {
+            decoderState = DecoderState.FRAME_HEADER;
+            offset += matched;
+        }
+        else if (matched < limit - offset)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        return offset;
+    }
+
+    private int decodeFrame(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        int progress = offset;
+        if (limit - offset >= FRAME_HEADER_LENGTH)
+        {
+            final int length = Http2Frames.frameLength(buffer, offset);
+            final int type = Http2Frames.frameType(buffer, offset);
+            final int flags = Http2Frames.frameFlags(buffer, offset);
+            final int streamId = Http2Frames.frameStreamId(buffer, offset);
+
+            if (length > DEFAULT_MAX_FRAME_SIZE)
+            {
+                connectionError(FRAME_SIZE_ERROR);
+            }
+            else if (blockStreamId != 0 ? type != CONTINUATION || streamId != blockStreamId : type == CONTINUATION)
+            {
+                // nothing may interleave the fragments of a header block
+                connectionError(PROTOCOL_ERROR);
+            }
+            else if (type == DATA)
+            {
+                progress = decodeDataHeader(buffer, offset, limit, length, flags, streamId);
+            }
+            else if (limit - offset < FRAME_HEADER_LENGTH + length)
+            {
+                inputNeeded = FRAME_HEADER_LENGTH + length;
+            }
+            else
+            {
+                inputNeeded = 0;
+                progress = offset + FRAME_HEADER_LENGTH + length;
+                onFrame(type, flags, streamId, buffer, offset + FRAME_HEADER_LENGTH, length);
+            }
+        }
+        return progress;
+    }
+
+    private int decodeDataHeader(
+        DirectBuffer buffer,
+        int offset,
+        int limit,
+        int length,
+        int flags,
+        int streamId)
+    {
+        final boolean padded = (flags & FLAG_PADDED) != 0;
+        final int headerLength = FRAME_HEADER_LENGTH + (padded ? 1 : 0);
+        int progress = offset;
+
+        if (limit - offset >= headerLength)
+        {
+            final int padLength = padded ? buffer.getByte(offset + FRAME_HEADER_LENGTH) & 0xff : 0;
+            final S stream = streams.get(streamId);
+
+            receiveWindow -= length;
+
+            if (streamId == 0 || streamId > lastStreamId || padded && padLength >= length)
+            {
+                connectionError(PROTOCOL_ERROR);
+            }
+            else if (receiveWindow < 0)
+            {
+                connectionError(FLOW_CONTROL_ERROR);
+            }
+            else
+            {
+                dataStream = null;
+                if (stream == null)
+                {
+                    // the stream was closed by us, so its frames in flight are discarded
+                }
+                else if (!stream.isReceiving())
+                {
+                    resetStream(streamId, STREAM_CLOSED);
+                }
+                else if ((stream.receiveWindow -= length) < 0)
+                {
+                    resetStream(streamId, FLOW_CONTROL_ERROR);
+                }
+                else
+                {
+                    dataStream = stream;
+                }
+
+                dataFlags = flags;
+                dataLength = length;
+                dataRemaining = length - (padded ? 1 + padLength : 0);
+                paddingRemaining = padLength;
+                decoderState = DecoderState.DATA_PAYLOAD;
+                progress = offset + headerLength;
+            }
+        }
+        return progress;
+    }
+
+    private int decodeDataPayload(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        int length = Math.min(limit - offset, dataRemaining);
+        if (dataStream != null && dataStream.isForwarding())
+        {
+            length = Math.min(length, dataStream.writable());
+        }
+
+        if (length > 0)
+        {
+            if (dataStream != null)
+            {
+                dataStream.onData(buffer, offset, length);
+            }
+            dataRemaining -= length;
+        }
+
+        if (dataRemaining == 0)
+        {
+            decoderState = DecoderState.DATA_PADDING;
+        }
+        return offset + length;
+    }
+
+    private int decodeDataPadding(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        final int length = Math.min(limit - offset, paddingRemaining);
+        paddingRemaining -= length;
+
+        if (paddingRemaining == 0)
+        {
+            decoderState = DecoderState.FRAME_HEADER;
+            onReceiveConsumed(dataLength);
+
+            final S stream = dataStream;
+            dataStream = null;
+            if (stream != null)
+            {
+                if ((dataFlags & FLAG_END_STREAM) != 0)
+                {
+                    stream.onEnd();
+                }
+                else
+                {
+                    stream.updateReceiveWindow();
+                }
+            }
+        }
+        return offset + length;
+    }
+
+    private void onFrame(
+        int type,
+        int flags,
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        switch (type)
+        {
+        case HEADERS:
+            onHeaders(flags, streamId, buffer, offset, length);
+            break;
+        case CONTINUATION:
+            onContinuation(flags, buffer, offset, length);
+            break;
+        case PRIORITY:
+            onPriority(streamId, length);
+            break;
+        case RST_STREAM:
+            onRstStream(streamId, buffer, offset, length);
+            break;
+        case SETTINGS:
+            onSettings(flags, streamId, buffer, offset, length);
+            break;
+        case PING:
+            onPing(flags, streamId, buffer, offset, length);
+            break;
+        case GOAWAY:
+            onGoaway(streamId, buffer, offset, length);
+            break;
+        case WINDOW_UPDATE:
+            onWindowUpdate(streamId, buffer, offset, length);
+            break;
+        case PUSH_PROMISE:
+            // clients cannot push, and push is never enabled for servers
+            connectionError(PROTOCOL_ERROR);
+            break;
+        default:
+            // unknown frame types are ignored
+            break;
+        }
+    }
+
+    private void onHeaders(
+        int flags,
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        int start = offset;
+        int end = offset + length;
+        if ((flags & FLAG_PADDED) != 0 && length > 0)
+        {
+            end -= buffer.getByte(start++) & 0xff;
+        }
+        if ((flags & FLAG_PRIORITY) != 0)
+        {
+            start += 5;
+        }
+
+        // all streams are initiated by the client, so have odd identifiers
+        if (streamId == 0 || (streamId & 0x01) == 0 || end < start || (flags & FLAG_PADDED) != 0 && length == 0)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if ((flags & FLAG_END_HEADERS) != 0)
+        {
+            onHeaderBlock(streamId, flags, buffer, start, end - start);
+        }
+        else if (block.append(buffer, start, end))
+        {
+            blockStreamId = streamId;
+            blockFlags = flags;
+        }
+        else
+        {
+            connectionError(ENHANCE_YOUR_CALM);
+        }
+    }
+
+    private void onContinuation(
+        int flags,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (!block.append(buffer, offset, offset + length))
+        {
+            connectionError(ENHANCE_YOUR_CALM);
+        }
+        else if ((flags & FLAG_END_HEADERS) != 0)
+        {
+            final int streamId = blockStreamId;
+            blockStreamId = 0;
+            onHeaderBlock(streamId, blockFlags, block.buffer(), block.offset, block.length());
+            block.release();
+        }
+    }
+
+    private void onPriority(
+        int streamId,
+        int length)
+    {
+        if (streamId == 0)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if (length != 5)
+        {
+            resetStream(streamId, FRAME_SIZE_ERROR);
+        }
+    }
+
+    private void onRstStream(
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (streamId == 0 || streamId > lastStreamId)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if (length != 4)
+        {
+            connectionError(FRAME_SIZE_ERROR);
+        }
+        else
+        {
+            final S stream = streams.get(streamId);
+            if (stream != null)
+            {
+                stream.onReset(buffer.getInt(offset, ByteOrder.BIG_ENDIAN));
+            }
+        }
+    }
+
+    private void onSettings(
+        int flags,
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (streamId != 0)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if ((flags & FLAG_ACK) != 0)
+        {
+            if (length != 0)
+            {
+                connectionError(FRAME_SIZE_ERROR);
+            }
+            else if (!settingsAcknowledged)
+            {
+                settingsAcknowledged = true;
+                final int delta = LOCAL_INITIAL_WINDOW_SIZE - initialReceiveWindow;
+                initialReceiveWindow = LOCAL_INITIAL_WINDOW_SIZE;
+                for (int i = streamList.size() - 1; delta != 0 && i >= 0; i--)
+                {
+                    final S stream = streamList.get(i);
+                    stream.receiveWindow += delta;
+                    stream.updateReceiveWindow();
+                }
+            }
+        }
+        else if (length % SETTING_LENGTH != 0)
+        {
+            connectionError(FRAME_SIZE_ERROR);
+        }
+        else if (applySettings(buffer, offset, length))
+        {
+            final MutableDirectBuffer frame = codec.frame;
+            final int limit = Http2Frames.putFrameHeader(frame, 0, 0, SETTINGS, FLAG_ACK, 0);
+            write(frame, 0, limit);
+            creditStreams();
+            onStreamCapacity();
+        }
+    }
+
+    /*
+     * Applies the settings of the peer, returning false after a connection error when they are invalid
+     */
+    boolean applySettings(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        boolean valid = true;
+        for (int index = offset; valid && index < offset + length; index += SETTING_LENGTH)
+        {
+            final int value = Http2Frames.settingValue(buffer, index);
+            switch (Http2Frames.settingIdentifier(buffer, index))
+            {
+            case SETTINGS_ENABLE_PUSH:
+                valid = value == 0 || value == 1;
+                if (!valid)
+                {
+                    connectionError(PROTOCOL_ERROR);
+                }
+                break;
+            case SETTINGS_MAX_CONCURRENT_STREAMS:
+                peerMaxConcurrentStreams = value;
+                break;
+            case SETTINGS_INITIAL_WINDOW_SIZE:
+                valid = value >= 0 && adjustSendWindows(value - initialSendWindow);
+                if (valid)
+                {
+                    initialSendWindow = value;
+                }
+                else
+                {
+                    connectionError(FLOW_CONTROL_ERROR);
+                }
+                break;
+            case SETTINGS_MAX_FRAME_SIZE:
+                // frames are never written larger than the default maximum
+                valid = value >= DEFAULT_MAX_FRAME_SIZE && value <= MAXIMUM_MAX_FRAME_SIZE;
+                if (!valid)
+                {
+                    connectionError(PROTOCOL_ERROR);
+                }
+                break;
+            default:
+                // the encoder never indexes, so the header table size is of no consequence
+                break;
+            }
+        }
+        return valid;
+    }
+
+    private boolean adjustSendWindows(
+        int delta)
+    {
+        boolean valid = true;
+        for (int i = 0; valid && i < streamList.size(); i++)
+        {
+            final S stream = streamList.get(i);
+            valid = (long) stream.sendWindow + delta <= MAXIMUM_WINDOW_SIZE;
+            stream.sendWindow += delta;
+        }
+        return valid;
+    }
+
+    private void onPing(
+        int flags,
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (streamId != 0)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if (length != 8)
+        {
+            connectionError(FRAME_SIZE_ERROR);
+        }
+        else if ((flags & FLAG_ACK) == 0)
+        {
+            final MutableDirectBuffer frame = codec.frame;
+            final int payloadAt = Http2Frames.putFrameHeader(frame, 0, length, PING, FLAG_ACK, 0);
+            frame.putBytes(payloadAt, buffer, offset, length);
+            write(frame, 0, payloadAt + length);
+        }
+    }
+
+    private void onGoaway(
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (streamId != 0)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else if (length < 8)
+        {
+            connectionError(FRAME_SIZE_ERROR);
+        }
+        else
+        {
+            // streams in progress complete, then the connection closes
+            goaway = true;
+            onPeerGoaway(buffer.getInt(offset, ByteOrder.BIG_ENDIAN) & 0x7fffffff);
+            closeIfDone();
+        }
+    }
+
+    private void onWindowUpdate(
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (length != 4)
+        {
+            connectionError(FRAME_SIZE_ERROR);
+        }
+        else
+        {
+            final int increment = buffer.getInt(offset, ByteOrder.BIG_ENDIAN) & 0x7fffffff;
+            if (streamId == 0)
+            {
+                if (increment == 0)
+                {
+                    connectionError(PROTOCOL_ERROR);
+                }
+                else if ((long) sendWindow + increment > MAXIMUM_WINDOW_SIZE)
+                {
+                    connectionError(FLOW_CONTROL_ERROR);
+                }
+                else
+                {
+                    sendWindow += increment;
+                    creditStreams();
+                }
+            }
+            else if (streamId > lastStreamId)
+            {
+                connectionError(PROTOCOL_ERROR);
+            }
+            else
+            {
+                final S stream = streams.get(streamId);
+                if (increment == 0)
+                {
+                    resetStream(streamId, PROTOCOL_ERROR);
+                }
+                else if (stream != null && (long) stream.sendWindow + increment > MAXIMUM_WINDOW_SIZE)
+                {
+                    resetStream(streamId, FLOW_CONTROL_ERROR);
+                }
+                else if (stream != null)
+                {
+                    stream.sendWindow += increment;
+                    creditStreams();
+                }
+            }
+        }
+    }
+
+    void addStream(
+        S stream)
+    {
+        streams.put(stream.streamId, stream);
+        streamList.add(stream);
+    }
+
+    /*
+     * Returns the bytes of the DATA frame in progress still to be received for the stream, already counted against
+     * its receive window
+     */
+    int pendingData(
+        Http2Stream stream)
+    {
+        return dataStream == stream ? dataRemaining + paddingRemaining : 0;
+    }
+
+    void onStreamClosed(
+        Http2Stream stream)
+    {
+        if (streams.remove(stream.streamId) != null)
+        {
+            streamList.remove(stream);
+            closeIfDone();
+            onStreamCapacity();
+        }
+    }
+
+    /*
+     * Resumes input stalled on a stream with nowhere to write
+     */
+    void onStreamWritable(
+        Http2Stream stream)
+    {
+        if (decoderState == DecoderState.DATA_PAYLOAD && dataStream == stream)
+        {
+            decodeInput();
+            ensureSourceWindow();
+        }
+    }
+
+    /*
+     * Closes the connection gracefully once the streams in progress complete, such as under load
+     */
+    void shutdown()
+    {
+        if (!goaway)
+        {
+            goaway = true;
+            writeGoaway(NO_ERROR);
+        }
+    }
+
+    void resetStream(
+        int streamId,
+        int errorCode)
+    {
+        writeRstStream(streamId, errorCode);
+        final S stream = streams.get(streamId);
+        if (stream != null)
+        {
+            stream.abort();
+        }
+    }
+
+    void connectionError(
+        int errorCode)
+    {
+        if (decoderState != DecoderState.CLOSED)
+        {
+            writeGoaway(errorCode);
+            abortStreams();
+            resetSource();
+            closeSource();
+        }
+    }
+
+    private void abortStreams()
+    {
+        for (int i = streamList.size() - 1; i >= 0; i--)
+        {
+            streamList.get(i).abort();
+        }
+    }
+
+    private void resetSource()
+    {
+        if (sourceThrottle != null)
+        {
+            writer.doReset(sourceThrottle, sourceId, traceId);
+        }
+    }
+
+    private void closeSource()
+    {
+        decoderState = DecoderState.CLOSED;
+        sourceEnded = true;
+        dataStream = null;
+        input.release();
+        block.release();
+        closeIfDone();
+    }
+
+    private void closeIfDone()
+    {
+        if ((sourceEnded || goaway) && streams.isEmpty() && !sinkEnding)
+        {
+            sinkEnding = true;
+            flush();
+            notifyClosed();
+        }
+    }
+
+    private void notifyClosed()
+    {
+        if (!closed)
+        {
+            closed = true;
+            onClosed();
+        }
+    }
+
+    private void ensureSourceWindow()
+    {
+        if (decoderState != DecoderState.CLOSED && sourceThrottle != null)
+        {
+            if (!input.isEmpty() && inputNeeded > input.capacity() && !input.reserve(inputNeeded))
+            {
+                connectionError(ENHANCE_YOUR_CALM);
+            }
+            else
+            {
+                final int credit = input.capacity() - input.length() - sourceBudget;
+                if (credit > 0)
+                {
+                    sourceBudget += credit;
+                    writer.doWindow(sourceThrottle, sourceId, traceId, credit, 0);
+                }
+            }
+        }
+    }
+
+    private void onReceiveConsumed(
+        int length)
+    {
+        receiveConsumed += length;
+        if (receiveConsumed >= DEFAULT_WINDOW_SIZE / 2 && !sourceEnded)
+        {
+            receiveWindow += receiveConsumed;
+            writeWindowUpdate(0, receiveConsumed);
+            receiveConsumed = 0;
+        }
+    }
+
+    /*
+     * Grants window to the nukleus streams sending DATA to the peer, within both the HTTP/2 send windows and the
+     * window of the sink not yet claimed by queued frames or window already granted. Each nukleus DATA frame becomes
+     * one HTTP/2 DATA frame, so streams are granted the frame header as padding and no more than the maximum frame size.
+     */
+    void creditStreams()
+    {
+        final int padding = FRAME_HEADER_LENGTH + sinkPadding;
+        final int count = streamList.size();
+
+        int available = sinkBudget - sinkPadding - output.length();
+        int availableData = sendWindow;
+        for (int i = 0; i < count; i++)
+        {
+            final int budget = streamList.get(i).sendBudget;
+            available -= budget;
+            availableData -= Math.max(budget - padding, 0);
+        }
+
+        for (int i = 0; i < count && available > padding && availableData > 0; i++)
+        {
+            final S stream = streamList.get((creditIndex + i) % count);
+            if (stream.isSending())
+            {
+                final int data = Math.max(stream.sendBudget - padding, 0);
+                final int limit = Math.min(Math.min(stream.sendWindow, DEFAULT_MAX_FRAME_SIZE), availableData + data);
+                final int credit = Math.min(limit + padding - stream.sendBudget, available);
+                if (credit > 0 && stream.sendBudget + credit > padding)
+                {
+                    stream.creditSend(credit, padding);
+                    available -= credit;
+                    availableData -= Math.max(stream.sendBudget - padding, 0) - data;
+                }
+            }
+        }
+        creditIndex = count != 0 ? (creditIndex + 1) % count : 0;
+    }
+
+    void writeHeaders(
+        int streamId,
+        DirectBuffer headerBlock,
+        int length,
+        boolean endStream)
+    {
+        final MutableDirectBuffer frame = codec.frame;
+        int type = HEADERS;
+        int offset = 0;
+        do
+        {
+            final int fragment = Math.min(length - offset, DEFAULT_MAX_FRAME_SIZE);
+            final boolean endHeaders = offset + fragment == length;
+            final int flags = (type == HEADERS && endStream ? FLAG_END_STREAM : 0) | (endHeaders ? FLAG_END_HEADERS : 0);
+            final int payloadAt = Http2Frames.putFrameHeader(frame, 0, fragment, type, flags, streamId);
+            frame.putBytes(payloadAt, headerBlock, offset, fragment);
+            write(frame, 0, payloadAt + fragment);
+            offset += fragment;
+            type = CONTINUATION;
+        }
+        while (offset < length);
+    }
+
+    void writeData(
+        int streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length,
+        boolean endStream)
+    {
+        final MutableDirectBuffer frame = codec.frame;
+        final int limit = offset + length;
+        sendWindow -= length;
+        do
+        {
+            final int fragment = Math.min(limit - offset, DEFAULT_MAX_FRAME_SIZE);
+            final int flags = endStream && offset + fragment == limit ? FLAG_END_STREAM : 0;
+            final int payloadAt = Http2Frames.putFrameHeader(frame, 0, fragment, DATA, flags, streamId);
+            frame.putBytes(payloadAt, buffer, offset, fragment);
+            write(frame, 0, payloadAt + fragment);
+            offset += fragment;
+        }
+        while (offset < limit);
+    }
+
+    void writeWindowUpdate(
+        int streamId,
+        int increment)
+    {
+        final MutableDirectBuffer frame = codec.frame;
+        final int payloadAt = Http2Frames.putFrameHeader(frame, 0, 4, WINDOW_UPDATE, 0, streamId);
+        frame.putInt(payloadAt, increment, ByteOrder.BIG_ENDIAN);
+        write(frame, 0, payloadAt + 4);
+    }
+
+    void writeRstStream(
+        int streamId,
+        int errorCode)
+    {
+        final MutableDirectBuffer frame = codec.frame;
+        final int payloadAt = Http2Frames.putFrameHeader(frame, 0, 4, RST_STREAM, 0, streamId);
+        frame.putInt(payloadAt, errorCode, ByteOrder.BIG_ENDIAN);
+        write(frame, 0, payloadAt + 4);
+    }
+
+    private void writeGoaway(
+        int errorCode)
+    {
+        final MutableDirectBuffer frame = codec.frame;
+        final int payloadAt = Http2Frames.putFrameHeader(frame, 0, 8, GOAWAY, 0, 0);
+        frame.putInt(payloadAt, lastStreamId, ByteOrder.BIG_ENDIAN);
+        frame.putInt(payloadAt + 4, errorCode, ByteOrder.BIG_ENDIAN);
+        write(frame, 0, payloadAt + 8);
+    }
+
+    /*
+     * Writes our settings, the given one and the initial window size applied to streams once acknowledged
+     */
+    void writeSettings(
+        int identifier,
+        int value)
+    {
+        final MutableDirectBuffer frame = codec.frame;
+        int limit = Http2Frames.putFrameHeader(frame, 0, 2 * SETTING_LENGTH, SETTINGS, 0, 0);
+        limit = Http2Frames.putSetting(frame, limit, identifier, value);
+        limit = Http2Frames.putSetting(frame, limit, SETTINGS_INITIAL_WINDOW_SIZE, LOCAL_INITIAL_WINDOW_SIZE);
+        write(frame, 0, limit);
+    }
+
+    void write(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (!sinkEnded)
+        {
+            int written = 0;
+            if (output.isEmpty())
+            {
+                written = Math.max(Math.min(length, sinkBudget - sinkPadding), 0);
+                if (written > 0)
+                {
+                    doSinkData(buffer, offset, written);
+                }
+            }
+
+            if (written < length && !output.append(buffer, offset + written, offset + length))
+            {
+                // out of slots for frames awaiting window, so the peer can no longer be answered
+                sinkEnded = true;
+                output.release();
+                slots.failed();
+                writer.doAbort(sink, sinkId, traceId);
+                abortStreams();
+                if (decoderState != DecoderState.CLOSED)
+                {
+                    resetSource();
+                }
+                closeSource();
+                notifyClosed();
+            }
+        }
+    }
+
+    private void flush()
+    {
+        while (!output.isEmpty() && sinkBudget > sinkPadding)
+        {
+            final int length = Math.min(output.length(), sinkBudget - sinkPadding);
+            doSinkData(output.buffer(), output.offset, length);
+            output.consume(output.offset + length);
+        }
+
+        if (sinkEnding && !sinkEnded && output.isEmpty())
+        {
+            sinkEnded = true;
+            writer.doEnd(sink, sinkId, traceId);
+        }
+    }
+
+    private void doSinkData(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        sinkBudget -= length + sinkPadding;
+        writer.doData(sink, sinkId, traceId, sinkPadding, buffer, offset, length);
+    }
+
+    /*
+     * A buffer slot acquired while bytes are held, realigned to its start or promoted to a large slot as needed
+     */
+    private final class Slot
+    {
+        private final int reason;
+
+        private int index = NO_SLOT;
+        private int offset;
+        private int limit;
+
+        private Slot(
+            int reason)
+        {
+            this.reason = reason;
+        }
+
+        boolean isEmpty()
+        {
+            return index == NO_SLOT;
+        }
+
+        int length()
+        {
+            return limit - offset;
+        }
+
+        int capacity()
+        {
+            return index != NO_SLOT ? bufferPool.slotCapacity(index) : bufferPool.slotCapacity();
+        }
+
+        MutableDirectBuffer buffer()
+        {
+            return bufferPool.buffer(index);
+        }
+
+        boolean append(
+            DirectBuffer source,
+            int sourceOffset,
+            int sourceLimit)
+        {
+            final int length = sourceLimit - sourceOffset;
+            if (index == NO_SLOT)
+            {
+                index = bufferPool.acquire(sinkId);
+                if (index == NO_SLOT)
+                {
+                    slots.failed();
+                }
+                else
+                {
+                    slots.acquired(reason);
+                    offset = limit = 0;
+                }
+            }
+
+            final boolean appended = index != NO_SLOT && reserve(limit - offset + length);
+            if (appended)
+            {
+                buffer().putBytes(limit, source, sourceOffset, length);
+                limit += length;
+            }
+            return appended;
+        }
+
+        /*
+         * Makes room for the given number of bytes from the start of the held bytes
+         */
+        boolean reserve(
+            int length)
+        {
+            if (offset + length > capacity() && offset != 0)
+            {
+                final int held = limit - offset;
+                final MutableDirectBuffer slot = buffer();
+                temporarySlot.putBytes(0, slot, offset, held);
+                slot.putBytes(0, temporarySlot, 0, held);
+                offset = 0;
+                limit = held;
+            }
+
+            if (length > capacity())
+            {
+                final int promoted = bufferPool.promote(index, sinkId, offset, limit);
+                if (promoted != NO_SLOT)
+                {
+                    index = promoted;
+                    limit -= offset;
+                    offset = 0;
+                }
+            }
+            return length <= capacity();
+        }
+
+        void consume(
+            int progress)
+        {
+            if (index != NO_SLOT)
+            {
+                offset = progress;
+                if (offset == limit)
+                {
+                    release();
+                }
+            }
+        }
+
+        void release()
+        {
+            if (index != NO_SLOT)
+            {
+                bufferPool.release(index);
+                slots.released(reason);
+                index = NO_SLOT;
+                offset = limit = 0;
+            }
+        }
+    }
+
+    static boolean isConnectionSpecific(
+        DirectBuffer name)
+    {
+        boolean specific = false;
+        for (int i = 0; !specific && i < CONNECTION_SPECIFIC_NAMES.length; i++)
+        {
+            specific = equalToIgnoreCase(name, CONNECTION_SPECIFIC_NAMES[i]);
+        }
+        return specific;
+    }
+
+    // expected is lowercase
+    static boolean equalToIgnoreCase(
+        DirectBuffer buffer,
+        DirectBuffer expected)
+    {
+        boolean equal = buffer.capacity() == expected.capacity();
+        for (int i = 0; equal && i < buffer.capacity(); i++)
+        {
+            equal = (buffer.getByte(i) | 0x20) == expected.getByte(i);
+        }
+        return equal;
+    }
+
+    static boolean isConnectionSpecific(
+        String name)
+    {
+        switch (name)
+        {
+        case "connection":
+        case "keep-alive":
+        case "proxy-connection":
+        case "transfer-encoding":
+        case "upgrade":
+            return true;
+        default:
+            return false;
+        }
+    }
+}
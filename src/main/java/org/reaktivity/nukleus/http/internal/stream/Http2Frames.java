@@ -0,0 +1,165 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Frame layout and registries of RFC 7540, shared by the HTTP/2 server and client connections.
+ */
+final class Http2Frames
+{
+    static final DirectBuffer PREFACE = new UnsafeBuffer("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(US_ASCII));
+
+    static final int FRAME_HEADER_LENGTH = 9;
+    static final int SETTING_LENGTH = 6;
+
+    static final int DATA = 0x0;
+    static final int HEADERS = 0x1;
+    static final int PRIORITY = 0x2;
+    static final int RST_STREAM = 0x3;
+    static final int SETTINGS = 0x4;
+    static final int PUSH_PROMISE = 0x5;
+    static final int PING = 0x6;
+    static final int GOAWAY = 0x7;
+    static final int WINDOW_UPDATE = 0x8;
+    static final int CONTINUATION = 0x9;
+
+    static final int FLAG_END_STREAM = 0x01;
+    static final int FLAG_ACK = 0x01;
+    static final int FLAG_END_HEADERS = 0x04;
+    static final int FLAG_PADDED = 0x08;
+    static final int FLAG_PRIORITY = 0x20;
+
+    static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    static final int SETTINGS_ENABLE_PUSH = 0x2;
+    static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int INTERNAL_ERROR = 0x2;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int STREAM_CLOSED = 0x5;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+    static final int COMPRESSION_ERROR = 0x9;
+    static final int ENHANCE_YOUR_CALM = 0xb;
+
+    static final int DEFAULT_WINDOW_SIZE = 65535;
+    static final int MAXIMUM_WINDOW_SIZE = Integer.MAX_VALUE;
+    static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    static final int MAXIMUM_MAX_FRAME_SIZE = (1 << 24) - 1;
+
+    private Http2Frames()
+    {
+        // utility class, no instances
+    }
+
+    static int putFrameHeader(
+        MutableDirectBuffer buffer,
+        int offset,
+        int length,
+        int type,
+        int flags,
+        int streamId)
+    {
+        buffer.putByte(offset, (byte) (length >>> 16));
+        buffer.putShort(offset + 1, (short) length, BIG_ENDIAN);
+        buffer.putByte(offset + 3, (byte) type);
+        buffer.putByte(offset + 4, (byte) flags);
+        buffer.putInt(offset + 5, streamId, BIG_ENDIAN);
+        return offset + FRAME_HEADER_LENGTH;
+    }
+
+    static int putSetting(
+        MutableDirectBuffer buffer,
+        int offset,
+        int identifier,
+        int value)
+    {
+        buffer.putShort(offset, (short) identifier, BIG_ENDIAN);
+        buffer.putInt(offset + 2, value, BIG_ENDIAN);
+        return offset + SETTING_LENGTH;
+    }
+
+    static int frameLength(
+        DirectBuffer buffer,
+        int offset)
+    {
+        return (buffer.getByte(offset) & 0xff) << 16 | buffer.getShort(offset + 1, BIG_ENDIAN) & 0xffff;
+    }
+
+    static int frameType(
+        DirectBuffer buffer,
+        int offset)
+    {
+        return buffer.getByte(offset + 3) & 0xff;
+    }
+
+    static int frameFlags(
+        DirectBuffer buffer,
+        int offset)
+    {
+        return buffer.getByte(offset + 4) & 0xff;
+    }
+
+    static int frameStreamId(
+        DirectBuffer buffer,
+        int offset)
+    {
+        return buffer.getInt(offset + 5, BIG_ENDIAN) & 0x7fffffff;
+    }
+
+    static int settingIdentifier(
+        DirectBuffer buffer,
+        int offset)
+    {
+        return buffer.getShort(offset, BIG_ENDIAN) & 0xffff;
+    }
+
+    static int settingValue(
+        DirectBuffer buffer,
+        int offset)
+    {
+        return buffer.getInt(offset + 2, BIG_ENDIAN);
+    }
+
+    /*
+     * Returns the number of leading bytes matching the connection preface, at most its length
+     */
+    static int prefaceMatch(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        final int length = Math.min(limit - offset, PREFACE.capacity());
+        int matched = 0;
+        while (matched < length && buffer.getByte(offset + matched) == PREFACE.getByte(matched))
+        {
+            matched++;
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Codec.MAXIMUM_HEADER_NAME_BYTES;
+
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+
+/*
+ * Encodes the headers of a client request into the HPACK header block of the shared codec straight from the header
+ * list of its http begin extension, pseudo-headers first, copying names and values so that no strings are built on
+ * the way.
+ */
+final class Http2RequestHeadEncoder
+{
+    private static final DirectBuffer METHOD_NAME = buffer(":method");
+    private static final DirectBuffer[] PSEUDO_HEADER_NAMES =
+    {
+        METHOD_NAME, buffer(":scheme"), buffer(":authority"), buffer(":path")
+    };
+    private static final DirectBuffer HOST_NAME = buffer("host");
+    private static final DirectBuffer TE_NAME = buffer("te");
+
+    private final Consumer<HttpHeaderFW> scanMethod = this::scanMethod;
+    private final Consumer<HttpHeaderFW> encodePseudoHeader = this::encodePseudoHeader;
+    private final Consumer<HttpHeaderFW> encodeHeader = this::encodeHeader;
+
+    private final Http2Codec codec;
+
+    private String method;
+    private DirectBuffer pseudoHeaderName;
+    private int limit;
+
+    Http2RequestHeadEncoder(
+        Http2Codec codec)
+    {
+        this.codec = codec;
+    }
+
+    /*
+     * Returns the method as one of the standard method constants, only allocating for other methods, or null when
+     * the request has no method
+     */
+    String method(
+        ListFW<HttpHeaderFW> headers)
+    {
+        method = null;
+        headers.forEach(scanMethod);
+        return method;
+    }
+
+    /*
+     * Encodes the pseudo-headers then the other headers with lowercase names, returning the length of the header
+     * block or -1 when it cannot be encoded
+     */
+    int encode(
+        ListFW<HttpHeaderFW> headers)
+    {
+        limit = 0;
+        for (int i = 0; limit != -1 && i < PSEUDO_HEADER_NAMES.length; i++)
+        {
+            pseudoHeaderName = PSEUDO_HEADER_NAMES[i];
+            headers.forEach(encodePseudoHeader);
+        }
+        pseudoHeaderName = null;
+
+        headers.forEach(encodeHeader);
+        return limit;
+    }
+
+    private void scanMethod(
+        HttpHeaderFW header)
+    {
+        if (method == null && equalTo(header.name().value(), METHOD_NAME))
+        {
+            method = RequestHeadEncoder.method(header.value().value());
+        }
+    }
+
+    private void encodePseudoHeader(
+        HttpHeaderFW header)
+    {
+        final DirectBuffer name = header.name().value();
+        if (pseudoHeaderName != null && equalTo(name, pseudoHeaderName))
+        {
+            // only the first occurrence is encoded
+            pseudoHeaderName = null;
+            encode(name, header.value().value());
+        }
+    }
+
+    private void encodeHeader(
+        HttpHeaderFW header)
+    {
+        final DirectBuffer name = header.name().value();
+        if (name.capacity() > 0 && name.getByte(0) != ':' && !Http2Connection.isConnectionSpecific(name) &&
+                !Http2Connection.equalToIgnoreCase(name, HOST_NAME) && !Http2Connection.equalToIgnoreCase(name, TE_NAME))
+        {
+            encode(name, header.value().value());
+        }
+    }
+
+    private void encode(
+        DirectBuffer name,
+        DirectBuffer value)
+    {
+        final int nameLength = name.capacity();
+        final int valueLength = value.capacity();
+
+        if (limit != -1 && nameLength <= MAXIMUM_HEADER_NAME_BYTES && valueLength <= codec.value.capacity())
+        {
+            // header names are lowercase in HTTP/2
+            final MutableDirectBuffer lowercase = codec.name;
+            for (int i = 0; i < nameLength; i++)
+            {
+                final byte octet = name.getByte(i);
+                lowercase.putByte(i, octet >= 'A' && octet <= 'Z' ? (byte) (octet | 0x20) : octet);
+            }
+            limit = codec.encoder.encode(codec.block, limit, lowercase, 0, nameLength, value, 0, valueLength);
+        }
+        else
+        {
+            limit = -1;
+        }
+    }
+
+    private static boolean equalTo(
+        DirectBuffer buffer,
+        DirectBuffer expected)
+    {
+        boolean equal = buffer.capacity() == expected.capacity();
+        for (int i = 0; equal && i < buffer.capacity(); i++)
+        {
+            equal = buffer.getByte(i) == expected.getByte(i);
+        }
+        return equal;
+    }
+
+    private static DirectBuffer buffer(
+        String value)
+    {
+        return new UnsafeBuffer(value.getBytes(US_ASCII));
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.COMPRESSION_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.DEFAULT_WINDOW_SIZE;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.FLAG_END_STREAM;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.PROTOCOL_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.REFUSED_STREAM;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.SETTINGS_MAX_CONCURRENT_STREAMS;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.STREAM_CLOSED;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.hpack.HpackDecoder;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+
+/**
+ * An HTTP/2 server connection, RFC 7540, taking over from a {@link ServerAcceptStream} whose client sent the
+ * connection preface or upgraded by h2c. Each HTTP/2 stream is an {@link Http2ServerStream} exchanging http BEGIN,
+ * DATA and END frames with its target.
+ * <p>
+ * Frames are decoded from the accept stream and written to the accept reply, stalling the input when the target of
+ * a stream has no window.
+ */
+final class Http2ServerConnection extends Http2Connection<Http2ServerStream>
+{
+    private final ServerStreamFactory factory;
+    final long acceptId;
+    final long acceptRef;
+    final String acceptName;
+    final long authorization;
+    private final RequestHeaders requestHeaders;
+
+    Http2ServerConnection(
+        ServerStreamFactory factory,
+        MessageConsumer acceptThrottle,
+        long acceptId,
+        long acceptRef,
+        String acceptName,
+        long authorization,
+        MessageConsumer acceptReply,
+        long replyStreamId,
+        int sourceBudget,
+        int replyBudget,
+        int replyPadding,
+        long traceId)
+    {
+        // the client may open streams before our settings are acknowledged
+        super(factory.writer, factory.bufferPool, factory.slots, factory.temporarySlot, factory.http2Codec,
+                acceptReply, replyStreamId, replyBudget, replyPadding, true, DEFAULT_WINDOW_SIZE, traceId);
+        this.factory = factory;
+        this.acceptId = acceptId;
+        this.acceptRef = acceptRef;
+        this.acceptName = acceptName;
+        this.authorization = authorization;
+        this.requestHeaders = new RequestHeaders();
+        setSource(acceptThrottle, acceptId, sourceBudget);
+    }
+
+    /*
+     * Begins the connection with the client connection preface still to be received
+     */
+    void onPreface()
+    {
+        writeSettings(SETTINGS_MAX_CONCURRENT_STREAMS, factory.http2MaxConcurrentStreams);
+    }
+
+    /*
+     * Begins the connection upgraded from HTTP/1.1, the request becoming stream 1 once the 101 response and our
+     * settings have been written, the client connection preface still to be received
+     */
+    void onUpgrade(
+        DirectBuffer response,
+        DirectBuffer settings,
+        Map<String, String> headers,
+        int headersLength)
+    {
+        write(response, 0, response.capacity());
+        writeSettings(SETTINGS_MAX_CONCURRENT_STREAMS, factory.http2MaxConcurrentStreams);
+        if (applySettings(settings, 0, settings.capacity()))
+        {
+            lastStreamId = 1;
+            newStream(1).onRequest(headers, headersLength, true);
+        }
+    }
+
+    @Override
+    void onHeaderBlock(
+        int streamId,
+        int flags,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        final boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        final Http2ServerStream stream = streams.get(streamId);
+
+        requestHeaders.reset();
+        if (!decoder.decode(buffer, offset, length, requestHeaders))
+        {
+            connectionError(COMPRESSION_ERROR);
+        }
+        else if (stream != null)
+        {
+            // trailers are decoded to keep the header table in step, then dropped
+            if (!stream.isReceiving())
+            {
+                resetStream(streamId, STREAM_CLOSED);
+            }
+            else if (!endStream)
+            {
+                resetStream(streamId, PROTOCOL_ERROR);
+            }
+            else
+            {
+                stream.onEnd();
+            }
+        }
+        else if (streamId <= lastStreamId)
+        {
+            connectionError(PROTOCOL_ERROR);
+        }
+        else
+        {
+            lastStreamId = streamId;
+            if (goaway)
+            {
+                // streams initiated after GOAWAY are ignored
+            }
+            else if (streams.size() >= factory.http2MaxConcurrentStreams)
+            {
+                writeRstStream(streamId, REFUSED_STREAM);
+            }
+            else if (!requestHeaders.complete())
+            {
+                writeRstStream(streamId, PROTOCOL_ERROR);
+            }
+            else
+            {
+                if (factory.events != null)
+                {
+                    factory.events.requestReceived(HttpEvents.SERVER, acceptRef, traceId,
+                            requestHeaders.headers.get(":method"), length);
+                }
+                newStream(streamId).onRequest(requestHeaders.headers, length, endStream);
+            }
+        }
+    }
+
+    private Http2ServerStream newStream(
+        int streamId)
+    {
+        final Http2ServerStream stream =
+                new Http2ServerStream(factory, this, streamId, initialSendWindow, initialReceiveWindow);
+        addStream(stream);
+        return stream;
+    }
+
+    /*
+     * Collects the decoded request headers, joining repeated headers and validating them as RFC 7540 8.1.2 requires
+     */
+    private static final class RequestHeaders implements HpackDecoder.HeaderConsumer
+    {
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private boolean malformed;
+        private boolean regular;
+        private String host;
+
+        void reset()
+        {
+            headers.clear();
+            malformed = false;
+            regular = false;
+            host = null;
+        }
+
+        @Override
+        public void accept(
+            DirectBuffer name,
+            DirectBuffer value)
+        {
+            final String headerName = name.getStringWithoutLengthUtf8(0, name.capacity());
+            final String headerValue = value.getStringWithoutLengthUtf8(0, value.capacity());
+
+            if (headerName.startsWith(":"))
+            {
+                malformed |= regular || !isRequestPseudoHeader(headerName) || headers.containsKey(headerName);
+                headers.put(headerName, headerValue);
+            }
+            else
+            {
+                regular = true;
+                malformed |= hasUppercase(name) || isConnectionSpecific(headerName) ||
+                        "te".equals(headerName) && !"trailers".equals(headerValue);
+
+                if ("host".equals(headerName))
+                {
+                    host = headerValue;
+                }
+                else
+                {
+                    final String previous = headers.get(headerName);
+                    headers.put(headerName, previous == null ? headerValue :
+                            previous + ("cookie".equals(headerName) ? "; " : ", ") + headerValue);
+                }
+            }
+        }
+
+        /*
+         * Returns false when the request is malformed
+         */
+        boolean complete()
+        {
+            if (!headers.containsKey(":authority") && host != null)
+            {
+                headers.put(":authority", host);
+            }
+
+            final String path = headers.get(":path");
+            return !malformed && headers.containsKey(":method") && headers.containsKey(":scheme") &&
+                    path != null && !path.isEmpty();
+        }
+
+        private static boolean isRequestPseudoHeader(
+            String name)
+        {
+            return ":method".equals(name) || ":scheme".equals(name) || ":path".equals(name) || ":authority".equals(name);
+        }
+
+        private static boolean hasUppercase(
+            DirectBuffer name)
+        {
+            boolean uppercase = false;
+            for (int i = 0; !uppercase && i < name.capacity(); i++)
+            {
+                final byte octet = name.getByte(i);
+                uppercase = octet >= 'A' && octet <= 'Z';
+            }
+            return uppercase;
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.CANCEL;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.INTERNAL_ERROR;
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.NO_ERROR;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.stream.ServerStreamFactory.StandardMethods;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+
+/**
+ * A stream of an {@link Http2ServerConnection}, forwarding its request to the target as http BEGIN, DATA and END
+ * frames and encoding the reply from the target as HEADERS and DATA frames.
+ * <p>
+ * The receive window of the stream follows the window of its target, so the client only sends what the target can
+ * accept, and replies are granted window within the send window of the stream by the connection.
+ */
+final class Http2ServerStream extends Http2Stream
+{
+    private static final DirectBuffer STATUS_NAME = new UnsafeBuffer(":status".getBytes(US_ASCII));
+    private static final DirectBuffer STATUS_OK = new UnsafeBuffer("200".getBytes(US_ASCII));
+    private static final DirectBuffer RETRY_AFTER_NAME = new UnsafeBuffer("retry-after".getBytes(US_ASCII));
+
+    private enum RequestState
+    {
+        OPEN, DISCARDING, CLOSED
+    }
+
+    private enum ResponseState
+    {
+        PENDING, OPEN, CLOSED
+    }
+
+    private final ServerStreamFactory factory;
+    private final Http2ServerConnection connection;
+    private final MessageConsumer onTargetThrottle;
+    private final MessageConsumer onReply;
+    private final Consumer<HttpHeaderFW> encodeStatus;
+    private final Consumer<HttpHeaderFW> encodeHeader;
+
+    private RequestState requestState;
+    private ResponseState responseState;
+    private MessageConsumer target;
+    private long targetId;
+    private long targetCorrelationId;
+    private int targetBudget;
+    private int targetPadding;
+    private MessageConsumer replyThrottle;
+    private long replyId;
+    private AccessLogRecord accessLogRecord;
+    private int blockLimit;
+    private String status;
+
+    Http2ServerStream(
+        ServerStreamFactory factory,
+        Http2ServerConnection connection,
+        int streamId,
+        int sendWindow,
+        int receiveWindow)
+    {
+        super(streamId, sendWindow, receiveWindow);
+        this.factory = factory;
+        this.connection = connection;
+        this.requestState = RequestState.OPEN;
+        this.responseState = ResponseState.PENDING;
+        this.onTargetThrottle = this::onTargetThrottle;
+        this.onReply = this::onReply;
+        this.encodeStatus = this::encodeStatus;
+        this.encodeHeader = this::encodeHeader;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[streamId=%d, request=%s, response=%s, sendWindow=%d, receiveWindow=%d]",
+                getClass().getSimpleName(), streamId, requestState, responseState, sendWindow, receiveWindow);
+    }
+
+    @Override
+    Http2ServerConnection connection()
+    {
+        return connection;
+    }
+
+    @Override
+    boolean isReceiving()
+    {
+        return requestState != RequestState.CLOSED;
+    }
+
+    @Override
+    boolean isForwarding()
+    {
+        return requestState == RequestState.OPEN;
+    }
+
+    @Override
+    boolean isSending()
+    {
+        return responseState == ResponseState.OPEN;
+    }
+
+    @Override
+    int writable()
+    {
+        return Math.max(targetBudget - targetPadding, 0);
+    }
+
+    long acceptRef()
+    {
+        return connection.acceptRef;
+    }
+
+    void onRequest(
+        Map<String, String> headers,
+        int headersLength,
+        boolean endStream)
+    {
+        final String method = headers.get(":method");
+
+        if (endStream)
+        {
+            requestState = RequestState.CLOSED;
+        }
+
+        if (StandardMethods.parse(method) == null)
+        {
+            respond(501, 0L, method, headersLength);
+        }
+        else if (headers.get(":authority") == null)
+        {
+            respond(400, 0L, method, headersLength);
+        }
+        else if (admit(headers, method, headersLength))
+        {
+            final RouteFW route = factory.resolveTarget(acceptRef(), connection.authorization, headers);
+            if (route != null)
+            {
+                final String targetName = route.target().asString();
+                final long targetRef = route.targetRef();
+
+                target = factory.router.supplyTarget(targetName);
+                targetId = factory.supplyStreamId.getAsLong();
+                targetCorrelationId = factory.supplyCorrelationId.getAsLong();
+                factory.correlations.put(targetCorrelationId,
+                        new Correlation<>(targetCorrelationId, connection.acceptName, this), connection.acceptId);
+                factory.router.setThrottle(targetName, targetId, onTargetThrottle);
+                factory.writer.doHttpBegin(target, targetId, connection.traceId, targetRef, targetCorrelationId, headers);
+                onRequestRouted(method, headersLength, targetName, targetRef);
+
+                if (endStream)
+                {
+                    factory.writer.doHttpEnd(target, targetId, connection.traceId);
+                    if (accessLogRecord != null)
+                    {
+                        accessLogRecord.requestEnd();
+                    }
+                }
+            }
+            else
+            {
+                respond(404, 0L, method, headersLength);
+            }
+        }
+    }
+
+    @Override
+    void onData(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        if (requestState == RequestState.OPEN)
+        {
+            targetBudget -= length + targetPadding;
+            factory.writer.doHttpData(target, targetId, connection.traceId, targetPadding, buffer, offset, length);
+            factory.slots.dataBuffered(length);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.requestData(length);
+            }
+        }
+    }
+
+    @Override
+    void onEnd()
+    {
+        if (requestState == RequestState.OPEN)
+        {
+            factory.writer.doHttpEnd(target, targetId, connection.traceId);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.requestEnd();
+            }
+        }
+        requestState = RequestState.CLOSED;
+    }
+
+    @Override
+    void onReset(
+        int errorCode)
+    {
+        abort();
+    }
+
+    @Override
+    void abort()
+    {
+        if (requestState == RequestState.OPEN)
+        {
+            factory.writer.doAbort(target, targetId, connection.traceId);
+            if (factory.events != null)
+            {
+                factory.events.streamAborted(HttpEvents.SERVER, acceptRef(), connection.traceId, targetId);
+            }
+        }
+
+        if (responseState == ResponseState.PENDING)
+        {
+            onResponseSettled();
+        }
+        else if (responseState == ResponseState.OPEN)
+        {
+            factory.writer.doReset(replyThrottle, replyId, connection.traceId);
+        }
+        close();
+    }
+
+    /*
+     * Resets the stream once the correlation of its request is reclaimed, as its response will never begin
+     */
+    void onCorrelationReclaimed()
+    {
+        if (responseState == ResponseState.PENDING)
+        {
+            connection.writeRstStream(streamId, INTERNAL_ERROR);
+            abort();
+        }
+    }
+
+    MessageConsumer newReplyStream(
+        MessageConsumer throttle,
+        long streamId)
+    {
+        this.replyThrottle = throttle;
+        this.replyId = streamId;
+        return onReply;
+    }
+
+    @Override
+    void creditSend(
+        int credit,
+        int padding)
+    {
+        sendBudget += credit;
+        factory.writer.doWindow(replyThrottle, replyId, connection.traceId, credit, padding);
+    }
+
+    private boolean admit(
+        Map<String, String> headers,
+        String method,
+        int headersLength)
+    {
+        boolean admitted = true;
+        if (factory.admission != null)
+        {
+            switch (factory.admission.admit(factory.bufferPool, acceptRef()))
+            {
+            case SHED:
+                admitted = false;
+                respond(503, factory.admission.retryAfter(), method, headersLength);
+                break;
+            case ADMIT_AND_CLOSE:
+                connection.shutdown();
+                break;
+            default:
+                break;
+            }
+        }
+
+        if (admitted && factory.rateLimiter != null)
+        {
+            final long delay = factory.rateLimiter.acquire(acceptRef(), headers);
+            if (delay != 0L)
+            {
+                admitted = false;
+                respond(429, RateLimiter.retryAfter(delay), method, headersLength);
+            }
+        }
+        return admitted;
+    }
+
+    private void onRequestRouted(
+        String method,
+        int headersLength,
+        String targetName,
+        long targetRef)
+    {
+        factory.slots.headers(headersLength);
+        accessLogRecord = factory.newAccessLogRecord();
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestBegin(acceptRef(), connection.traceId, method, headersLength);
+        }
+        if (factory.events != null)
+        {
+            factory.events.requestRouted(HttpEvents.SERVER, acceptRef(), connection.traceId, targetName, targetRef);
+        }
+        if (factory.admission != null)
+        {
+            factory.admission.onRequest(acceptRef());
+        }
+    }
+
+    /*
+     * Answers the request without a target, asking the client to stop sending a request still in progress
+     */
+    private void respond(
+        int status,
+        long retryAfter,
+        String method,
+        int headersLength)
+    {
+        final MutableDirectBuffer value = factory.http2Codec.name;
+        final MutableDirectBuffer block = factory.http2Codec.block;
+
+        int limit = factory.http2Codec.encoder.encode(block, 0, STATUS_NAME, 0, STATUS_NAME.capacity(),
+                value, 0, value.putStringWithoutLengthUtf8(0, Integer.toString(status)));
+        if (retryAfter != 0L)
+        {
+            limit = factory.http2Codec.encoder.encode(block, limit, RETRY_AFTER_NAME, 0, RETRY_AFTER_NAME.capacity(),
+                    value, 0, value.putStringWithoutLengthUtf8(0, Long.toString(retryAfter)));
+        }
+        connection.writeHeaders(streamId, block, limit, true);
+
+        if (requestState != RequestState.CLOSED)
+        {
+            connection.writeRstStream(streamId, NO_ERROR);
+        }
+
+        final AccessLogRecord record = factory.newAccessLogRecord();
+        if (record != null)
+        {
+            record.requestBegin(acceptRef(), connection.traceId, method, headersLength);
+            record.responseBegin(status, limit);
+            factory.exchangeComplete(record);
+        }
+        close();
+    }
+
+    private void onTargetThrottle(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+            targetBudget += window.credit();
+            targetPadding = window.padding();
+            connection.onStreamWritable(this);
+            updateReceiveWindow();
+            break;
+        case ResetFW.TYPE_ID:
+            factory.resetRO.wrap(buffer, index, index + length);
+            onTargetReset();
+            break;
+        default:
+            // ignore
+            break;
+        }
+    }
+
+    private void onTargetReset()
+    {
+        if (factory.events != null)
+        {
+            factory.events.streamReset(HttpEvents.SERVER, acceptRef(), connection.traceId, targetId);
+        }
+
+        if (responseState == ResponseState.PENDING)
+        {
+            onResponseSettled();
+            connection.writeRstStream(streamId, CANCEL);
+            close();
+        }
+        else if (requestState == RequestState.OPEN)
+        {
+            // the response is in progress, so the rest of the request is discarded
+            requestState = RequestState.DISCARDING;
+            updateReceiveWindow();
+        }
+    }
+
+    private void onReply(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            onReplyBegin(factory.beginRO.wrap(buffer, index, index + length));
+            break;
+        case DataFW.TYPE_ID:
+            onReplyData(factory.dataRO.wrap(buffer, index, index + length));
+            break;
+        case EndFW.TYPE_ID:
+            factory.endRO.wrap(buffer, index, index + length);
+            onReplyEnd();
+            break;
+        case AbortFW.TYPE_ID:
+            factory.frameRO.wrap(buffer, index, index + length);
+            onReplyAbort();
+            break;
+        default:
+            factory.writer.doReset(replyThrottle, replyId, connection.traceId);
+            break;
+        }
+    }
+
+    private void onReplyBegin(
+        BeginFW begin)
+    {
+        if (responseState != ResponseState.PENDING)
+        {
+            factory.writer.doReset(replyThrottle, replyId, begin.trace());
+        }
+        else
+        {
+            onResponseSettled();
+            responseState = ResponseState.OPEN;
+
+            blockLimit = 0;
+            status = null;
+            final OctetsFW extension = begin.extension();
+            if (extension.sizeof() > 0)
+            {
+                final HttpBeginExFW beginEx = extension.get(factory.beginExRO::wrap);
+                beginEx.headers().forEach(encodeStatus);
+                if (status == null)
+                {
+                    encode(STATUS_NAME, 0, STATUS_NAME.capacity(), STATUS_OK);
+                }
+                beginEx.headers().forEach(encodeHeader);
+            }
+            else
+            {
+                encode(STATUS_NAME, 0, STATUS_NAME.capacity(), STATUS_OK);
+            }
+
+            if (blockLimit == -1)
+            {
+                // cannot be encoded, so the client learns of an error instead
+                connection.writeRstStream(streamId, INTERNAL_ERROR);
+                abort();
+            }
+            else
+            {
+                factory.slots.headers(blockLimit);
+                if (accessLogRecord != null)
+                {
+                    accessLogRecord.responseBegin(status != null ? status : "200", blockLimit);
+                }
+                if (factory.events != null)
+                {
+                    factory.events.responseBegun(HttpEvents.SERVER, acceptRef(), connection.traceId,
+                            accessLogRecord.status(), blockLimit);
+                }
+                connection.writeHeaders(streamId, factory.http2Codec.block, blockLimit, false);
+                connection.creditStreams();
+            }
+        }
+    }
+
+    private void encodeStatus(
+        HttpHeaderFW header)
+    {
+        if (status == null && equalTo(header.name().value(), STATUS_NAME))
+        {
+            final DirectBuffer value = header.value().value();
+            status = value.getStringWithoutLengthUtf8(0, value.capacity());
+            encode(STATUS_NAME, 0, STATUS_NAME.capacity(), value);
+        }
+    }
+
+    private void encodeHeader(
+        HttpHeaderFW header)
+    {
+        final DirectBuffer name = header.name().value();
+        if (name.capacity() > 0 && name.getByte(0) != ':' && !Http2Connection.isConnectionSpecific(name))
+        {
+            // header names are lowercase in HTTP/2
+            final MutableDirectBuffer lowercase = factory.http2Codec.name;
+            for (int i = 0; i < name.capacity(); i++)
+            {
+                final byte octet = name.getByte(i);
+                lowercase.putByte(i, octet >= 'A' && octet <= 'Z' ? (byte) (octet | 0x20) : octet);
+            }
+            encode(lowercase, 0, name.capacity(), header.value().value());
+        }
+    }
+
+    private void encode(
+        DirectBuffer name,
+        int nameOffset,
+        int nameLength,
+        DirectBuffer value)
+    {
+        if (blockLimit != -1)
+        {
+            blockLimit = factory.http2Codec.encoder.encode(factory.http2Codec.block, blockLimit,
+                    name, nameOffset, nameLength, value, 0, value.capacity());
+        }
+    }
+
+    private void onReplyData(
+        DataFW data)
+    {
+        sendBudget -= data.length() + data.padding();
+
+        if (responseState != ResponseState.OPEN || sendBudget < 0)
+        {
+            factory.writer.doReset(replyThrottle, replyId, data.trace());
+            if (responseState == ResponseState.OPEN)
+            {
+                connection.writeRstStream(streamId, INTERNAL_ERROR);
+                responseState = ResponseState.CLOSED;
+                abort();
+            }
+        }
+        else
+        {
+            final OctetsFW payload = data.payload();
+            final int payloadLength = payload.sizeof();
+            sendWindow -= payloadLength;
+            connection.writeData(streamId, payload.buffer(), payload.offset(), payloadLength, false);
+            if (accessLogRecord != null)
+            {
+                accessLogRecord.responseData(payloadLength);
+            }
+            connection.creditStreams();
+        }
+    }
+
+    private void onReplyEnd()
+    {
+        if (responseState == ResponseState.OPEN)
+        {
+            responseState = ResponseState.CLOSED;
+            connection.writeData(streamId, factory.http2Codec.block, 0, 0, true);
+            if (accessLogRecord != null)
+            {
+                factory.exchangeComplete(accessLogRecord);
+            }
+
+            if (requestState != RequestState.CLOSED)
+            {
+                // the client need not send the rest of the request
+                connection.writeRstStream(streamId, NO_ERROR);
+            }
+            abort();
+        }
+    }
+
+    private void onReplyAbort()
+    {
+        if (responseState == ResponseState.OPEN)
+        {
+            responseState = ResponseState.CLOSED;
+            connection.writeRstStream(streamId, INTERNAL_ERROR);
+            abort();
+        }
+    }
+
+    /*
+     * Settles the response to a request routed to a target, once, whether the response begins or is abandoned
+     */
+    private void onResponseSettled()
+    {
+        if (factory.correlations.remove(targetCorrelationId) != null && factory.admission != null)
+        {
+            factory.admission.onResponse(acceptRef());
+        }
+    }
+
+    private void close()
+    {
+        requestState = RequestState.CLOSED;
+        responseState = ResponseState.CLOSED;
+        connection.onStreamClosed(this);
+    }
+
+    private static boolean equalTo(
+        DirectBuffer buffer,
+        DirectBuffer expected)
+    {
+        boolean equal = buffer.capacity() == expected.capacity();
+        for (int i = 0; equal && i < buffer.capacity(); i++)
+        {
+            equal = buffer.getByte(i) == expected.getByte(i);
+        }
+        return equal;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.reaktivity.nukleus.http.internal.stream.Http2Frames.DEFAULT_WINDOW_SIZE;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * A stream of an {@link Http2Connection}, receiving DATA frames from the peer on behalf of one nukleus stream and
+ * granting window to another nukleus stream whose DATA becomes DATA frames to the peer.
+ */
+abstract class Http2Stream
+{
+    int streamId;
+    int sendWindow;
+    int receiveWindow;
+    int sendBudget;
+
+    Http2Stream(
+        int streamId,
+        int sendWindow,
+        int receiveWindow)
+    {
+        this.streamId = streamId;
+        this.sendWindow = sendWindow;
+        this.receiveWindow = receiveWindow;
+    }
+
+    abstract Http2Connection<?> connection();
+
+    /*
+     * Returns true while the peer may still send DATA frames on the stream
+     */
+    abstract boolean isReceiving();
+
+    /*
+     * Returns true while DATA frames from the peer are forwarded, no more than writable() at a time
+     */
+    abstract boolean isForwarding();
+
+    abstract int writable();
+
+    /*
+     * Returns true while window may be granted for DATA frames to the peer
+     */
+    abstract boolean isSending();
+
+    abstract void onData(
+        DirectBuffer buffer,
+        int offset,
+        int length);
+
+    abstract void onEnd();
+
+    abstract void onReset(
+        int errorCode);
+
+    /*
+     * Abandons the exchange in both directions, without a frame to the peer
+     */
+    abstract void abort();
+
+    abstract void creditSend(
+        int credit,
+        int padding);
+
+    /*
+     * Grants the peer the window the stream can forward, less what the peer may already send
+     */
+    void updateReceiveWindow()
+    {
+        final Http2Connection<?> connection = connection();
+        int credit = 0;
+        if (isForwarding())
+        {
+            credit = writable() - connection.pendingData(this) - receiveWindow;
+        }
+        else if (isReceiving())
+        {
+            // discarded, so limited only by the default window
+            credit = DEFAULT_WINDOW_SIZE - connection.pendingData(this) - receiveWindow;
+        }
+
+        if (credit > 0 && credit >= receiveWindow)
+        {
+            receiveWindow += credit;
+            connection.writeWindowUpdate(streamId, credit);
+        }
+    }
+}
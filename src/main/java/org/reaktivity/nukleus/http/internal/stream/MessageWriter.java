@@ -17,9 +17,12 @@ package org.reaktivity.nukleus.http.internal.stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
@@ -36,9 +39,19 @@ import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
 import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
 
+/*
+ * Writes frames without allocating: payloads and extensions are copied straight from the given buffers, and the
+ * HTTP begin extension is written by visitors bound once per writer that read the headers to write from a field,
+ * with ASCII header names and values copied through a reused buffer rather than encoded to byte arrays.
+ * Chunks of the chunked transfer coding, RFC 7230 4.1, are framed in place too, around the copied payload.
+ */
 final class MessageWriter
 {
+    static final int LAST_CHUNK_LENGTH = "0\r\n\r\n".length();
+
     private static final DirectBuffer SOURCE_NAME_BUFFER = new UnsafeBuffer(HttpNukleusFactorySpi.NAME.getBytes(UTF_8));
+    private static final DirectBuffer EMPTY_BUFFER = new UnsafeBuffer(new byte[0]);
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(UTF_8);
 
     private final BeginFW.Builder beginRW = new BeginFW.Builder();
     private final DataFW.Builder dataRW = new DataFW.Builder();
@@ -51,11 +64,42 @@ final class MessageWriter
     private final WindowFW.Builder windowRW = new WindowFW.Builder();
     private final ResetFW.Builder resetRW = new ResetFW.Builder();
 
+    private final Consumer<OctetsFW.Builder> httpBeginEx = this::httpBeginEx;
+    private final Flyweight.Builder.Visitor visitHttpBeginEx = this::visitHttpBeginEx;
+    private final Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> httpHeaders = this::httpHeaders;
+    private final BiConsumer<String, String> httpHeaderItem = this::httpHeaderItem;
+    private final Consumer<HttpHeaderFW.Builder> httpHeader = this::httpHeader;
+    private final Consumer<OctetsFW.Builder> chunk = this::chunk;
+    private final Flyweight.Builder.Visitor visitChunk = this::visitChunk;
+
+    private final FrameSampler sampler;
+    private final long samplingMask;
+
     private MutableDirectBuffer writeBuffer;
 
+    private final MutableDirectBuffer headerBuffer = new ExpandableArrayBuffer(256);
+
+    private Map<String, String> headers;
+    private ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headersRW;
+    private String headerName;
+    private String headerValue;
+    private DirectBuffer chunkPayload;
+    private int chunkOffset;
+    private int chunkLength;
+
     MessageWriter(MutableDirectBuffer writeBuffer)
+    {
+        this(writeBuffer, null, 0L);
+    }
+
+    MessageWriter(
+        MutableDirectBuffer writeBuffer,
+        FrameSampler sampler,
+        long samplingMask)
     {
         this.writeBuffer = writeBuffer;
+        this.sampler = sampler;
+        this.samplingMask = samplingMask;
     }
 
     void doBegin(
@@ -71,9 +115,10 @@ final class MessageWriter
                 .source(SOURCE_NAME_BUFFER, 0, SOURCE_NAME_BUFFER.capacity())
                 .sourceRef(targetRef)
                 .correlationId(correlationId)
-                .extension(e -> e.reset())
+                .extension(EMPTY_BUFFER, 0, 0)
                 .build();
 
+        sample(begin.typeId(), begin.streamId(), begin.trace());
         stream.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
     }
 
@@ -86,35 +131,41 @@ final class MessageWriter
         int offset,
         int length)
     {
-        DataFW data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
-                .streamId(streamId)
-                .trace(traceId)
-                .groupId(0)
-                .padding(padding)
-                .payload(p -> p.set(payload, offset, length))
-                .extension(e -> e.reset())
-                .build();
-
-        stream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+        writeData(stream, streamId, traceId, padding, payload, offset, length, false);
     }
 
-    public void doData(
+    void doData(
         MessageConsumer stream,
         long streamId,
         long traceId,
         int padding,
         OctetsFW payload)
     {
-        DataFW data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
-                .streamId(streamId)
-                .trace(traceId)
-                .groupId(0)
-                .padding(padding)
-                .payload(p -> p.set(payload))
-                .extension(e -> e.reset())
-                .build();
+        writeData(stream, streamId, traceId, padding, payload.buffer(), payload.offset(), payload.sizeof(), false);
+    }
 
-        stream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    /*
+     * Writes the non-empty payload as a single chunk, returning the length of the encoded chunk
+     */
+    int doChunk(
+        MessageConsumer stream,
+        long streamId,
+        long traceId,
+        int padding,
+        DirectBuffer payload,
+        int offset,
+        int length)
+    {
+        return writeData(stream, streamId, traceId, padding, payload, offset, length, true);
+    }
+
+    void doLastChunk(
+        MessageConsumer stream,
+        long streamId,
+        long traceId,
+        int padding)
+    {
+        writeData(stream, streamId, traceId, padding, EMPTY_BUFFER, 0, 0, true);
     }
 
     void doEnd(
@@ -125,9 +176,10 @@ final class MessageWriter
         EndFW end = endRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(targetId)
                 .trace(traceId)
-                .extension(e -> e.reset())
+                .extension(EMPTY_BUFFER, 0, 0)
                 .build();
 
+        sample(end.typeId(), end.streamId(), end.trace());
         stream.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
     }
 
@@ -136,8 +188,9 @@ final class MessageWriter
         AbortFW abort = abortRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(targetId)
                 .trace(trace)
-                .extension(e -> e.reset())
+                .extension(EMPTY_BUFFER, 0, 0)
                 .build();
+        sample(abort.typeId(), abort.streamId(), abort.trace());
         stream.accept(abort.typeId(), abort.buffer(), abort.offset(), abort.sizeof());
     }
 
@@ -147,17 +200,19 @@ final class MessageWriter
         long traceId,
         long targetRef,
         long correlationId,
-        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> mutator)
+        Map<String, String> headers)
     {
+        this.headers = headers;
         BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(targetId)
                 .trace(traceId)
                 .source(SOURCE_NAME_BUFFER, 0, SOURCE_NAME_BUFFER.capacity())
                 .sourceRef(targetRef)
                 .correlationId(correlationId)
-                .extension(e -> e.set(visitHttpBeginEx(mutator)))
+                .extension(httpBeginEx)
                 .build();
 
+        sample(begin.typeId(), begin.streamId(), begin.trace());
         stream.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
     }
 
@@ -170,16 +225,7 @@ final class MessageWriter
         int offset,
         int length)
     {
-        DataFW data = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
-                .streamId(targetId)
-                .trace(traceId)
-                .groupId(0)
-                .padding(padding)
-                .payload(p -> p.set(payload, offset, length))
-                .extension(e -> e.reset())
-                .build();
-
-        stream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+        writeData(stream, targetId, traceId, padding, payload, offset, length, false);
     }
 
     void doHttpEnd(
@@ -190,9 +236,10 @@ final class MessageWriter
         EndFW end = endRW.wrap(writeBuffer, 0, writeBuffer.capacity())
                 .streamId(targetId)
                 .trace(traceId)
-                .extension(e -> e.reset())
+                .extension(EMPTY_BUFFER, 0, 0)
                 .build();
 
+        sample(end.typeId(), end.streamId(), end.trace());
         stream.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
     }
 
@@ -211,6 +258,7 @@ final class MessageWriter
                 .groupId(0)
                 .build();
 
+        sample(window.typeId(), window.streamId(), window.trace());
         throttle.accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
     }
 
@@ -224,17 +272,160 @@ final class MessageWriter
                 .trace(traceId)
                 .build();
 
+        sample(reset.typeId(), reset.streamId(), reset.trace());
         throttle.accept(reset.typeId(), reset.buffer(), reset.offset(), reset.sizeof());
     }
 
-    private Flyweight.Builder.Visitor visitHttpBeginEx(
-        Consumer<ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW>> headers)
+    private void sample(
+        int msgTypeId,
+        long streamId,
+        long traceId)
+    {
+        if (sampler != null && traceId != 0L && (traceId & samplingMask) == 0L)
+        {
+            sampler.onFrame(msgTypeId, streamId, traceId, System.nanoTime());
+        }
+    }
+
+    private int writeData(
+        MessageConsumer stream,
+        long streamId,
+        long traceId,
+        int padding,
+        DirectBuffer payload,
+        int offset,
+        int length,
+        boolean chunked)
+    {
+        final int encodedLength = chunked ? chunkSizeLength(length) + length + 4 : length;
+        final DataFW.Builder builder = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                .streamId(streamId)
+                .trace(traceId)
+                .groupId(0)
+                .padding(padding);
+        if (chunked)
+        {
+            this.chunkPayload = payload;
+            this.chunkOffset = offset;
+            this.chunkLength = length;
+            builder.payload(chunk);
+            this.chunkPayload = null;
+        }
+        else
+        {
+            builder.payload(payload, offset, length);
+        }
+        DataFW data = builder.extension(EMPTY_BUFFER, 0, 0)
+                .build();
+
+        sample(data.typeId(), data.streamId(), data.trace());
+        stream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+
+        return encodedLength;
+    }
+
+    private void chunk(
+        OctetsFW.Builder payload)
+    {
+        payload.set(visitChunk);
+    }
+
+    private int visitChunk(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
     {
-        return (buffer, offset, limit) ->
-            httpBeginExRW.wrap(buffer, offset, limit)
-                         .headers(headers)
-                         .build()
-                         .sizeof();
+        final int sizeLength = chunkSizeLength(chunkLength);
+        for (int i = sizeLength - 1, size = chunkLength; i >= 0; i--, size >>>= 4)
+        {
+            buffer.putByte(offset + i, HEX_DIGITS[size & 0x0f]);
+        }
+        int progress = offset + sizeLength;
+        buffer.putByte(progress++, (byte) '\r');
+        buffer.putByte(progress++, (byte) '\n');
+        buffer.putBytes(progress, chunkPayload, chunkOffset, chunkLength);
+        progress += chunkLength;
+        buffer.putByte(progress++, (byte) '\r');
+        buffer.putByte(progress++, (byte) '\n');
+        return progress - offset;
     }
 
+    private static int chunkSizeLength(
+        int length)
+    {
+        return Math.max(1, (Integer.SIZE + 3 - Integer.numberOfLeadingZeros(length)) >> 2);
+    }
+
+    private void httpBeginEx(
+        OctetsFW.Builder extension)
+    {
+        extension.set(visitHttpBeginEx);
+    }
+
+    private int visitHttpBeginEx(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return httpBeginExRW.wrap(buffer, offset, limit)
+                            .headers(httpHeaders)
+                            .build()
+                            .sizeof();
+    }
+
+    private void httpHeaders(
+        ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headersRW)
+    {
+        this.headersRW = headersRW;
+        headers.forEach(httpHeaderItem);
+        this.headersRW = null;
+        this.headers = null;
+    }
+
+    private void httpHeaderItem(
+        String name,
+        String value)
+    {
+        this.headerName = name;
+        this.headerValue = value;
+        headersRW.item(httpHeader);
+    }
+
+    private void httpHeader(
+        HttpHeaderFW.Builder header)
+    {
+        final int nameLength = putAscii(headerBuffer, 0, headerName);
+        final int valueLength = nameLength != -1 ? putAscii(headerBuffer, nameLength, headerValue) : -1;
+
+        header.representation((byte) 0);
+        if (valueLength != -1)
+        {
+            header.name(headerBuffer, 0, nameLength)
+                  .value(headerBuffer, nameLength, valueLength);
+        }
+        else
+        {
+            header.name(headerName)
+                  .value(headerValue);
+        }
+    }
+
+    // returns -1 when not ASCII, leaving the caller to fall back to the allocating UTF-8 encoding
+    private static int putAscii(
+        MutableDirectBuffer buffer,
+        int offset,
+        String value)
+    {
+        final int length = value.length();
+        for (int i = 0; i < length; i++)
+        {
+            final char ch = value.charAt(i);
+            if (ch > 0x7f)
+            {
+                return -1;
+            }
+            buffer.putByte(offset + i, (byte) ch);
+        }
+        return length;
+    }
 }
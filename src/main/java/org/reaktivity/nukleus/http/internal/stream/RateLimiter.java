@@ -0,0 +1,238 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+/**
+ * Token bucket rate limits for server requests, keyed by route and the value of a chosen request header.
+ * <p>
+ * Each bucket is kept as the single time at which it will be full again, advanced by one interval per admitted request,
+ * so a request is admitted while that time is no more than the burst ahead of now. Buckets live in open addressed
+ * primitive arrays, and buckets that are full again are purged when the arrays fill, so requests never allocate.
+ * <p>
+ * A limited request waits at most one interval, so the 429 responses for each Retry-After value up to that interval
+ * are encoded once, like the 503 response of {@link ServerAdmission}.
+ */
+final class RateLimiter
+{
+    static final String REQUESTS_RATE_LIMITED = "requests.rate.limited";
+
+    static final String ROUTE_KEY = ":route";
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final String keyHeader;
+    private final long[] routeRefs;
+    private final long interval;
+    private final long burst;
+    private final int maximumSize;
+    private final LongSupplier clock;
+    private final AtomicCounter rateLimited;
+    private final DirectBuffer[] limitedResponses;
+
+    private long[] keys;
+    private long[] fullAts;
+    private long[] purgeKeys;
+    private long[] purgeFullAts;
+    private int size;
+
+    RateLimiter(
+        HttpConfiguration config,
+        LongSupplier clock,
+        AtomicCounter rateLimited)
+    {
+        this.keyHeader = config.serverRateLimitKey();
+        this.routeRefs = config.serverRateLimitRoutes();
+        this.interval = SECONDS.toNanos(1L) / config.serverRateLimit();
+        this.burst = interval * Math.max(config.serverRateLimitBurst(), 1);
+        this.clock = clock;
+        this.rateLimited = rateLimited;
+        this.limitedResponses = new DirectBuffer[(int) Math.max(retryAfter(interval), 1L)];
+        for (int i = 0; i < limitedResponses.length; i++)
+        {
+            limitedResponses[i] = new UnsafeBuffer(String.format(
+                    "HTTP/1.1 429 Too Many Requests\r\nRetry-After: %d\r\nConnection: close\r\n\r\n",
+                    i + 1).getBytes(US_ASCII));
+        }
+
+        this.maximumSize = config.serverRateLimitKeys();
+        final int capacity = BitUtil.findNextPositivePowerOfTwo(maximumSize * 4 / 3 + 1);
+        this.keys = new long[capacity];
+        this.fullAts = new long[capacity];
+        this.purgeKeys = new long[capacity];
+        this.purgeFullAts = new long[capacity];
+        Arrays.fill(fullAts, EMPTY);
+        Arrays.fill(purgeFullAts, EMPTY);
+    }
+
+    /*
+     * Returns zero when the request is admitted, otherwise the nanoseconds until it would be
+     */
+    long acquire(
+        long routeRef,
+        Map<String, String> headers)
+    {
+        long delay = 0L;
+        if (routeRefs == null || Arrays.binarySearch(routeRefs, routeRef) >= 0)
+        {
+            final long now = clock.getAsLong();
+            final int index = indexOf(keyOf(routeRef, headers), now);
+            if (index != -1)
+            {
+                final long fullAt = Math.max(fullAts[index], now) + interval;
+                if (fullAt - now > burst)
+                {
+                    delay = fullAt - now - burst;
+                    rateLimited.increment();
+                }
+                else
+                {
+                    fullAts[index] = fullAt;
+                }
+            }
+        }
+        return delay;
+    }
+
+    /*
+     * Returns the precomputed 429 response for a delay returned by acquire
+     */
+    DirectBuffer limitedResponse(
+        long delay)
+    {
+        final int index = (int) Math.min(Math.max(retryAfter(delay), 1L), limitedResponses.length) - 1;
+        return limitedResponses[index];
+    }
+
+    static long retryAfter(
+        long delay)
+    {
+        return (delay + SECONDS.toNanos(1L) - 1) / SECONDS.toNanos(1L);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    private long keyOf(
+        long routeRef,
+        Map<String, String> headers)
+    {
+        long key = routeRef;
+        if (!ROUTE_KEY.equals(keyHeader))
+        {
+            final String value = headers.get(keyHeader);
+            key = key * 31 + hash(value != null ? value : "");
+        }
+        return key;
+    }
+
+    /*
+     * Index of the bucket for the key, inserting an empty bucket if necessary, or -1 when every bucket is in use
+     */
+    private int indexOf(
+        long key,
+        long now)
+    {
+        int index = find(keys, fullAts, key);
+        if (fullAts[index] == EMPTY)
+        {
+            if (size == maximumSize)
+            {
+                purge(now);
+                index = find(keys, fullAts, key);
+            }
+
+            if (size == maximumSize)
+            {
+                index = -1;
+            }
+            else
+            {
+                keys[index] = key;
+                size++;
+            }
+        }
+        return index;
+    }
+
+    // buckets that are full again behave the same as no bucket at all
+    private void purge(
+        long now)
+    {
+        size = 0;
+        for (int i = 0; i < keys.length; i++)
+        {
+            final long fullAt = fullAts[i];
+            if (fullAt != EMPTY && fullAt > now)
+            {
+                final int index = find(purgeKeys, purgeFullAts, keys[i]);
+                purgeKeys[index] = keys[i];
+                purgeFullAts[index] = fullAt;
+                size++;
+            }
+            fullAts[i] = EMPTY;
+        }
+
+        final long[] keys = this.keys;
+        final long[] fullAts = this.fullAts;
+        this.keys = purgeKeys;
+        this.fullAts = purgeFullAts;
+        this.purgeKeys = keys;
+        this.purgeFullAts = fullAts;
+    }
+
+    private static int find(
+        long[] keys,
+        long[] fullAts,
+        long key)
+    {
+        final int mask = keys.length - 1;
+        int index = Hashing.hash(key, mask);
+        while (fullAts[index] != EMPTY && keys[index] != key)
+        {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // FNV-1a, so keys are derived from header values without allocating
+    private static long hash(
+        String value)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++)
+        {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
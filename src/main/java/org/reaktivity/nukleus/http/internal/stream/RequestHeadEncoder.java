@@ -0,0 +1,387 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+
+/*
+ * Encodes the HTTP/1.1 request line and headers of a client request straight from the header list of its http begin
+ * extension, copying names and values byte by byte so that no strings are built on the way.
+ *
+ * The headers are first scanned for the pseudo-headers and for the headers deciding persistence and framing, which
+ * also sizes the encoding, then encoded into a buffer such as a buffer pool slot while the list is still wrapped.
+ */
+final class RequestHeadEncoder
+{
+    private static final byte[] METHOD = bytes(":method");
+    private static final byte[] SCHEME = bytes(":scheme");
+    private static final byte[] AUTHORITY = bytes(":authority");
+    private static final byte[] PATH = bytes(":path");
+    private static final byte[] HOST = bytes("host");
+    private static final byte[] CONNECTION = bytes("connection");
+    private static final byte[] CONTENT_LENGTH = bytes("content-length");
+    private static final byte[] TRANSFER_ENCODING = bytes("transfer-encoding");
+    private static final byte[] CLOSE = bytes("close");
+    private static final byte[] CHUNKED = bytes("chunked");
+    private static final byte[] POST = bytes("post");
+    private static final byte[] PUT = bytes("put");
+    private static final byte[] PATCH = bytes("patch");
+
+    private static final byte[] VERSION_CRLF = bytes(" HTTP/1.1\r\n");
+    private static final byte[] HOST_COLON = bytes("Host: ");
+    private static final byte[] TRANSFER_ENCODING_CHUNKED_CRLF = bytes("Transfer-Encoding: chunked\r\n");
+
+    private static final String[] METHODS =
+    {
+        "GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH"
+    };
+    private static final byte[][] METHOD_BYTES = new byte[METHODS.length][];
+
+    static
+    {
+        for (int i = 0; i < METHODS.length; i++)
+        {
+            METHOD_BYTES[i] = bytes(METHODS[i]);
+        }
+    }
+
+    private static final int METHOD_FOUND = 0x01;
+    private static final int SCHEME_FOUND = 0x02;
+    private static final int AUTHORITY_FOUND = 0x04;
+    private static final int PATH_FOUND = 0x08;
+    private static final int HOST_FOUND = 0x10;
+    private static final int REQUIRED = METHOD_FOUND | SCHEME_FOUND | AUTHORITY_FOUND | PATH_FOUND;
+
+    private final Consumer<HttpHeaderFW> scanHeader = this::scanHeader;
+    private final Consumer<HttpHeaderFW> encodeHeader = this::encodeHeader;
+
+    private final UnsafeBuffer method = new UnsafeBuffer(0L, 0);
+    private final UnsafeBuffer authority = new UnsafeBuffer(0L, 0);
+    private final UnsafeBuffer path = new UnsafeBuffer(0L, 0);
+    private final UnsafeBuffer host = new UnsafeBuffer(0L, 0);
+
+    private ListFW<HttpHeaderFW> headers;
+    private int found;
+    private boolean malformed;
+    private boolean persistent;
+    private boolean framed;
+    private boolean chunked;
+    private int headersLength;
+
+    private MutableDirectBuffer buffer;
+    private int progress;
+
+    /*
+     * Scans the headers, returning false when the request is malformed
+     */
+    boolean scan(
+        ListFW<HttpHeaderFW> headers)
+    {
+        this.headers = headers;
+        this.found = 0;
+        this.malformed = false;
+        this.persistent = true;
+        this.framed = false;
+        this.chunked = false;
+        this.headersLength = 0;
+
+        headers.forEach(scanHeader);
+
+        if ((found & HOST_FOUND) != 0)
+        {
+            if ((found & AUTHORITY_FOUND) == 0)
+            {
+                authority.wrap(host);
+                found |= AUTHORITY_FOUND;
+            }
+            else
+            {
+                malformed |= !authority.equals(host);
+            }
+        }
+
+        malformed |= (found & REQUIRED) != REQUIRED;
+
+        // a body of unknown length is chunked rather than delimited by closing the connection, RFC 7230 3.3.3
+        if (!malformed && !framed && hasRequestContent(method))
+        {
+            chunked = true;
+            headersLength += TRANSFER_ENCODING_CHUNKED_CRLF.length;
+        }
+
+        return !malformed;
+    }
+
+    /*
+     * Returns the method as one of the standard method constants, only allocating for other methods
+     */
+    String method()
+    {
+        return method(method);
+    }
+
+    static String method(
+        DirectBuffer method)
+    {
+        for (int i = 0; i < METHOD_BYTES.length; i++)
+        {
+            if (equals(method, METHOD_BYTES[i], false))
+            {
+                return METHODS[i];
+            }
+        }
+        return method.getStringWithoutLengthUtf8(0, method.capacity());
+    }
+
+    boolean persistent()
+    {
+        return persistent;
+    }
+
+    boolean chunked()
+    {
+        return chunked;
+    }
+
+    /*
+     * Length of the encoded request line and headers, including the blank line
+     */
+    int length()
+    {
+        return method.capacity() + 1 + path.capacity() + VERSION_CRLF.length +
+                HOST_COLON.length + authority.capacity() + 2 + headersLength + 2;
+    }
+
+    /*
+     * Encodes the scanned headers at the given offset, the buffer having at least length() bytes remaining
+     */
+    int encode(
+        MutableDirectBuffer buffer,
+        int offset)
+    {
+        this.buffer = buffer;
+        this.progress = offset;
+
+        putBytes(method);
+        buffer.putByte(progress++, (byte) ' ');
+        putBytes(path);
+        putBytes(VERSION_CRLF);
+        putBytes(HOST_COLON);
+        putBytes(authority);
+        putCrlf();
+
+        headers.forEach(encodeHeader);
+
+        if (chunked && !framed)
+        {
+            putBytes(TRANSFER_ENCODING_CHUNKED_CRLF);
+        }
+        putCrlf();
+
+        final int length = progress - offset;
+        assert length == length();
+
+        this.buffer = null;
+        this.headers = null;
+        return length;
+    }
+
+    private void scanHeader(
+        HttpHeaderFW header)
+    {
+        final DirectBuffer name = header.name().value();
+        final DirectBuffer value = header.value().value();
+
+        if (name == null || value == null || name.capacity() == 0)
+        {
+            malformed = true;
+        }
+        else if (name.getByte(0) == ':')
+        {
+            if (equals(name, METHOD, true))
+            {
+                method.wrap(value);
+                found |= METHOD_FOUND;
+            }
+            else if (equals(name, SCHEME, true))
+            {
+                found |= SCHEME_FOUND;
+            }
+            else if (equals(name, AUTHORITY, true))
+            {
+                authority.wrap(value);
+                found |= AUTHORITY_FOUND;
+            }
+            else if (equals(name, PATH, true))
+            {
+                path.wrap(value);
+                found |= PATH_FOUND;
+            }
+        }
+        else if (equals(name, HOST, true))
+        {
+            host.wrap(value);
+            found |= HOST_FOUND;
+        }
+        else
+        {
+            if (equals(name, CONNECTION, true))
+            {
+                persistent &= !hasToken(value, CLOSE);
+            }
+            else if (equals(name, CONTENT_LENGTH, true))
+            {
+                framed = true;
+            }
+            else if (equals(name, TRANSFER_ENCODING, true))
+            {
+                // the body is sent as is, so chunked must be the final coding, RFC 7230 3.3.1
+                framed = true;
+                chunked = endsWith(value, CHUNKED);
+            }
+            headersLength += name.capacity() + 2 + value.capacity() + 2;
+        }
+    }
+
+    private void encodeHeader(
+        HttpHeaderFW header)
+    {
+        final DirectBuffer name = header.name().value();
+        if (name.getByte(0) != ':' && !equals(name, HOST, true))
+        {
+            // capitalized as Name or Hyphenated-name
+            final int length = name.capacity();
+            boolean capitalize = true;
+            boolean hyphenated = false;
+            for (int i = 0; i < length; i++)
+            {
+                final byte octet = name.getByte(i);
+                buffer.putByte(progress++, capitalize && octet >= 'a' && octet <= 'z' ? (byte) (octet - 'a' + 'A') : octet);
+                capitalize = octet == '-' && !hyphenated;
+                hyphenated |= octet == '-';
+            }
+            buffer.putByte(progress++, (byte) ':');
+            buffer.putByte(progress++, (byte) ' ');
+            putBytes(header.value().value());
+            putCrlf();
+        }
+    }
+
+    private void putBytes(
+        DirectBuffer value)
+    {
+        buffer.putBytes(progress, value, 0, value.capacity());
+        progress += value.capacity();
+    }
+
+    private void putBytes(
+        byte[] value)
+    {
+        buffer.putBytes(progress, value);
+        progress += value.length;
+    }
+
+    private void putCrlf()
+    {
+        buffer.putByte(progress++, (byte) '\r');
+        buffer.putByte(progress++, (byte) '\n');
+    }
+
+    /*
+     * Returns true for methods whose requests are expected to carry content, RFC 7231 4.3
+     */
+    private static boolean hasRequestContent(
+        DirectBuffer method)
+    {
+        return equals(method, POST, true) || equals(method, PUT, true) || equals(method, PATCH, true);
+    }
+
+    private static boolean hasToken(
+        DirectBuffer value,
+        byte[] token)
+    {
+        boolean found = false;
+        final int limit = value.capacity();
+        for (int start = 0; !found && start < limit; start++)
+        {
+            int end = start;
+            while (end < limit && value.getByte(end) != ',')
+            {
+                end++;
+            }
+            int first = start;
+            int last = end;
+            while (first < last && value.getByte(first) == ' ')
+            {
+                first++;
+            }
+            while (last > first && value.getByte(last - 1) == ' ')
+            {
+                last--;
+            }
+            found = equals(value, first, last - first, token, true);
+            start = end;
+        }
+        return found;
+    }
+
+    private static boolean endsWith(
+        DirectBuffer value,
+        byte[] suffix)
+    {
+        final int offset = value.capacity() - suffix.length;
+        return offset >= 0 && equals(value, offset, suffix.length, suffix, true);
+    }
+
+    private static boolean equals(
+        DirectBuffer value,
+        byte[] expected,
+        boolean ignoreCase)
+    {
+        return equals(value, 0, value.capacity(), expected, ignoreCase);
+    }
+
+    // expected is lowercase when ignoring case
+    private static boolean equals(
+        DirectBuffer value,
+        int offset,
+        int length,
+        byte[] expected,
+        boolean ignoreCase)
+    {
+        boolean equal = length == expected.length;
+        for (int i = 0; equal && i < length; i++)
+        {
+            final byte octet = value.getByte(offset + i);
+            equal = (ignoreCase && octet >= 'A' && octet <= 'Z' ? octet - 'A' + 'a' : octet) == expected[i];
+        }
+        return equal;
+    }
+
+    private static byte[] bytes(
+        String value)
+    {
+        return value.getBytes(US_ASCII);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+import org.reaktivity.nukleus.http.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http.internal.types.control.HttpRouteExFW;
+
+/**
+ * Matches the headers of a route extension against the headers of a request, for both the client and server roles.
+ * <p>
+ * A route without extension matches any request, otherwise each of its headers must be present in the request with
+ * the same value. Request headers held in a header list, as by the client role, are matched through bound
+ * predicates without allocating.
+ */
+final class RouteHeadersMatcher
+{
+    private final HttpRouteExFW routeExRO = new HttpRouteExFW();
+
+    private final Predicate<HttpHeaderFW> unmatchedInList = this::unmatchedInList;
+    private final Predicate<HttpHeaderFW> unmatchedInMap = this::unmatchedInMap;
+    private final Predicate<HttpHeaderFW> matchesRouteHeader = this::matchesRouteHeader;
+
+    private ListFW<HttpHeaderFW> requestList;
+    private Map<String, String> requestMap;
+    private HttpHeaderFW routeHeader;
+
+    boolean matches(
+        OctetsFW extension,
+        ListFW<HttpHeaderFW> headers)
+    {
+        boolean matches = true;
+        if (extension.sizeof() > 0)
+        {
+            requestList = headers;
+            matches = !routeHeaders(extension).anyMatch(unmatchedInList);
+            requestList = null;
+            routeHeader = null;
+        }
+        return matches;
+    }
+
+    boolean matches(
+        OctetsFW extension,
+        Map<String, String> headers)
+    {
+        boolean matches = true;
+        if (extension.sizeof() > 0)
+        {
+            requestMap = headers;
+            matches = !routeHeaders(extension).anyMatch(unmatchedInMap);
+            requestMap = null;
+        }
+        return matches;
+    }
+
+    private ListFW<HttpHeaderFW> routeHeaders(
+        OctetsFW extension)
+    {
+        return routeExRO.wrap(extension.buffer(), extension.offset(), extension.limit()).headers();
+    }
+
+    private boolean unmatchedInList(
+        HttpHeaderFW header)
+    {
+        routeHeader = header;
+        return requestList == null || !requestList.anyMatch(matchesRouteHeader);
+    }
+
+    private boolean unmatchedInMap(
+        HttpHeaderFW header)
+    {
+        return requestMap == null ||
+                !Objects.equals(header.value().asString(), requestMap.get(header.name().asString()));
+    }
+
+    private boolean matchesRouteHeader(
+        HttpHeaderFW header)
+    {
+        return Objects.equals(header.name().value(), routeHeader.name().value()) &&
+                Objects.equals(header.value().value(), routeHeader.value().value());
+    }
+}
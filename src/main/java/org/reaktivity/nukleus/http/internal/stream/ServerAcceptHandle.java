@@ -0,0 +1,254 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.stream.ServerAcceptStream.Timeout;
+import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+
+/**
+ * Registered with the reaktor for a server accept stream and its accept reply throttle in place of the
+ * {@link ServerAcceptStream} itself, so that the accept stream can be dropped while its connection is idle and
+ * hibernated, then inflated again by the next frame.
+ * <p>
+ * Hibernation is off unless enabled by configuration, and a connection is only hibernated once it has stayed idle
+ * for the configured hibernation delay, so that keep-alive requests arriving in quick succession reuse the inflated
+ * stream instead of rebuilding it each time. Until then, or with hibernation off, an idle connection keeps its
+ * accept stream and state.
+ * <p>
+ * A hibernated connection still costs this handle, measured at about 50 bytes of heap on a 64-bit JVM with
+ * compressed oops, plus its record in {@link HibernatedConnections}, 64 bytes in a table doubled whenever it becomes
+ * 75% full, so 85 to 171 bytes off-heap once the table has grown. The reaktor also keeps the handle in its stream
+ * and throttle maps. Timers are scheduled with shared handlers taking the handle as context, so the handle binds no
+ * callbacks of its own.
+ * <p>
+ * The handle also owns the timeout of its connection, so that an idle connection times out even while hibernated.
+ * Once the client switches to HTTP/2, the handle routes all frames to the {@link Http2ServerConnection} instead.
+ */
+final class ServerAcceptHandle implements MessageConsumer
+{
+    private static final Consumer<ServerAcceptHandle> ON_TIMEOUT = ServerAcceptHandle::onTimeout;
+    private static final Consumer<ServerAcceptHandle> ON_HIBERNATE = ServerAcceptHandle::onHibernate;
+
+    private final ServerStreamFactory factory;
+    private final long acceptId;
+
+    private ServerAcceptStream stream;
+    private Http2ServerConnection http2;
+    private Timeout timeout;
+    private long timerId;
+    private long hibernationTimerId;
+
+    ServerAcceptHandle(
+        ServerStreamFactory factory,
+        long acceptId)
+    {
+        this.factory = factory;
+        this.acceptId = acceptId;
+        this.timeout = Timeout.NONE;
+        this.timerId = TimerWheel.NO_TIMER;
+        this.hibernationTimerId = TimerWheel.NO_TIMER;
+    }
+
+    void attach(
+        ServerAcceptStream stream)
+    {
+        this.stream = stream;
+    }
+
+    /*
+     * Hands the connection over to HTTP/2, which neither times out nor hibernates
+     */
+    void upgrade(
+        Http2ServerConnection connection)
+    {
+        if (factory.timers != null)
+        {
+            timerId = factory.timers.cancel(timerId);
+            hibernationTimerId = factory.timers.cancel(hibernationTimerId);
+        }
+        this.timeout = Timeout.NONE;
+        this.stream = null;
+        this.http2 = connection;
+    }
+
+    @Override
+    public void accept(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (http2 != null)
+        {
+            http2.accept(msgTypeId, buffer, index, length);
+            return;
+        }
+
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            if (stream == null)
+            {
+                final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+                factory.hibernatedReplyWindow(acceptId, window.credit(), window.padding());
+            }
+            else
+            {
+                stream.loopBackThrottle(msgTypeId, buffer, index, length);
+            }
+            break;
+        case ResetFW.TYPE_ID:
+            inflateIfHibernated(buffer, index, length);
+            stream.loopBackThrottle(msgTypeId, buffer, index, length);
+            break;
+        default:
+            inflateIfHibernated(buffer, index, length);
+            stream.accept(msgTypeId, buffer, index, length);
+            // only between frames, never while decoding a frame that may hold a pipelined request
+            scheduleTimeoutIfNecessary();
+            scheduleHibernationIfIdle();
+            break;
+        }
+    }
+
+    void onResponseComplete()
+    {
+        scheduleTimeoutIfNecessary();
+        scheduleHibernationIfIdle();
+    }
+
+    /*
+     * Schedules the timeout due in the current state of the stream, restarting the body timeout as data arrives
+     */
+    void scheduleTimeoutIfNecessary()
+    {
+        if (factory.timers != null && stream != null)
+        {
+            final Timeout due = stream.timeoutDue();
+            if (due != timeout || due == Timeout.BODY)
+            {
+                timerId = factory.timers.cancel(timerId);
+                timeout = Timeout.NONE;
+
+                final int millis = timeoutMillis(due);
+                if (millis > 0)
+                {
+                    timerId = factory.timers.schedule(millis, ON_TIMEOUT, this);
+                    timeout = timerId != TimerWheel.NO_TIMER ? due : Timeout.NONE;
+                }
+            }
+        }
+    }
+
+    /*
+     * Schedules hibernation once the stream becomes idle, cancelling it again while the stream is busy
+     */
+    void scheduleHibernationIfIdle()
+    {
+        if (factory.hibernated != null && stream != null)
+        {
+            if (!stream.isIdle())
+            {
+                hibernationTimerId = factory.timers.cancel(hibernationTimerId);
+            }
+            else if (hibernationTimerId == TimerWheel.NO_TIMER)
+            {
+                hibernationTimerId = factory.timers.schedule(factory.hibernationDelay, ON_HIBERNATE, this);
+            }
+        }
+    }
+
+    /*
+     * Only the stream that created the state can still fail its connection, it has ended or handed the connection over
+     * to HTTP/2 otherwise
+     */
+    void onCorrelationReclaimed(
+        ServerAcceptState state)
+    {
+        if (stream != null && stream.owns(state))
+        {
+            stream.onCorrelationReclaimed();
+        }
+    }
+
+    private void onHibernate()
+    {
+        hibernationTimerId = TimerWheel.NO_TIMER;
+
+        if (stream != null && stream.isIdle())
+        {
+            stream.hibernate(factory.hibernated);
+            stream = null;
+        }
+    }
+
+    private void inflateIfHibernated(
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (stream == null)
+        {
+            final FrameFW frame = factory.frameRO.wrap(buffer, index, index + length);
+            stream = factory.inflateAcceptStream(this, acceptId, frame.trace());
+        }
+    }
+
+    private void onTimeout()
+    {
+        final Timeout expired = timeout;
+        timeout = Timeout.NONE;
+        timerId = TimerWheel.NO_TIMER;
+
+        if (stream == null)
+        {
+            stream = factory.inflateAcceptStream(this, acceptId, factory.hibernatedTraceId(acceptId));
+        }
+
+        if (stream.onTimeout(expired))
+        {
+            factory.timeoutsExpired.increment();
+        }
+        else
+        {
+            // the timeout no longer applies to the state of the stream
+            scheduleTimeoutIfNecessary();
+            scheduleHibernationIfIdle();
+        }
+    }
+
+    private int timeoutMillis(
+        Timeout due)
+    {
+        switch (due)
+        {
+        case HEADER:
+            return factory.headerTimeout;
+        case BODY:
+            return factory.bodyTimeout;
+        case KEEPALIVE:
+            return factory.keepAliveTimeout;
+        default:
+            return 0;
+        }
+    }
+}
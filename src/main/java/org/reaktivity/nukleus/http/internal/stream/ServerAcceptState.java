@@ -18,43 +18,58 @@ package org.reaktivity.nukleus.http.internal.stream;
 import java.util.function.Consumer;
 
 import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.StallTracker;
 import org.reaktivity.nukleus.route.RouteManager;
 
 /**
  * This class represents state shared between the server accept (source input) and server accept reply
  * (source output established) streams.
+ * <p>
+ * The state lives as long as its connection and is not pooled: connect reply streams keep it after the accept
+ * stream ends, to finish or abort their response, and the reaktor gives no signal once the last of them is done.
  */
 final class ServerAcceptState
 {
+    final long acceptRef;
     final String acceptReplyName;
     final long replyStreamId;
     final MessageConsumer acceptReply;
-    private final MessageConsumer initialThrottle;
-    final Consumer<MessageConsumer> setThrottle;
+    private final ServerAcceptHandle handle;
+    private final RouteManager router;
     final Consumer<Runnable> setCleanupConnectReply;
+    final AccessLogRecord accessLogRecord;
+    final StallTracker acceptReplyStall;
 
     int acceptReplyBudget;
     int acceptReplyPadding;
     int pendingRequests;
     boolean endRequested;
     boolean persistent = true;
+    boolean closeAfterResponse;
 
     ServerAcceptState(
+        long acceptRef,
         String acceptReplyName,
         long replyStreamId,
         MessageConsumer acceptReply,
         MessageWriter writer,
-        MessageConsumer initialThrottle,
+        ServerAcceptHandle handle,
         RouteManager router,
-        Consumer<Runnable> setCleanupConnectReply)
+        Consumer<Runnable> setCleanupConnectReply,
+        AccessLogRecord accessLogRecord,
+        StallTracker acceptReplyStall)
     {
+        this.acceptRef = acceptRef;
         this.replyStreamId = replyStreamId;
         this.acceptReply = acceptReply;
-        this.initialThrottle = initialThrottle;
+        this.handle = handle;
         this.acceptReplyName = acceptReplyName;
-        this.setThrottle = (t) -> router.setThrottle(acceptReplyName, replyStreamId, t);
+        this.router = router;
         this.setCleanupConnectReply = setCleanupConnectReply;
-        setThrottle.accept(initialThrottle);
+        this.accessLogRecord = accessLogRecord;
+        this.acceptReplyStall = acceptReplyStall;
+        setThrottle(handle);
     }
 
     @Override
@@ -66,9 +81,25 @@ final class ServerAcceptState
                 acceptReplyPadding, persistent, pendingRequests, endRequested);
     }
 
+    void onAcceptReplyBudget()
+    {
+        acceptReplyStall.onBudget(acceptReplyBudget, acceptReplyPadding);
+    }
+
     public void restoreInitialThrottle()
     {
-        setThrottle.accept(initialThrottle);
+        setThrottle(handle);
+    }
+
+    void onResponseComplete()
+    {
+        handle.onResponseComplete();
+    }
+
+    void setThrottle(
+        MessageConsumer throttle)
+    {
+        router.setThrottle(acceptReplyName, replyStreamId, throttle);
     }
 
     public void doEnd(MessageWriter writer, long traceId)
@@ -88,6 +119,16 @@ final class ServerAcceptState
     {
         writer.doAbort(acceptReply, replyStreamId, traceId);
     }
+
+    /*
+     * Fails the connection once the correlation of one of its pending requests is reclaimed, as responses are written
+     * in request order and that request will never be answered
+     */
+    void onCorrelationReclaimed()
+    {
+        pendingRequests--;
+        handle.onCorrelationReclaimed(this);
+    }
 }
 
 
@@ -18,14 +18,14 @@ package org.reaktivity.nukleus.http.internal.stream;
 import static java.lang.Integer.parseInt;
 import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
 import static org.reaktivity.nukleus.http.internal.util.BufferUtil.limitOfBytes;
+import static org.reaktivity.nukleus.http.internal.util.BufferUtil.parseHex;
 
 import java.net.URI;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,12 +33,14 @@ import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
-import org.reaktivity.nukleus.function.MessagePredicate;
-import org.reaktivity.nukleus.http.internal.stream.ServerStreamFactory.DecoderState;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.FlowControlMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.StallTracker;
 import org.reaktivity.nukleus.http.internal.stream.ServerStreamFactory.HttpStatus;
 import org.reaktivity.nukleus.http.internal.stream.ServerStreamFactory.StandardMethods;
 import org.reaktivity.nukleus.http.internal.types.OctetsFW;
-import org.reaktivity.nukleus.http.internal.types.control.HttpRouteExFW;
 import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
 import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
@@ -50,26 +52,64 @@ import org.reaktivity.nukleus.http.internal.types.stream.AbortFW;
 
 final class ServerAcceptStream implements MessageConsumer
 {
+    private static final DirectBuffer REQUEST_TIMEOUT_RESPONSE = new UnsafeBuffer(
+            "HTTP/1.1 408 Request Timeout\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+    enum Timeout
+    {
+        NONE, HEADER, BODY, KEEPALIVE
+    }
+
+    private static final DirectBuffer HTTP2_UPGRADE_RESPONSE = new UnsafeBuffer(
+            "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("HTTP/1\\.(\\d)");
+    private static final Pattern VALID_VERSION_PATTERN = Pattern.compile("HTTP/(\\d)\\.(\\d)");
+    private static final Pattern HEADER_PATTERN = Pattern.compile("([^\\s:]+):\\s*(.*)");
+
     private final HttpStatus httpStatus = new HttpStatus();
 
-    private final MutableDirectBuffer temporarySlot;
     private final int maximumHeadersSize;
 
 
     private ServerStreamFactory factory;
+    private final ServerAcceptHandle handle;
     private final MessageConsumer acceptThrottle;
+    private final MessageConsumer throttle;
     private final long acceptId;
     private final long acceptRef;
     private final String acceptName;
     private final long acceptCorrelationId;
     private final long authorization;
+    private final FlowControlMetrics flowControl;
+    private final StallTracker sourceStall;
+    private final StallTracker targetStall;
 
-    private MessageConsumer streamState;
-    private MessageConsumer throttleState;
+    private enum StreamState
+    {
+        BEFORE_BEGIN, AFTER_BEGIN_OR_DATA, WITH_DEFERRED_DATA, BEFORE_END, AFTER_END, AFTER_RESET
+    }
+
+    private enum ThrottleState
+    {
+        IGNORE_WINDOW, PROPAGATE_WINDOW, FOR_HTTP_DATA, FOR_SPOOLED_HTTP_DATA, FOR_HTTP_DATA_AFTER_UPGRADE, FOR_ERROR_RESPONSE
+    }
+
+    private enum DecoderState
+    {
+        BEFORE_HTTP_BEGIN, HTTP_BEGIN, HTTP_DATA, HTTP_DATA_SPOOLED, HTTP_DATA_AFTER_UPGRADE, HTTP_CHUNK,
+        HTTP_CHUNK_DATA, HTTP_CHUNK_END, SKIP_DATA, AFTER_END, HTTP2
+    }
+
+    private StreamState streamState;
+    private ThrottleState throttleState;
     private DecoderState decoderState;
     private int slotIndex = NO_SLOT;
     private int slotOffset = 0;
     private int slotPosition;
+    private int slotReason;
+    private boolean headersIncomplete;
     private boolean endDeferred;
 
     private MessageConsumer target;
@@ -77,6 +117,8 @@ final class ServerAcceptStream implements MessageConsumer
     private String targetName;
     private int sourceBudget;
     private int contentRemaining;
+    private Spool.Body spool;
+    private int spoolRemaining;
     private boolean isChunkedTransfer;
     private int chunkSizeRemaining;
     private int targetBudget;
@@ -84,10 +126,14 @@ final class ServerAcceptStream implements MessageConsumer
     private boolean hasUpgrade;
     private Correlation<ServerAcceptState> correlation;
     private boolean targetBeginIssued;
+    private long targetCorrelationId;
     private Runnable cleanupConnectReply;
     private long replyStreamId;
     private MessageConsumer acceptReply;
     private long traceId;
+    private DirectBuffer errorResponse;
+    private int errorResponseOffset;
+    private Http2ServerConnection http2;
 
     @Override
     public String toString()
@@ -96,13 +142,15 @@ final class ServerAcceptStream implements MessageConsumer
                 getClass().getSimpleName(), acceptName, acceptId, sourceBudget, targetId);
     }
 
-    ServerAcceptStream(ServerStreamFactory factory, MessageConsumer acceptThrottle,
+    ServerAcceptStream(ServerStreamFactory factory, ServerAcceptHandle handle, MessageConsumer acceptThrottle,
                        long acceptId, long traceId, long acceptRef, String acceptName, long acceptCorrelationId,
                        long authorization)
     {
         this.factory = factory;
-        this.streamState = this::streamBeforeBegin;
-        this.throttleState = this::throttleIgnoreWindow;
+        this.handle = handle;
+        this.streamState = StreamState.BEFORE_BEGIN;
+        this.throttleState = ThrottleState.IGNORE_WINDOW;
+        this.throttle = this::handleThrottle;
         this.acceptThrottle = acceptThrottle;
         this.acceptId = acceptId;
         this.traceId = traceId;
@@ -110,14 +158,38 @@ final class ServerAcceptStream implements MessageConsumer
         this.acceptCorrelationId = acceptCorrelationId;
         this.authorization = authorization;
         this.acceptName = acceptName;
-        this.temporarySlot = new UnsafeBuffer(ByteBuffer.allocateDirect(factory.bufferPool.slotCapacity()));
-        this.maximumHeadersSize = factory.bufferPool.slotCapacity();
+        this.maximumHeadersSize = factory.bufferPool.maximumSlotCapacity();
+        this.flowControl = factory.supplyFlowControl(acceptRef);
+        this.sourceStall = newStallTracker(FlowControlMetrics.SOURCE, acceptId);
+        this.targetStall = newStallTracker(FlowControlMetrics.TARGET, acceptId);
     }
 
     @Override
     public void accept(int msgTypeId, DirectBuffer buffer, int index, int length)
     {
-        streamState.accept(msgTypeId, buffer, index, length);
+        switch (streamState)
+        {
+        case BEFORE_BEGIN:
+            streamBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_END:
+            streamAfterEnd(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_RESET:
+            streamAfterReset(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_BEGIN_OR_DATA:
+            streamAfterBeginOrData(msgTypeId, buffer, index, length);
+            break;
+        case WITH_DEFERRED_DATA:
+            streamWithDeferredData(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_END:
+            streamBeforeEnd(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected stream state " + streamState);
+        }
     }
 
     private void streamBeforeBegin(
@@ -216,12 +288,12 @@ final class ServerAcceptStream implements MessageConsumer
             DataFW data = factory.dataRO.wrap(buffer, index, index + length);
             final long streamId = data.streamId();
 
-            factory.writer.doWindow(acceptThrottle, streamId, 0, data.length(), 0);
+            factory.writer.doWindow(acceptThrottle, streamId, data.trace(), data.length(), 0);
         }
         else if (msgTypeId == EndFW.TYPE_ID)
         {
             factory.endRO.wrap(buffer, index, index + length);
-            this.streamState = this::streamAfterEnd;
+            this.streamState = StreamState.AFTER_END;
         }
     }
 
@@ -239,25 +311,26 @@ final class ServerAcceptStream implements MessageConsumer
     private void processUnexpected(
         long streamId)
     {
-        factory.writer.doReset(acceptThrottle, streamId, 0);
-        this.streamState = this::streamAfterReset;
+        factory.writer.doReset(acceptThrottle, streamId, traceId);
+        this.streamState = StreamState.AFTER_RESET;
     }
 
     private void processInvalidRequest(int status, String message)
     {
-        this.decoderState = this::decodeSkipData;
-        this.streamState = this::streamAfterReset;
+        this.decoderState = DecoderState.SKIP_DATA;
+        this.streamState = StreamState.AFTER_RESET;
         releaseSlotIfNecessary();
+        releaseSpoolIfNecessary();
         if (targetBeginIssued)
         {
             // Drain data from source before resetting to allow its writes to complete
-            throttleState = ServerAcceptStream.this::throttlePropagateWindow;
-            doSourceWindow(maximumHeadersSize, 0, 0);
+            throttleState = ThrottleState.PROPAGATE_WINDOW;
+            doSourceWindow(maximumHeadersSize, 0, traceId);
 
             // We can't write back an HTTP error response because we already forwarded the request to the target
-            factory.writer.doReset(acceptThrottle, acceptId, 0);
-            factory.writer.doHttpEnd(target, targetId, 0);
-            doEnd(0L);
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
+            factory.writer.doHttpEnd(target, targetId, traceId);
+            doEnd(traceId);
         }
         else
         {
@@ -270,82 +343,113 @@ final class ServerAcceptStream implements MessageConsumer
         if (slotIndex != NO_SLOT)
         {
             factory.bufferPool.release(slotIndex);
+            factory.slots.released(slotReason);
             slotIndex = NO_SLOT;
         }
     }
 
+    private void releaseSpoolIfNecessary()
+    {
+        if (spool != null)
+        {
+            spool.release();
+            spool = null;
+        }
+    }
+
     private void writeErrorResponse(int status, String message)
     {
-        long serverAcceptReplyStreamId = correlation.state().replyStreamId;
-        switchTarget(acceptName, serverAcceptReplyStreamId);
+        final DirectBuffer response = factory.errorResponse(status, message);
+        writeErrorResponse(status, response);
 
-        StringBuffer payloadText = new StringBuffer()
-                .append(String.format("HTTP/1.1 %d %s\r\n", status, message))
-                .append("Connection: close\r\n")
-                .append("\r\n");
+        if (errorResponse == response)
+        {
+            // the encoded response is shared by all streams, so keep a copy of it until written
+            final byte[] copy = new byte[response.capacity()];
+            response.getBytes(0, copy);
+            errorResponse = new UnsafeBuffer(copy);
+        }
+    }
 
-        final DirectBuffer payload = new UnsafeBuffer(payloadText.toString().getBytes(StandardCharsets.UTF_8));
+    private void writeErrorResponse(int status, DirectBuffer payload)
+    {
+        long serverAcceptReplyStreamId = correlation.state().replyStreamId;
+        switchTarget(acceptName, serverAcceptReplyStreamId);
 
         ServerAcceptState acceptState = correlation.state();
+        final AccessLogRecord accessLogRecord = acceptState.accessLogRecord;
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestBegin(acceptRef, traceId, null, 0);
+            accessLogRecord.responseBegin(status, payload.capacity());
+            factory.exchangeComplete(accessLogRecord);
+        }
+
         int writableBytes = Math.max(Math.min(
                 acceptState.acceptReplyBudget - acceptState.acceptReplyPadding, payload.capacity()), 0);
         if (writableBytes > 0)
         {
             acceptState.acceptReplyBudget -= writableBytes + acceptState.acceptReplyPadding;
-            factory.writer.doData(target, targetId, 0, acceptState.acceptReplyPadding,
+            acceptState.onAcceptReplyBudget();
+            factory.writer.doData(target, targetId, traceId, acceptState.acceptReplyPadding,
                     payload, 0, writableBytes);
         }
         if (writableBytes < payload.capacity())
         {
-            this.throttleState = new MessageConsumer()
-            {
-                int offset = writableBytes;
-
-                @Override
-                public void accept(int msgTypeId, DirectBuffer buffer, int index, int length)
-                {
-                    switch (msgTypeId)
-                    {
-                    case WindowFW.TYPE_ID:
-                        WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
-                        acceptState.acceptReplyBudget += window.credit();
-                        acceptState.acceptReplyPadding = window.padding();
-                        traceId = window.trace();
-                        int writableBytes = Math.max(
-                            Math.min(acceptState.acceptReplyBudget - acceptState.acceptReplyPadding,
-                                     payload.capacity() - offset), 0);
-                        if (writableBytes > 0)
-                        {
-                            acceptState.acceptReplyBudget -= writableBytes + acceptState.acceptReplyPadding;
-                            ServerAcceptStream.this.factory.writer.doData(target, targetId, 0,
-                                    acceptState.acceptReplyPadding, payload, offset, writableBytes);
-                            offset += writableBytes;
-                        }
-                        if (offset == payload.capacity())
-                        {
-                            // Drain data from source before resetting to allow its writes to complete
-                            throttleState = ServerAcceptStream.this::throttlePropagateWindow;
-                            doSourceWindow(ServerAcceptStream.this.maximumHeadersSize, 0, window.trace());
-                            ServerAcceptStream.this.factory.writer.doReset(acceptThrottle, acceptId, 0);
-                        }
-                        break;
-                    case ResetFW.TYPE_ID:
-                        final ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
-                        processReset(reset);
-                        break;
-                    default:
-                        // ignore
-                        break;
-                    }
-                }
-            };
+            this.errorResponse = payload;
+            this.errorResponseOffset = writableBytes;
+            this.throttleState = ThrottleState.FOR_ERROR_RESPONSE;
         }
         else
         {
             // Drain data from source before resetting to allow its writes to complete
-            throttleState = ServerAcceptStream.this::throttlePropagateWindow;
-            doSourceWindow(maximumHeadersSize, 0, 0);
-            factory.writer.doReset(acceptThrottle, acceptId, 0);
+            throttleState = ThrottleState.PROPAGATE_WINDOW;
+            doSourceWindow(maximumHeadersSize, 0, traceId);
+            factory.writer.doReset(acceptThrottle, acceptId, traceId);
+        }
+    }
+
+    private void throttleForErrorResponse(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+            final ServerAcceptState acceptState = correlation.state();
+            acceptState.acceptReplyBudget += window.credit();
+            acceptState.acceptReplyPadding = window.padding();
+            acceptState.onAcceptReplyBudget();
+            traceId = window.trace();
+            final int writableBytes = Math.max(Math.min(acceptState.acceptReplyBudget - acceptState.acceptReplyPadding,
+                                                        errorResponse.capacity() - errorResponseOffset), 0);
+            if (writableBytes > 0)
+            {
+                acceptState.acceptReplyBudget -= writableBytes + acceptState.acceptReplyPadding;
+                acceptState.onAcceptReplyBudget();
+                factory.writer.doData(target, targetId, traceId, acceptState.acceptReplyPadding,
+                        errorResponse, errorResponseOffset, writableBytes);
+                errorResponseOffset += writableBytes;
+            }
+            if (errorResponseOffset == errorResponse.capacity())
+            {
+                // Drain data from source before resetting to allow its writes to complete
+                errorResponse = null;
+                throttleState = ThrottleState.PROPAGATE_WINDOW;
+                doSourceWindow(maximumHeadersSize, 0, traceId);
+                factory.writer.doReset(acceptThrottle, acceptId, traceId);
+            }
+            break;
+        case ResetFW.TYPE_ID:
+            final ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
+            processReset(reset);
+            break;
+        default:
+            // ignore
+            break;
         }
     }
 
@@ -354,20 +458,142 @@ final class ServerAcceptStream implements MessageConsumer
         int index,
         int length)
     {
-        this.streamState = this::streamAfterBeginOrData;
-        this.decoderState = this::decodeBeforeHttpBegin;
+        this.streamState = StreamState.AFTER_BEGIN_OR_DATA;
+        this.decoderState = DecoderState.BEFORE_HTTP_BEGIN;
 
         // Proactively issue BEGIN on server accept reply since we only support bidirectional transport
         long replyStreamId = factory.supplyStreamId.getAsLong();
         final MessageConsumer acceptReply = factory.router.supplyTarget(acceptName);
-        ServerAcceptState state = new ServerAcceptState(acceptName, replyStreamId, acceptReply, factory.writer,
-                 this::loopBackThrottle, factory.router, this::setCleanupConnectReply);
+        newAcceptState(replyStreamId, acceptReply);
         FrameFW frameFW = factory.frameRO.wrap(buffer, index, index + length);
-        factory.writer.doBegin(acceptReply, replyStreamId, frameFW.trace(), 0L, acceptCorrelationId);
+        traceId = frameFW.trace();
+        factory.writer.doBegin(acceptReply, replyStreamId, traceId, 0L, acceptCorrelationId);
+        doSourceWindow(maximumHeadersSize, 0, traceId);
+    }
+
+    /*
+     * Creates the state shared with the connect reply streams, once per connection and again only when restored from
+     * hibernation. The state and its correlation serve every request on the connection, and are not pooled for the
+     * reason given on ServerAcceptState
+     */
+    private ServerAcceptState newAcceptState(
+        long replyStreamId,
+        MessageConsumer acceptReply)
+    {
+        ServerAcceptState state = new ServerAcceptState(acceptRef, acceptName, replyStreamId, acceptReply, factory.writer,
+                 handle, factory.router, this::setCleanupConnectReply,
+                 factory.newAccessLogRecord(), newStallTracker(FlowControlMetrics.ACCEPT_REPLY, replyStreamId));
         this.correlation = new Correlation<>(acceptCorrelationId, acceptName, state);
-        doSourceWindow(maximumHeadersSize, 0, 0);
         this.acceptReply = acceptReply;
         this.replyStreamId = replyStreamId;
+        return state;
+    }
+
+    /*
+     * Idle once every request has been forwarded and answered, with nothing buffered, so that the connection
+     * can be restored from its hibernated record alone
+     */
+    boolean isIdle()
+    {
+        final ServerAcceptState state = correlation != null ? correlation.state() : null;
+        return streamState == StreamState.AFTER_BEGIN_OR_DATA &&
+                decoderState == DecoderState.BEFORE_HTTP_BEGIN &&
+                throttleState == ThrottleState.IGNORE_WINDOW &&
+                slotIndex == NO_SLOT &&
+                errorResponse == null &&
+                state != null &&
+                state.persistent &&
+                !state.endRequested &&
+                state.pendingRequests == 0;
+    }
+
+    void hibernate(
+        HibernatedConnections hibernated)
+    {
+        final ServerAcceptState state = correlation.state();
+        final int offset = hibernated.put(acceptId);
+        final MutableDirectBuffer records = hibernated.buffer();
+        records.putLong(offset + HibernatedConnections.ACCEPT_REF_OFFSET, acceptRef);
+        records.putLong(offset + HibernatedConnections.ACCEPT_CORRELATION_ID_OFFSET, acceptCorrelationId);
+        records.putLong(offset + HibernatedConnections.AUTHORIZATION_OFFSET, authorization);
+        records.putLong(offset + HibernatedConnections.REPLY_STREAM_ID_OFFSET, replyStreamId);
+        records.putLong(offset + HibernatedConnections.TRACE_ID_OFFSET, traceId);
+        records.putInt(offset + HibernatedConnections.SOURCE_BUDGET_OFFSET, sourceBudget);
+        records.putInt(offset + HibernatedConnections.REPLY_BUDGET_OFFSET, state.acceptReplyBudget);
+        records.putInt(offset + HibernatedConnections.REPLY_PADDING_OFFSET, state.acceptReplyPadding);
+        records.putInt(offset + HibernatedConnections.SOURCE_INDEX_OFFSET, factory.sourceIndex(acceptName, acceptThrottle));
+    }
+
+    void restore(
+        long replyStreamId,
+        int sourceBudget,
+        int acceptReplyBudget,
+        int acceptReplyPadding)
+    {
+        this.streamState = StreamState.AFTER_BEGIN_OR_DATA;
+        this.decoderState = DecoderState.BEFORE_HTTP_BEGIN;
+        this.sourceBudget = sourceBudget;
+        final ServerAcceptState state = newAcceptState(replyStreamId, factory.router.supplyTarget(acceptName));
+        state.acceptReplyBudget = acceptReplyBudget;
+        state.acceptReplyPadding = acceptReplyPadding;
+    }
+
+    /*
+     * The timeout that applies while the stream is in its current state, body timeouts only applying while the
+     * source has window to send more of the request body
+     */
+    Timeout timeoutDue()
+    {
+        Timeout due = Timeout.NONE;
+        if (streamState == StreamState.AFTER_BEGIN_OR_DATA || streamState == StreamState.WITH_DEFERRED_DATA)
+        {
+            switch (decoderState)
+            {
+            case BEFORE_HTTP_BEGIN:
+                due = isIdle() ? Timeout.KEEPALIVE : Timeout.NONE;
+                break;
+            case HTTP_BEGIN:
+                due = Timeout.HEADER;
+                break;
+            case HTTP_DATA:
+            case HTTP_DATA_SPOOLED:
+            case HTTP_CHUNK:
+            case HTTP_CHUNK_DATA:
+            case HTTP_CHUNK_END:
+                due = sourceBudget > 0 ? Timeout.BODY : Timeout.NONE;
+                break;
+            default:
+                break;
+            }
+        }
+        return due;
+    }
+
+    /*
+     * Returns false when the expired timeout no longer applies
+     */
+    boolean onTimeout(
+        Timeout expired)
+    {
+        final boolean applies = expired != Timeout.NONE && expired == timeoutDue();
+        if (applies)
+        {
+            switch (expired)
+            {
+            case KEEPALIVE:
+                factory.writer.doReset(acceptThrottle, acceptId, traceId);
+                doEnd(traceId);
+                streamState = StreamState.AFTER_RESET;
+                break;
+            case HEADER:
+                processHeaderTimeout();
+                break;
+            default:
+                processBodyTimeout();
+                break;
+            }
+        }
+        return applies;
     }
 
     void setCleanupConnectReply(Runnable cleanupConnectReply)
@@ -381,9 +607,10 @@ final class ServerAcceptStream implements MessageConsumer
         int length)
     {
         DataFW data = factory.dataRO.wrap(buffer, index, index + length);
-        traceId = data.typeId();
+        traceId = data.trace();
 
         sourceBudget -= data.length() + data.padding();
+        sourceStall.onBudget(sourceBudget, 0);
 
         if (sourceBudget < 0)
         {
@@ -405,11 +632,15 @@ final class ServerAcceptStream implements MessageConsumer
                 if (slotIndex == NO_SLOT)
                 {
                     // Out of factory.slab memory
+                    factory.slots.failed();
+                    onSlotsExhausted();
                     processInvalidRequest(503, "Service Unavailable");
                 }
                 else
                 {
-                    streamState = this::streamWithDeferredData;
+                    slotReason = headersIncomplete ? BufferSlotMetrics.HEADERS : BufferSlotMetrics.DATA;
+                    factory.slots.acquired(slotReason);
+                    streamState = StreamState.WITH_DEFERRED_DATA;
                     deferAndProcessData(buffer, offset, limit);
                 }
             }
@@ -421,8 +652,45 @@ final class ServerAcceptStream implements MessageConsumer
         boolean decoderStateChanged = true;
         while (offset < limit && decoderStateChanged)
         {
-            DecoderState previous = decoderState;
-            offset = decoderState.decode(buffer, offset, limit);
+            final DecoderState previous = decoderState;
+            switch (decoderState)
+            {
+            case SKIP_DATA:
+                offset = decodeSkipData(buffer, offset, limit);
+                break;
+            case BEFORE_HTTP_BEGIN:
+                offset = decodeBeforeHttpBegin(buffer, offset, limit);
+                break;
+            case HTTP_BEGIN:
+                offset = decodeHttpBegin(buffer, offset, limit);
+                break;
+            case HTTP_DATA_AFTER_UPGRADE:
+                offset = decodeHttpDataAfterUpgrade(buffer, offset, limit);
+                break;
+            case HTTP_DATA:
+                offset = decodeHttpData(buffer, offset, limit);
+                break;
+            case HTTP_DATA_SPOOLED:
+                offset = decodeHttpDataSpooled(buffer, offset, limit);
+                break;
+            case HTTP_CHUNK:
+                offset = decodeHttpChunk(buffer, offset, limit);
+                break;
+            case HTTP_CHUNK_DATA:
+                offset = decodeHttpChunkData(buffer, offset, limit);
+                break;
+            case HTTP_CHUNK_END:
+                offset = decodeHttpChunkEnd(buffer, offset, limit);
+                break;
+            case AFTER_END:
+                offset = decodeAfterEnd(buffer, offset, limit);
+                break;
+            case HTTP2:
+                offset = decodeHttp2(buffer, offset, limit);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected decoder state " + decoderState);
+            }
             decoderStateChanged = previous != decoderState;
         }
         return offset;
@@ -435,35 +703,55 @@ final class ServerAcceptStream implements MessageConsumer
     {
         EndFW end = factory.endRO.wrap(buffer, index, index + length);
         final long streamId = end.streamId();
-        final long traceId = end.trace();
+        traceId = end.trace();
         assert streamId == acceptId;
-        doEnd(traceId);
+        if (spool != null && spoolRemaining == 0)
+        {
+            // request body fully spooled, end once it has been replayed to the target
+            endDeferred = true;
+        }
+        else
+        {
+            doEnd(traceId);
+        }
     }
 
     private void processAbort(
             DirectBuffer buffer,
             int index,
             int length)
+    {
+        traceId = factory.frameRO.wrap(buffer, index, index + length).trace();
+        if (factory.events != null)
+        {
+            factory.events.streamAborted(HttpEvents.SERVER, acceptRef, traceId, acceptId);
+        }
+        abort();
+    }
+
+    private void abort()
     {
         Correlation correlation = factory.correlations.remove(acceptCorrelationId);
-        factory.writer.doAbort(acceptReply, replyStreamId, 0);
+        factory.writer.doAbort(acceptReply, replyStreamId, traceId);
         if (targetBeginIssued)
         {
-            factory.writer.doAbort(target, targetId, 0);
+            factory.writer.doAbort(target, targetId, traceId);
         }
         if (correlation == null &&  cleanupConnectReply != null)
         {
             cleanupConnectReply.run();
         }
         releaseSlotIfNecessary();
+        releaseSpoolIfNecessary();
     }
 
-    private void doEnd(Long traceId)
+    private void doEnd(long traceId)
     {
-        decoderState = (b, o, l) -> o;
-        streamState = this::streamAfterEnd;
+        decoderState = DecoderState.AFTER_END;
+        streamState = StreamState.AFTER_END;
 
         releaseSlotIfNecessary();
+        releaseSpoolIfNecessary();
 
         if (correlation != null)
         {
@@ -478,6 +766,7 @@ final class ServerAcceptStream implements MessageConsumer
     {
         DataFW data = factory.dataRO.wrap(buffer, index, index + length);
         sourceBudget -= data.length() + data.padding();
+        sourceStall.onBudget(sourceBudget, 0);
 
         if (sourceBudget < 0)
         {
@@ -493,19 +782,32 @@ final class ServerAcceptStream implements MessageConsumer
     private void deferAndProcessData(DirectBuffer buffer, int offset, int limit)
     {
         final int dataLength = limit - offset;
-        if (slotPosition + dataLength > factory.bufferPool.slotCapacity())
+        if (slotPosition + dataLength > factory.bufferPool.slotCapacity(slotIndex))
         {
             alignSlotData();
         }
+        if (slotPosition + dataLength > factory.bufferPool.slotCapacity(slotIndex) && !promoteSlot())
+        {
+            // Out of large slots for headers beyond a small slot
+            factory.slots.failed();
+            processInvalidRequest(503, "Service Unavailable");
+            return;
+        }
         MutableDirectBuffer slot = factory.bufferPool.buffer(slotIndex);
         slot.putBytes(slotPosition, buffer, offset, dataLength);
         slotPosition += dataLength;
+        if (slotReason == BufferSlotMetrics.DATA)
+        {
+            factory.slots.dataBuffered(slotPosition - slotOffset);
+            targetStall.onParked(dataLength);
+        }
         processDeferredData();
-        if (sourceBudget == 0)
+        if (sourceBudget == 0 && decoderState != DecoderState.HTTP2)
         {
             // Increase source window to ensure we can receive the largest possible amount of data we can factory.slab
             int cachedBytes = slotPosition - slotOffset;
-            ensureSourceWindow(factory.bufferPool.slotCapacity() - cachedBytes, targetPadding);
+            int bufferable = headersIncomplete ? maximumHeadersSize : factory.bufferPool.slotCapacity(slotIndex);
+            ensureSourceWindow(bufferable - cachedBytes, targetPadding);
             if (sourceBudget == 0)
             {
                 throw new IllegalStateException("Decoder failed to detect headers or chunk too long");
@@ -521,10 +823,17 @@ final class ServerAcceptStream implements MessageConsumer
         if (slotOffset == slotPosition)
         {
             releaseSlotIfNecessary();
-            streamState = this::streamAfterBeginOrData;
-            if (endDeferred)
+            streamState = StreamState.AFTER_BEGIN_OR_DATA;
+            if (http2 != null)
             {
-                doEnd(0L);
+                if (endDeferred)
+                {
+                    http2.onSourceEnd();
+                }
+            }
+            else if (endDeferred && spool == null)
+            {
+                doEnd(traceId);
             }
         }
     }
@@ -541,12 +850,24 @@ final class ServerAcceptStream implements MessageConsumer
         endDeferred = true;
     }
 
+    private boolean promoteSlot()
+    {
+        final int promoted = factory.bufferPool.promote(slotIndex, acceptId, slotOffset, slotPosition);
+        if (promoted != NO_SLOT)
+        {
+            slotIndex = promoted;
+            slotPosition -= slotOffset;
+            slotOffset = 0;
+        }
+        return promoted != NO_SLOT;
+    }
+
     private void alignSlotData()
     {
         int dataLength = slotPosition - slotOffset;
         MutableDirectBuffer slot = factory.bufferPool.buffer(slotIndex);
-        temporarySlot.putBytes(0, slot, slotOffset, dataLength);
-        slot.putBytes(0, temporarySlot, 0, dataLength);
+        factory.temporarySlot.putBytes(0, slot, slotOffset, dataLength);
+        slot.putBytes(0, factory.temporarySlot, 0, dataLength);
         slotOffset = 0;
         slotPosition = dataLength;
     }
@@ -558,7 +879,20 @@ final class ServerAcceptStream implements MessageConsumer
     {
         int result = limit;
         final int endOfHeadersAt = limitOfBytes(payload, offset, limit, ServerStreamFactory.CRLFCRLF_BYTES);
-        if (endOfHeadersAt == -1)
+        headersIncomplete = endOfHeadersAt == -1;
+        final int prefaceLength = Math.min(limit - offset, Http2Frames.PREFACE.capacity());
+        if (factory.http2 && correlation.state().pendingRequests == 0 &&
+                Http2Frames.prefaceMatch(payload, offset, limit) == prefaceLength)
+        {
+            // HTTP/2 by prior knowledge, the connection preface decoded by the HTTP/2 connection once complete
+            headersIncomplete = prefaceLength < Http2Frames.PREFACE.capacity();
+            result = offset;
+            if (!headersIncomplete)
+            {
+                handOverToHttp2().onPreface();
+            }
+        }
+        else if (headersIncomplete)
         {
             // Incomplete request, signal we can't consume the data
             result = offset;
@@ -616,7 +950,7 @@ final class ServerAcceptStream implements MessageConsumer
         }
         else
         {
-            decoderState = this::decodeHttpBegin;
+            decoderState = DecoderState.HTTP_BEGIN;
         }
         return result;
     };
@@ -636,12 +970,10 @@ final class ServerAcceptStream implements MessageConsumer
             return;
         }
 
-        Pattern versionPattern = Pattern.compile("HTTP/1\\.(\\d)");
-        Matcher versionMatcher = versionPattern.matcher(start[2]);
+        Matcher versionMatcher = VERSION_PATTERN.matcher(start[2]);
         if (!versionMatcher.matches())
         {
-            Pattern validVersionPattern = Pattern.compile("HTTP/(\\d)\\.(\\d)");
-            Matcher validVersionMatcher = validVersionPattern.matcher(start[2]);
+            Matcher validVersionMatcher = VALID_VERSION_PATTERN.matcher(start[2]);
             if (validVersionMatcher.matches())
             {
                 processInvalidRequest(505, "HTTP Version Not Supported");
@@ -661,6 +993,10 @@ final class ServerAcceptStream implements MessageConsumer
 
             httpStatus.reset();
             final Map<String, String> headers = decodeHttpHeaders(start, lines, requestURI, httpStatus);
+            if (factory.events != null)
+            {
+                factory.events.requestReceived(HttpEvents.SERVER, acceptRef, traceId, start[0], length);
+            }
 
             // TODO: replace with lightweight approach (end)
 
@@ -672,9 +1008,13 @@ final class ServerAcceptStream implements MessageConsumer
             {
                 processInvalidRequest(400, "Bad Request");
             }
-            else
+            else if (factory.http2 && upgradeToHttp2(headers, length))
             {
-                final RouteFW route = resolveTarget(acceptRef, authorization, headers);
+                // the request continues as stream 1 of the HTTP/2 connection
+            }
+            else if (admit(headers))
+            {
+                final RouteFW route = factory.resolveTarget(acceptRef, authorization, headers);
                 if (route != null)
                 {
 
@@ -683,15 +1023,15 @@ final class ServerAcceptStream implements MessageConsumer
                     final long newTargetId = factory.supplyStreamId.getAsLong();
 
                     long newTargetCorrelationId = factory.supplyCorrelationId.getAsLong();
-                    factory.correlations.put(newTargetCorrelationId, correlation);
+                    factory.correlations.put(newTargetCorrelationId, correlation, acceptId);
+                    targetCorrelationId = newTargetCorrelationId;
                     correlation.state().pendingRequests++;
 
                     targetBudget = 0;
                     switchTarget(newTarget, newTargetId);
-                    FrameFW frameFW = factory.frameRO.wrap(payload, offset, offset + length);
-                    factory.writer.doHttpBegin(target, newTargetId, frameFW.trace(), targetRef, newTargetCorrelationId,
-                            hs -> headers.forEach((k, v) -> hs.item(i -> i.representation((byte)0).name(k).value(v))));
+                    factory.writer.doHttpBegin(target, newTargetId, traceId, targetRef, newTargetCorrelationId, headers);
                     targetBeginIssued = true;
+                    onRequestRouted(start[0], length, newTarget, targetRef);
 
                     hasUpgrade = headers.containsKey("upgrade");
                     String connectionOptions = headers.get("connection");
@@ -708,20 +1048,21 @@ final class ServerAcceptStream implements MessageConsumer
                     if (hasUpgrade)
                     {
                         // TODO: wait for 101 first
-                        decoderState = this::decodeHttpDataAfterUpgrade;
-                        throttleState = this::throttleForHttpDataAfterUpgrade;
+                        decoderState = DecoderState.HTTP_DATA_AFTER_UPGRADE;
+                        throttleState = ThrottleState.FOR_HTTP_DATA_AFTER_UPGRADE;
                         correlation.state().persistent = false;
                         correlation.state().endRequested = true;
                     }
                     else if (contentRemaining > 0)
                     {
-                        decoderState = this::decodeHttpData;
-                        throttleState = this::throttleForHttpData;
+                        decoderState = DecoderState.HTTP_DATA;
+                        throttleState = ThrottleState.FOR_HTTP_DATA;
+                        spoolIfNecessary();
                     }
                     else if (isChunkedTransfer)
                     {
-                        decoderState = this::decodeHttpChunk;
-                        throttleState = this::throttleForHttpData;
+                        decoderState = DecoderState.HTTP_CHUNK;
+                        throttleState = ThrottleState.FOR_HTTP_DATA;
                     }
                     else
                     {
@@ -737,6 +1078,224 @@ final class ServerAcceptStream implements MessageConsumer
         }
     }
 
+    /*
+     * Upgrades to HTTP/2 when asked by h2c, RFC 7540 3.2, unless the request has a body or responses are pending,
+     * answering the request on stream 1
+     */
+    private boolean upgradeToHttp2(
+        Map<String, String> headers,
+        int headersLength)
+    {
+        final String upgrade = headers.get("upgrade");
+        final String settings = headers.get("http2-settings");
+
+        byte[] settingsBytes = null;
+        if (upgrade != null && settings != null && contentRemaining == 0 && !isChunkedTransfer &&
+                correlation.state().pendingRequests == 0 &&
+                Arrays.stream(upgrade.split(",")).anyMatch(t -> "h2c".equalsIgnoreCase(t.trim())))
+        {
+            try
+            {
+                settingsBytes = Base64.getUrlDecoder().decode(settings.trim());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                settingsBytes = null;
+            }
+        }
+
+        final boolean upgraded = settingsBytes != null && settingsBytes.length % Http2Frames.SETTING_LENGTH == 0;
+        if (upgraded)
+        {
+            final Map<String, String> requestHeaders = new LinkedHashMap<>(headers);
+            requestHeaders.keySet().removeIf(n -> Http2Connection.isConnectionSpecific(n) ||
+                    "http2-settings".equals(n) || "te".equals(n));
+            handOverToHttp2().onUpgrade(HTTP2_UPGRADE_RESPONSE, new UnsafeBuffer(settingsBytes),
+                    requestHeaders, headersLength);
+        }
+        return upgraded;
+    }
+
+    private Http2ServerConnection handOverToHttp2()
+    {
+        final ServerAcceptState state = correlation.state();
+        http2 = new Http2ServerConnection(factory, acceptThrottle, acceptId, acceptRef, acceptName, authorization,
+                acceptReply, replyStreamId, sourceBudget, state.acceptReplyBudget, state.acceptReplyPadding, traceId);
+        handle.upgrade(http2);
+        decoderState = DecoderState.HTTP2;
+        sourceBudget = 0;
+        return http2;
+    }
+
+    private int decodeHttp2(
+        DirectBuffer payload,
+        int offset,
+        int limit)
+    {
+        http2.onSourceData(payload, offset, limit);
+        return limit;
+    }
+
+    private void spoolIfNecessary()
+    {
+        final Spool requestSpool = factory.requestSpool;
+        if (requestSpool != null && requestSpool.shouldSpool(acceptRef, contentRemaining))
+        {
+            spool = requestSpool.reserve(contentRemaining);
+            if (spool != null)
+            {
+                // the whole body fits in the spool, so let the client send it regardless of the target window
+                spoolRemaining = contentRemaining;
+                decoderState = DecoderState.HTTP_DATA_SPOOLED;
+                throttleState = ThrottleState.FOR_SPOOLED_HTTP_DATA;
+                ensureSourceWindow(spoolRemaining, 0);
+            }
+        }
+    }
+
+    /*
+     * Answers the request locally when it is shed or rate limited, otherwise marks the connection to close after the
+     * response under pressure. Requests pipelined behind a pending response are admitted by the admission control,
+     * so an admitted connection is never cut short.
+     */
+    private boolean admit(
+        Map<String, String> headers)
+    {
+        final ServerAcceptState state = correlation.state();
+        boolean admitted = true;
+        if (factory.admission != null && state.pendingRequests == 0)
+        {
+            switch (factory.admission.admit(factory.bufferPool, acceptRef))
+            {
+            case SHED:
+                admitted = false;
+                processRejectedRequest(503, factory.admission.shedResponse());
+                break;
+            case ADMIT_AND_CLOSE:
+                state.persistent = false;
+                state.closeAfterResponse = true;
+                break;
+            default:
+                break;
+            }
+        }
+
+        if (admitted && factory.rateLimiter != null)
+        {
+            final long delay = factory.rateLimiter.acquire(acceptRef, headers);
+            if (delay != 0L)
+            {
+                admitted = false;
+                processRejectedRequest(429, factory.rateLimiter.limitedResponse(delay));
+            }
+        }
+        return admitted;
+    }
+
+    private void processHeaderTimeout()
+    {
+        if (correlation.state().pendingRequests == 0)
+        {
+            processRejectedRequest(408, REQUEST_TIMEOUT_RESPONSE);
+        }
+        else
+        {
+            // responses to pipelined requests are still in progress, so there is no room for an error response
+            processTimeoutAbort();
+        }
+    }
+
+    private void processBodyTimeout()
+    {
+        final ServerAcceptState state = correlation.state();
+        if (state.pendingRequests == 1 && factory.correlations.remove(targetCorrelationId) != null)
+        {
+            // the response has not begun, so the client can still be answered
+            state.pendingRequests--;
+            if (factory.admission != null)
+            {
+                factory.admission.onResponse(acceptRef);
+            }
+            releaseSpoolIfNecessary();
+            factory.writer.doAbort(target, targetId, traceId);
+            processRejectedRequest(408, REQUEST_TIMEOUT_RESPONSE);
+        }
+        else
+        {
+            processTimeoutAbort();
+        }
+    }
+
+    boolean owns(
+        ServerAcceptState state)
+    {
+        return correlation != null && correlation.state() == state;
+    }
+
+    /*
+     * Aborts the target request and the accept reply, also resetting the source unless it has already ended or been
+     * reset, with the trace of the last frame of the connection
+     */
+    void onCorrelationReclaimed()
+    {
+        if (streamState == StreamState.AFTER_END || streamState == StreamState.AFTER_RESET)
+        {
+            abort();
+        }
+        else
+        {
+            processTimeoutAbort();
+        }
+    }
+
+    private void processTimeoutAbort()
+    {
+        decoderState = DecoderState.SKIP_DATA;
+        streamState = StreamState.AFTER_RESET;
+        factory.writer.doReset(acceptThrottle, acceptId, traceId);
+        abort();
+    }
+
+    private void processRejectedRequest(
+        int status,
+        DirectBuffer response)
+    {
+        this.decoderState = DecoderState.SKIP_DATA;
+        this.streamState = StreamState.AFTER_RESET;
+        releaseSlotIfNecessary();
+        writeErrorResponse(status, response);
+    }
+
+    private void onSlotsExhausted()
+    {
+        if (factory.admission != null)
+        {
+            factory.admission.onSlotsExhausted(factory.bufferPool);
+        }
+    }
+
+    private void onRequestRouted(
+        String method,
+        int headersLength,
+        String newTarget,
+        long targetRef)
+    {
+        factory.slots.headers(headersLength);
+        final AccessLogRecord accessLogRecord = correlation.state().accessLogRecord;
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestBegin(acceptRef, traceId, method, headersLength);
+        }
+        if (factory.events != null)
+        {
+            factory.events.requestRouted(HttpEvents.SERVER, acceptRef, traceId, newTarget, targetRef);
+        }
+        if (factory.admission != null)
+        {
+            factory.admission.onRequest(acceptRef);
+        }
+    }
+
     private Map<String, String> decodeHttpHeaders(
         String[] start,
         String[] lines,
@@ -746,7 +1305,8 @@ final class ServerAcceptStream implements MessageConsumer
         String authority = requestURI.getAuthority();
 
         final Map<String, String> headers = new LinkedHashMap<>();
-        headers.put(":scheme", "http");            headers.put(":method", start[0]);
+        headers.put(":scheme", "http");
+        headers.put(":method", start[0]);
         headers.put(":path", requestURI.getRawPath());
 
         if (authority != null)
@@ -754,13 +1314,12 @@ final class ServerAcceptStream implements MessageConsumer
             headers.put(":authority", authority);
         }
 
-        Pattern headerPattern = Pattern.compile("([^\\s:]+):\\s*(.*)");
         boolean contentLengthFound = false;
         contentRemaining = 0;
         isChunkedTransfer = false;
         for (int i = 1; i < lines.length; i++)
         {
-            Matcher headerMatcher = headerPattern.matcher(lines[i]);
+            Matcher headerMatcher = HEADER_PATTERN.matcher(lines[i]);
             if (!headerMatcher.matches())
             {
                 httpStatus.status = 400;
@@ -840,9 +1399,10 @@ final class ServerAcceptStream implements MessageConsumer
 
         if (writableBytes > 0)
         {
-            FrameFW frameFW = factory.frameRO.wrap(payload, offset, payload.capacity());
-            factory.writer.doHttpData(target, targetId, frameFW.trace(), targetPadding, payload, offset, writableBytes);
+            factory.writer.doHttpData(target, targetId, traceId, targetPadding, payload, offset, writableBytes);
+            logRequestData(writableBytes);
             targetBudget -= writableBytes + targetPadding;
+            targetStall.onBudget(targetBudget, targetPadding);
             contentRemaining -= writableBytes;
         }
 
@@ -854,6 +1414,41 @@ final class ServerAcceptStream implements MessageConsumer
         return offset + Math.max(writableBytes, 0);
     };
 
+    private int decodeHttpDataSpooled(
+            final DirectBuffer payload,
+            final int offset,
+            final int limit)
+    {
+        final int spoolableBytes = Math.min(limit - offset, spoolRemaining);
+        spool.write(payload, offset, spoolableBytes);
+        spoolRemaining -= spoolableBytes;
+        drainSpool();
+        return offset + spoolableBytes;
+    }
+
+    private void drainSpool()
+    {
+        final int maximumDataLength = factory.bufferPool.slotCapacity();
+        int writableBytes = Math.min(Math.min(spool.readable(), maximumDataLength), targetBudget - targetPadding);
+        while (writableBytes > 0)
+        {
+            factory.writer.doHttpData(target, targetId, traceId, targetPadding,
+                    spool.buffer(), spool.readOffset(), writableBytes);
+            logRequestData(writableBytes);
+            targetBudget -= writableBytes + targetPadding;
+            targetStall.onBudget(targetBudget, targetPadding);
+            contentRemaining -= writableBytes;
+            spool.consume(writableBytes);
+            writableBytes = Math.min(Math.min(spool.readable(), maximumDataLength), targetBudget - targetPadding);
+        }
+
+        if (contentRemaining == 0)
+        {
+            releaseSpoolIfNecessary();
+            httpRequestComplete();
+        }
+    }
+
     private int decodeHttpChunk(
             final DirectBuffer payload,
             final int offset,
@@ -872,14 +1467,14 @@ final class ServerAcceptStream implements MessageConsumer
             final int chunkSizeLimit = colonAt == -1 ? chunkHeaderLimit - 2 : colonAt - 1;
             final int chunkSizeLength = chunkSizeLimit - offset;
 
-            try
+            final int chunkSize = parseHex(payload, offset, offset + chunkSizeLength);
+            if (chunkSize == -1)
             {
-                final String chunkSizeHex = payload.getStringWithoutLengthUtf8(offset, chunkSizeLength);
-                chunkSizeRemaining = Integer.parseInt(chunkSizeHex, 16);
+                processInvalidRequest(400,  "Bad Request");
             }
-            catch (NumberFormatException ex)
+            else
             {
-                processInvalidRequest(400,  "Bad Request");
+                chunkSizeRemaining = chunkSize;
             }
 
             if (chunkSizeRemaining == 0)
@@ -888,7 +1483,7 @@ final class ServerAcceptStream implements MessageConsumer
             }
             else
             {
-                decoderState = this::decodeHttpChunkData;
+                decoderState = DecoderState.HTTP_CHUNK_DATA;
                 result = chunkHeaderLimit;
             }
         }
@@ -912,7 +1507,7 @@ final class ServerAcceptStream implements MessageConsumer
             }
             else
             {
-                decoderState = this::decodeHttpChunk;
+                decoderState = DecoderState.HTTP_CHUNK;
                 result = offset + 2;
             }
         }
@@ -932,15 +1527,16 @@ final class ServerAcceptStream implements MessageConsumer
 
         if (writableBytes > 0)
         {
-            FrameFW frameFW = factory.frameRO.wrap(payload, offset, payload.capacity());
-            factory.writer.doHttpData(target, targetId, frameFW.trace(), targetPadding, payload, offset, writableBytes);
+            factory.writer.doHttpData(target, targetId, traceId, targetPadding, payload, offset, writableBytes);
+            logRequestData(writableBytes);
             targetBudget -= writableBytes + targetPadding;
+            targetStall.onBudget(targetBudget, targetPadding);
             chunkSizeRemaining -= writableBytes;
         }
 
         if (chunkSizeRemaining == 0)
         {
-            decoderState = this::decodeHttpChunkEnd;
+            decoderState = DecoderState.HTTP_CHUNK_END;
         }
         return offset + Math.max(writableBytes, 0);
     }
@@ -954,9 +1550,10 @@ final class ServerAcceptStream implements MessageConsumer
         int writableBytes = Math.min(length, targetBudget - targetPadding);
         if (writableBytes > 0)
         {
-            FrameFW frameFW = factory.frameRO.wrap(payload, offset, offset + limit);
-            factory.writer.doHttpData(target, targetId, frameFW.trace(), targetPadding, payload, offset, writableBytes);
+            factory.writer.doHttpData(target, targetId, traceId, targetPadding, payload, offset, writableBytes);
+            logRequestData(writableBytes);
             targetBudget -= writableBytes + targetPadding;
+            targetStall.onBudget(targetBudget, targetPadding);
         }
         return offset + Math.max(writableBytes, 0);
     };
@@ -969,60 +1566,48 @@ final class ServerAcceptStream implements MessageConsumer
         return limit;
     };
 
-    @SuppressWarnings("unused")
-    private int decodeHttpEnd(
+    private int decodeAfterEnd(
             final DirectBuffer payload,
             final int offset,
             final int limit)
     {
-        // TODO: consider chunks, trailers
-        FrameFW frameFW = factory.frameRO.wrap(payload, offset, offset + limit);
-        factory.writer.doHttpEnd(target, targetId, frameFW.trace());
-        return limit;
+        return offset;
     };
 
+    private void logRequestData(
+        int length)
+    {
+        final AccessLogRecord accessLogRecord = correlation.state().accessLogRecord;
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestData(length);
+        }
+    }
+
     private void httpRequestComplete()
     {
-        factory.writer.doHttpEnd(target, targetId, 0L);
+        factory.writer.doHttpEnd(target, targetId, traceId);
+        final AccessLogRecord accessLogRecord = correlation.state().accessLogRecord;
+        if (accessLogRecord != null)
+        {
+            accessLogRecord.requestEnd();
+        }
         // TODO: target.removeThrottle(targetId);
-        decoderState = this::decodeBeforeHttpBegin;
-        throttleState = this::throttleIgnoreWindow;
+        decoderState = DecoderState.BEFORE_HTTP_BEGIN;
+        throttleState = ThrottleState.IGNORE_WINDOW;
 
         if (correlation.state().persistent)
         {
-            this.streamState = this::streamAfterBeginOrData;
-            this.decoderState = this::decodeBeforeHttpBegin;
+            this.streamState = StreamState.AFTER_BEGIN_OR_DATA;
+            this.decoderState = DecoderState.BEFORE_HTTP_BEGIN;
             ensureSourceWindow(maximumHeadersSize, 0);
         }
         else
         {
-            this.streamState = this::streamBeforeEnd;
+            this.streamState = StreamState.BEFORE_END;
         }
     }
 
-    private RouteFW resolveTarget(
-        long sourceRef,
-        long authorization,
-        Map<String, String> headers)
-    {
-        final MessagePredicate filter = (t, b, o, l) ->
-        {
-            final RouteFW route = factory.routeRO.wrap(b, o, l);
-            final OctetsFW extension = route.extension();
-            boolean headersMatch = true;
-            if (extension.sizeof() > 0)
-            {
-                final HttpRouteExFW routeEx = extension.get(factory.routeExRO::wrap);
-                headersMatch = routeEx.headers().anyMatch(
-                        h -> !Objects.equals(h.value(), headers.get(h.name())));
-            }
-            return route.sourceRef() == sourceRef && headersMatch;
-        };
-
-        return factory.router.resolve(authorization, filter, (msgTypeId, buffer, index, length) ->
-            factory.routeRO.wrap(buffer, index, index + length));
-    }
-
     private void handleThrottle(
         int msgTypeId,
         DirectBuffer buffer,
@@ -1034,7 +1619,29 @@ final class ServerAcceptStream implements MessageConsumer
         long streamId = frame.streamId();
         if (streamId == targetId)
         {
-            throttleState.accept(msgTypeId, buffer, index, length);
+            switch (throttleState)
+            {
+            case IGNORE_WINDOW:
+                throttleIgnoreWindow(msgTypeId, buffer, index, length);
+                break;
+            case FOR_ERROR_RESPONSE:
+                throttleForErrorResponse(msgTypeId, buffer, index, length);
+                break;
+            case PROPAGATE_WINDOW:
+                throttlePropagateWindow(msgTypeId, buffer, index, length);
+                break;
+            case FOR_HTTP_DATA_AFTER_UPGRADE:
+                throttleForHttpDataAfterUpgrade(msgTypeId, buffer, index, length);
+                break;
+            case FOR_HTTP_DATA:
+                throttleForHttpData(msgTypeId, buffer, index, length);
+                break;
+            case FOR_SPOOLED_HTTP_DATA:
+                throttleForSpooledHttpData(msgTypeId, buffer, index, length);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected throttle state " + throttleState);
+            }
         }
     }
 
@@ -1078,6 +1685,28 @@ final class ServerAcceptStream implements MessageConsumer
         }
     }
 
+    private void throttleForSpooledHttpData(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+            processWindowForSpooledHttpData(window);
+            break;
+        case ResetFW.TYPE_ID:
+            final ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
+            processReset(reset);
+            break;
+        default:
+            // ignore
+            break;
+        }
+    }
+
     private void throttleForHttpDataAfterUpgrade(
         int msgTypeId,
         DirectBuffer buffer,
@@ -1122,7 +1751,7 @@ final class ServerAcceptStream implements MessageConsumer
         }
     }
 
-    private void loopBackThrottle(
+    void loopBackThrottle(
         int msgTypeId,
         DirectBuffer buffer,
         int index,
@@ -1134,6 +1763,7 @@ final class ServerAcceptStream implements MessageConsumer
             WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
             correlation.state().acceptReplyBudget += window.credit();
             correlation.state().acceptReplyPadding = window.padding();
+            correlation.state().onAcceptReplyBudget();
             break;
         case ResetFW.TYPE_ID:
             final ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
@@ -1150,6 +1780,7 @@ final class ServerAcceptStream implements MessageConsumer
     {
         targetBudget += window.credit();
         targetPadding = window.padding();
+        targetStall.onBudget(targetBudget, targetPadding);
         traceId = window.trace();
         if (slotIndex != NO_SLOT)
         {
@@ -1158,11 +1789,33 @@ final class ServerAcceptStream implements MessageConsumer
         ensureSourceWindow(Math.min(targetBudget, factory.bufferPool.slotCapacity()), targetPadding);
     }
 
+    private void processWindowForSpooledHttpData(
+        WindowFW window)
+    {
+        targetBudget += window.credit();
+        targetPadding = window.padding();
+        targetStall.onBudget(targetBudget, targetPadding);
+        traceId = window.trace();
+        drainSpool();
+        if (spool == null)
+        {
+            if (slotIndex != NO_SLOT)
+            {
+                processDeferredData();
+            }
+            else if (endDeferred)
+            {
+                doEnd(traceId);
+            }
+        }
+    }
+
     private void processWindowForHttpDataAfterUpgrade(
         WindowFW window)
     {
         targetBudget += window.credit();
         targetPadding = window.padding();
+        targetStall.onBudget(targetBudget, targetPadding);
         traceId = window.trace();
         if (slotIndex != NO_SLOT)
         {
@@ -1174,7 +1827,7 @@ final class ServerAcceptStream implements MessageConsumer
             if (this.sourceBudget == targetBudget)
             {
                 // Windows are now aligned
-                throttleState = this::throttlePropagateWindow;
+                throttleState = ThrottleState.PROPAGATE_WINDOW;
             }
         }
     }
@@ -1185,6 +1838,7 @@ final class ServerAcceptStream implements MessageConsumer
         int credit = window.credit();
         targetBudget += credit;
         targetPadding = window.padding();
+        targetStall.onBudget(targetBudget, targetPadding);
         doSourceWindow(credit, targetPadding, window.trace());
     }
 
@@ -1193,21 +1847,35 @@ final class ServerAcceptStream implements MessageConsumer
         if (requiredWindow > sourceBudget)
         {
             int credit = requiredWindow - sourceBudget;
-            doSourceWindow(credit, padding, 0L);
+            doSourceWindow(credit, padding, traceId);
         }
     }
 
     private void doSourceWindow(int credit, int padding, long traceId)
     {
         sourceBudget += credit;
+        sourceStall.onBudget(sourceBudget, 0);
         factory.writer.doWindow(acceptThrottle, acceptId, traceId, credit, padding);
+        handle.scheduleTimeoutIfNecessary();
+    }
+
+    private StallTracker newStallTracker(
+        int budget,
+        long streamId)
+    {
+        return new StallTracker(budget, flowControl, factory.events, HttpEvents.SERVER, acceptRef, streamId);
     }
 
     private void processReset(
         ResetFW reset)
     {
         traceId = reset.trace();
+        if (factory.events != null)
+        {
+            factory.events.streamReset(HttpEvents.SERVER, acceptRef, traceId, reset.streamId());
+        }
         releaseSlotIfNecessary();
+        releaseSpoolIfNecessary();
         factory.writer.doReset(acceptThrottle, acceptId, traceId);
     }
 
@@ -1219,7 +1887,7 @@ final class ServerAcceptStream implements MessageConsumer
         targetId = newTargetId;
         targetName = newTargetName;
         targetBeginIssued = false;
-        factory.router.setThrottle(targetName, newTargetId, this::handleThrottle);
-        throttleState = this::throttleIgnoreWindow;
+        factory.router.setThrottle(targetName, newTargetId, throttle);
+        throttleState = ThrottleState.IGNORE_WINDOW;
     }
 }
\ No newline at end of file
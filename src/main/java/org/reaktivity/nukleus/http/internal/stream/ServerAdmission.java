@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+/**
+ * Admission control for new server requests, based on the most loaded of buffer slots, correlations awaiting a response
+ * and requests awaiting a response on the request route, each as a percentage of its limit.
+ * <p>
+ * Above the pressure watermark, admitted requests close their keep-alive connection after the response. Above the
+ * shed watermark, new requests are answered with a canned 503 before they are routed, so that requests already
+ * in flight keep the remaining slots. Requests pipelined behind an admitted request are always admitted.
+ */
+final class ServerAdmission
+{
+    static final String REQUESTS_SHED = "requests.shed";
+    static final String KEEPALIVES_CLOSED = "keepalives.closed";
+
+    enum Decision
+    {
+        ADMIT, ADMIT_AND_CLOSE, SHED
+    }
+
+    private final CorrelationStore correlations;
+    private final int maximumCorrelations;
+    private final int maximumRouteRequests;
+    private final int pressure;
+    private final int shed;
+    private final Long2LongHashMap routeRequests;
+    private final int retryAfter;
+    private final DirectBuffer shedResponse;
+    private final AtomicCounter requestsShed;
+    private final AtomicCounter keepalivesClosed;
+
+    private int slots;
+
+    ServerAdmission(
+        HttpConfiguration config,
+        CorrelationStore correlations,
+        AtomicCounter requestsShed,
+        AtomicCounter keepalivesClosed)
+    {
+        this.correlations = correlations;
+        this.slots = config.serverAdmissionSlots();
+        this.maximumCorrelations = config.serverAdmissionCorrelations();
+        this.maximumRouteRequests = config.serverAdmissionRouteRequests();
+        this.pressure = config.serverAdmissionPressure();
+        this.shed = config.serverAdmissionShed();
+        this.routeRequests = new Long2LongHashMap(0L);
+        this.retryAfter = config.serverAdmissionRetryAfter();
+        this.shedResponse = new UnsafeBuffer(String.format(
+                "HTTP/1.1 503 Service Unavailable\r\nRetry-After: %d\r\nConnection: close\r\n\r\n",
+                retryAfter).getBytes(US_ASCII));
+        this.requestsShed = requestsShed;
+        this.keepalivesClosed = keepalivesClosed;
+    }
+
+    Decision admit(
+        BufferPool bufferPool,
+        long routeRef)
+    {
+        final int load = load(bufferPool, routeRef);
+
+        Decision decision = Decision.ADMIT;
+        if (load >= shed)
+        {
+            decision = Decision.SHED;
+            requestsShed.increment();
+        }
+        else if (load >= pressure)
+        {
+            decision = Decision.ADMIT_AND_CLOSE;
+            keepalivesClosed.increment();
+        }
+        return decision;
+    }
+
+    DirectBuffer shedResponse()
+    {
+        return shedResponse;
+    }
+
+    int retryAfter()
+    {
+        return retryAfter;
+    }
+
+    void onRequest(
+        long routeRef)
+    {
+        routeRequests.put(routeRef, routeRequests.get(routeRef) + 1);
+    }
+
+    void onResponse(
+        long routeRef)
+    {
+        final long requests = routeRequests.get(routeRef) - 1;
+        if (requests > 0)
+        {
+            routeRequests.put(routeRef, requests);
+        }
+        else
+        {
+            routeRequests.remove(routeRef);
+        }
+    }
+
+    /*
+     * Learns the size of the buffer pool, when not configured, from the first acquire that finds it exhausted
+     */
+    void onSlotsExhausted(
+        BufferPool bufferPool)
+    {
+        if (slots == 0)
+        {
+            slots = bufferPool.acquiredSlots();
+        }
+    }
+
+    int load(
+        BufferPool bufferPool,
+        long routeRef)
+    {
+        int load = 0;
+        if (slots > 0)
+        {
+            load = Math.max(load, percentOf(bufferPool.acquiredSlots(), slots));
+        }
+        if (maximumCorrelations > 0)
+        {
+            load = Math.max(load, percentOf(correlations.size(), maximumCorrelations));
+        }
+        if (maximumRouteRequests > 0)
+        {
+            load = Math.max(load, percentOf(routeRequests.get(routeRef), maximumRouteRequests));
+        }
+        return load;
+    }
+
+    private static int percentOf(
+        long value,
+        int maximum)
+    {
+        return (int) Math.min(value * 100L / maximum, 100L);
+    }
+}
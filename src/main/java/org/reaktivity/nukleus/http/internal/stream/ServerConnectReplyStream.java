@@ -26,6 +26,8 @@ import java.util.Map;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
 import org.reaktivity.nukleus.http.internal.types.OctetsFW;
 import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
@@ -48,12 +50,22 @@ public final class ServerConnectReplyStream implements MessageConsumer
     private final long connectReplyId;
     private final String connectReplyName;
 
-    private MessageConsumer streamState;
-    private MessageConsumer throttleState;
+    private enum StreamState
+    {
+        BEFORE_BEGIN, AFTER_END, AFTER_REJECT_OR_RESET, BEFORE_HEADERS_WRITTEN, AFTER_BEGIN_OR_DATA
+    }
+
+    private enum ThrottleState
+    {
+        BEFORE_BEGIN, BEFORE_HEADERS_WRITTEN, BETWEEN_RESPONSES, NEXT_WINDOW
+    }
+
+    private StreamState streamState;
+    private ThrottleState throttleState;
 
     private ServerAcceptState acceptState;
 
-    private int slotIndex;
+    private int slotIndex = NO_SLOT;
     private int slotPosition;
     private int slotOffset;
     private boolean endDeferred;
@@ -74,19 +86,54 @@ public final class ServerConnectReplyStream implements MessageConsumer
         this.connectReplyName = connectReplyName;
         this.traceId = traceId;
 
-        this.streamState = this::streamBeforeBegin;
-        this.throttleState = this::throttleBeforeBegin;
+        this.streamState = StreamState.BEFORE_BEGIN;
+        this.throttleState = ThrottleState.BEFORE_BEGIN;
     }
 
     @Override
     public void accept(int msgTypeId, DirectBuffer buffer, int index, int length)
     {
-        streamState.accept(msgTypeId, buffer, index, length);
+        switch (streamState)
+        {
+        case BEFORE_BEGIN:
+            streamBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_END:
+            streamAfterEnd(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_REJECT_OR_RESET:
+            streamAfterRejectOrReset(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_HEADERS_WRITTEN:
+            streamBeforeHeadersWritten(msgTypeId, buffer, index, length);
+            break;
+        case AFTER_BEGIN_OR_DATA:
+            streamAfterBeginOrData(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected stream state " + streamState);
+        }
     }
 
     public void handleThrottle(int msgTypeId, DirectBuffer buffer, int index, int length)
     {
-        throttleState.accept(msgTypeId, buffer, index, length);
+        switch (throttleState)
+        {
+        case BEFORE_BEGIN:
+            throttleBeforeBegin(msgTypeId, buffer, index, length);
+            break;
+        case BEFORE_HEADERS_WRITTEN:
+            throttleBeforeHeadersWritten(msgTypeId, buffer, index, length);
+            break;
+        case BETWEEN_RESPONSES:
+            throttleBetweenResponses(msgTypeId, buffer, index, length);
+            break;
+        case NEXT_WINDOW:
+            throttleNextWindow(msgTypeId, buffer, index, length);
+            break;
+        default:
+            throw new IllegalStateException("Unexpected throttle state " + throttleState);
+        }
     }
 
     @Override
@@ -124,7 +171,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
             endDeferred = true;
             break;
         default:
-            factory.bufferPool.release(slotIndex);
+            releaseSlotIfNecessary();
             processUnexpected(buffer, index, length);
             break;
         }
@@ -173,11 +220,11 @@ public final class ServerConnectReplyStream implements MessageConsumer
             DataFW data = factory.dataRO.wrap(buffer, index, index + length);
             final long streamId = data.streamId();
             connectReplyBudget += data.length();
-            factory.writer.doWindow(connectReplyThrottle, streamId, 0, data.length() + data.padding(), 0);
+            factory.writer.doWindow(connectReplyThrottle, streamId, data.trace(), data.length() + data.padding(), 0);
         }
         else if (msgTypeId == EndFW.TYPE_ID)
         {
-            this.streamState = this::streamAfterEnd;
+            this.streamState = StreamState.AFTER_END;
         }
     }
 
@@ -186,14 +233,19 @@ public final class ServerConnectReplyStream implements MessageConsumer
         int index,
         int length)
     {
+        traceId = factory.frameRO.wrap(buffer, index, index + length).trace();
+        if (factory.events != null)
+        {
+            factory.events.streamAborted(HttpEvents.SERVER, routeRef(), traceId, connectReplyId);
+        }
         doCleanup();
     }
 
     private void doCleanup()
     {
-        factory.writer.doReset(connectReplyThrottle, connectReplyId, 0);
-        acceptState.doAbort(factory.writer, 0);
-        this.streamState = this::streamAfterRejectOrReset;
+        factory.writer.doReset(connectReplyThrottle, connectReplyId, traceId);
+        acceptState.doAbort(factory.writer, traceId);
+        this.streamState = StreamState.AFTER_REJECT_OR_RESET;
         releaseSlotIfNecessary();
     }
 
@@ -216,6 +268,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
         if (sourceRef == 0L && correlation != null)
         {
             acceptState = correlation.state();
+            onResponse();
             acceptState.setCleanupConnectReply.accept(this::doCleanup);
 
             Map<String, String> headers = EMPTY_HEADERS;
@@ -227,7 +280,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
                 headers = headers0;
             }
 
-            acceptState.setThrottle.accept(this::handleThrottle);
+            acceptState.setThrottle(this::handleThrottle);
 
             // default status (and reason)
             String[] status = new String[] { "200", "OK" };
@@ -248,19 +301,34 @@ public final class ServerConnectReplyStream implements MessageConsumer
                     appendHeader(headersChars, name, value);
                 }
             });
+            appendCloseHeaderIfNecessary(headersChars, headers);
 
             String payloadChars =
                     new StringBuilder().append("HTTP/1.1 ").append(status[0]).append(" ").append(status[1]).append("\r\n")
                                        .append(headersChars).append("\r\n").toString();
 
+            if (acceptState.accessLogRecord != null)
+            {
+                acceptState.accessLogRecord.responseBegin(status[0], payloadChars.length());
+            }
+            if (factory.events != null)
+            {
+                factory.events.responseBegun(HttpEvents.SERVER, routeRef(), traceId, acceptState.accessLogRecord.status(),
+                        payloadChars.length());
+            }
+
+            factory.slots.headers(payloadChars.length());
             slotIndex = factory.bufferPool.acquire(connectReplyId);
             if (slotIndex == NO_SLOT)
             {
-                factory.writer.doReset(connectReplyThrottle, connectReplyId, 0L);
-                this.streamState = this::streamAfterRejectOrReset;
+                factory.slots.failed();
+                onSlotsExhausted();
+                factory.writer.doReset(connectReplyThrottle, connectReplyId, traceId);
+                this.streamState = StreamState.AFTER_REJECT_OR_RESET;
             }
             else
             {
+                factory.slots.acquired(BufferSlotMetrics.RESPONSE_HEADERS);
                 slotPosition = 0;
                 MutableDirectBuffer slot = factory.bufferPool.buffer(slotIndex);
                 if (payloadChars.length() > slot.capacity())
@@ -268,10 +336,11 @@ public final class ServerConnectReplyStream implements MessageConsumer
                     slot.putBytes(0,  RESPONSE_HEADERS_TOO_LONG_RESPONSE);
                     acceptState.acceptReplyBudget -=
                             RESPONSE_HEADERS_TOO_LONG_RESPONSE.length + acceptState.acceptReplyPadding;
+                    acceptState.onAcceptReplyBudget();
                     assert acceptState.acceptReplyBudget >= 0;
                     factory.writer.doData(acceptState.acceptReply, acceptState.replyStreamId, traceId,
                             acceptState.acceptReplyPadding, slot, 0, RESPONSE_HEADERS_TOO_LONG_RESPONSE.length);
-                    factory.writer.doReset(connectReplyThrottle, connectReplyId, 0L);
+                    factory.writer.doReset(connectReplyThrottle, connectReplyId, traceId);
                 }
                 else
                 {
@@ -279,12 +348,16 @@ public final class ServerConnectReplyStream implements MessageConsumer
                     slot.putBytes(0, bytes);
                     slotPosition = bytes.length;
                     slotOffset = 0;
-                    this.streamState = this::streamBeforeHeadersWritten;
-                    this.throttleState = this::throttleBeforeHeadersWritten;
+                    this.streamState = StreamState.BEFORE_HEADERS_WRITTEN;
+                    this.throttleState = ThrottleState.BEFORE_HEADERS_WRITTEN;
                     if (acceptState.acceptReplyBudget > 0)
                     {
                         useTargetWindowToWriteResponseHeaders();
                     }
+                    if (slotIndex != NO_SLOT)
+                    {
+                        acceptState.acceptReplyStall.onParked(slotPosition - slotOffset);
+                    }
                 }
             }
         }
@@ -294,6 +367,33 @@ public final class ServerConnectReplyStream implements MessageConsumer
         }
     }
 
+    private void onResponse()
+    {
+        if (factory.admission != null)
+        {
+            factory.admission.onResponse(acceptState.acceptRef);
+        }
+    }
+
+    private void onSlotsExhausted()
+    {
+        if (factory.admission != null)
+        {
+            factory.admission.onSlotsExhausted(factory.bufferPool);
+        }
+    }
+
+    private void appendCloseHeaderIfNecessary(
+        StringBuilder headersChars,
+        Map<String, String> headers)
+    {
+        if (acceptState.closeAfterResponse && !headers.containsKey("connection"))
+        {
+            // closing keep-alive connections under load, see ServerAdmission
+            appendHeader(headersChars, "connection", "close");
+        }
+    }
+
     private void processData(
         DirectBuffer buffer,
         int index,
@@ -301,7 +401,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
     {
         DataFW data = factory.dataRO.wrap(buffer, index, index + length);
         connectReplyBudget -= data.length() + data.padding();
-        long traceId = data.trace();
+        traceId = data.trace();
 
         if (connectReplyBudget < 0)
         {
@@ -311,9 +411,14 @@ public final class ServerConnectReplyStream implements MessageConsumer
         {
             final OctetsFW payload = data.payload();
             acceptState.acceptReplyBudget -= payload.sizeof() + acceptState.acceptReplyPadding;
+            acceptState.onAcceptReplyBudget();
             assert acceptState.acceptReplyBudget >= 0;
             factory.writer.doData(acceptState.acceptReply, acceptState.replyStreamId, traceId,
                     acceptState.acceptReplyPadding, payload);
+            if (acceptState.accessLogRecord != null)
+            {
+                acceptState.accessLogRecord.responseData(payload.sizeof());
+            }
         }
     }
 
@@ -323,22 +428,37 @@ public final class ServerConnectReplyStream implements MessageConsumer
         int length)
     {
         EndFW end = factory.endRO.wrap(buffer, index, index + length);
-        doEnd(end.trace());
+        traceId = end.trace();
+        doEnd(traceId);
     }
 
     private void doEnd(long traceId)
     {
-        if (acceptState != null && acceptState.endRequested && --acceptState.pendingRequests == 0)
+        if (acceptState != null && acceptState.accessLogRecord != null)
+        {
+            factory.exchangeComplete(acceptState.accessLogRecord);
+        }
+        if (acceptState != null)
+        {
+            acceptState.pendingRequests--;
+        }
+        if (acceptState != null && acceptState.endRequested && acceptState.pendingRequests == 0)
         {
             factory.writer.doEnd(acceptState.acceptReply, acceptState.replyStreamId, traceId);
             acceptState.restoreInitialThrottle();
-            this.streamState = this::streamAfterEnd;
+            this.streamState = StreamState.AFTER_END;
             releaseSlotIfNecessary();
         }
         else
         {
-            throttleState = this::throttleBetweenResponses;
-            streamState = this::streamBeforeBegin;
+            throttleState = ThrottleState.BETWEEN_RESPONSES;
+            streamState = StreamState.BEFORE_BEGIN;
+            if (acceptState != null)
+            {
+                // hand the accept reply throttle back so this stream is not retained by an idle connection
+                acceptState.restoreInitialThrottle();
+                acceptState.onResponseComplete();
+            }
         }
     }
 
@@ -351,9 +471,9 @@ public final class ServerConnectReplyStream implements MessageConsumer
 
         final long streamId = frame.streamId();
 
-        factory.writer.doReset(connectReplyThrottle, streamId, 0);
+        factory.writer.doReset(connectReplyThrottle, streamId, traceId);
 
-        this.streamState = this::streamAfterRejectOrReset;
+        this.streamState = StreamState.AFTER_REJECT_OR_RESET;
     }
 
     private void throttleBeforeBegin(
@@ -386,6 +506,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
             WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
             acceptState.acceptReplyBudget += window.credit();
             acceptState.acceptReplyPadding = window.padding();
+            acceptState.onAcceptReplyBudget();
             useTargetWindowToWriteResponseHeaders();
             break;
         case ResetFW.TYPE_ID:
@@ -410,6 +531,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
             WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
             acceptState.acceptReplyBudget += window.credit();
             acceptState.acceptReplyPadding = window.padding();
+            acceptState.onAcceptReplyBudget();
             break;
         case ResetFW.TYPE_ID:
             ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
@@ -454,21 +576,21 @@ public final class ServerConnectReplyStream implements MessageConsumer
             factory.writer.doData(acceptState.acceptReply, acceptState.replyStreamId, traceId,
                     acceptState.acceptReplyPadding, slot, slotOffset, writableBytes);
             acceptState.acceptReplyBudget -= writableBytes + acceptState.acceptReplyPadding;
+            acceptState.onAcceptReplyBudget();
             assert acceptState.acceptReplyBudget >= 0;
             slotOffset += writableBytes;
             bytesDeferred -= writableBytes;
             if (bytesDeferred == 0)
             {
-                factory.bufferPool.release(slotIndex);
-                slotIndex = NO_SLOT;
+                releaseSlotIfNecessary();
                 if (endDeferred)
                 {
-                    doEnd(0L);
+                    doEnd(traceId);
                 }
                 else
                 {
-                    streamState = this::streamAfterBeginOrData;
-                    throttleState = this::throttleNextWindow;
+                    streamState = StreamState.AFTER_BEGIN_OR_DATA;
+                    throttleState = ThrottleState.NEXT_WINDOW;
                 }
             }
         }
@@ -479,6 +601,7 @@ public final class ServerConnectReplyStream implements MessageConsumer
     {
         acceptState.acceptReplyBudget += window.credit();
         acceptState.acceptReplyPadding = window.padding();
+        acceptState.onAcceptReplyBudget();
 
         int connectReplyCredit = acceptState.acceptReplyBudget - connectReplyBudget;
         if (connectReplyCredit > 0)
@@ -495,15 +618,25 @@ public final class ServerConnectReplyStream implements MessageConsumer
     {
         releaseSlotIfNecessary();
         final long traceId = reset.trace();
+        if (factory.events != null)
+        {
+            factory.events.streamReset(HttpEvents.SERVER, routeRef(), traceId, reset.streamId());
+        }
 
         factory.writer.doReset(connectReplyThrottle, connectReplyId, traceId);
     }
 
+    private long routeRef()
+    {
+        return acceptState != null && acceptState.accessLogRecord != null ? acceptState.accessLogRecord.routeRef() : 0L;
+    }
+
     private void releaseSlotIfNecessary()
     {
         if (slotIndex != NO_SLOT)
         {
             factory.bufferPool.release(slotIndex);
+            factory.slots.released(BufferSlotMetrics.RESPONSE_HEADERS);
             slotIndex = NO_SLOT;
         }
     }
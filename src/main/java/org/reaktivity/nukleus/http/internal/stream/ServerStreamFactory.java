@@ -17,17 +17,29 @@ package org.reaktivity.nukleus.http.internal.stream;
 
 import static java.util.Objects.requireNonNull;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.function.LongSupplier;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.collections.Long2ObjectHashMap;
-import org.reaktivity.nukleus.Configuration;
-import org.reaktivity.nukleus.buffer.BufferPool;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
 import org.reaktivity.nukleus.function.MessageConsumer;
 import org.reaktivity.nukleus.function.MessagePredicate;
-import org.reaktivity.nukleus.http.internal.types.control.HttpRouteExFW;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.nukleus.http.internal.metrics.BufferSlotMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.FlowControlMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
 import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
 import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
@@ -36,6 +48,7 @@ import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
 import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
 import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.http.internal.util.TieredBufferPool;
 import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
 
@@ -46,12 +59,14 @@ public final class ServerStreamFactory implements StreamFactory
     static final byte[] SEMICOLON_BYTES = ";".getBytes(StandardCharsets.US_ASCII);
     static final byte[] SPACE = " ".getBytes(StandardCharsets.US_ASCII);
     static final int MAXIMUM_METHOD_BYTES = "OPTIONS".length();
+    private static final byte[] ERROR_RESPONSE_PREFIX = "HTTP/1.1 ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR_RESPONSE_SUFFIX = "\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
 
     final MessageWriter writer;
 
     final FrameFW frameRO = new FrameFW();
     final RouteFW routeRO = new RouteFW();
-    final HttpRouteExFW routeExRO = new HttpRouteExFW();
+    private final RouteHeadersMatcher routeHeaders = new RouteHeadersMatcher();
     final BeginFW beginRO = new BeginFW();
     final DataFW dataRO = new DataFW();
     final EndFW endRO = new EndFW();
@@ -62,25 +77,82 @@ public final class ServerStreamFactory implements StreamFactory
     final RouteManager router;
     final LongSupplier supplyStreamId;
     final LongSupplier supplyCorrelationId;
-    final BufferPool bufferPool;
+    final TieredBufferPool bufferPool;
+    final AccessLog accessLog;
+    final HttpEvents events;
+    final BufferSlotMetrics slots;
+    final MutableDirectBuffer temporarySlot;
+    private final HttpMetrics metrics;
+    private final Long2ObjectHashMap<FlowControlMetrics> flowControls;
+    final LongSupplier countAccessLogDrops;
+    final HibernatedConnections hibernated;
+    final Spool requestSpool;
+    final ServerAdmission admission;
+    final RateLimiter rateLimiter;
+    final TimerWheel timers;
+    final AtomicCounter timeoutsExpired;
+    final int headerTimeout;
+    final int bodyTimeout;
+    final int keepAliveTimeout;
+    final int hibernationDelay;
+    final boolean http2;
+    final int http2MaxConcurrentStreams;
+    final Http2Codec http2Codec;
+    private final List<String> sourceNames;
+    private final List<MessageConsumer> sourceThrottles;
+    private final UnsafeBuffer errorResponseRO = new UnsafeBuffer(new byte[0]);
+    private MutableDirectBuffer errorResponseBuffer = new UnsafeBuffer(new byte[256]);
 
-    Long2ObjectHashMap<Correlation<?>> correlations;
+    CorrelationStore correlations;
 
     public ServerStreamFactory(
-        Configuration config,
+        HttpConfiguration config,
         RouteManager router,
         MutableDirectBuffer writeBuffer,
-        BufferPool bufferPool,
+        TieredBufferPool bufferPool,
         LongSupplier supplyStreamId,
         LongSupplier supplyCorrelationId,
-        Long2ObjectHashMap<Correlation<?>> correlations)
+        CorrelationStore correlations,
+        Function<String, LongSupplier> supplyCounter,
+        AccessLog accessLog,
+        HttpMetrics metrics,
+        Spool requestSpool,
+        ServerAdmission admission,
+        RateLimiter rateLimiter,
+        TimerWheel timers,
+        AtomicCounter timeoutsExpired)
     {
         this.router = requireNonNull(router);
-        this.writer = new MessageWriter(requireNonNull(writeBuffer));
+        this.writer = new MessageWriter(requireNonNull(writeBuffer),
+                FrameSampler.newInstance(config.traceSampler()), config.traceSamplingMask());
         this.bufferPool = requireNonNull(bufferPool);
+        this.temporarySlot = new UnsafeBuffer(ByteBuffer.allocateDirect(bufferPool.maximumSlotCapacity()));
         this.supplyStreamId = requireNonNull(supplyStreamId);
         this.supplyCorrelationId = supplyCorrelationId;
         this.correlations = requireNonNull(correlations);
+        this.accessLog = accessLog;
+        this.events = HttpEvents.newInstance(config);
+        this.countAccessLogDrops = supplyCounter.apply("access.log.drops");
+        this.slots = metrics.supplyBufferSlots(Role.SERVER, bufferPool);
+        this.metrics = metrics;
+        this.flowControls = new Long2ObjectHashMap<>();
+        this.hibernated = config.serverHibernation() && timers != null ?
+                new HibernatedConnections(config.serverHibernationCapacity(),
+                        metrics.gauge(HibernatedConnections.CONNECTIONS_HIBERNATED, Role.SERVER, "", 0L)) : null;
+        this.requestSpool = requestSpool;
+        this.admission = admission;
+        this.rateLimiter = rateLimiter;
+        this.timers = timers;
+        this.timeoutsExpired = timeoutsExpired;
+        this.headerTimeout = timers != null ? config.serverHeaderTimeout() : 0;
+        this.bodyTimeout = timers != null ? config.serverBodyTimeout() : 0;
+        this.keepAliveTimeout = timers != null ? config.serverKeepAliveTimeout() : 0;
+        this.hibernationDelay = config.serverHibernationDelay();
+        this.http2 = config.serverHttp2();
+        this.http2MaxConcurrentStreams = config.serverHttp2MaxConcurrentStreams();
+        this.http2Codec = http2 ? new Http2Codec(bufferPool.maximumSlotCapacity()) : null;
+        this.sourceNames = new ArrayList<>();
+        this.sourceThrottles = new ArrayList<>();
     }
 
     @Override
@@ -133,8 +205,11 @@ public final class ServerStreamFactory implements StreamFactory
             final long acceptTraceId = begin.trace();
             final long acceptCorrelationId = begin.correlationId();
 
-            newStream = new ServerAcceptStream(this, acceptThrottle,
-                    acceptId, acceptTraceId, acceptRef, acceptName, acceptCorrelationId, authorization);
+            // not pooled, the reaktor keeps the handle as stream and reply throttle until it sees the connection end
+            final ServerAcceptHandle handle = new ServerAcceptHandle(this, acceptId);
+            handle.attach(new ServerAcceptStream(this, handle, acceptThrottle,
+                    acceptId, acceptTraceId, acceptRef, acceptName, acceptCorrelationId, authorization));
+            newStream = handle;
         }
 
         return newStream;
@@ -146,18 +221,186 @@ public final class ServerStreamFactory implements StreamFactory
         final long connectReplyId = begin.streamId();
         final long connectReplyTraceId = begin.trace();
 
+        if (http2)
+        {
+            final Correlation<?> correlation = correlations.get(begin.correlationId());
+            if (correlation != null && correlation.state() instanceof Http2ServerStream)
+            {
+                // replies to requests from HTTP/2 streams are encoded by their connection
+                return ((Http2ServerStream) correlation.state()).newReplyStream(connectReplyThrottle, connectReplyId);
+            }
+        }
+
         return new ServerConnectReplyStream(this, connectReplyThrottle, connectReplyId, connectReplyTraceId,
                 connectReplyName);
     }
 
-    private RouteFW wrapRoute(int msgTypeId, DirectBuffer buffer, int index, int length)
+    ServerAcceptStream inflateAcceptStream(
+        ServerAcceptHandle handle,
+        long acceptId,
+        long traceId)
     {
-        return routeRO.wrap(buffer, index, index + length);
+        final MutableDirectBuffer records = hibernated.buffer();
+        final int offset = hibernated.offsetOf(acceptId);
+        assert offset != -1;
+
+        final int sourceIndex = records.getInt(offset + HibernatedConnections.SOURCE_INDEX_OFFSET);
+        final ServerAcceptStream stream = new ServerAcceptStream(this, handle, sourceThrottles.get(sourceIndex),
+                acceptId, traceId,
+                records.getLong(offset + HibernatedConnections.ACCEPT_REF_OFFSET),
+                sourceNames.get(sourceIndex),
+                records.getLong(offset + HibernatedConnections.ACCEPT_CORRELATION_ID_OFFSET),
+                records.getLong(offset + HibernatedConnections.AUTHORIZATION_OFFSET));
+        stream.restore(records.getLong(offset + HibernatedConnections.REPLY_STREAM_ID_OFFSET),
+                records.getInt(offset + HibernatedConnections.SOURCE_BUDGET_OFFSET),
+                records.getInt(offset + HibernatedConnections.REPLY_BUDGET_OFFSET),
+                records.getInt(offset + HibernatedConnections.REPLY_PADDING_OFFSET));
+        hibernated.remove(acceptId);
+
+        return stream;
+    }
+
+    void hibernatedReplyWindow(
+        long acceptId,
+        int credit,
+        int padding)
+    {
+        final MutableDirectBuffer records = hibernated.buffer();
+        final int offset = hibernated.offsetOf(acceptId);
+        assert offset != -1;
+
+        final int budgetOffset = offset + HibernatedConnections.REPLY_BUDGET_OFFSET;
+        records.putInt(budgetOffset, records.getInt(budgetOffset) + credit);
+        records.putInt(offset + HibernatedConnections.REPLY_PADDING_OFFSET, padding);
+    }
+
+    // the trace of the last frame received before hibernation, for frames the connection emits on timeout
+    long hibernatedTraceId(
+        long acceptId)
+    {
+        final int offset = hibernated.offsetOf(acceptId);
+        assert offset != -1;
+
+        return hibernated.buffer().getLong(offset + HibernatedConnections.TRACE_ID_OFFSET);
+    }
+
+    // accept streams from the same source share its name and throttle, so hibernated records refer to them by index
+    int sourceIndex(
+        String sourceName,
+        MessageConsumer sourceThrottle)
+    {
+        int index = 0;
+        while (index < sourceNames.size() &&
+                (sourceThrottles.get(index) != sourceThrottle || !sourceNames.get(index).equals(sourceName)))
+        {
+            index++;
+        }
+
+        if (index == sourceNames.size())
+        {
+            sourceNames.add(sourceName);
+            sourceThrottles.add(sourceThrottle);
+        }
+
+        return index;
+    }
+
+    FlowControlMetrics supplyFlowControl(
+        long acceptRef)
+    {
+        FlowControlMetrics flowControl = flowControls.get(acceptRef);
+        if (flowControl == null)
+        {
+            flowControl = metrics.supplyFlowControl(Role.SERVER, "", acceptRef);
+            flowControls.put(acceptRef, flowControl);
+        }
+        return flowControl;
+    }
+
+    AccessLogRecord newAccessLogRecord()
+    {
+        return accessLog != null || events != null ? new AccessLogRecord() : null;
     }
 
-    @FunctionalInterface interface DecoderState
+    void exchangeComplete(
+        AccessLogRecord record)
     {
-        int decode(DirectBuffer buffer, int offset, int limit);
+        record.complete();
+
+        if (accessLog != null && !accessLog.append(AccessLog.SERVER_RECORD_TYPE_ID, record))
+        {
+            countAccessLogDrops.getAsLong();
+        }
+
+        if (events != null)
+        {
+            events.exchangeCompleted(HttpEvents.SERVER, record);
+        }
+    }
+
+    /*
+     * Encodes an error response into a buffer shared by the streams of this factory, so it is only valid until the next
+     * error response is encoded
+     */
+    DirectBuffer errorResponse(
+        int status,
+        String message)
+    {
+        final int messageLength = message.length();
+        final int maximumLength = ERROR_RESPONSE_PREFIX.length + 4 + 3 * messageLength + ERROR_RESPONSE_SUFFIX.length;
+        if (maximumLength > errorResponseBuffer.capacity())
+        {
+            errorResponseBuffer = new UnsafeBuffer(new byte[maximumLength]);
+        }
+
+        final MutableDirectBuffer buffer = errorResponseBuffer;
+        buffer.putBytes(0, ERROR_RESPONSE_PREFIX);
+        int limit = ERROR_RESPONSE_PREFIX.length;
+        buffer.putByte(limit++, (byte) ('0' + status / 100 % 10));
+        buffer.putByte(limit++, (byte) ('0' + status / 10 % 10));
+        buffer.putByte(limit++, (byte) ('0' + status % 10));
+        buffer.putByte(limit++, (byte) ' ');
+
+        final int messageOffset = limit;
+        for (int i = 0; i < messageLength && limit != -1; i++)
+        {
+            final char ch = message.charAt(i);
+            buffer.putByte(limit, (byte) ch);
+            limit = ch > 0x7f ? -1 : limit + 1;
+        }
+
+        if (limit == -1)
+        {
+            // reason phrases are ASCII unless they echo a request header, which is rare enough to encode as before
+            final byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+            buffer.putBytes(messageOffset, messageBytes);
+            limit = messageOffset + messageBytes.length;
+        }
+
+        buffer.putBytes(limit, ERROR_RESPONSE_SUFFIX);
+        limit += ERROR_RESPONSE_SUFFIX.length;
+
+        errorResponseRO.wrap(buffer, 0, limit);
+        return errorResponseRO;
+    }
+
+    RouteFW resolveTarget(
+        long sourceRef,
+        long authorization,
+        Map<String, String> headers)
+    {
+        final MessagePredicate filter = (t, b, o, l) ->
+        {
+            final RouteFW route = routeRO.wrap(b, o, l);
+            return route.sourceRef() == sourceRef && routeHeaders.matches(route.extension(), headers);
+        };
+
+        return router.resolve(authorization, filter, this::wrapRoute);
+    }
+
+    private RouteFW wrapRoute(int msgTypeId, DirectBuffer buffer, int index, int length)
+    {
+        return routeRO.wrap(buffer, index, index + length);
     }
 
     static final class HttpStatus
@@ -15,15 +15,22 @@
  */
 package org.reaktivity.nukleus.http.internal.stream;
 
+import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
 import java.util.function.LongFunction;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 import org.agrona.MutableDirectBuffer;
-import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.status.AtomicCounter;
 import org.reaktivity.nukleus.Configuration;
 import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.util.SlabBufferPool;
+import org.reaktivity.nukleus.http.internal.util.TieredBufferPool;
 import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
 import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
@@ -31,19 +38,47 @@ import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
 public final class ServerStreamFactoryBuilder implements StreamFactoryBuilder
 {
     private final Configuration config;
-    private final Long2ObjectHashMap<Correlation<?>> correlations;
+    private final AccessLog accessLog;
+    private final HttpMetrics metrics;
+    private final TimerWheel timers;
+    private final AtomicCounter timeoutsExpired;
+    private final CorrelationStore correlations;
+    private final Spool requestSpool;
+    private final ServerAdmission admission;
+    private final RateLimiter rateLimiter;
 
     private RouteManager router;
     private MutableDirectBuffer writeBuffer;
     private LongSupplier supplyStreamId;
     private LongSupplier supplyCorrelationId;
     private Supplier<BufferPool> supplyBufferPool;
+    private Function<String, LongSupplier> supplyCounter;
+    private BufferPool largeSlots;
 
     public ServerStreamFactoryBuilder(
-        Configuration config)
+        Configuration config,
+        AccessLog accessLog,
+        HttpMetrics metrics,
+        CorrelationSweeper sweeper,
+        TimerWheel timers)
     {
         this.config = config;
-        this.correlations = new Long2ObjectHashMap<>();
+        this.accessLog = accessLog;
+        this.metrics = metrics;
+        this.timers = timers;
+        this.timeoutsExpired = timers != null ? metrics.counter(TimerWheel.TIMEOUTS_EXPIRED, Role.SERVER, "", 0L) : null;
+        this.correlations = sweeper.register(new CorrelationStore(((HttpConfiguration) config).correlationsCapacity(),
+                metrics.gauge(CorrelationStore.CORRELATIONS_LIVE, Role.SERVER, "", 0L),
+                metrics.counter(CorrelationStore.CORRELATIONS_RECLAIMED, Role.SERVER, "", 0L),
+                this::onReclaimed));
+        this.requestSpool = Spool.newRequestSpool((HttpConfiguration) config, metrics);
+        this.admission = ((HttpConfiguration) config).serverAdmission() ? new ServerAdmission((HttpConfiguration) config,
+                correlations,
+                metrics.counter(ServerAdmission.REQUESTS_SHED, Role.SERVER, "", 0L),
+                metrics.counter(ServerAdmission.KEEPALIVES_CLOSED, Role.SERVER, "", 0L)) : null;
+        this.rateLimiter = ((HttpConfiguration) config).serverRateLimit() > 0 ? new RateLimiter((HttpConfiguration) config,
+                System::nanoTime,
+                metrics.counter(RateLimiter.REQUESTS_RATE_LIMITED, Role.SERVER, "", 0L)) : null;
     }
 
     @Override
@@ -100,12 +135,57 @@ public final class ServerStreamFactoryBuilder implements StreamFactoryBuilder
         return this;
     }
 
+    @Override
+    public StreamFactoryBuilder setCounterSupplier(
+        Function<String, LongSupplier> supplyCounter)
+    {
+        this.supplyCounter = supplyCounter;
+        return this;
+    }
+
     @Override
     public StreamFactory build()
     {
-        final BufferPool bufferPool = supplyBufferPool.get();
+        final TieredBufferPool bufferPool = newTieredBufferPool(supplyBufferPool.get());
+
+        return new ServerStreamFactory((HttpConfiguration) config, router, writeBuffer,
+                bufferPool, supplyStreamId, supplyCorrelationId, correlations, supplyCounter, accessLog, metrics,
+                requestSpool, admission, rateLimiter, timers, timeoutsExpired);
+    }
+
+    // a request reclaimed without response no longer counts against its route, and its client is not left waiting
+    private void onReclaimed(
+        long correlationId,
+        long ownerId,
+        Correlation<?> correlation)
+    {
+        final Object state = correlation.state();
+        if (admission != null)
+        {
+            admission.onResponse(state instanceof Http2ServerStream ? ((Http2ServerStream) state).acceptRef() :
+                    ((ServerAcceptState) state).acceptRef);
+        }
 
-        return new ServerStreamFactory(config, router, writeBuffer,
-                bufferPool, supplyStreamId, supplyCorrelationId, correlations);
+        if (state instanceof Http2ServerStream)
+        {
+            ((Http2ServerStream) state).onCorrelationReclaimed();
+        }
+        else
+        {
+            ((ServerAcceptState) state).onCorrelationReclaimed();
+        }
+    }
+
+    // large slots are shared like correlations, each factory using its own duplicate
+    private TieredBufferPool newTieredBufferPool(
+        BufferPool smallSlots)
+    {
+        final HttpConfiguration httpConfig = (HttpConfiguration) config;
+        final int maximumHeadersSize = httpConfig.maximumHeadersSize();
+        if (largeSlots == null && maximumHeadersSize > smallSlots.slotCapacity())
+        {
+            largeSlots = new SlabBufferPool(httpConfig.largeSlots(), maximumHeadersSize);
+        }
+        return new TieredBufferPool(smallSlots, largeSlots != null ? largeSlots.duplicate() : null);
     }
 }
@@ -0,0 +1,336 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+import org.agrona.DirectBuffer;
+import org.agrona.IoUtil;
+import org.agrona.LangUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+
+/**
+ * Memory-mapped file of fixed size blocks that message bodies are spooled to, so the sender can keep sending
+ * while the receiver grants no window. The file size bounds the total bytes spooled.
+ * <p>
+ * Server request bodies are spooled when the target is slow, and client responses when the accept reply is slow,
+ * so that the connection to the backend can be released before the response has been delivered.
+ * <p>
+ * Each spooled body reserves all the blocks it needs up front, then fills them as the body arrives and frees them
+ * as the body is replayed to the receiver.
+ */
+final class Spool implements AutoCloseable
+{
+    static final String REQUEST_FILE_NAME = "request.spool";
+    static final String RESPONSE_FILE_NAME = "response.spool";
+
+    static final String REQUEST_SPOOL_BYTES = "request.spool.bytes";
+    static final String REQUEST_SPOOL_REJECTED = "request.spool.rejected";
+    static final String REQUEST_SPOOL_BLOCKS = "request.spool.blocks";
+
+    static final String RESPONSE_SPOOL_BYTES = "response.spool.bytes";
+    static final String RESPONSE_SPOOL_REJECTED = "response.spool.rejected";
+    static final String RESPONSE_SPOOL_BLOCKS = "response.spool.blocks";
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int NO_BLOCK = -1;
+
+    private final MappedByteBuffer mapped;
+    private final UnsafeBuffer blocks;
+    private final int blockSize;
+    private final int[] nextBlocks;
+    private final int threshold;
+    private final int maximum;
+    private final long[] routeRefs;
+    private final AtomicCounter spooledBytes;
+    private final AtomicCounter rejected;
+    private final AtomicCounter blocksInUse;
+
+    private int freeBlock;
+    private int reservedBlocks;
+
+    Spool(
+        MappedByteBuffer mapped,
+        int threshold,
+        int maximum,
+        long[] routeRefs,
+        AtomicCounter spooledBytes,
+        AtomicCounter rejected,
+        AtomicCounter blocksInUse)
+    {
+        this.mapped = mapped;
+        this.blocks = new UnsafeBuffer(mapped);
+        this.blockSize = Math.min(BLOCK_SIZE, mapped.capacity());
+        this.nextBlocks = new int[mapped.capacity() / blockSize];
+        this.threshold = threshold;
+        this.maximum = maximum;
+        this.routeRefs = routeRefs;
+        this.spooledBytes = spooledBytes;
+        this.rejected = rejected;
+        this.blocksInUse = blocksInUse;
+
+        for (int block = 0; block < nextBlocks.length; block++)
+        {
+            nextBlocks[block] = block + 1 < nextBlocks.length ? block + 1 : NO_BLOCK;
+        }
+        this.freeBlock = nextBlocks.length != 0 ? 0 : NO_BLOCK;
+    }
+
+    boolean shouldSpool(
+        long routeRef,
+        int contentLength)
+    {
+        return contentLength > threshold && contentLength <= maximum &&
+                (routeRefs == null || Arrays.binarySearch(routeRefs, routeRef) >= 0);
+    }
+
+    /*
+     * Reserves enough blocks for a body of the given length, or returns null when they would exceed the spool
+     */
+    Body reserve(
+        int contentLength)
+    {
+        final int blockCount = (int) ((contentLength + (long) blockSize - 1) / blockSize);
+        Body body = null;
+        if (reservedBlocks + blockCount <= nextBlocks.length)
+        {
+            reservedBlocks += blockCount;
+            blocksInUse.setOrdered(reservedBlocks);
+            body = new Body(blockCount);
+        }
+        else
+        {
+            rejected.increment();
+        }
+        return body;
+    }
+
+    @Override
+    public void close()
+    {
+        IoUtil.unmap(mapped);
+    }
+
+    private int allocateBlock()
+    {
+        final int block = freeBlock;
+        freeBlock = nextBlocks[block];
+        nextBlocks[block] = NO_BLOCK;
+        return block;
+    }
+
+    private void freeBlock(
+        int block)
+    {
+        nextBlocks[block] = freeBlock;
+        freeBlock = block;
+    }
+
+    static Spool newRequestSpool(
+        HttpConfiguration config,
+        HttpMetrics metrics)
+    {
+        final int capacity = config.requestSpoolCapacity();
+        Spool spool = null;
+        if (capacity > 0)
+        {
+            final File file = config.directory().resolve("http").resolve(REQUEST_FILE_NAME).toFile();
+            spool = new Spool(map(file, capacity), config.requestSpoolThreshold(), Integer.MAX_VALUE,
+                    config.requestSpoolRoutes(),
+                    metrics.counter(REQUEST_SPOOL_BYTES, Role.SERVER, "", 0L),
+                    metrics.counter(REQUEST_SPOOL_REJECTED, Role.SERVER, "", 0L),
+                    metrics.gauge(REQUEST_SPOOL_BLOCKS, Role.SERVER, "", 0L));
+        }
+        return spool;
+    }
+
+    static Spool newResponseSpool(
+        HttpConfiguration config,
+        HttpMetrics metrics)
+    {
+        final int capacity = config.responseSpoolCapacity();
+        Spool spool = null;
+        if (capacity > 0)
+        {
+            final File file = config.directory().resolve("http").resolve(RESPONSE_FILE_NAME).toFile();
+            spool = new Spool(map(file, capacity), config.responseSpoolThreshold(), config.responseSpoolMaximum(), null,
+                    metrics.counter(RESPONSE_SPOOL_BYTES, Role.CLIENT, "", 0L),
+                    metrics.counter(RESPONSE_SPOOL_REJECTED, Role.CLIENT, "", 0L),
+                    metrics.gauge(RESPONSE_SPOOL_BLOCKS, Role.CLIENT, "", 0L));
+        }
+        return spool;
+    }
+
+    // sparse, so disk is only used by blocks that have been spooled to
+    static MappedByteBuffer map(
+        File file,
+        int capacity)
+    {
+        MappedByteBuffer mapped = null;
+
+        final File directory = file.getAbsoluteFile().getParentFile();
+        IoUtil.ensureDirectoryExists(directory, directory.getPath());
+
+        try (RandomAccessFile spool = new RandomAccessFile(file, "rw"))
+        {
+            spool.setLength(0L);
+            spool.setLength(capacity);
+            mapped = spool.getChannel().map(READ_WRITE, 0L, capacity);
+        }
+        catch (IOException ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+
+        return mapped;
+    }
+
+    /**
+     * Queue of spooled bytes for one request body, written at the tail block and read from the head block.
+     */
+    final class Body
+    {
+        private int reserved;
+        private int headBlock = NO_BLOCK;
+        private int headOffset;
+        private int tailBlock = NO_BLOCK;
+        private int tailOffset;
+        private long size;
+
+        private Body(
+            int reserved)
+        {
+            this.reserved = reserved;
+        }
+
+        void write(
+            DirectBuffer buffer,
+            int offset,
+            int length)
+        {
+            int progress = 0;
+            while (progress < length)
+            {
+                if (tailBlock == NO_BLOCK || tailOffset == blockSize)
+                {
+                    appendBlock();
+                }
+                final int writable = Math.min(length - progress, blockSize - tailOffset);
+                blocks.putBytes(tailBlock * blockSize + tailOffset, buffer, offset + progress, writable);
+                tailOffset += writable;
+                progress += writable;
+            }
+            size += length;
+            spooledBytes.add(length);
+        }
+
+        long size()
+        {
+            return size;
+        }
+
+        DirectBuffer buffer()
+        {
+            return blocks;
+        }
+
+        /*
+         * Offset in buffer() of the next spooled bytes, of which readable() are contiguous
+         */
+        int readOffset()
+        {
+            return headBlock * blockSize + headOffset;
+        }
+
+        int readable()
+        {
+            return headBlock == NO_BLOCK ? 0 : (headBlock == tailBlock ? tailOffset : blockSize) - headOffset;
+        }
+
+        void consume(
+            int length)
+        {
+            assert length <= readable();
+            headOffset += length;
+            size -= length;
+            if (headOffset == blockSize && headBlock != tailBlock)
+            {
+                final int next = nextBlocks[headBlock];
+                releaseBlock(headBlock);
+                headBlock = next;
+                headOffset = 0;
+            }
+        }
+
+        void release()
+        {
+            while (headBlock != NO_BLOCK)
+            {
+                final int next = headBlock == tailBlock ? NO_BLOCK : nextBlocks[headBlock];
+                releaseBlock(headBlock);
+                headBlock = next;
+            }
+            tailBlock = NO_BLOCK;
+            reservedBlocks -= reserved;
+            reserved = 0;
+            size = 0;
+            blocksInUse.setOrdered(reservedBlocks);
+        }
+
+        private void appendBlock()
+        {
+            assert reserved > 0;
+            final int block = allocateBlock();
+            if (tailBlock == NO_BLOCK)
+            {
+                headBlock = block;
+                headOffset = 0;
+            }
+            else if (headBlock == tailBlock && headOffset == blockSize)
+            {
+                // the reader caught up at the end of the only block, so the new block becomes the head
+                releaseBlock(headBlock);
+                headBlock = block;
+                headOffset = 0;
+            }
+            else
+            {
+                nextBlocks[tailBlock] = block;
+            }
+            tailBlock = block;
+            tailOffset = 0;
+        }
+
+        private void releaseBlock(
+            int block)
+        {
+            freeBlock(block);
+            reserved--;
+            reservedBlocks--;
+            blocksInUse.setOrdered(reservedBlocks);
+        }
+    }
+}
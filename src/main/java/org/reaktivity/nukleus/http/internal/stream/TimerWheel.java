@@ -0,0 +1,287 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.agrona.BitUtil;
+import org.reaktivity.nukleus.Nukleus;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+/**
+ * Hashed timing wheel for stream timeouts, run on the reaktor duty cycle of the stream factories that schedule them.
+ * <p>
+ * Timers are preallocated entries linked into the wheel bucket of their deadline tick, so scheduling, cancelling
+ * and expiring a timer never allocates. Timer ids carry the generation of their entry, so cancelling a timer that
+ * has already expired has no effect on the entry it used. When every entry is pending, timers are not scheduled.
+ */
+public final class TimerWheel implements Nukleus
+{
+    static final long NO_TIMER = -1L;
+
+    static final String TIMEOUTS_EXPIRED = "timeouts.expired";
+
+    private static final int NONE = -1;
+    private static final int FREE = -1;
+    private static final int EXPIRING = -2;
+
+    private static final Consumer<Runnable> RUN = Runnable::run;
+
+    private final LongSupplier clock;
+    private final long startedAt;
+    private final long tick;
+    private final int mask;
+    private final int[] heads;
+    private final long[] deadlines;
+    private final int[] buckets;
+    private final int[] nexts;
+    private final int[] prevs;
+    private final int[] generations;
+    private final Consumer<?>[] handlers;
+    private final Object[] contexts;
+
+    private long currentTick;
+    private int free;
+    private int expiring;
+    private int size;
+
+    TimerWheel(
+        HttpConfiguration config,
+        LongSupplier clock)
+    {
+        final int capacity = config.timersCapacity();
+        this.clock = clock;
+        this.startedAt = clock.getAsLong();
+        this.tick = MILLISECONDS.toNanos(config.timerTick());
+        this.mask = BitUtil.findNextPositivePowerOfTwo(config.timerWheelSize()) - 1;
+        this.heads = new int[mask + 1];
+        this.deadlines = new long[capacity];
+        this.buckets = new int[capacity];
+        this.nexts = new int[capacity];
+        this.prevs = new int[capacity];
+        this.generations = new int[capacity];
+        this.handlers = new Consumer<?>[capacity];
+        this.contexts = new Object[capacity];
+        this.expiring = NONE;
+
+        Arrays.fill(heads, NONE);
+        Arrays.fill(buckets, FREE);
+        for (int i = 0; i < capacity; i++)
+        {
+            nexts[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+    }
+
+    /*
+     * Returns a timer that runs the handler once the timeout in milliseconds has elapsed, or NO_TIMER when full
+     */
+    long schedule(
+        long timeout,
+        Runnable handler)
+    {
+        return schedule(timeout, RUN, handler);
+    }
+
+    /*
+     * As above, passing the context to the handler, so that a handler shared by many timers needs no binding to each
+     */
+    <T> long schedule(
+        long timeout,
+        Consumer<T> handler,
+        T context)
+    {
+        long timerId = NO_TIMER;
+        final int index = free;
+        if (index != NONE)
+        {
+            free = nexts[index];
+            size++;
+
+            final long ticks = Math.max((MILLISECONDS.toNanos(timeout) + tick - 1) / tick, 1L);
+            final long deadline = Math.max(ticksAt(clock.getAsLong()), currentTick) + ticks;
+            final int bucket = (int) deadline & mask;
+            deadlines[index] = deadline;
+            handlers[index] = handler;
+            contexts[index] = context;
+            link(index, bucket);
+
+            timerId = ((long) generations[index] << 32) | index;
+        }
+        return timerId;
+    }
+
+    /*
+     * Returns NO_TIMER, for the caller to assign to its timer id
+     */
+    long cancel(
+        long timerId)
+    {
+        if (timerId != NO_TIMER)
+        {
+            final int index = (int) timerId;
+            if (generations[index] == (int) (timerId >>> 32))
+            {
+                switch (buckets[index])
+                {
+                case FREE:
+                    break;
+                case EXPIRING:
+                    // cancelled by the handler of another timer expiring on the same tick
+                    handlers[index] = null;
+                    contexts[index] = null;
+                    break;
+                default:
+                    unlink(index);
+                    release(index);
+                    break;
+                }
+            }
+        }
+        return NO_TIMER;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    @Override
+    public int process()
+    {
+        int workCount = 0;
+
+        final long nowTick = ticksAt(clock.getAsLong());
+        if (nowTick > currentTick)
+        {
+            // after a full turn every bucket has been visited, whatever the number of ticks elapsed
+            final long turns = Math.min(nowTick - currentTick, mask + 1L);
+            for (long i = 1; i <= turns; i++)
+            {
+                collectExpired((int) (currentTick + i) & mask, nowTick);
+            }
+            currentTick = nowTick;
+            workCount += expire();
+        }
+
+        return workCount;
+    }
+
+    private void collectExpired(
+        int bucket,
+        long nowTick)
+    {
+        int index = heads[bucket];
+        while (index != NONE)
+        {
+            final int next = nexts[index];
+            if (deadlines[index] <= nowTick)
+            {
+                unlink(index);
+                buckets[index] = EXPIRING;
+                nexts[index] = expiring;
+                expiring = index;
+            }
+            index = next;
+        }
+    }
+
+    // handlers may schedule and cancel timers, so they only run once every expired timer has been unlinked
+    @SuppressWarnings("unchecked")
+    private int expire()
+    {
+        int workCount = 0;
+        while (expiring != NONE)
+        {
+            final int index = expiring;
+            final Consumer<Object> handler = (Consumer<Object>) handlers[index];
+            final Object context = contexts[index];
+            expiring = nexts[index];
+            release(index);
+            if (handler != null)
+            {
+                handler.accept(context);
+                workCount++;
+            }
+        }
+        return workCount;
+    }
+
+    private long ticksAt(
+        long time)
+    {
+        return (time - startedAt) / tick;
+    }
+
+    private void link(
+        int index,
+        int bucket)
+    {
+        final int head = heads[bucket];
+        buckets[index] = bucket;
+        prevs[index] = NONE;
+        nexts[index] = head;
+        if (head != NONE)
+        {
+            prevs[head] = index;
+        }
+        heads[bucket] = index;
+    }
+
+    private void unlink(
+        int index)
+    {
+        final int next = nexts[index];
+        final int prev = prevs[index];
+        if (prev != NONE)
+        {
+            nexts[prev] = next;
+        }
+        else
+        {
+            heads[buckets[index]] = next;
+        }
+        if (next != NONE)
+        {
+            prevs[next] = prev;
+        }
+    }
+
+    private void release(
+        int index)
+    {
+        buckets[index] = FREE;
+        handlers[index] = null;
+        contexts[index] = null;
+        generations[index]++;
+        nexts[index] = free;
+        free = index;
+        size--;
+    }
+
+    public static TimerWheel newInstance(
+        HttpConfiguration config)
+    {
+        final boolean timeouts = config.serverHeaderTimeout() > 0 || config.serverBodyTimeout() > 0 ||
+                config.serverKeepAliveTimeout() > 0 || config.clientQueueTimeout() > 0 ||
+                config.clientHeaderTimeout() > 0 || config.clientKeepAliveTimeout() > 0 ||
+                config.serverHibernation();
+        return timeouts ? new TimerWheel(config, System::nanoTime) : null;
+    }
+}
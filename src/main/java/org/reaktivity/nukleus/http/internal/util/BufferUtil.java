@@ -86,6 +86,24 @@ public final class BufferUtil
         return -1;
     }
 
+    /*
+     * @return the non-negative value of the hexadecimal digits, or -1 if they are absent, invalid or overflow an int
+     */
+    public static int parseHex(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        int value = offset < limit ? 0 : -1;
+
+        for (int cursor = offset; cursor < limit && value != -1; cursor++)
+        {
+            final int digit = Character.digit(buffer.getByte(cursor), 16);
+            value = digit == -1 || value > (Integer.MAX_VALUE >> 4) ? -1 : (value << 4) | digit;
+        }
+
+        return value;
+    }
 
     private BufferUtil()
     {
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.agrona.collections.Int2ObjectHashMap;
+
+/**
+ * Bounded free list of reusable objects for a single thread.
+ * <p>
+ * An object is reset when it is released, so that {@link #acquire()} always returns an object in its initial state.
+ * When the free list is full, released objects are left to the garbage collector.
+ * <p>
+ * In debug mode, each acquired object is tracked by a weak reference holding the stack trace of its acquisition,
+ * so that releasing an object twice, or releasing an object not acquired from this pool, throws
+ * {@link IllegalStateException}, and an acquired object that becomes unreachable without being released is
+ * reported as a leak to the leak handler with the stack trace of where it was acquired.
+ */
+public final class ObjectPool<T>
+{
+    private final Supplier<T> factory;
+    private final Consumer<T> reset;
+    private final int capacity;
+    private final Deque<T> available;
+    private final LeakDetector<T> leakDetector;
+
+    private int acquired;
+
+    public ObjectPool(
+        Supplier<T> factory,
+        Consumer<T> reset,
+        int capacity)
+    {
+        this(factory, reset, capacity, null);
+    }
+
+    public ObjectPool(
+        Supplier<T> factory,
+        Consumer<T> reset,
+        int capacity,
+        Consumer<Throwable> leakHandler)
+    {
+        this.factory = factory;
+        this.reset = reset;
+        this.capacity = capacity;
+        this.available = new ArrayDeque<>(Math.min(capacity, 64));
+        this.leakDetector = leakHandler != null ? new LeakDetector<>(leakHandler) : null;
+    }
+
+    public T acquire()
+    {
+        T object = available.pollLast();
+        if (object == null)
+        {
+            object = factory.get();
+        }
+
+        if (leakDetector != null)
+        {
+            leakDetector.onAcquired(object);
+        }
+
+        acquired++;
+        return object;
+    }
+
+    public void release(
+        T object)
+    {
+        if (leakDetector != null)
+        {
+            leakDetector.onReleased(object);
+        }
+
+        acquired--;
+        reset.accept(object);
+
+        if (available.size() < capacity)
+        {
+            available.offerLast(object);
+        }
+    }
+
+    public int acquired()
+    {
+        return acquired;
+    }
+
+    public int available()
+    {
+        return available.size();
+    }
+
+    public int leaks()
+    {
+        return leakDetector != null ? leakDetector.leaks() : 0;
+    }
+
+    private static final class LeakDetector<T>
+    {
+        private final Int2ObjectHashMap<LeakRecord<T>> records = new Int2ObjectHashMap<>();
+        private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+        private final Consumer<Throwable> leakHandler;
+
+        private int leaks;
+
+        private LeakDetector(
+            Consumer<Throwable> leakHandler)
+        {
+            this.leakHandler = leakHandler;
+        }
+
+        void onAcquired(
+            T object)
+        {
+            pollLeaks();
+
+            final int identity = System.identityHashCode(object);
+            final LeakRecord<T> record = new LeakRecord<>(object, identity, collected);
+            record.next = records.put(identity, record);
+        }
+
+        void onReleased(
+            T object)
+        {
+            pollLeaks();
+
+            final int identity = System.identityHashCode(object);
+            if (remove(identity, object, null) == null)
+            {
+                throw new IllegalStateException(String.format("%s released twice or not acquired from this pool", object));
+            }
+        }
+
+        int leaks()
+        {
+            pollLeaks();
+            return leaks;
+        }
+
+        private void pollLeaks()
+        {
+            Reference<? extends T> reference;
+            while ((reference = collected.poll()) != null)
+            {
+                final LeakRecord<?> record = (LeakRecord<?>) reference;
+                if (remove(record.identity, null, record) != null)
+                {
+                    leaks++;
+                    leakHandler.accept(record.acquiredAt);
+                }
+            }
+        }
+
+        // removes the given record, or the record of the given object when no record is given
+        private LeakRecord<T> remove(
+            int identity,
+            T object,
+            LeakRecord<?> match)
+        {
+            LeakRecord<T> previous = null;
+            LeakRecord<T> record = records.get(identity);
+            while (record != null && (match != null ? record != match : record.get() != object))
+            {
+                previous = record;
+                record = record.next;
+            }
+
+            if (record != null)
+            {
+                if (previous != null)
+                {
+                    previous.next = record.next;
+                }
+                else if (record.next != null)
+                {
+                    records.put(identity, record.next);
+                }
+                else
+                {
+                    records.remove(identity);
+                }
+                record.clear();
+            }
+
+            return record;
+        }
+    }
+
+    private static final class LeakRecord<T> extends WeakReference<T>
+    {
+        private final int identity;
+        private final Throwable acquiredAt;
+
+        private LeakRecord<T> next;
+
+        private LeakRecord(
+            T referent,
+            int identity,
+            ReferenceQueue<T> queue)
+        {
+            super(referent, queue);
+            this.identity = identity;
+            this.acquiredAt = new Throwable(String.format("Leaked %s acquired here", referent.getClass().getSimpleName()));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.util;
+
+import static java.nio.ByteBuffer.allocateDirect;
+
+import java.nio.ByteBuffer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.buffer.BufferPool;
+
+/**
+ * Fixed number of equally sized slots carved from one direct buffer, with a stack of available slots.
+ * <p>
+ * Duplicates share the slots and their availability but not the buffers returned for a slot, so each
+ * stream factory on the same thread can use its own duplicate.
+ */
+public final class SlabBufferPool implements BufferPool
+{
+    private final Slab slab;
+    private final MutableDirectBuffer slotBuffer;
+    private final ByteBuffer slotByteBuffer;
+
+    public SlabBufferPool(
+        int slotCount,
+        int slotCapacity)
+    {
+        this(new Slab(slotCount, slotCapacity));
+    }
+
+    private SlabBufferPool(
+        Slab slab)
+    {
+        this.slab = slab;
+        this.slotBuffer = new UnsafeBuffer(new byte[0]);
+        this.slotByteBuffer = slab.memory.duplicate();
+    }
+
+    @Override
+    public int slotCapacity()
+    {
+        return slab.slotCapacity;
+    }
+
+    @Override
+    public int acquire(
+        long streamId)
+    {
+        return slab.availableCount != 0 ? slab.available[--slab.availableCount] : NO_SLOT;
+    }
+
+    @Override
+    public MutableDirectBuffer buffer(
+        int slot)
+    {
+        slotBuffer.wrap(slab.memory, slot * slab.slotCapacity, slab.slotCapacity);
+        return slotBuffer;
+    }
+
+    @Override
+    public MutableDirectBuffer buffer(
+        int slot,
+        int offset)
+    {
+        slotBuffer.wrap(slab.memory, slot * slab.slotCapacity + offset, slab.slotCapacity - offset);
+        return slotBuffer;
+    }
+
+    @Override
+    public ByteBuffer byteBuffer(
+        int slot)
+    {
+        final int position = slot * slab.slotCapacity;
+        slotByteBuffer.clear();
+        slotByteBuffer.position(position);
+        slotByteBuffer.limit(position + slab.slotCapacity);
+        return slotByteBuffer;
+    }
+
+    @Override
+    public void release(
+        int slot)
+    {
+        assert slab.availableCount < slab.available.length;
+        slab.available[slab.availableCount++] = slot;
+    }
+
+    @Override
+    public BufferPool duplicate()
+    {
+        return new SlabBufferPool(slab);
+    }
+
+    @Override
+    public int acquiredSlots()
+    {
+        return slab.available.length - slab.availableCount;
+    }
+
+    private static final class Slab
+    {
+        private final ByteBuffer memory;
+        private final int slotCapacity;
+        private final int[] available;
+
+        private int availableCount;
+
+        private Slab(
+            int slotCount,
+            int slotCapacity)
+        {
+            if ((long) slotCount * slotCapacity > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException("Slab too large: " + slotCount + " slots of " + slotCapacity);
+            }
+
+            this.memory = allocateDirect(slotCount * slotCapacity);
+            this.slotCapacity = slotCapacity;
+            this.available = new int[slotCount];
+            for (int slot = 0; slot < slotCount; slot++)
+            {
+                available[slot] = slotCount - 1 - slot;
+            }
+            this.availableCount = slotCount;
+        }
+    }
+}
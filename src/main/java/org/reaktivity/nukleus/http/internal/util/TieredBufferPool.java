@@ -0,0 +1,152 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.util;
+
+import java.nio.ByteBuffer;
+
+import org.agrona.MutableDirectBuffer;
+import org.reaktivity.nukleus.buffer.BufferPool;
+
+/**
+ * Small slots from the reaktor buffer pool for every buffered stream, with an optional tier of large slots that a
+ * stream is promoted to only when what it buffers outgrows its small slot, such as a large header block.
+ * <p>
+ * Large slots are distinguished by a flag bit in the slot index, so that streams keep a single slot index and
+ * release it to this pool whichever tier it belongs to.
+ */
+public final class TieredBufferPool implements BufferPool
+{
+    private static final int LARGE_SLOT_BIT = 1 << 30;
+
+    private final BufferPool small;
+    private final BufferPool large;
+
+    public TieredBufferPool(
+        BufferPool small,
+        BufferPool large)
+    {
+        this.small = small;
+        this.large = large;
+    }
+
+    /*
+     * Capacity of small slots, as acquired by default
+     */
+    @Override
+    public int slotCapacity()
+    {
+        return small.slotCapacity();
+    }
+
+    public int slotCapacity(
+        int slot)
+    {
+        return isLarge(slot) ? large.slotCapacity() : small.slotCapacity();
+    }
+
+    public int maximumSlotCapacity()
+    {
+        return large != null ? large.slotCapacity() : small.slotCapacity();
+    }
+
+    @Override
+    public int acquire(
+        long streamId)
+    {
+        return small.acquire(streamId);
+    }
+
+    /*
+     * Moves the bytes from offset to limit of a small slot to the start of a large slot and releases the small slot,
+     * returning the large slot, or NO_SLOT with the small slot untouched when no large slot is available
+     */
+    public int promote(
+        int slot,
+        long streamId,
+        int offset,
+        int limit)
+    {
+        int promoted = NO_SLOT;
+
+        if (large != null && !isLarge(slot))
+        {
+            final int largeSlot = large.acquire(streamId);
+            if (largeSlot != NO_SLOT)
+            {
+                large.buffer(largeSlot).putBytes(0, small.buffer(slot), offset, limit - offset);
+                small.release(slot);
+                promoted = largeSlot | LARGE_SLOT_BIT;
+            }
+        }
+
+        return promoted;
+    }
+
+    @Override
+    public MutableDirectBuffer buffer(
+        int slot)
+    {
+        return isLarge(slot) ? large.buffer(slot & ~LARGE_SLOT_BIT) : small.buffer(slot);
+    }
+
+    @Override
+    public MutableDirectBuffer buffer(
+        int slot,
+        int offset)
+    {
+        return isLarge(slot) ? large.buffer(slot & ~LARGE_SLOT_BIT, offset) : small.buffer(slot, offset);
+    }
+
+    @Override
+    public ByteBuffer byteBuffer(
+        int slot)
+    {
+        return isLarge(slot) ? large.byteBuffer(slot & ~LARGE_SLOT_BIT) : small.byteBuffer(slot);
+    }
+
+    @Override
+    public void release(
+        int slot)
+    {
+        if (isLarge(slot))
+        {
+            large.release(slot & ~LARGE_SLOT_BIT);
+        }
+        else
+        {
+            small.release(slot);
+        }
+    }
+
+    @Override
+    public BufferPool duplicate()
+    {
+        return new TieredBufferPool(small.duplicate(), large != null ? large.duplicate() : null);
+    }
+
+    @Override
+    public int acquiredSlots()
+    {
+        return small.acquiredSlots() + (large != null ? large.acquiredSlots() : 0);
+    }
+
+    private static boolean isLarge(
+        int slot)
+    {
+        // NO_SLOT is negative, small slots are below the flag bit
+        return slot >= LARGE_SLOT_BIT;
+    }
+}
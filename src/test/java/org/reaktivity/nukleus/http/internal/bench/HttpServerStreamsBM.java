@@ -0,0 +1,368 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.bench;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.util.Properties;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessageFunction;
+import org.reaktivity.nukleus.function.MessagePredicate;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.stream.CorrelationSweeper;
+import org.reaktivity.nukleus.http.internal.stream.ServerStreamFactoryBuilder;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+import org.reaktivity.reaktor.internal.buffer.DefaultBufferPool;
+
+/*
+ * Drives the server stream factory directly, without a reaktor, so that the allocation reported by
+ * {@code -prof gc} is that of the HTTP nukleus alone. The chunk benchmark forwards one chunk of a chunked request body,
+ * cycling the accept stream decoder through its chunk states and returning the target window. The request benchmark
+ * carries a whole exchange over a persistent connection: the request head and body, the response begin and end, and
+ * the windows returned for both, so it also reports the allocation of decoding the request head.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class HttpServerStreamsBM
+{
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final HttpBeginExFW.Builder beginExRW = new HttpBeginExFW.Builder();
+    private final RouteFW.Builder routeRW = new RouteFW.Builder();
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+
+    private final MutableDirectBuffer routeBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer frameBuffer = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer windowBuffer = new UnsafeBuffer(new byte[64]);
+    private final MutableDirectBuffer requestBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer replyBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer replyExBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer replyEndBuffer = new UnsafeBuffer(new byte[64]);
+    private final MessageConsumer ignore = (t, b, i, l) -> { };
+
+    private StreamFactory factory;
+    private MessageConsumer acceptStream;
+    private MessageConsumer targetThrottle;
+    private long targetId;
+    private long targetCorrelationId;
+    private int targetCredit;
+    private int chunkLength;
+
+    private MessageConsumer requestStream;
+    private MessageConsumer sourceReplyThrottle;
+    private long sourceReplyId;
+    private int sourceReplyCredit;
+    private int requestLength;
+    private int replyLength;
+    private int replyCorrelationIdOffset;
+    private int replyEndLength;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-benchmarks");
+        HttpConfiguration config = new HttpConfiguration(new Configuration(properties));
+
+        final RouteFW route = routeRW.wrap(routeBuffer, 0, routeBuffer.capacity())
+                .correlationId(1L)
+                .role(b -> b.set(Role.SERVER))
+                .source("source")
+                .sourceRef(1L)
+                .target("target")
+                .targetRef(0L)
+                .extension(e -> e.reset())
+                .build();
+
+        long[] streamIds = new long[1];
+        factory = new ServerStreamFactoryBuilder(config, null, HttpMetrics.newInstance(config),
+                new CorrelationSweeper(config), null)
+                .setRouteManager(new RouteManager()
+                {
+                    @Override
+                    public <R> R resolve(
+                        long authorization,
+                        MessagePredicate filter,
+                        MessageFunction<R> mapper)
+                    {
+                        final int length = route.sizeof();
+                        return filter.test(RouteFW.TYPE_ID, routeBuffer, 0, length) ?
+                                mapper.apply(RouteFW.TYPE_ID, routeBuffer, 0, length) : null;
+                    }
+
+                    @Override
+                    public void forEach(
+                        MessageConsumer consumer)
+                    {
+                    }
+
+                    @Override
+                    public MessageConsumer supplyTarget(
+                        String target)
+                    {
+                        return "target".equals(target) ? HttpServerStreamsBM.this::onTarget : HttpServerStreamsBM.this::onSource;
+                    }
+
+                    @Override
+                    public void setThrottle(
+                        String target,
+                        long streamId,
+                        MessageConsumer throttle)
+                    {
+                        if ("target".equals(target))
+                        {
+                            targetThrottle = throttle;
+                        }
+                        else
+                        {
+                            sourceReplyThrottle = throttle;
+                        }
+                    }
+                })
+                .setWriteBuffer(new UnsafeBuffer(new byte[64 * 1024]))
+                .setStreamIdSupplier(() -> ++streamIds[0])
+                .setTargetCorrelationIdSupplier(() -> ++streamIds[0])
+                .setBufferPoolSupplier(() -> new DefaultBufferPool(64 * 1024, 8192))
+                .setCounterSupplier(name -> () -> 0L)
+                .build();
+
+        final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(2L)
+                .extension(e -> e.reset())
+                .build();
+
+        acceptStream = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(), (t, b, i, l) -> { });
+        acceptStream.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        doData("POST / HTTP/1.1\r\nHost: localhost:8080\r\nTransfer-Encoding: chunked\r\n\r\n");
+        doTargetWindow(64 * 1024);
+
+        doData("5\r\nhello\r\n");
+
+        initRequest();
+    }
+
+    private void initRequest()
+    {
+        final BeginFW requestBegin = beginRW.wrap(requestBuffer, 0, requestBuffer.capacity())
+                .streamId(3L)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(4L)
+                .extension(e -> e.reset())
+                .build();
+
+        requestStream = factory.newStream(requestBegin.typeId(), requestBegin.buffer(), requestBegin.offset(),
+                requestBegin.sizeof(), (t, b, i, l) -> { });
+        requestStream.accept(requestBegin.typeId(), requestBegin.buffer(), requestBegin.offset(), requestBegin.sizeof());
+        doSourceReplyWindow(64 * 1024);
+
+        final byte[] request = "POST / HTTP/1.1\r\nHost: localhost:8080\r\nContent-Length: 5\r\n\r\nhello".getBytes(US_ASCII);
+        requestLength = dataRW.wrap(requestBuffer, 0, requestBuffer.capacity())
+                .streamId(3L)
+                .groupId(0)
+                .padding(0)
+                .payload(p -> p.set(request))
+                .extension(e -> e.reset())
+                .build()
+                .sizeof();
+
+        final HttpBeginExFW replyEx = beginExRW.wrap(replyExBuffer, 0, replyExBuffer.capacity())
+                .headers(hs -> hs.item(h -> h.name(":status").value("200"))
+                                 .item(h -> h.name("content-length").value("0")))
+                .build();
+        final BeginFW reply = beginRW.wrap(replyBuffer, 0, replyBuffer.capacity())
+                .streamId(5L)
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(0L)
+                .extension(e -> e.set(replyEx.buffer(), replyEx.offset(), replyEx.sizeof()))
+                .build();
+        replyLength = reply.sizeof();
+        replyCorrelationIdOffset = reply.source().limit() + BeginFW.FIELD_OFFSET_CORRELATION_ID;
+
+        replyEndLength = endRW.wrap(replyEndBuffer, 0, replyEndBuffer.capacity())
+                .streamId(5L)
+                .extension(e -> e.reset())
+                .build()
+                .sizeof();
+    }
+
+    @Benchmark
+    public int request()
+    {
+        requestStream.accept(DataFW.TYPE_ID, requestBuffer, 0, requestLength);
+        doTargetWindow(targetCredit);
+
+        replyBuffer.putLong(replyCorrelationIdOffset, targetCorrelationId);
+        final MessageConsumer replyStream = factory.newStream(BeginFW.TYPE_ID, replyBuffer, 0, replyLength, ignore);
+        replyStream.accept(BeginFW.TYPE_ID, replyBuffer, 0, replyLength);
+        replyStream.accept(EndFW.TYPE_ID, replyEndBuffer, 0, replyEndLength);
+
+        final int credit = sourceReplyCredit;
+        doSourceReplyWindow(credit);
+        return credit;
+    }
+
+    @Benchmark
+    public int chunk()
+    {
+        acceptStream.accept(DataFW.TYPE_ID, frameBuffer, 0, chunkLength);
+        final int credit = targetCredit;
+        doTargetWindow(credit);
+        return credit;
+    }
+
+    private void doData(
+        String payload)
+    {
+        final byte[] bytes = payload.getBytes(US_ASCII);
+        final DataFW data = dataRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .groupId(0)
+                .padding(0)
+                .payload(p -> p.set(bytes))
+                .extension(e -> e.reset())
+                .build();
+        chunkLength = data.sizeof();
+        acceptStream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    }
+
+    private void doTargetWindow(
+        int credit)
+    {
+        final WindowFW window = windowRW.wrap(windowBuffer, 0, windowBuffer.capacity())
+                .streamId(targetId)
+                .credit(credit)
+                .padding(0)
+                .groupId(0)
+                .build();
+        targetCredit = 0;
+        targetThrottle.accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private void doSourceReplyWindow(
+        int credit)
+    {
+        final WindowFW window = windowRW.wrap(windowBuffer, 0, windowBuffer.capacity())
+                .streamId(sourceReplyId)
+                .credit(credit)
+                .padding(0)
+                .groupId(0)
+                .build();
+        sourceReplyCredit = 0;
+        sourceReplyThrottle.accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private void onSource(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            sourceReplyId = beginRO.wrap(buffer, index, index + length).streamId();
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            sourceReplyCredit += data.length() + data.padding();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onTarget(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+            targetId = begin.streamId();
+            targetCorrelationId = begin.correlationId();
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            targetCredit += data.length() + data.padding();
+            break;
+        default:
+            break;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(HttpServerStreamsBM.class.getSimpleName())
+                .addProfiler("gc")
+                .forks(0)
+                .threads(1)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .measurementTime(new TimeValue(1, SECONDS))
+                .build();
+
+        new Runner(opt).run();
+    }
+}
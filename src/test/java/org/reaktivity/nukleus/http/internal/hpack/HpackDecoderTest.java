@@ -0,0 +1,172 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.hpack;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class HpackDecoderTest
+{
+    private final List<String> headers = new ArrayList<>();
+    private final HpackDecoder.HeaderConsumer collect = this::collect;
+
+    @Test
+    public void shouldDecodeRequestsWithoutHuffmanCoding()
+    {
+        HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE, new UnsafeBuffer(new byte[256]));
+
+        // RFC 7541, C.3
+        assertDecoded(decoder, "828684410f7777772e6578616d706c652e636f6d",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+        assertEquals(57, decoder.context().size());
+
+        assertDecoded(decoder, "828684be58086e6f2d6361636865",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com", "cache-control: no-cache");
+        assertEquals(110, decoder.context().size());
+
+        assertDecoded(decoder, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565",
+                ":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+                "custom-key: custom-value");
+        assertEquals(164, decoder.context().size());
+    }
+
+    @Test
+    public void shouldDecodeRequestsWithHuffmanCoding()
+    {
+        HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE, new UnsafeBuffer(new byte[256]));
+
+        // RFC 7541, C.4
+        assertDecoded(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+        assertDecoded(decoder, "828684be5886a8eb10649cbf",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com", "cache-control: no-cache");
+        assertDecoded(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf",
+                ":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+                "custom-key: custom-value");
+        assertEquals(164, decoder.context().size());
+    }
+
+    @Test
+    public void shouldDecodeResponsesEvictingFromDynamicTable()
+    {
+        HpackDecoder decoder = new HpackDecoder(256, new UnsafeBuffer(new byte[256]));
+
+        // RFC 7541, C.6
+        assertDecoded(decoder, "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff" +
+                "6e919d29ad171863c78f0b97c8e9ae82ae43d3",
+                ":status: 302", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                "location: https://www.example.com");
+        assertEquals(222, decoder.context().size());
+
+        assertDecoded(decoder, "4883640effc1c0bf",
+                ":status: 307", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                "location: https://www.example.com");
+        assertEquals(222, decoder.context().size());
+
+        assertDecoded(decoder, "88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a839bd9ab77ad94e7821dd7f2e6c7b335dfdf" +
+                "cd5b3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007",
+                ":status: 200", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:22 GMT",
+                "location: https://www.example.com", "content-encoding: gzip",
+                "set-cookie: foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1");
+        assertEquals(215, decoder.context().size());
+        assertEquals(HpackContext.STATIC_TABLE_LENGTH + 3, decoder.context().length());
+    }
+
+    @Test
+    public void shouldRejectMalformedHeaderBlocks()
+    {
+        HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE, new UnsafeBuffer(new byte[256]));
+
+        // index zero, index beyond the table, truncated string, table size update after a header, size above capacity
+        assertFalse(decode(decoder, "80"));
+        assertFalse(decode(decoder, "be"));
+        assertFalse(decode(decoder, "410f7777"));
+        assertFalse(decode(decoder, "8220"));
+        assertFalse(decode(decoder, "3fe21f"));
+
+        // Huffman padding longer than seven bits
+        assertFalse(decode(decoder, "4082ffff00"));
+
+        assertTrue(decode(decoder, "20"));
+        assertEquals(0, decoder.context().maxSize());
+    }
+
+    private void assertDecoded(
+        HpackDecoder decoder,
+        String block,
+        String... expected)
+    {
+        assertTrue(decode(decoder, block));
+        assertEquals(Arrays.asList(expected), headers);
+    }
+
+    private boolean decode(
+        HpackDecoder decoder,
+        String block)
+    {
+        headers.clear();
+        final DirectBuffer buffer = new UnsafeBuffer(fromHex(block));
+        return decoder.decode(buffer, 0, buffer.capacity(), collect);
+    }
+
+    private void collect(
+        DirectBuffer name,
+        DirectBuffer value)
+    {
+        headers.add(name.getStringWithoutLengthUtf8(0, name.capacity()) + ": " +
+                value.getStringWithoutLengthUtf8(0, value.capacity()));
+    }
+
+    static byte[] fromHex(
+        String hex)
+    {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    static String toHex(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        final StringBuilder hex = new StringBuilder();
+        for (int i = offset; i < offset + length; i++)
+        {
+            hex.append(String.format("%02x", buffer.getByte(i) & 0xff));
+        }
+        return hex.toString();
+    }
+
+    static DirectBuffer ascii(
+        String value)
+    {
+        return new UnsafeBuffer(value.getBytes(US_ASCII));
+    }
+}
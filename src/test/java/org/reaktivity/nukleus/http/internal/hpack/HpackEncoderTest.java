@@ -0,0 +1,87 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.hpack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http.internal.hpack.HpackDecoderTest.ascii;
+import static org.reaktivity.nukleus.http.internal.hpack.HpackDecoderTest.toHex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class HpackEncoderTest
+{
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[1024]);
+
+    @Test
+    public void shouldEncodeStaticTableEntryAsIndex()
+    {
+        final int limit = encode(0, ":method", "GET");
+
+        assertEquals("82", toHex(buffer, 0, limit));
+    }
+
+    @Test
+    public void shouldEncodeStaticTableNameWithHuffmanCodedValue()
+    {
+        final int limit = encode(0, ":authority", "www.example.com");
+
+        assertEquals("018cf1e3c2e5f23a6ba0ab90f4ff", toHex(buffer, 0, limit));
+    }
+
+    @Test
+    public void shouldEncodeHeadersDecodedByDecoder()
+    {
+        int limit = encode(0, ":status", "200");
+        limit = encode(limit, "content-type", "text/plain");
+        limit = encode(limit, "x-request-id", "f81d4fae-7dec-11d0-a765-00a0c91e6bf6");
+        limit = encode(limit, "x-empty", "");
+        limit = encode(limit, "x-binary", "\u0001\u007f");
+
+        final List<String> headers = new ArrayList<>();
+        final HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE, new UnsafeBuffer(new byte[256]));
+        assertTrue(decoder.decode(buffer, 0, limit, (n, v) ->
+            headers.add(n.getStringWithoutLengthUtf8(0, n.capacity()) + ": " + v.getStringWithoutLengthUtf8(0, v.capacity()))));
+
+        assertEquals(Arrays.asList(":status: 200", "content-type: text/plain",
+                "x-request-id: f81d4fae-7dec-11d0-a765-00a0c91e6bf6", "x-empty: ", "x-binary: \u0001\u007f"), headers);
+        assertEquals(0, decoder.context().size());
+    }
+
+    @Test
+    public void shouldNotEncodeBeyondBuffer()
+    {
+        assertEquals(-1, encode(buffer.capacity() - 16, "x-name", "value"));
+    }
+
+    private int encode(
+        int offset,
+        String name,
+        String value)
+    {
+        final DirectBuffer nameBuffer = ascii(name);
+        final DirectBuffer valueBuffer = ascii(value);
+        return encoder.encode(buffer, offset, nameBuffer, 0, nameBuffer.capacity(), valueBuffer, 0, valueBuffer.capacity());
+    }
+}
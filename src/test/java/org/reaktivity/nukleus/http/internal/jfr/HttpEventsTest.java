@@ -0,0 +1,97 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class HttpEventsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldNotCreateEventsByDefault()
+    {
+        assertNull(HttpEvents.newInstance(new HttpConfiguration(new Configuration(new Properties()))));
+    }
+
+    @Test
+    public void shouldRecordRequestLifecycleEvents() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.JFR_EVENTS_PROPERTY_NAME, "true");
+        HttpEvents events = HttpEvents.newInstance(new HttpConfiguration(new Configuration(properties)));
+        assertNotNull(events);
+
+        AccessLogRecord record = new AccessLogRecord();
+        record.requestBegin(1L, 2L, "GET", 40);
+        record.responseBegin(200, 20);
+        record.complete();
+
+        File file = new File(folder.getRoot(), "http.jfr");
+        try (Recording recording = new Recording())
+        {
+            recording.enable("org.reaktivity.nukleus.http.RequestReceived");
+            recording.enable("org.reaktivity.nukleus.http.RequestRouted");
+            recording.enable("org.reaktivity.nukleus.http.RequestQueued");
+            recording.enable("org.reaktivity.nukleus.http.ResponseBegun");
+            recording.enable("org.reaktivity.nukleus.http.ExchangeCompleted");
+            recording.enable("org.reaktivity.nukleus.http.StreamReset");
+            recording.enable("org.reaktivity.nukleus.http.StreamAborted");
+            recording.start();
+
+            events.requestReceived(HttpEvents.CLIENT, 1L, 2L, "GET", 40);
+            events.requestQueued(HttpEvents.CLIENT, 1L, 2L, 1);
+            events.requestRouted(HttpEvents.CLIENT, 1L, 2L, "target", 3L);
+            events.responseBegun(HttpEvents.CLIENT, 1L, 2L, 200, 20);
+            events.exchangeCompleted(HttpEvents.CLIENT, record);
+            events.streamReset(HttpEvents.SERVER, 1L, 2L, 4L);
+            events.streamAborted(HttpEvents.SERVER, 1L, 2L, 5L);
+
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath());
+        assertEquals(7, recorded.size());
+
+        RecordedEvent completed = recorded.stream()
+                .filter(e -> "org.reaktivity.nukleus.http.ExchangeCompleted".equals(e.getEventType().getName()))
+                .findFirst()
+                .get();
+        assertEquals(200, completed.getInt("status"));
+        assertEquals(40L, completed.getLong("requestSize"));
+        assertEquals(20L, completed.getLong("responseSize"));
+        assertEquals("GET", completed.getString("method"));
+    }
+}
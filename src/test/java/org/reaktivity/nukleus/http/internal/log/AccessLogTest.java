@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.nukleus.http.internal.tools.AccessLogDecoder;
+
+public class AccessLogTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldAppendAndDecodeRecords() throws Exception
+    {
+        File file = new File(folder.getRoot(), "http/access.log");
+        AccessLogRecord record = new AccessLogRecord();
+
+        try (AccessLog accessLog = AccessLog.map(file, 4096))
+        {
+            record.requestBegin(1L, 0x42L, "POST", 100);
+            record.requestData(25);
+            record.requestEnd();
+            record.responseBegin("201", 50);
+            record.responseData(10);
+            record.complete();
+            assertTrue(accessLog.append(AccessLog.SERVER_RECORD_TYPE_ID, record));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AccessLog accessLog = AccessLog.map(file))
+        {
+            assertEquals(1, new AccessLogDecoder(new PrintStream(out), true).decode(accessLog));
+        }
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        String[] fields = lines[1].split(",");
+        assertEquals("server", fields[1]);
+        assertEquals("1", fields[2]);
+        assertEquals("0000000000000042", fields[3]);
+        assertEquals("POST", fields[4]);
+        assertEquals("201", fields[5]);
+        assertEquals("125", fields[6]);
+        assertEquals("60", fields[7]);
+    }
+
+    @Test
+    public void shouldDropRecordsWhenFull() throws Exception
+    {
+        File file = new File(folder.getRoot(), "access.log");
+        AccessLogRecord record = new AccessLogRecord();
+        record.requestBegin(1L, 0L, "GET", 0);
+        record.responseBegin(200, 0);
+        record.complete();
+
+        try (AccessLog accessLog = AccessLog.map(file, 1024))
+        {
+            int appended = 0;
+            while (accessLog.append(AccessLog.CLIENT_RECORD_TYPE_ID, record))
+            {
+                appended++;
+            }
+
+            assertTrue(appended > 0);
+            assertFalse(accessLog.append(AccessLog.CLIENT_RECORD_TYPE_ID, record));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.reaktivity.nukleus.http.internal.types.control.Role.CLIENT;
+import static org.reaktivity.nukleus.http.internal.types.control.Role.SERVER;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.reaktor.internal.buffer.DefaultBufferPool;
+
+public class HttpMetricsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadConnectionPoolMetrics() throws Exception
+    {
+        File file = new File(folder.getRoot(), "http/metrics");
+        ConnectionPoolMetrics pool = HttpMetrics.map(file, 64).supplyConnectionPool("target", 5L);
+
+        pool.connectionAcquired(0);
+        pool.connectionAcquired(1);
+        pool.connectionAcquired(2);
+        pool.requestDequeued(3000L);
+        pool.connectionClosed(3);
+        pool.update(2, 1, 4);
+
+        try (HttpMetricsReader reader = HttpMetricsReader.map(file))
+        {
+            assertEquals(1L, reader.value(CLIENT, ConnectionPoolMetrics.CONNECTIONS_CREATED, "target", 5L));
+            assertEquals(2L, reader.value(CLIENT, ConnectionPoolMetrics.CONNECTIONS_REUSED, "target", 5L));
+            assertEquals(1L, reader.value(CLIENT, ConnectionPoolMetrics.CONNECTIONS_CLOSED, "target", 5L));
+            assertEquals(2L, reader.value(CLIENT, ConnectionPoolMetrics.CONNECTIONS_IN_USE, "target", 5L));
+            assertEquals(1L, reader.value(CLIENT, ConnectionPoolMetrics.CONNECTIONS_IDLE, "target", 5L));
+            assertEquals(4L, reader.value(CLIENT, ConnectionPoolMetrics.REQUESTS_QUEUED, "target", 5L));
+            assertEquals(1L, reader.value(CLIENT, ConnectionPoolMetrics.QUEUE_WAIT_MICROS, "target", 5L));
+            assertEquals(0L, reader.value(CLIENT, ConnectionPoolMetrics.CONNECTIONS_CREATED, "target", 6L));
+
+            List<Integer> buckets = new ArrayList<>();
+            reader.forEach((typeId, name, role, target, routeRef, bucket, value) ->
+            {
+                if (typeId == HttpMetrics.HISTOGRAM_BUCKET_TYPE_ID && ConnectionPoolMetrics.QUEUE_WAIT_MICROS.equals(name))
+                {
+                    buckets.add(bucket);
+                }
+            });
+            assertEquals(1, buckets.size());
+            assertEquals(Histogram.bucket(3L), buckets.get(0).intValue());
+        }
+    }
+
+    @Test
+    public void shouldTrackBufferSlotOccupancy() throws Exception
+    {
+        File file = new File(folder.getRoot(), "http/metrics");
+        BufferPool bufferPool = new DefaultBufferPool(1024, 256);
+        BufferSlotMetrics slots = HttpMetrics.map(file, 64).supplyBufferSlots(SERVER, bufferPool);
+
+        int headersSlot = bufferPool.acquire(1L);
+        slots.acquired(BufferSlotMetrics.HEADERS);
+        int dataSlot = bufferPool.acquire(2L);
+        slots.acquired(BufferSlotMetrics.DATA);
+        slots.dataBuffered(100);
+        bufferPool.release(headersSlot);
+        slots.released(BufferSlotMetrics.HEADERS);
+        slots.headers(120);
+        slots.failed();
+
+        try (HttpMetricsReader reader = HttpMetricsReader.map(file))
+        {
+            assertEquals(0L, reader.value(SERVER, BufferSlotMetrics.SLOTS_HEADERS, "", 0L));
+            assertEquals(1L, reader.value(SERVER, BufferSlotMetrics.SLOTS_DATA, "", 0L));
+            assertEquals(1L, reader.value(SERVER, BufferSlotMetrics.SLOTS_ACQUIRED, "", 0L));
+            assertEquals(2L, reader.value(SERVER, BufferSlotMetrics.SLOTS_HIGH_WATER, "", 0L));
+            assertEquals(1L, reader.value(SERVER, BufferSlotMetrics.SLOTS_FAILED, "", 0L));
+            assertEquals(1L, reader.value(SERVER, BufferSlotMetrics.HEADERS_BYTES, "", 0L));
+            assertEquals(1L, reader.value(SERVER, BufferSlotMetrics.DATA_BUFFERED_BYTES, "", 0L));
+            assertEquals(0L, reader.value(CLIENT, BufferSlotMetrics.SLOTS_DATA, "", 0L));
+        }
+
+        bufferPool.release(dataSlot);
+    }
+
+    @Test
+    public void shouldTrackFlowControlStalls() throws Exception
+    {
+        File file = new File(folder.getRoot(), "http/metrics");
+        FlowControlMetrics flowControl = HttpMetrics.map(file, 64).supplyFlowControl(SERVER, "", 7L);
+        StallTracker stall = new StallTracker(FlowControlMetrics.TARGET, flowControl, null, "server", 7L, 1L);
+
+        stall.onBudget(0, 0);
+        stall.onBudget(8, 8);
+        stall.onBudget(100, 8);
+        stall.onBudget(50, 8);
+        stall.onBudget(8, 8);
+        stall.reset();
+        stall.onBudget(100, 8);
+        stall.onParked(42);
+
+        assertEquals(1, stall.stalls());
+        try (HttpMetricsReader reader = HttpMetricsReader.map(file))
+        {
+            assertEquals(1L, reader.value(SERVER, FlowControlMetrics.stalls(FlowControlMetrics.TARGET), "", 7L));
+            assertEquals(1L, reader.value(SERVER, FlowControlMetrics.stallMicros(FlowControlMetrics.TARGET), "", 7L));
+            assertEquals(0L, reader.value(SERVER, FlowControlMetrics.stalls(FlowControlMetrics.SOURCE), "", 7L));
+            assertEquals(42L, reader.value(SERVER, FlowControlMetrics.PARKED_BYTES, "", 7L));
+        }
+    }
+
+    @Test
+    public void shouldComputeHistogramBuckets()
+    {
+        assertEquals(0, Histogram.bucket(0L));
+        assertEquals(1, Histogram.bucket(1L));
+        assertEquals(2, Histogram.bucket(3L));
+        assertEquals(3, Histogram.bucket(4L));
+        assertEquals(Long.SIZE - 1, Histogram.bucket(Long.MAX_VALUE));
+        assertEquals(3L, Histogram.upperBound(2));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Long.SIZE - 1));
+    }
+
+    @Test
+    public void shouldCountUnallocatedMetricsWhenFull() throws Exception
+    {
+        File file = new File(folder.getRoot(), "metrics");
+        HttpMetrics metrics = HttpMetrics.map(file, 2);
+        metrics.counter("first", CLIENT, "target", 1L).increment();
+        metrics.counter("second", CLIENT, "target", 1L).increment();
+
+        try (HttpMetricsReader reader = HttpMetricsReader.map(file))
+        {
+            assertEquals(1L, reader.value(CLIENT, "first", "target", 1L));
+            assertEquals(0L, reader.value(CLIENT, "second", "target", 1L));
+        }
+    }
+}
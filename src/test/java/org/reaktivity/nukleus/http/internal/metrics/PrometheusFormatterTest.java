@@ -0,0 +1,78 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.reaktivity.nukleus.http.internal.types.control.Role.CLIENT;
+import static org.reaktivity.nukleus.http.internal.types.control.Role.SERVER;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrometheusFormatterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldFormatSnapshot() throws Exception
+    {
+        File file = new File(folder.getRoot(), "http/metrics");
+        HttpMetrics metrics = HttpMetrics.map(file, 64);
+        metrics.counter("requests", CLIENT, "tar\"get", 2L).add(3);
+        metrics.gauge("pool.idle", CLIENT, "target", 2L).set(1);
+        metrics.counter("requests", SERVER, "", 1L).increment();
+        metrics.counter("requests", CLIENT, "tar\"get", 2L).increment();
+        Histogram latency = metrics.histogram("latency.micros", SERVER, "", 1L);
+        latency.record(5L);
+        latency.record(6L);
+        latency.record(1L);
+
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        try (HttpMetricsReader reader = HttpMetricsReader.map(file))
+        {
+            reader.forEach(snapshot.reset());
+            snapshot.sort();
+        }
+
+        String expected =
+            "# TYPE reaktivity_http_latency_micros histogram\n" +
+            "reaktivity_http_latency_micros_bucket{role=\"server\",route=\"1\",le=\"1\"} 1\n" +
+            "reaktivity_http_latency_micros_bucket{role=\"server\",route=\"1\",le=\"7\"} 3\n" +
+            "reaktivity_http_latency_micros_bucket{role=\"server\",route=\"1\",le=\"+Inf\"} 3\n" +
+            "reaktivity_http_latency_micros_count{role=\"server\",route=\"1\"} 3\n" +
+            "reaktivity_http_latency_micros_sum{role=\"server\",route=\"1\"} 12\n" +
+            "# TYPE reaktivity_http_metrics_unallocated_total counter\n" +
+            "reaktivity_http_metrics_unallocated_total{role=\"server\"} 0\n" +
+            "# TYPE reaktivity_http_pool_idle gauge\n" +
+            "reaktivity_http_pool_idle{role=\"client\",route=\"2\",target=\"target\"} 1\n" +
+            "# TYPE reaktivity_http_requests_total counter\n" +
+            "reaktivity_http_requests_total{role=\"server\",route=\"1\"} 1\n" +
+            "reaktivity_http_requests_total{role=\"client\",route=\"2\",target=\"tar\\\"get\"} 4\n";
+
+        StringBuilder out = new PrometheusFormatter().format(snapshot, new StringBuilder());
+        assertEquals(expected, out.toString());
+
+        out.setLength(0);
+        snapshot.reset();
+        snapshot.onMetric(HttpMetrics.COUNTER_TYPE_ID, "streams", null, "", 0L, 0, 5L);
+        new PrometheusFormatter("http_").format(snapshot.sort(), out);
+        assertEquals("# TYPE http_streams_total counter\nhttp_streams_total 5\n", out.toString());
+    }
+}
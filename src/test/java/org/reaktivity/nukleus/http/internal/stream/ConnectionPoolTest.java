@@ -0,0 +1,433 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessageFunction;
+import org.reaktivity.nukleus.function.MessagePredicate;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+import org.reaktivity.reaktor.internal.buffer.DefaultBufferPool;
+
+public class ConnectionPoolTest
+{
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final RouteFW.Builder routeRW = new RouteFW.Builder();
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final HttpBeginExFW beginExRO = new HttpBeginExFW();
+
+    private final MutableDirectBuffer routeBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer frameBuffer = new UnsafeBuffer(new byte[8192]);
+
+    private final Map<Long, MessageConsumer> throttles = new HashMap<>();
+    private final List<Long> connectIds = new ArrayList<>();
+    private final List<Long> connectCorrelationIds = new ArrayList<>();
+    private final Map<Long, StringBuilder> connectData = new HashMap<>();
+    private final List<String> replies = new ArrayList<>();
+    private final Map<Integer, MessageConsumer> responses = new HashMap<>();
+    private final Properties properties = new Properties();
+
+    private StreamFactory factory;
+    private CorrelationSweeper sweeper;
+    private TimerWheel timers;
+    private long nanoTime;
+    private long nextId;
+
+    @Test
+    public void shouldPipelineIdempotentRequests()
+    {
+        newFactory(2, 2);
+
+        doRequest(100L, "GET", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+
+        assertEquals(1, connectIds.size());
+        assertEquals("GET /one HTTP/1.1\r\nHost: localhost:8080\r\n\r\n" +
+                     "GET /two HTTP/1.1\r\nHost: localhost:8080\r\n\r\n", connectData(0));
+
+        doResponse(0, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n" +
+                      "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n");
+
+        assertEquals("[101:200, 201:404]", replies.toString());
+    }
+
+    @Test
+    public void shouldNotPipelineNonIdempotentRequests()
+    {
+        newFactory(2, 1);
+
+        doRequest(100L, "POST", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+
+        assertEquals(1, connectIds.size());
+        assertEquals("POST /one HTTP/1.1\r\nHost: localhost:8080\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n",
+                     connectData(0));
+    }
+
+    @Test
+    public void shouldNotPipelineHeadRequests()
+    {
+        newFactory(2, 1);
+
+        doRequest(100L, "HEAD", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+
+        assertEquals("HEAD /one HTTP/1.1\r\nHost: localhost:8080\r\n\r\n", connectData(0));
+
+        doResponse(0, "HTTP/1.1 200 OK\r\nContent-Length: 42\r\n\r\n");
+
+        assertEquals("[101:200]", replies.toString());
+    }
+
+    @Test
+    public void shouldReuseConnectionAfterNonIdempotentRequest()
+    {
+        newFactory(1, 1);
+
+        doRequest(100L, "POST", "/one");
+        doConnectWindow(0, 8192);
+        doResponse(0, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+        doRequest(200L, "POST", "/two");
+        doResponse(0, "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n");
+
+        assertEquals(1, connectIds.size());
+        assertEquals("POST /one HTTP/1.1\r\nHost: localhost:8080\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n" +
+                     "POST /two HTTP/1.1\r\nHost: localhost:8080\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n",
+                     connectData(0));
+        assertEquals("[101:200, 201:201]", replies.toString());
+    }
+
+    @Test
+    public void shouldPipelineOnConnectionWithFewestOutstandingRequests()
+    {
+        newFactory(3, 2);
+
+        doRequest(100L, "GET", "/one");
+        doRequest(200L, "GET", "/two");
+        doConnectWindow(0, 8192);
+        doConnectWindow(1, 8192);
+        doRequest(300L, "GET", "/three");
+        doRequest(400L, "GET", "/four");
+
+        assertEquals(2, connectIds.size());
+        assertEquals("GET /one HTTP/1.1\r\nHost: localhost:8080\r\n\r\n" +
+                     "GET /three HTTP/1.1\r\nHost: localhost:8080\r\n\r\n", connectData(0));
+        assertEquals("GET /two HTTP/1.1\r\nHost: localhost:8080\r\n\r\n" +
+                     "GET /four HTTP/1.1\r\nHost: localhost:8080\r\n\r\n", connectData(1));
+    }
+
+    @Test
+    public void shouldAbandonPipelinedRequestsWhenConnectionCloses()
+    {
+        newFactory(2, 1);
+
+        doRequest(100L, "GET", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+        doResponse(0, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+
+        assertEquals("[101:200, 201:503]", replies.toString());
+    }
+
+    @Test
+    public void shouldStartHeaderTimeoutOfPipelinedRequestAtHeadOfLine()
+    {
+        newFactory(2, 1, 1000);
+
+        doRequest(100L, "GET", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+        advance(600);
+        doResponse(0, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+        advance(600);
+        doResponse(0, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n");
+
+        assertEquals("[101:200, 201:404]", replies.toString());
+    }
+
+    @Test
+    public void shouldTimeOutPipelinedRequestAtHeadOfLine()
+    {
+        newFactory(2, 1, 1000);
+
+        doRequest(100L, "GET", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+        advance(600);
+        doResponse(0, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+        advance(1200);
+
+        assertEquals("[101:200, 201:504]", replies.toString());
+    }
+
+    @Test
+    public void shouldAnswerReclaimedRequestAndReleaseConnection()
+    {
+        properties.setProperty(HttpConfiguration.CORRELATION_TIMEOUT_PROPERTY_NAME, "0");
+        properties.setProperty(HttpConfiguration.CORRELATION_SWEEP_INTERVAL_PROPERTY_NAME, "0");
+        newFactory(2, 1);
+
+        doRequest(100L, "GET", "/one");
+        doConnectWindow(0, 8192);
+        doRequest(200L, "GET", "/two");
+        sweeper.process();
+        doRequest(300L, "GET", "/three");
+
+        assertEquals("[101:504, 201:503]", replies.toString());
+        assertEquals(2, connectIds.size());
+    }
+
+    private void newFactory(
+        int pipelineDepth,
+        int maximumConnections)
+    {
+        newFactory(pipelineDepth, maximumConnections, 0);
+    }
+
+    private void newFactory(
+        int pipelineDepth,
+        int maximumConnections,
+        int headerTimeout)
+    {
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-tests");
+        properties.setProperty(HttpConfiguration.CLIENT_PIPELINE_DEPTH_PROPERTY_NAME, Integer.toString(pipelineDepth));
+        properties.setProperty(HttpConfiguration.MAXIMUM_CONNECTIONS_PROPERTY_NAME, Integer.toString(maximumConnections));
+        properties.setProperty(HttpConfiguration.CLIENT_HEADER_TIMEOUT_PROPERTY_NAME, Integer.toString(headerTimeout));
+        HttpConfiguration config = new HttpConfiguration(new Configuration(properties));
+        timers = headerTimeout > 0 ? new TimerWheel(config, () -> nanoTime) : null;
+        sweeper = new CorrelationSweeper(config);
+
+        final RouteFW route = routeRW.wrap(routeBuffer, 0, routeBuffer.capacity())
+                .correlationId(1L)
+                .role(b -> b.set(Role.CLIENT))
+                .source("source")
+                .sourceRef(1L)
+                .target("target")
+                .targetRef(2L)
+                .extension(e -> e.reset())
+                .build();
+
+        nextId = 1000L;
+        factory = new ClientStreamFactoryBuilder(config, null, HttpMetrics.newInstance(config),
+                sweeper, timers)
+                .setRouteManager(new RouteManager()
+                {
+                    @Override
+                    public <R> R resolve(
+                        long authorization,
+                        MessagePredicate filter,
+                        MessageFunction<R> mapper)
+                    {
+                        final int length = route.sizeof();
+                        return filter.test(RouteFW.TYPE_ID, routeBuffer, 0, length) ?
+                                mapper.apply(RouteFW.TYPE_ID, routeBuffer, 0, length) : null;
+                    }
+
+                    @Override
+                    public void forEach(
+                        MessageConsumer consumer)
+                    {
+                    }
+
+                    @Override
+                    public MessageConsumer supplyTarget(
+                        String target)
+                    {
+                        return "target".equals(target) ? ConnectionPoolTest.this::onConnect : ConnectionPoolTest.this::onReply;
+                    }
+
+                    @Override
+                    public void setThrottle(
+                        String target,
+                        long streamId,
+                        MessageConsumer throttle)
+                    {
+                        throttles.put(streamId, throttle);
+                    }
+                })
+                .setWriteBuffer(new UnsafeBuffer(new byte[64 * 1024]))
+                .setStreamIdSupplier(() -> ++nextId)
+                .setTargetCorrelationIdSupplier(() -> ++nextId)
+                .setBufferPoolSupplier(() -> new DefaultBufferPool(64 * 1024, 8192))
+                .setCounterSupplier(name -> () -> 0L)
+                .build();
+    }
+
+    private void advance(
+        int millis)
+    {
+        nanoTime += MILLISECONDS.toNanos(millis);
+        timers.process();
+    }
+
+    private void doRequest(
+        long streamId,
+        String method,
+        String path)
+    {
+        final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(streamId)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(streamId + 1)
+                .extension(e -> e.set((buffer, offset, limit) ->
+                    new HttpBeginExFW.Builder().wrap(buffer, offset, limit)
+                        .headers(hs -> hs.item(h -> h.name(":method").value(method))
+                                         .item(h -> h.name(":scheme").value("http"))
+                                         .item(h -> h.name(":path").value(path))
+                                         .item(h -> h.name(":authority").value("localhost:8080")))
+                        .build()
+                        .sizeof()))
+                .build();
+
+        final MessageConsumer request = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(),
+                (t, b, i, l) -> { });
+        assertNotNull(request);
+        request.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        final EndFW end = endRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(streamId)
+                .extension(e -> e.reset())
+                .build();
+        request.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+    }
+
+    private void doConnectWindow(
+        int connection,
+        int credit)
+    {
+        final long streamId = connectIds.get(connection);
+        final WindowFW window = windowRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(streamId)
+                .credit(credit)
+                .padding(0)
+                .groupId(0)
+                .build();
+        throttles.get(streamId).accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private void doResponse(
+        int connection,
+        String response)
+    {
+        final long replyId = 2000L + connection;
+        MessageConsumer reply = responses.get(connection);
+        if (reply == null)
+        {
+            final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                    .streamId(replyId)
+                    .source("target")
+                    .sourceRef(0L)
+                    .correlationId(connectCorrelationIds.get(connection))
+                    .extension(e -> e.reset())
+                    .build();
+            reply = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(),
+                    (t, b, i, l) -> { });
+            assertNotNull(reply);
+            reply.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+            responses.put(connection, reply);
+        }
+
+        final byte[] bytes = response.getBytes(US_ASCII);
+        final DataFW data = dataRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(replyId)
+                .groupId(0)
+                .padding(0)
+                .payload(p -> p.set(bytes))
+                .extension(e -> e.reset())
+                .build();
+        reply.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    }
+
+    private String connectData(
+        int connection)
+    {
+        return connectData.get(connectIds.get(connection)).toString();
+    }
+
+    private void onConnect(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+            connectIds.add(begin.streamId());
+            connectCorrelationIds.add(begin.correlationId());
+            connectData.put(begin.streamId(), new StringBuilder());
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            connectData.get(data.streamId()).append(
+                    data.payload().buffer().getStringWithoutLengthUtf8(data.payload().offset(), data.length()));
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onReply(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (msgTypeId == BeginFW.TYPE_ID)
+        {
+            final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+            final String[] status = new String[1];
+            begin.extension().get(beginExRO::wrap).headers()
+                .forEach(h -> status[0] = ":status".equals(h.name().asString()) ? h.value().asString() : status[0]);
+            replies.add(begin.correlationId() + ":" + status[0]);
+        }
+    }
+}
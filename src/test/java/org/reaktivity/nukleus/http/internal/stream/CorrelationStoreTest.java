@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.junit.Test;
+
+public class CorrelationStoreTest
+{
+    private final CountersManager counters = new CountersManager(
+            new UnsafeBuffer(new byte[CountersManager.METADATA_LENGTH * 2]),
+            new UnsafeBuffer(new byte[CountersManager.COUNTER_LENGTH * 2]));
+    private final AtomicCounter live = counters.newCounter("correlations.live");
+    private final AtomicCounter reclaimed = counters.newCounter("correlations.reclaimed");
+
+    @Test
+    public void shouldPutGetAndRemoveBeyondInitialCapacity()
+    {
+        CorrelationStore store = new CorrelationStore(2, live, reclaimed, null);
+        List<Correlation<?>> correlations = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            Correlation<?> correlation = new Correlation<>(i, "source", null);
+            correlations.add(correlation);
+            assertNull(store.put(i * 1024L, correlation, i));
+        }
+
+        assertEquals(100, store.size());
+        assertEquals(100L, live.get());
+
+        for (int i = 0; i < 100; i += 2)
+        {
+            assertSame(correlations.get(i), store.remove(i * 1024L));
+        }
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertSame(i % 2 == 0 ? null : correlations.get(i), store.get(i * 1024L));
+        }
+        assertNull(store.remove(0L));
+        assertEquals(50L, live.get());
+    }
+
+    @Test
+    public void shouldReplaceCorrelationWithSameId()
+    {
+        CorrelationStore store = new CorrelationStore(16, live, reclaimed, null);
+        Correlation<?> first = new Correlation<>(1L, "source", null);
+        Correlation<?> second = new Correlation<>(2L, "source", null);
+
+        assertNull(store.put(7L, first, 1L));
+        assertSame(first, store.put(7L, second, 1L));
+        assertSame(second, store.get(7L));
+        assertEquals(1L, live.get());
+    }
+
+    @Test
+    public void shouldReclaimOnlyCorrelationsOlderThanMaximumAge() throws Exception
+    {
+        List<Long> owners = new ArrayList<>();
+        CorrelationStore store = new CorrelationStore(4, live, reclaimed, (id, owner, c) -> owners.add(owner));
+        for (int i = 0; i < 10; i++)
+        {
+            store.put(i, new Correlation<>(i, "source", null), 100L + i);
+        }
+        Thread.sleep(5L);
+        long storedBefore = System.nanoTime();
+        Correlation<?> recent = new Correlation<>(10L, "source", null);
+        store.put(10L, recent, 110L);
+
+        assertEquals(10, store.sweep(storedBefore, 0L));
+        assertEquals(10, owners.size());
+        assertEquals(1, store.size());
+        assertSame(recent, store.get(10L));
+        assertEquals(1L, live.get());
+        assertEquals(10L, reclaimed.get());
+
+        assertEquals(0, store.sweep(System.nanoTime(), Long.MAX_VALUE));
+        assertEquals(10L, reclaimed.get());
+    }
+}
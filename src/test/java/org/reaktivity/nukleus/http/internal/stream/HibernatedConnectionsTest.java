@@ -0,0 +1,79 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.junit.Test;
+
+public class HibernatedConnectionsTest
+{
+    private final CountersManager counters = new CountersManager(
+            new UnsafeBuffer(new byte[CountersManager.METADATA_LENGTH]),
+            new UnsafeBuffer(new byte[CountersManager.COUNTER_LENGTH]));
+    private final AtomicCounter hibernated = counters.newCounter(HibernatedConnections.CONNECTIONS_HIBERNATED);
+
+    @Test
+    public void shouldKeepRecordsBeyondInitialCapacity()
+    {
+        HibernatedConnections connections = new HibernatedConnections(2, hibernated);
+        for (long acceptId = 1L; acceptId <= 100L; acceptId++)
+        {
+            int offset = connections.put(acceptId << 10);
+            connections.buffer().putLong(offset + HibernatedConnections.REPLY_STREAM_ID_OFFSET, acceptId);
+            connections.buffer().putInt(offset + HibernatedConnections.SOURCE_BUDGET_OFFSET, (int) acceptId);
+        }
+        assertEquals(100, connections.size());
+        assertEquals(100L, hibernated.get());
+
+        for (long acceptId = 1L; acceptId <= 100L; acceptId += 2)
+        {
+            assertTrue(connections.remove(acceptId << 10));
+        }
+        assertFalse(connections.remove(1L << 10));
+        assertEquals(50L, hibernated.get());
+
+        for (long acceptId = 1L; acceptId <= 100L; acceptId++)
+        {
+            int offset = connections.offsetOf(acceptId << 10);
+            if ((acceptId & 1L) != 0L)
+            {
+                assertEquals(-1, offset);
+            }
+            else
+            {
+                assertEquals(acceptId, connections.buffer().getLong(offset + HibernatedConnections.REPLY_STREAM_ID_OFFSET));
+                assertEquals(acceptId, connections.buffer().getInt(offset + HibernatedConnections.SOURCE_BUDGET_OFFSET));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReuseRecordForSameAcceptId()
+    {
+        HibernatedConnections connections = new HibernatedConnections(16, hibernated);
+        int offset = connections.put(7L);
+        assertEquals(offset, connections.put(7L));
+        assertEquals(offset, connections.offsetOf(7L));
+        assertEquals(1, connections.size());
+        assertEquals(1L, hibernated.get());
+    }
+}
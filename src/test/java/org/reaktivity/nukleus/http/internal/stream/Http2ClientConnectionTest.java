@@ -0,0 +1,488 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessageFunction;
+import org.reaktivity.nukleus.function.MessagePredicate;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.hpack.HpackContext;
+import org.reaktivity.nukleus.http.internal.hpack.HpackDecoder;
+import org.reaktivity.nukleus.http.internal.hpack.HpackEncoder;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+import org.reaktivity.reaktor.internal.buffer.DefaultBufferPool;
+
+public class Http2ClientConnectionTest
+{
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final RouteFW.Builder routeRW = new RouteFW.Builder();
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final HttpBeginExFW beginExRO = new HttpBeginExFW();
+
+    private final MutableDirectBuffer routeBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer frameBuffer = new UnsafeBuffer(new byte[8192]);
+    private final MutableDirectBuffer serverBuffer = new UnsafeBuffer(new byte[4096]);
+    private final MutableDirectBuffer connectBuffer = new UnsafeBuffer(new byte[64 * 1024]);
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE,
+            new UnsafeBuffer(new byte[8192]));
+
+    private final Map<Long, MessageConsumer> throttles = new HashMap<>();
+    private final List<Map<String, String>> replyBegins = new ArrayList<>();
+    private final StringBuilder replyData = new StringBuilder();
+
+    private final DefaultBufferPool bufferPool = new DefaultBufferPool(64 * 1024, 8192);
+
+    private StreamFactory factory;
+    private long nextId;
+    private int connectBegins;
+    private long connectId;
+    private long connectCorrelationId;
+    private int connectLimit;
+    private int connectOffset;
+    private MessageConsumer connectReply;
+    private int serverLimit;
+    private int replyEnds;
+
+    @Before
+    public void init()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-tests");
+        properties.setProperty(HttpConfiguration.CLIENT_HTTP2_PROPERTY_NAME, "true");
+        HttpConfiguration config = new HttpConfiguration(new Configuration(properties));
+
+        final RouteFW route = routeRW.wrap(routeBuffer, 0, routeBuffer.capacity())
+                .correlationId(1L)
+                .role(b -> b.set(Role.CLIENT))
+                .source("source")
+                .sourceRef(1L)
+                .target("target")
+                .targetRef(2L)
+                .extension(e -> e.reset())
+                .build();
+
+        factory = new ClientStreamFactoryBuilder(config, null, HttpMetrics.newInstance(config),
+                new CorrelationSweeper(config), null)
+                .setRouteManager(new RouteManager()
+                {
+                    @Override
+                    public <R> R resolve(
+                        long authorization,
+                        MessagePredicate filter,
+                        MessageFunction<R> mapper)
+                    {
+                        final int length = route.sizeof();
+                        return filter.test(RouteFW.TYPE_ID, routeBuffer, 0, length) ?
+                                mapper.apply(RouteFW.TYPE_ID, routeBuffer, 0, length) : null;
+                    }
+
+                    @Override
+                    public void forEach(
+                        MessageConsumer consumer)
+                    {
+                    }
+
+                    @Override
+                    public MessageConsumer supplyTarget(
+                        String target)
+                    {
+                        return "target".equals(target) ? Http2ClientConnectionTest.this::onConnect :
+                            Http2ClientConnectionTest.this::onReply;
+                    }
+
+                    @Override
+                    public void setThrottle(
+                        String target,
+                        long streamId,
+                        MessageConsumer throttle)
+                    {
+                        throttles.put(streamId, throttle);
+                    }
+                })
+                .setWriteBuffer(new UnsafeBuffer(new byte[64 * 1024]))
+                .setStreamIdSupplier(() -> ++nextId)
+                .setTargetCorrelationIdSupplier(() -> ++nextId)
+                .setBufferPoolSupplier(() -> bufferPool)
+                .setCounterSupplier(name -> () -> 0L)
+                .build();
+    }
+
+    @Test
+    public void shouldSendRequestAndForwardResponse()
+    {
+        doRequest(100L, ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "localhost:8080",
+                "Accept", "text/plain");
+        assertEquals(1, connectBegins);
+        doConnectWindow(64 * 1024);
+
+        assertEquals(Http2Frames.PREFACE.capacity(), Http2Frames.prefaceMatch(connectBuffer, 0, connectLimit));
+        connectOffset = Http2Frames.PREFACE.capacity();
+        final int settings = assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertEquals(Http2Frames.SETTINGS_ENABLE_PUSH, connectBuffer.getShort(settings, ByteOrder.BIG_ENDIAN));
+        assertEquals(0, connectBuffer.getInt(settings + 2, ByteOrder.BIG_ENDIAN));
+        final Map<String, String> headers = decodeHeaders(assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_HEADERS, 1));
+        assertEquals("[:method, :scheme, :authority, :path, accept]", headers.keySet().toString());
+        assertEquals("text/plain", headers.get("accept"));
+        assertFrame(Http2Frames.DATA, Http2Frames.FLAG_END_STREAM, 1);
+
+        settings();
+        headers(1, Http2Frames.FLAG_END_HEADERS, ":status", "200", "content-type", "text/plain");
+        flush();
+
+        assertEquals(1, replyBegins.size());
+        assertEquals("200", replyBegins.get(0).get(":status"));
+        assertEquals("text/plain", replyBegins.get(0).get("content-type"));
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+
+        doReplyWindow(8192);
+        assertEquals(8192, connectBuffer.getInt(assertFrame(Http2Frames.WINDOW_UPDATE, 0, 1), ByteOrder.BIG_ENDIAN));
+
+        data(1, Http2Frames.FLAG_END_STREAM, "hello");
+        flush();
+
+        assertEquals("hello", replyData.toString());
+        assertEquals(1, replyEnds);
+    }
+
+    @Test
+    public void shouldMultiplexRequestsOverOneConnection()
+    {
+        doRequest(100L, ":method", "GET", ":scheme", "http", ":path", "/one", ":authority", "localhost:8080");
+        doRequest(200L, ":method", "GET", ":scheme", "http", ":path", "/two", ":authority", "localhost:8080");
+        assertEquals(1, connectBegins);
+        doConnectWindow(64 * 1024);
+
+        connectOffset = Http2Frames.PREFACE.capacity();
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertEquals("/one", decodeHeaders(assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_HEADERS, 1)).get(":path"));
+        assertFrame(Http2Frames.DATA, Http2Frames.FLAG_END_STREAM, 1);
+        assertEquals("/two", decodeHeaders(assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_HEADERS, 3)).get(":path"));
+        assertFrame(Http2Frames.DATA, Http2Frames.FLAG_END_STREAM, 3);
+
+        settings();
+        headers(3, Http2Frames.FLAG_END_HEADERS | Http2Frames.FLAG_END_STREAM, ":status", "204");
+        headers(1, Http2Frames.FLAG_END_HEADERS | Http2Frames.FLAG_END_STREAM, ":status", "404");
+        flush();
+
+        assertEquals(2, replyBegins.size());
+        assertEquals("204", replyBegins.get(0).get(":status"));
+        assertEquals("404", replyBegins.get(1).get(":status"));
+        assertEquals(2, replyEnds);
+    }
+
+    @Test
+    public void shouldQueueRequestsBeyondMaximumConcurrentStreams()
+    {
+        doRequest(100L, ":method", "GET", ":scheme", "http", ":path", "/one", ":authority", "localhost:8080");
+        doConnectWindow(64 * 1024);
+        settings(Http2Frames.SETTINGS_MAX_CONCURRENT_STREAMS, 1);
+        flush();
+
+        final int acquiredSlots = bufferPool.acquiredSlots();
+        doRequest(200L, ":method", "GET", ":scheme", "http", ":path", "/two", ":authority", "localhost:8080");
+        assertEquals(1, connectBegins);
+
+        // the queued request holds its headers in a slot until its stream is opened
+        assertEquals(acquiredSlots + 1, bufferPool.acquiredSlots());
+
+        connectOffset = Http2Frames.PREFACE.capacity();
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertEquals("/one", decodeHeaders(assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_HEADERS, 1)).get(":path"));
+        assertFrame(Http2Frames.DATA, Http2Frames.FLAG_END_STREAM, 1);
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+        assertEquals(connectLimit, connectOffset);
+
+        headers(1, Http2Frames.FLAG_END_HEADERS | Http2Frames.FLAG_END_STREAM, ":status", "200");
+        flush();
+
+        // the queued request already ended, so ends the stream with its headers
+        final int flags = Http2Frames.FLAG_END_HEADERS | Http2Frames.FLAG_END_STREAM;
+        assertEquals("/two", decodeHeaders(assertFrame(Http2Frames.HEADERS, flags, 3)).get(":path"));
+        assertEquals(1, replyEnds);
+        assertEquals(acquiredSlots, bufferPool.acquiredSlots());
+    }
+
+    @Test
+    public void shouldRespondServiceUnavailableWhenStreamRefused()
+    {
+        doRequest(100L, ":method", "POST", ":scheme", "http", ":path", "/", ":authority", "localhost:8080");
+        doConnectWindow(64 * 1024);
+
+        settings();
+        rstStream(1, Http2Frames.REFUSED_STREAM);
+        flush();
+
+        assertEquals(1, replyBegins.size());
+        assertEquals("503", replyBegins.get(0).get(":status"));
+        assertEquals(1, replyEnds);
+    }
+
+    private void doRequest(
+        long streamId,
+        String... nameValues)
+    {
+        final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(streamId)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(streamId + 1)
+                .extension(e -> e.set((buffer, offset, limit) ->
+                    new HttpBeginExFW.Builder().wrap(buffer, offset, limit)
+                        .headers(hs ->
+                        {
+                            for (int i = 0; i < nameValues.length; i += 2)
+                            {
+                                final String name = nameValues[i];
+                                final String value = nameValues[i + 1];
+                                hs.item(h -> h.name(name).value(value));
+                            }
+                        })
+                        .build()
+                        .sizeof()))
+                .build();
+
+        final MessageConsumer request = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(),
+                (t, b, i, l) -> { });
+        assertNotNull(request);
+        request.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        final EndFW end = endRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(streamId)
+                .extension(e -> e.reset())
+                .build();
+        request.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+    }
+
+    private void doConnectWindow(
+        int credit)
+    {
+        doWindow(connectId, credit);
+    }
+
+    private void doReplyWindow(
+        int credit)
+    {
+        throttles.forEach((id, throttle) ->
+        {
+            if (id != connectId)
+            {
+                doWindow(id, credit);
+            }
+        });
+    }
+
+    private void doWindow(
+        long streamId,
+        int credit)
+    {
+        final WindowFW window = windowRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(streamId)
+                .credit(credit)
+                .padding(0)
+                .groupId(0)
+                .build();
+        throttles.get(streamId).accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private void settings(
+        int... identifierValues)
+    {
+        final int length = identifierValues.length / 2 * Http2Frames.SETTING_LENGTH;
+        serverLimit = Http2Frames.putFrameHeader(serverBuffer, serverLimit, length, Http2Frames.SETTINGS, 0, 0);
+        for (int i = 0; i < identifierValues.length; i += 2)
+        {
+            serverLimit = Http2Frames.putSetting(serverBuffer, serverLimit, identifierValues[i], identifierValues[i + 1]);
+        }
+    }
+
+    private void rstStream(
+        int streamId,
+        int errorCode)
+    {
+        serverLimit = Http2Frames.putFrameHeader(serverBuffer, serverLimit, 4, Http2Frames.RST_STREAM, 0, streamId);
+        serverBuffer.putInt(serverLimit, errorCode, ByteOrder.BIG_ENDIAN);
+        serverLimit += 4;
+    }
+
+    private void headers(
+        int streamId,
+        int flags,
+        String... nameValues)
+    {
+        final int blockAt = serverLimit + Http2Frames.FRAME_HEADER_LENGTH;
+        int limit = blockAt;
+        for (int i = 0; i < nameValues.length; i += 2)
+        {
+            final DirectBuffer name = new UnsafeBuffer(nameValues[i].getBytes(US_ASCII));
+            final DirectBuffer value = new UnsafeBuffer(nameValues[i + 1].getBytes(US_ASCII));
+            limit = encoder.encode(serverBuffer, limit, name, 0, name.capacity(), value, 0, value.capacity());
+        }
+        Http2Frames.putFrameHeader(serverBuffer, serverLimit, limit - blockAt, Http2Frames.HEADERS, flags, streamId);
+        serverLimit = limit;
+    }
+
+    private void data(
+        int streamId,
+        int flags,
+        String payload)
+    {
+        serverLimit = Http2Frames.putFrameHeader(serverBuffer, serverLimit, payload.length(), Http2Frames.DATA, flags, streamId);
+        serverLimit += serverBuffer.putStringWithoutLengthUtf8(serverLimit, payload);
+    }
+
+    /*
+     * Writes the frames of the server to the connect reply, beginning it first
+     */
+    private void flush()
+    {
+        if (connectReply == null)
+        {
+            final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                    .streamId(1000L)
+                    .source("target")
+                    .sourceRef(0L)
+                    .correlationId(connectCorrelationId)
+                    .extension(e -> e.reset())
+                    .build();
+            connectReply = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(),
+                    (t, b, i, l) -> { });
+            assertNotNull(connectReply);
+            connectReply.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+        }
+
+        final DataFW data = dataRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1000L)
+                .groupId(0)
+                .padding(0)
+                .payload(p -> p.set(serverBuffer, 0, serverLimit))
+                .extension(e -> e.reset())
+                .build();
+        serverLimit = 0;
+        connectReply.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    }
+
+    /*
+     * Returns the offset of the payload of the next frame written to the server, asserting its header
+     */
+    private int assertFrame(
+        int type,
+        int flags,
+        int streamId)
+    {
+        assertTrue(connectLimit - connectOffset >= Http2Frames.FRAME_HEADER_LENGTH);
+        assertEquals(type, Http2Frames.frameType(connectBuffer, connectOffset));
+        assertEquals(flags, Http2Frames.frameFlags(connectBuffer, connectOffset));
+        assertEquals(streamId, Http2Frames.frameStreamId(connectBuffer, connectOffset));
+        final int payloadAt = connectOffset + Http2Frames.FRAME_HEADER_LENGTH;
+        connectOffset = payloadAt + Http2Frames.frameLength(connectBuffer, connectOffset);
+        return payloadAt;
+    }
+
+    private Map<String, String> decodeHeaders(
+        int payloadAt)
+    {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final int length = Http2Frames.frameLength(connectBuffer, payloadAt - Http2Frames.FRAME_HEADER_LENGTH);
+        assertTrue(decoder.decode(connectBuffer, payloadAt, length, (n, v) ->
+            headers.put(n.getStringWithoutLengthUtf8(0, n.capacity()), v.getStringWithoutLengthUtf8(0, v.capacity()))));
+        return headers;
+    }
+
+    private void onConnect(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+            connectBegins++;
+            connectId = begin.streamId();
+            connectCorrelationId = begin.correlationId();
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            connectBuffer.putBytes(connectLimit, data.payload().buffer(), data.payload().offset(), data.length());
+            connectLimit += data.length();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onReply(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+            final Map<String, String> headers = new LinkedHashMap<>();
+            begin.extension().get(beginExRO::wrap).headers()
+                .forEach(h -> headers.put(h.name().asString(), h.value().asString()));
+            replyBegins.add(headers);
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            replyData.append(data.payload().buffer().getStringWithoutLengthUtf8(data.payload().offset(), data.length()));
+            break;
+        case EndFW.TYPE_ID:
+            replyEnds++;
+            break;
+        default:
+            break;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.http.internal.hpack.HpackContext;
+import org.reaktivity.nukleus.http.internal.hpack.HpackDecoder;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+
+public class Http2RequestHeadEncoderTest
+{
+    private final MutableDirectBuffer headersBuffer = new UnsafeBuffer(new byte[4096]);
+    private final Http2Codec codec = new Http2Codec(1024);
+    private final Http2RequestHeadEncoder encoder = new Http2RequestHeadEncoder(codec);
+    private final HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE,
+            new UnsafeBuffer(new byte[1024]));
+
+    @Test
+    public void shouldEncodePseudoHeadersFirstWithLowercaseNames()
+    {
+        ListFW<HttpHeaderFW> headers = headers("Content-Type", "text/plain", ":path", "/path?query",
+                ":authority", "localhost:8080", ":scheme", "http", ":method", "GET", "X-Custom-Header", "value");
+
+        assertSame("GET", encoder.method(headers));
+        assertEquals("[:method: GET, :scheme: http, :authority: localhost:8080, :path: /path?query, " +
+                "content-type: text/plain, x-custom-header: value]", decode(encoder.encode(headers)).toString());
+    }
+
+    @Test
+    public void shouldSkipConnectionSpecificHeaders()
+    {
+        ListFW<HttpHeaderFW> headers = headers(":method", "POST", ":scheme", "http", ":path", "/",
+                ":authority", "localhost:8080", "Connection", "keep-alive", "Keep-Alive", "timeout=5",
+                "transfer-encoding", "chunked", "upgrade", "h2c", "host", "localhost:8080", "TE", "trailers",
+                "content-length", "5");
+
+        assertSame("POST", encoder.method(headers));
+        assertEquals("[:method: POST, :scheme: http, :authority: localhost:8080, :path: /, content-length: 5]",
+                decode(encoder.encode(headers)).toString());
+    }
+
+    @Test
+    public void shouldNotFindMissingMethod()
+    {
+        assertNull(encoder.method(headers(":scheme", "http", ":path", "/")));
+    }
+
+    @Test
+    public void shouldNotEncodeHeaderValueTooLong()
+    {
+        char[] value = new char[codec.value.capacity() + 1];
+        Arrays.fill(value, 'x');
+
+        assertEquals(-1, encoder.encode(headers(":method", "GET", "x-custom-header", new String(value))));
+    }
+
+    private ListFW<HttpHeaderFW> headers(
+        String... namesAndValues)
+    {
+        return new HttpBeginExFW.Builder()
+                .wrap(headersBuffer, 0, headersBuffer.capacity())
+                .headers(hs ->
+                {
+                    for (int i = 0; i < namesAndValues.length; i += 2)
+                    {
+                        final String name = namesAndValues[i];
+                        final String value = namesAndValues[i + 1];
+                        hs.item(h -> h.name(name).value(value));
+                    }
+                })
+                .build()
+                .headers();
+    }
+
+    private List<String> decode(
+        int length)
+    {
+        final List<String> headers = new ArrayList<>();
+        assertTrue(decoder.decode(codec.block, 0, length, (n, v) ->
+            headers.add(n.getStringWithoutLengthUtf8(0, n.capacity()) + ": " + v.getStringWithoutLengthUtf8(0, v.capacity()))));
+        return headers;
+    }
+}
@@ -0,0 +1,602 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessageFunction;
+import org.reaktivity.nukleus.function.MessagePredicate;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.hpack.HpackContext;
+import org.reaktivity.nukleus.http.internal.hpack.HpackDecoder;
+import org.reaktivity.nukleus.http.internal.hpack.HpackEncoder;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+import org.reaktivity.reaktor.internal.buffer.DefaultBufferPool;
+
+public class Http2ServerConnectionTest
+{
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final RouteFW.Builder routeRW = new RouteFW.Builder();
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final WindowFW windowRO = new WindowFW();
+    private final HttpBeginExFW beginExRO = new HttpBeginExFW();
+
+    private final MutableDirectBuffer routeBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer frameBuffer = new UnsafeBuffer(new byte[8192]);
+    private final MutableDirectBuffer clientBuffer = new UnsafeBuffer(new byte[4096]);
+    private final MutableDirectBuffer replyBuffer = new UnsafeBuffer(new byte[64 * 1024]);
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final HpackDecoder decoder = new HpackDecoder(HpackContext.DEFAULT_TABLE_SIZE,
+            new UnsafeBuffer(new byte[8192]));
+
+    private final List<Map<String, String>> targetBegins = new ArrayList<>();
+    private final Map<Long, MessageConsumer> targetThrottles = new HashMap<>();
+    private final StringBuilder targetData = new StringBuilder();
+
+    private StreamFactory factory;
+    private MessageConsumer acceptStream;
+    private long targetId;
+    private long targetCorrelationId;
+    private int targetEnds;
+    private int targetAborts;
+    private long replyStreamId;
+    private int replyLimit;
+    private int replyOffset;
+    private boolean replyEnded;
+    private int sourceCredit;
+    private boolean sourceReset;
+    private int clientLimit;
+    private int responseCredit;
+    private int responsePadding;
+
+    @Before
+    public void init()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-tests");
+        properties.setProperty(HttpConfiguration.SERVER_HTTP2_PROPERTY_NAME, "true");
+        HttpConfiguration config = new HttpConfiguration(new Configuration(properties));
+
+        final RouteFW route = routeRW.wrap(routeBuffer, 0, routeBuffer.capacity())
+                .correlationId(1L)
+                .role(b -> b.set(Role.SERVER))
+                .source("source")
+                .sourceRef(1L)
+                .target("target")
+                .targetRef(0L)
+                .extension(e -> e.reset())
+                .build();
+
+        long[] streamIds = new long[1];
+        factory = new ServerStreamFactoryBuilder(config, null, HttpMetrics.newInstance(config),
+                new CorrelationSweeper(config), null)
+                .setRouteManager(new RouteManager()
+                {
+                    @Override
+                    public <R> R resolve(
+                        long authorization,
+                        MessagePredicate filter,
+                        MessageFunction<R> mapper)
+                    {
+                        final int length = route.sizeof();
+                        return filter.test(RouteFW.TYPE_ID, routeBuffer, 0, length) ?
+                                mapper.apply(RouteFW.TYPE_ID, routeBuffer, 0, length) : null;
+                    }
+
+                    @Override
+                    public void forEach(
+                        MessageConsumer consumer)
+                    {
+                    }
+
+                    @Override
+                    public MessageConsumer supplyTarget(
+                        String target)
+                    {
+                        return "target".equals(target) ? Http2ServerConnectionTest.this::onTarget :
+                            Http2ServerConnectionTest.this::onReply;
+                    }
+
+                    @Override
+                    public void setThrottle(
+                        String target,
+                        long streamId,
+                        MessageConsumer throttle)
+                    {
+                        targetThrottles.put(streamId, throttle);
+                    }
+                })
+                .setWriteBuffer(new UnsafeBuffer(new byte[64 * 1024]))
+                .setStreamIdSupplier(() -> ++streamIds[0])
+                .setTargetCorrelationIdSupplier(() -> ++streamIds[0])
+                .setBufferPoolSupplier(() -> new DefaultBufferPool(64 * 1024, 8192))
+                .setCounterSupplier(name -> () -> 0L)
+                .build();
+
+        final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(2L)
+                .extension(e -> e.reset())
+                .build();
+
+        acceptStream = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(), this::onSource);
+        acceptStream.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+        doReplyWindow(64 * 1024);
+    }
+
+    @Test
+    public void shouldForwardRequestAndEncodeResponseByPriorKnowledge()
+    {
+        preface();
+        settings();
+        headers(1, Http2Frames.FLAG_END_STREAM | Http2Frames.FLAG_END_HEADERS,
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "localhost:8080");
+        flush();
+
+        assertTrue(sourceCredit > 0);
+        assertEquals(1, targetBegins.size());
+        assertEquals("GET", targetBegins.get(0).get(":method"));
+        assertEquals("/", targetBegins.get(0).get(":path"));
+        assertEquals("localhost:8080", targetBegins.get(0).get(":authority"));
+        assertEquals(1, targetEnds);
+
+        final MessageConsumer response = doResponseBegin(":status", "200", "Content-Type", "text/plain");
+        assertTrue(responseCredit > 0);
+        doResponseData(response, "hello");
+        doResponseEnd(response);
+
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+        final Map<String, String> headers = decodeHeaders(assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_HEADERS, 1));
+        assertEquals("200", headers.get(":status"));
+        assertEquals("text/plain", headers.get("content-type"));
+        assertEquals("hello", payload(assertFrame(Http2Frames.DATA, 0, 1)));
+        assertEquals("", payload(assertFrame(Http2Frames.DATA, Http2Frames.FLAG_END_STREAM, 1)));
+        assertEquals(replyLimit, replyOffset);
+
+        goaway();
+        flush();
+        assertTrue(replyEnded);
+    }
+
+    @Test
+    public void shouldUpgradeFromHttp11()
+    {
+        final MutableDirectBuffer settings = new UnsafeBuffer(new byte[Http2Frames.SETTING_LENGTH]);
+        Http2Frames.putSetting(settings, 0, Http2Frames.SETTINGS_INITIAL_WINDOW_SIZE, 1024);
+        final String http2Settings = Base64.getUrlEncoder().withoutPadding().encodeToString(settings.byteArray());
+
+        append("GET /upgrade HTTP/1.1\r\nHost: localhost:8080\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+               "Upgrade: h2c\r\nHTTP2-Settings: " + http2Settings + "\r\n\r\n");
+        preface();
+        settings();
+        flush();
+
+        assertEquals(1, targetBegins.size());
+        assertEquals("/upgrade", targetBegins.get(0).get(":path"));
+        assertFalse(targetBegins.get(0).containsKey("upgrade"));
+        assertFalse(targetBegins.get(0).containsKey("http2-settings"));
+        assertEquals(1, targetEnds);
+
+        final String switching = "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n";
+        assertEquals(switching, replyBuffer.getStringWithoutLengthUtf8(0, switching.length()));
+        replyOffset = switching.length();
+
+        final MessageConsumer response = doResponseBegin(":status", "204");
+        doResponseEnd(response);
+
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+        assertEquals("204", decodeHeaders(assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_HEADERS, 1)).get(":status"));
+        assertFrame(Http2Frames.DATA, Http2Frames.FLAG_END_STREAM, 1);
+    }
+
+    @Test
+    public void shouldFlowControlRequestBodyByTargetWindow()
+    {
+        preface();
+        settings();
+        settingsAck();
+        headers(1, Http2Frames.FLAG_END_HEADERS,
+                ":method", "POST", ":scheme", "http", ":path", "/", ":authority", "localhost:8080", "content-length", "5");
+        flush();
+
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+        assertEquals(replyLimit, replyOffset);
+
+        doTargetWindow(8192);
+        assertEquals(8192, replyBuffer.getInt(assertFrame(Http2Frames.WINDOW_UPDATE, 0, 1), ByteOrder.BIG_ENDIAN));
+
+        data(1, Http2Frames.FLAG_END_STREAM, "hello");
+        flush();
+
+        assertEquals("hello", targetData.toString());
+        assertEquals(1, targetEnds);
+        assertEquals(0, targetAborts);
+    }
+
+    @Test
+    public void shouldStallRequestBodyUntilTargetWindow()
+    {
+        preface();
+        settings();
+        headers(1, Http2Frames.FLAG_END_HEADERS,
+                ":method", "POST", ":scheme", "http", ":path", "/", ":authority", "localhost:8080");
+        data(1, Http2Frames.FLAG_END_STREAM, "hello");
+        flush();
+
+        assertEquals("", targetData.toString());
+        assertEquals(0, targetEnds);
+
+        doTargetWindow(3);
+        assertEquals("hel", targetData.toString());
+        assertEquals(0, targetEnds);
+
+        doTargetWindow(8192);
+        assertEquals("hello", targetData.toString());
+        assertEquals(1, targetEnds);
+    }
+
+    @Test
+    public void shouldRespondLocallyToUnsupportedMethod()
+    {
+        preface();
+        settings();
+        headers(1, Http2Frames.FLAG_END_STREAM | Http2Frames.FLAG_END_HEADERS,
+                ":method", "BREW", ":scheme", "http", ":path", "/", ":authority", "localhost:8080");
+        ping();
+        flush();
+
+        assertTrue(targetBegins.isEmpty());
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+        final int block = assertFrame(Http2Frames.HEADERS, Http2Frames.FLAG_END_STREAM | Http2Frames.FLAG_END_HEADERS, 1);
+        assertEquals("501", decodeHeaders(block).get(":status"));
+        assertEquals(0x0102030405060708L, replyBuffer.getLong(assertFrame(Http2Frames.PING, Http2Frames.FLAG_ACK, 0),
+                ByteOrder.BIG_ENDIAN));
+    }
+
+    @Test
+    public void shouldCloseConnectionOnProtocolError()
+    {
+        preface();
+        settings();
+        headers(2, Http2Frames.FLAG_END_STREAM | Http2Frames.FLAG_END_HEADERS,
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "localhost:8080");
+        flush();
+
+        assertTrue(targetBegins.isEmpty());
+        assertFrame(Http2Frames.SETTINGS, 0, 0);
+        assertFrame(Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+        final int goaway = assertFrame(Http2Frames.GOAWAY, 0, 0);
+        assertEquals(Http2Frames.PROTOCOL_ERROR, replyBuffer.getInt(goaway + 4, ByteOrder.BIG_ENDIAN));
+        assertTrue(sourceReset);
+        assertTrue(replyEnded);
+    }
+
+    private void preface()
+    {
+        clientBuffer.putBytes(clientLimit, Http2Frames.PREFACE, 0, Http2Frames.PREFACE.capacity());
+        clientLimit += Http2Frames.PREFACE.capacity();
+    }
+
+    private void settings()
+    {
+        clientLimit = Http2Frames.putFrameHeader(clientBuffer, clientLimit, 0, Http2Frames.SETTINGS, 0, 0);
+    }
+
+    private void settingsAck()
+    {
+        clientLimit = Http2Frames.putFrameHeader(clientBuffer, clientLimit, 0, Http2Frames.SETTINGS, Http2Frames.FLAG_ACK, 0);
+    }
+
+    private void ping()
+    {
+        clientLimit = Http2Frames.putFrameHeader(clientBuffer, clientLimit, 8, Http2Frames.PING, 0, 0);
+        clientBuffer.putLong(clientLimit, 0x0102030405060708L, ByteOrder.BIG_ENDIAN);
+        clientLimit += 8;
+    }
+
+    private void goaway()
+    {
+        clientLimit = Http2Frames.putFrameHeader(clientBuffer, clientLimit, 8, Http2Frames.GOAWAY, 0, 0);
+        clientBuffer.putLong(clientLimit, 0L);
+        clientLimit += 8;
+    }
+
+    private void headers(
+        int streamId,
+        int flags,
+        String... nameValues)
+    {
+        final int blockAt = clientLimit + Http2Frames.FRAME_HEADER_LENGTH;
+        int limit = blockAt;
+        for (int i = 0; i < nameValues.length; i += 2)
+        {
+            final DirectBuffer name = new UnsafeBuffer(nameValues[i].getBytes(US_ASCII));
+            final DirectBuffer value = new UnsafeBuffer(nameValues[i + 1].getBytes(US_ASCII));
+            limit = encoder.encode(clientBuffer, limit, name, 0, name.capacity(), value, 0, value.capacity());
+        }
+        Http2Frames.putFrameHeader(clientBuffer, clientLimit, limit - blockAt, Http2Frames.HEADERS, flags, streamId);
+        clientLimit = limit;
+    }
+
+    private void data(
+        int streamId,
+        int flags,
+        String payload)
+    {
+        clientLimit = Http2Frames.putFrameHeader(clientBuffer, clientLimit, payload.length(), Http2Frames.DATA, flags, streamId);
+        append(payload);
+    }
+
+    private void append(
+        String bytes)
+    {
+        clientLimit += clientBuffer.putStringWithoutLengthUtf8(clientLimit, bytes);
+    }
+
+    private void flush()
+    {
+        final DataFW data = dataRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .groupId(0)
+                .padding(0)
+                .payload(p -> p.set(clientBuffer, 0, clientLimit))
+                .extension(e -> e.reset())
+                .build();
+        clientLimit = 0;
+        acceptStream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    }
+
+    private void doReplyWindow(
+        int credit)
+    {
+        final WindowFW window = windowRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(replyStreamId)
+                .credit(credit)
+                .padding(0)
+                .groupId(0)
+                .build();
+        acceptStream.accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private void doTargetWindow(
+        int credit)
+    {
+        final WindowFW window = windowRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(targetId)
+                .credit(credit)
+                .padding(0)
+                .groupId(0)
+                .build();
+        targetThrottles.get(targetId).accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    private MessageConsumer doResponseBegin(
+        String... nameValues)
+    {
+        final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1000L)
+                .source("target")
+                .sourceRef(0L)
+                .correlationId(targetCorrelationId)
+                .extension(e -> e.set((buffer, offset, limit) ->
+                    new HttpBeginExFW.Builder().wrap(buffer, offset, limit)
+                        .headers(hs ->
+                        {
+                            for (int i = 0; i < nameValues.length; i += 2)
+                            {
+                                final String name = nameValues[i];
+                                final String value = nameValues[i + 1];
+                                hs.item(h -> h.name(name).value(value));
+                            }
+                        })
+                        .build()
+                        .sizeof()))
+                .build();
+
+        final MessageConsumer response = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(),
+                this::onResponseThrottle);
+        assertNotNull(response);
+        response.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+        return response;
+    }
+
+    private void doResponseData(
+        MessageConsumer response,
+        String payload)
+    {
+        final byte[] bytes = payload.getBytes(US_ASCII);
+        final DataFW data = dataRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1000L)
+                .groupId(0)
+                .padding(responsePadding)
+                .payload(p -> p.set(bytes))
+                .extension(e -> e.reset())
+                .build();
+        response.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    }
+
+    private void doResponseEnd(
+        MessageConsumer response)
+    {
+        final EndFW end = endRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1000L)
+                .extension(e -> e.reset())
+                .build();
+        response.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+    }
+
+    /*
+     * Returns the offset of the payload of the next frame written to the client, asserting its header
+     */
+    private int assertFrame(
+        int type,
+        int flags,
+        int streamId)
+    {
+        assertTrue(replyLimit - replyOffset >= Http2Frames.FRAME_HEADER_LENGTH);
+        assertEquals(type, Http2Frames.frameType(replyBuffer, replyOffset));
+        assertEquals(flags, Http2Frames.frameFlags(replyBuffer, replyOffset));
+        assertEquals(streamId, Http2Frames.frameStreamId(replyBuffer, replyOffset));
+        final int payloadAt = replyOffset + Http2Frames.FRAME_HEADER_LENGTH;
+        replyOffset = payloadAt + Http2Frames.frameLength(replyBuffer, replyOffset);
+        return payloadAt;
+    }
+
+    private String payload(
+        int payloadAt)
+    {
+        return replyBuffer.getStringWithoutLengthUtf8(payloadAt, Http2Frames.frameLength(replyBuffer,
+                payloadAt - Http2Frames.FRAME_HEADER_LENGTH));
+    }
+
+    private Map<String, String> decodeHeaders(
+        int payloadAt)
+    {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final int length = Http2Frames.frameLength(replyBuffer, payloadAt - Http2Frames.FRAME_HEADER_LENGTH);
+        assertTrue(decoder.decode(replyBuffer, payloadAt, length, (n, v) ->
+            headers.put(n.getStringWithoutLengthUtf8(0, n.capacity()), v.getStringWithoutLengthUtf8(0, v.capacity()))));
+        return headers;
+    }
+
+    private void onSource(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case WindowFW.TYPE_ID:
+            sourceCredit += windowRO.wrap(buffer, index, index + length).credit();
+            break;
+        case ResetFW.TYPE_ID:
+            sourceReset = true;
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onReply(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            replyStreamId = beginRO.wrap(buffer, index, index + length).streamId();
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            replyBuffer.putBytes(replyLimit, data.payload().buffer(), data.payload().offset(), data.length());
+            replyLimit += data.length();
+            break;
+        case EndFW.TYPE_ID:
+            replyEnded = true;
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onTarget(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+            targetId = begin.streamId();
+            targetCorrelationId = begin.correlationId();
+            final Map<String, String> headers = new LinkedHashMap<>();
+            begin.extension().get(beginExRO::wrap).headers()
+                .forEach(h -> headers.put(h.name().asString(), h.value().asString()));
+            targetBegins.add(headers);
+            break;
+        case DataFW.TYPE_ID:
+            final DataFW data = dataRO.wrap(buffer, index, index + length);
+            targetData.append(data.payload().buffer().getStringWithoutLengthUtf8(data.payload().offset(), data.length()));
+            break;
+        case EndFW.TYPE_ID:
+            targetEnds++;
+            break;
+        default:
+            targetAborts++;
+            break;
+        }
+    }
+
+    private void onResponseThrottle(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (msgTypeId == WindowFW.TYPE_ID)
+        {
+            final WindowFW window = windowRO.wrap(buffer, index, index + length);
+            responseCredit += window.credit();
+            responsePadding = window.padding();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.reaktivity.nukleus.function.MessageConsumer;
+
+/*
+ * Writes each kind of frame emitted per request into a sink that only records the frame length,
+ * so that {@code -prof gc} reports the allocation of the writer alone, expected to be zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class MessageWriterBM
+{
+    private final MessageWriter writer = new MessageWriter(new UnsafeBuffer(new byte[64 * 1024]));
+    private final MutableDirectBuffer payload = new UnsafeBuffer(new byte[1024]);
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final MessageConsumer target = this::onFrame;
+
+    private int written;
+
+    {
+        headers.put(":scheme", "http");
+        headers.put(":method", "GET");
+        headers.put(":path", "/");
+        headers.put(":authority", "localhost:8080");
+        headers.put("content-type", "text/plain");
+        payload.putBytes(0, "Hello, world".getBytes(US_ASCII));
+    }
+
+    @Benchmark
+    public int httpBegin()
+    {
+        writer.doHttpBegin(target, 1L, 0L, 2L, 3L, headers);
+        return written;
+    }
+
+    @Benchmark
+    public int httpData()
+    {
+        writer.doHttpData(target, 1L, 0L, 0, payload, 0, payload.capacity());
+        return written;
+    }
+
+    @Benchmark
+    public int httpEnd()
+    {
+        writer.doHttpEnd(target, 1L, 0L);
+        return written;
+    }
+
+    @Benchmark
+    public int window()
+    {
+        writer.doWindow(target, 1L, 0L, 8192, 0);
+        return written;
+    }
+
+    private void onFrame(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        written += length;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(MessageWriterBM.class.getSimpleName())
+                .addProfiler("gc")
+                .forks(0)
+                .threads(1)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .measurementTime(new TimeValue(1, SECONDS))
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+
+public class MessageWriterTest
+{
+    private final MessageWriter writer = new MessageWriter(new UnsafeBuffer(new byte[1024]));
+    private final DirectBuffer payload = new UnsafeBuffer("Hello, world".getBytes(US_ASCII));
+    private final MutableDirectBuffer accepted = new UnsafeBuffer(new byte[1024]);
+    private final MessageConsumer target = this::onFrame;
+
+    private int acceptedLength;
+
+    @Test
+    public void shouldEncodeChunk()
+    {
+        int written = writer.doChunk(target, 1L, 2L, 3, payload, 0, payload.capacity());
+
+        assertEquals("c\r\nHello, world\r\n".length(), written);
+
+        DataFW data = new DataFW().wrap(accepted, 0, acceptedLength);
+        assertEquals(written, data.length());
+        assertEquals("c\r\nHello, world\r\n", data.payload().buffer()
+                .getStringWithoutLengthUtf8(data.payload().offset(), data.length()));
+    }
+
+    @Test
+    public void shouldEncodeLastChunk()
+    {
+        writer.doLastChunk(target, 1L, 2L, 0);
+
+        DataFW data = new DataFW().wrap(accepted, 0, acceptedLength);
+        assertEquals(MessageWriter.LAST_CHUNK_LENGTH, data.length());
+        assertEquals("0\r\n\r\n", data.payload().buffer()
+                .getStringWithoutLengthUtf8(data.payload().offset(), data.length()));
+    }
+
+    private void onFrame(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        accepted.putBytes(0, buffer, index, length);
+        acceptedLength = length;
+    }
+}
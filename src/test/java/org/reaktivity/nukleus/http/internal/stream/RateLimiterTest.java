@@ -0,0 +1,140 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+public class RateLimiterTest
+{
+    private final CountersManager counters = new CountersManager(
+            new UnsafeBuffer(new byte[CountersManager.METADATA_LENGTH]),
+            new UnsafeBuffer(new byte[CountersManager.COUNTER_LENGTH]));
+    private final AtomicCounter limited = counters.newCounter(RateLimiter.REQUESTS_RATE_LIMITED);
+
+    private long now = 1_000_000_000L;
+
+    @Test
+    public void shouldLimitAfterBurstUntilRefilled()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_PROPERTY_NAME, "10");
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_BURST_PROPERTY_NAME, "2");
+        RateLimiter limiter = newRateLimiter(properties);
+        Map<String, String> headers = singletonMap(":authority", "example.com");
+
+        assertEquals(0L, limiter.acquire(1L, headers));
+        assertEquals(0L, limiter.acquire(1L, headers));
+        assertEquals(100_000_000L, limiter.acquire(1L, headers));
+        assertEquals(0L, limiter.acquire(1L, singletonMap(":authority", "example.net")));
+        assertEquals(0L, limiter.acquire(2L, headers));
+
+        now += 100_000_000L;
+        assertEquals(0L, limiter.acquire(1L, headers));
+        assertTrue(limiter.acquire(1L, headers) > 0L);
+        assertEquals(2L, limited.get());
+    }
+
+    @Test
+    public void shouldOnlyLimitConfiguredRoutesByRoute()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_PROPERTY_NAME, "1");
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_BURST_PROPERTY_NAME, "1");
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_KEY_PROPERTY_NAME, RateLimiter.ROUTE_KEY);
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_ROUTES_PROPERTY_NAME, "3");
+        RateLimiter limiter = newRateLimiter(properties);
+
+        assertEquals(0L, limiter.acquire(3L, singletonMap(":authority", "a")));
+        assertEquals(1_000_000_000L, limiter.acquire(3L, singletonMap(":authority", "b")));
+        assertEquals(0L, limiter.acquire(4L, singletonMap(":authority", "a")));
+        assertEquals(0L, limiter.acquire(4L, singletonMap(":authority", "a")));
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void shouldPurgeRefilledBucketsWhenFull()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_PROPERTY_NAME, "1");
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_BURST_PROPERTY_NAME, "1");
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_KEY_PROPERTY_NAME, RateLimiter.ROUTE_KEY);
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_KEYS_PROPERTY_NAME, "6");
+        RateLimiter limiter = newRateLimiter(properties);
+
+        int routes = 0;
+        while (limiter.size() < 6)
+        {
+            assertEquals(0L, limiter.acquire(routes++, singletonMap(":authority", "a")));
+        }
+
+        // every bucket is in use, so new keys are not limited until buckets refill
+        assertEquals(0L, limiter.acquire(routes, singletonMap(":authority", "a")));
+        assertEquals(0L, limiter.acquire(routes, singletonMap(":authority", "a")));
+
+        now += 1_000_000_000L;
+        assertEquals(0L, limiter.acquire(routes, singletonMap(":authority", "a")));
+        assertEquals(1, limiter.size());
+        assertTrue(limiter.acquire(routes, singletonMap(":authority", "a")) > 0L);
+    }
+
+    @Test
+    public void shouldRoundRetryAfterUpToSeconds()
+    {
+        assertEquals(1L, RateLimiter.retryAfter(1L));
+        assertEquals(1L, RateLimiter.retryAfter(1_000_000_000L));
+        assertEquals(2L, RateLimiter.retryAfter(1_000_000_001L));
+    }
+
+    @Test
+    public void shouldReusePrecomputedLimitedResponse()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_PROPERTY_NAME, "1");
+        properties.setProperty(HttpConfiguration.SERVER_RATE_LIMIT_BURST_PROPERTY_NAME, "1");
+        RateLimiter limiter = newRateLimiter(properties);
+        Map<String, String> headers = singletonMap(":authority", "example.com");
+
+        assertEquals(0L, limiter.acquire(1L, headers));
+        final long delay = limiter.acquire(1L, headers);
+        DirectBuffer response = limiter.limitedResponse(delay);
+        byte[] bytes = new byte[response.capacity()];
+        response.getBytes(0, bytes);
+        assertEquals("HTTP/1.1 429 Too Many Requests\r\nRetry-After: 1\r\nConnection: close\r\n\r\n",
+                new String(bytes, US_ASCII));
+        assertSame(response, limiter.limitedResponse(limiter.acquire(1L, headers)));
+    }
+
+    private RateLimiter newRateLimiter(
+        Properties properties)
+    {
+        return new RateLimiter(new HttpConfiguration(new Configuration(properties)), () -> now, limited);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+
+public class RequestHeadEncoderTest
+{
+    private final MutableDirectBuffer headersBuffer = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[1024]);
+    private final RequestHeadEncoder encoder = new RequestHeadEncoder();
+
+    @Test
+    public void shouldEncodeRequestLineAndHeaders()
+    {
+        assertTrue(encoder.scan(headers(":method", "GET", ":scheme", "http", ":path", "/path?query",
+                ":authority", "localhost:8080", "content-type", "text/plain", "x-custom-header", "value")));
+
+        assertSame("GET", encoder.method());
+        assertTrue(encoder.persistent());
+        assertFalse(encoder.chunked());
+        assertEquals("GET /path?query HTTP/1.1\r\n" +
+                     "Host: localhost:8080\r\n" +
+                     "Content-Type: text/plain\r\n" +
+                     "X-Custom-header: value\r\n" +
+                     "\r\n", encode(16));
+    }
+
+    @Test
+    public void shouldChunkBodyOfUnknownLength()
+    {
+        assertTrue(encoder.scan(headers(":method", "POST", ":scheme", "http", ":path", "/",
+                ":authority", "localhost:8080")));
+
+        assertTrue(encoder.chunked());
+        assertEquals("POST / HTTP/1.1\r\nHost: localhost:8080\r\nTransfer-Encoding: chunked\r\n\r\n", encode(0));
+    }
+
+    @Test
+    public void shouldNotChunkBodyOfKnownLength()
+    {
+        assertTrue(encoder.scan(headers(":method", "POST", ":scheme", "http", ":path", "/",
+                ":authority", "localhost:8080", "content-length", "0")));
+
+        assertFalse(encoder.chunked());
+        assertEquals("POST / HTTP/1.1\r\nHost: localhost:8080\r\nContent-Length: 0\r\n\r\n", encode(0));
+    }
+
+    @Test
+    public void shouldNotBePersistentWithConnectionClose()
+    {
+        assertTrue(encoder.scan(headers(":method", "GET", ":scheme", "http", ":path", "/",
+                ":authority", "localhost:8080", "connection", "upgrade, Close")));
+
+        assertFalse(encoder.persistent());
+    }
+
+    @Test
+    public void shouldUseHostWhenNoAuthority()
+    {
+        assertTrue(encoder.scan(headers(":method", "GET", ":scheme", "http", ":path", "/", "host", "example.com")));
+
+        assertEquals("GET / HTTP/1.1\r\nHost: example.com\r\n\r\n", encode(0));
+    }
+
+    @Test
+    public void shouldRejectHostDifferentFromAuthority()
+    {
+        assertFalse(encoder.scan(headers(":method", "GET", ":scheme", "http", ":path", "/",
+                ":authority", "localhost:8080", "host", "example.com")));
+    }
+
+    @Test
+    public void shouldRejectMissingPseudoHeader()
+    {
+        assertFalse(encoder.scan(headers(":method", "GET", ":scheme", "http", ":authority", "localhost:8080")));
+    }
+
+    private ListFW<HttpHeaderFW> headers(
+        String... namesAndValues)
+    {
+        return new HttpBeginExFW.Builder()
+                .wrap(headersBuffer, 0, headersBuffer.capacity())
+                .headers(hs ->
+                {
+                    for (int i = 0; i < namesAndValues.length; i += 2)
+                    {
+                        final String name = namesAndValues[i];
+                        final String value = namesAndValues[i + 1];
+                        hs.item(h -> h.name(name).value(value));
+                    }
+                })
+                .build()
+                .headers();
+    }
+
+    private String encode(
+        int offset)
+    {
+        final int length = encoder.length();
+        assertEquals(length, encoder.encode(buffer, offset));
+        return new String(bytes(offset, length), US_ASCII);
+    }
+
+    private byte[] bytes(
+        int offset,
+        int length)
+    {
+        final byte[] bytes = new byte[length];
+        buffer.getBytes(offset, bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.http.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http.internal.types.ListFW;
+import org.reaktivity.nukleus.http.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http.internal.types.control.HttpRouteExFW;
+import org.reaktivity.nukleus.http.internal.types.stream.HttpBeginExFW;
+
+public class RouteHeadersMatcherTest
+{
+    private final MutableDirectBuffer routeBuffer = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer headersBuffer = new UnsafeBuffer(new byte[1024]);
+    private final RouteHeadersMatcher matcher = new RouteHeadersMatcher();
+
+    @Test
+    public void shouldMatchRouteWithoutExtension()
+    {
+        final OctetsFW extension = new OctetsFW().wrap(routeBuffer, 0, 0);
+
+        assertTrue(matcher.matches(extension, headers(":path", "/")));
+        assertTrue(matcher.matches(extension, map(":path", "/")));
+        assertTrue(matcher.matches(extension, (ListFW<HttpHeaderFW>) null));
+    }
+
+    @Test
+    public void shouldMatchRouteHeadersPresentInRequest()
+    {
+        final OctetsFW extension = routeEx(":authority", "example.com:80", ":path", "/api");
+
+        assertTrue(matcher.matches(extension, headers(":method", "GET", ":path", "/api", ":authority", "example.com:80")));
+        assertTrue(matcher.matches(extension, map(":method", "GET", ":path", "/api", ":authority", "example.com:80")));
+    }
+
+    @Test
+    public void shouldNotMatchRouteHeaderWithDifferentValue()
+    {
+        final OctetsFW extension = routeEx(":authority", "example.com:80");
+
+        assertFalse(matcher.matches(extension, headers(":authority", "example.net:80")));
+        assertFalse(matcher.matches(extension, map(":authority", "example.net:80")));
+    }
+
+    @Test
+    public void shouldNotMatchRouteHeaderMissingFromRequest()
+    {
+        final OctetsFW extension = routeEx(":authority", "example.com:80", "x-tenant", "one");
+
+        assertFalse(matcher.matches(extension, headers(":authority", "example.com:80")));
+        assertFalse(matcher.matches(extension, map(":authority", "example.com:80")));
+        assertFalse(matcher.matches(extension, (ListFW<HttpHeaderFW>) null));
+    }
+
+    @Test
+    public void shouldNotMatchRouteHeaderNameWithDifferentLength()
+    {
+        final OctetsFW extension = routeEx("x-tenant", "one");
+
+        assertFalse(matcher.matches(extension, headers("x-tenants", "one")));
+        assertFalse(matcher.matches(extension, map("x-tenants", "one")));
+    }
+
+    private OctetsFW routeEx(
+        String... namesAndValues)
+    {
+        final HttpRouteExFW routeEx = new HttpRouteExFW.Builder()
+                .wrap(routeBuffer, 0, routeBuffer.capacity())
+                .headers(hs ->
+                {
+                    for (int i = 0; i < namesAndValues.length; i += 2)
+                    {
+                        final String name = namesAndValues[i];
+                        final String value = namesAndValues[i + 1];
+                        hs.item(h -> h.name(name).value(value));
+                    }
+                })
+                .build();
+        return new OctetsFW().wrap(routeBuffer, routeEx.offset(), routeEx.limit());
+    }
+
+    private ListFW<HttpHeaderFW> headers(
+        String... namesAndValues)
+    {
+        return new HttpBeginExFW.Builder()
+                .wrap(headersBuffer, 0, headersBuffer.capacity())
+                .headers(hs ->
+                {
+                    for (int i = 0; i < namesAndValues.length; i += 2)
+                    {
+                        final String name = namesAndValues[i];
+                        final String value = namesAndValues[i + 1];
+                        hs.item(h -> h.name(name).value(value));
+                    }
+                })
+                .build()
+                .headers();
+    }
+
+    private static Map<String, String> map(
+        String... namesAndValues)
+    {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            headers.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+}
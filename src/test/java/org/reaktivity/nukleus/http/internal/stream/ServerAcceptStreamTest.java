@@ -0,0 +1,286 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.reaktivity.nukleus.Configuration.DIRECTORY_PROPERTY_NAME;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessageFunction;
+import org.reaktivity.nukleus.function.MessagePredicate;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
+import org.reaktivity.nukleus.http.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http.internal.types.stream.FrameFW;
+import org.reaktivity.nukleus.http.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+import org.reaktivity.reaktor.internal.buffer.DefaultBufferPool;
+
+public class ServerAcceptStreamTest
+{
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final RouteFW.Builder routeRW = new RouteFW.Builder();
+    private final BeginFW beginRO = new BeginFW();
+    private final FrameFW frameRO = new FrameFW();
+
+    private final MutableDirectBuffer routeBuffer = new UnsafeBuffer(new byte[256]);
+    private final MutableDirectBuffer frameBuffer = new UnsafeBuffer(new byte[1024]);
+
+    private final List<String> frames = new ArrayList<>();
+
+    private CorrelationSweeper sweeper;
+    private TimerWheel timers;
+    private long nanoTime;
+    private StreamFactory factory;
+    private MessageConsumer acceptStream;
+    private MessageConsumer replyThrottle;
+    private long replyStreamId;
+
+    @Before
+    public void init()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_PROPERTY_NAME, "target/nukleus-tests");
+        properties.setProperty(HttpConfiguration.CORRELATION_TIMEOUT_PROPERTY_NAME, "0");
+        properties.setProperty(HttpConfiguration.CORRELATION_SWEEP_INTERVAL_PROPERTY_NAME, "0");
+        properties.setProperty(HttpConfiguration.SERVER_HIBERNATION_PROPERTY_NAME, "true");
+        properties.setProperty(HttpConfiguration.SERVER_HIBERNATION_DELAY_PROPERTY_NAME, "100");
+        properties.setProperty(HttpConfiguration.SERVER_KEEPALIVE_TIMEOUT_PROPERTY_NAME, "1000");
+        HttpConfiguration config = new HttpConfiguration(new Configuration(properties));
+        sweeper = new CorrelationSweeper(config);
+        timers = new TimerWheel(config, () -> nanoTime);
+
+        final RouteFW route = routeRW.wrap(routeBuffer, 0, routeBuffer.capacity())
+                .correlationId(1L)
+                .role(b -> b.set(Role.SERVER))
+                .source("source")
+                .sourceRef(1L)
+                .target("target")
+                .targetRef(0L)
+                .extension(e -> e.reset())
+                .build();
+
+        long[] streamIds = new long[] { 100L };
+        factory = new ServerStreamFactoryBuilder(config, null, HttpMetrics.newInstance(config), sweeper, timers)
+                .setRouteManager(new RouteManager()
+                {
+                    @Override
+                    public <R> R resolve(
+                        long authorization,
+                        MessagePredicate filter,
+                        MessageFunction<R> mapper)
+                    {
+                        final int length = route.sizeof();
+                        return filter.test(RouteFW.TYPE_ID, routeBuffer, 0, length) ?
+                                mapper.apply(RouteFW.TYPE_ID, routeBuffer, 0, length) : null;
+                    }
+
+                    @Override
+                    public void forEach(
+                        MessageConsumer consumer)
+                    {
+                    }
+
+                    @Override
+                    public MessageConsumer supplyTarget(
+                        String target)
+                    {
+                        return "target".equals(target) ? ServerAcceptStreamTest.this::onTarget :
+                            ServerAcceptStreamTest.this::onReply;
+                    }
+
+                    @Override
+                    public void setThrottle(
+                        String target,
+                        long streamId,
+                        MessageConsumer throttle)
+                    {
+                        if ("source".equals(target))
+                        {
+                            replyThrottle = throttle;
+                        }
+                    }
+                })
+                .setWriteBuffer(new UnsafeBuffer(new byte[64 * 1024]))
+                .setStreamIdSupplier(() -> ++streamIds[0])
+                .setTargetCorrelationIdSupplier(() -> ++streamIds[0])
+                .setBufferPoolSupplier(() -> new DefaultBufferPool(64 * 1024, 8192))
+                .setCounterSupplier(name -> () -> 0L)
+                .build();
+
+        final BeginFW begin = beginRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .trace(11L)
+                .source("source")
+                .sourceRef(1L)
+                .correlationId(2L)
+                .extension(e -> e.reset())
+                .build();
+
+        acceptStream = factory.newStream(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof(), this::onSource);
+        acceptStream.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+
+        final WindowFW window = windowRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(replyStreamId)
+                .credit(8192)
+                .padding(0)
+                .groupId(0)
+                .build();
+        replyThrottle.accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+        frames.clear();
+    }
+
+    @Test
+    public void shouldResetSourceAndAbortTargetWhenCorrelationOfRequestInProgressIsReclaimed()
+    {
+        doData(22L, "POST / HTTP/1.1\r\nHost: localhost:8080\r\nContent-Length: 10\r\n\r\nhello");
+        frames.clear();
+
+        sweeper.process();
+
+        assertEquals("[source:RESET:22, reply:ABORT:22, target:ABORT:22]", frames.toString());
+    }
+
+    @Test
+    public void shouldAbortReplyWhenCorrelationOfEndedConnectionIsReclaimed()
+    {
+        doData(22L, "GET / HTTP/1.1\r\nHost: localhost:8080\r\n\r\n");
+
+        final EndFW end = endRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .trace(33L)
+                .extension(e -> e.reset())
+                .build();
+        acceptStream.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
+        frames.clear();
+
+        sweeper.process();
+
+        assertEquals("[reply:ABORT:33, target:ABORT:33]", frames.toString());
+    }
+
+    @Test
+    public void shouldTimeOutHibernatedConnectionWithTraceOfItsLastFrame()
+    {
+        advance(200);
+        assertEquals(1, ((ServerStreamFactory) factory).hibernated.size());
+
+        advance(1000);
+
+        assertEquals(0, ((ServerStreamFactory) factory).hibernated.size());
+        assertEquals("[source:RESET:11, reply:END:11]", frames.toString());
+    }
+
+    private void advance(
+        int millis)
+    {
+        nanoTime += MILLISECONDS.toNanos(millis);
+        timers.process();
+    }
+
+    private void doData(
+        long traceId,
+        String payload)
+    {
+        final byte[] bytes = payload.getBytes(US_ASCII);
+        final DataFW data = dataRW.wrap(frameBuffer, 0, frameBuffer.capacity())
+                .streamId(1L)
+                .trace(traceId)
+                .groupId(0)
+                .padding(0)
+                .payload(p -> p.set(bytes))
+                .extension(e -> e.reset())
+                .build();
+        acceptStream.accept(data.typeId(), data.buffer(), data.offset(), data.sizeof());
+    }
+
+    private void onSource(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        record("source", msgTypeId, buffer, index, length);
+    }
+
+    private void onReply(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (msgTypeId == BeginFW.TYPE_ID)
+        {
+            replyStreamId = beginRO.wrap(buffer, index, index + length).streamId();
+        }
+        record("reply", msgTypeId, buffer, index, length);
+    }
+
+    private void onTarget(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        record("target", msgTypeId, buffer, index, length);
+    }
+
+    private void record(
+        String stream,
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final long traceId = frameRO.wrap(buffer, index, index + length).trace();
+        switch (msgTypeId)
+        {
+        case ResetFW.TYPE_ID:
+            frames.add(stream + ":RESET:" + traceId);
+            break;
+        case AbortFW.TYPE_ID:
+            frames.add(stream + ":ABORT:" + traceId);
+            break;
+        case EndFW.TYPE_ID:
+            frames.add(stream + ":END:" + traceId);
+            break;
+        default:
+            break;
+        }
+    }
+}
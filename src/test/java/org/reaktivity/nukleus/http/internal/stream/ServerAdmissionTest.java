@@ -0,0 +1,99 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.stream.ServerAdmission.Decision;
+import org.reaktivity.nukleus.http.internal.util.SlabBufferPool;
+
+public class ServerAdmissionTest
+{
+    private final CountersManager counters = new CountersManager(
+            new UnsafeBuffer(new byte[CountersManager.METADATA_LENGTH * 4]),
+            new UnsafeBuffer(new byte[CountersManager.COUNTER_LENGTH * 4]));
+    private final AtomicCounter shed = counters.newCounter(ServerAdmission.REQUESTS_SHED);
+    private final AtomicCounter closed = counters.newCounter(ServerAdmission.KEEPALIVES_CLOSED);
+    private final CorrelationStore correlations = new CorrelationStore(16,
+            counters.newCounter(CorrelationStore.CORRELATIONS_LIVE),
+            counters.newCounter(CorrelationStore.CORRELATIONS_RECLAIMED), null);
+
+    @Test
+    public void shouldCloseThenShedAsRouteRequestsGrow()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SERVER_ADMISSION_ROUTE_REQUESTS_PROPERTY_NAME, "4");
+        properties.setProperty(HttpConfiguration.SERVER_ADMISSION_PRESSURE_PROPERTY_NAME, "50");
+        properties.setProperty(HttpConfiguration.SERVER_ADMISSION_SHED_PROPERTY_NAME, "75");
+        ServerAdmission admission = newAdmission(properties);
+        SlabBufferPool bufferPool = new SlabBufferPool(4, 64);
+
+        assertEquals(Decision.ADMIT, admission.admit(bufferPool, 1L));
+        admission.onRequest(1L);
+        admission.onRequest(1L);
+        assertEquals(Decision.ADMIT_AND_CLOSE, admission.admit(bufferPool, 1L));
+        admission.onRequest(1L);
+        assertEquals(Decision.SHED, admission.admit(bufferPool, 1L));
+        assertEquals(Decision.ADMIT, admission.admit(bufferPool, 2L));
+
+        admission.onResponse(1L);
+        admission.onResponse(1L);
+        assertEquals(Decision.ADMIT, admission.admit(bufferPool, 1L));
+        assertEquals(1L, shed.get());
+        assertEquals(1L, closed.get());
+    }
+
+    @Test
+    public void shouldLearnSlotsWhenExhausted()
+    {
+        ServerAdmission admission = newAdmission(new Properties());
+        SlabBufferPool bufferPool = new SlabBufferPool(2, 64);
+
+        assertEquals(Decision.ADMIT, admission.admit(bufferPool, 1L));
+        bufferPool.acquire(1L);
+        bufferPool.acquire(2L);
+        admission.onSlotsExhausted(bufferPool);
+        assertEquals(100, admission.load(bufferPool, 1L));
+        assertEquals(Decision.SHED, admission.admit(bufferPool, 1L));
+    }
+
+    @Test
+    public void shouldCannedShedResponseCarryRetryAfter()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SERVER_ADMISSION_RETRY_AFTER_PROPERTY_NAME, "5");
+        ServerAdmission admission = newAdmission(properties);
+
+        String response = admission.shedResponse().getStringWithoutLengthUtf8(0, admission.shedResponse().capacity());
+        assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+        assertTrue(response.contains("Retry-After: 5\r\n"));
+    }
+
+    private ServerAdmission newAdmission(
+        Properties properties)
+    {
+        return new ServerAdmission(new HttpConfiguration(new Configuration(properties)), correlations, shed, closed);
+    }
+}
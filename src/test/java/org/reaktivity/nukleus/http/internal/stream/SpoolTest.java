@@ -0,0 +1,159 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolTest
+{
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountersManager counters = new CountersManager(
+            new UnsafeBuffer(new byte[CountersManager.METADATA_LENGTH * 3]),
+            new UnsafeBuffer(new byte[CountersManager.COUNTER_LENGTH * 3]));
+    private final AtomicCounter bytes = counters.newCounter(Spool.REQUEST_SPOOL_BYTES);
+    private final AtomicCounter rejected = counters.newCounter(Spool.REQUEST_SPOOL_REJECTED);
+    private final AtomicCounter blocks = counters.newCounter(Spool.REQUEST_SPOOL_BLOCKS);
+
+    @Test
+    public void shouldReplaySpooledBytesInOrderAcrossBlocks() throws Exception
+    {
+        try (Spool spool = newSpool(4 * BLOCK_SIZE, null))
+        {
+            final int length = BLOCK_SIZE * 2 + 100;
+            Spool.Body body = spool.reserve(length);
+            assertNotNull(body);
+            assertEquals(3L, blocks.get());
+
+            UnsafeBuffer chunk = new UnsafeBuffer(new byte[1000]);
+            for (int written = 0; written < length; written += chunk.capacity())
+            {
+                final int chunkLength = Math.min(chunk.capacity(), length - written);
+                for (int i = 0; i < chunkLength; i++)
+                {
+                    chunk.putByte(i, (byte) (written + i));
+                }
+                body.write(chunk, 0, chunkLength);
+            }
+            assertEquals(length, body.size());
+            assertEquals(length, bytes.get());
+
+            int read = 0;
+            while (body.readable() > 0)
+            {
+                final DirectBuffer buffer = body.buffer();
+                final int offset = body.readOffset();
+                final int readable = Math.min(body.readable(), 5000);
+                for (int i = 0; i < readable; i++)
+                {
+                    assertEquals((byte) (read + i), buffer.getByte(offset + i));
+                }
+                body.consume(readable);
+                read += readable;
+            }
+            assertEquals(length, read);
+            assertEquals(0L, body.size());
+            assertEquals(1L, blocks.get());
+
+            body.release();
+            assertEquals(0L, blocks.get());
+        }
+    }
+
+    @Test
+    public void shouldReplayBytesConsumedWhileSpoolingAcrossBlocks() throws Exception
+    {
+        try (Spool spool = newSpool(4 * BLOCK_SIZE, null))
+        {
+            Spool.Body body = spool.reserve(2 * BLOCK_SIZE);
+            assertNotNull(body);
+
+            UnsafeBuffer block = new UnsafeBuffer(new byte[BLOCK_SIZE]);
+            block.setMemory(0, BLOCK_SIZE, (byte) 1);
+            body.write(block, 0, BLOCK_SIZE);
+            assertEquals(BLOCK_SIZE, body.readable());
+            body.consume(BLOCK_SIZE);
+            assertEquals(0, body.readable());
+
+            block.setMemory(0, BLOCK_SIZE, (byte) 2);
+            body.write(block, 0, BLOCK_SIZE);
+            assertEquals(BLOCK_SIZE, body.size());
+            assertEquals(BLOCK_SIZE, body.readable());
+            assertEquals(1L, blocks.get());
+            assertEquals((byte) 2, body.buffer().getByte(body.readOffset()));
+            assertEquals((byte) 2, body.buffer().getByte(body.readOffset() + BLOCK_SIZE - 1));
+
+            body.consume(BLOCK_SIZE);
+            assertEquals(0L, body.size());
+
+            body.release();
+            assertEquals(0L, blocks.get());
+        }
+    }
+
+    @Test
+    public void shouldRejectBodiesBeyondCapacityUntilReleased() throws Exception
+    {
+        try (Spool spool = newSpool(2 * BLOCK_SIZE, null))
+        {
+            Spool.Body first = spool.reserve(BLOCK_SIZE + 1);
+            assertNotNull(first);
+            assertNull(spool.reserve(1));
+            assertEquals(1L, rejected.get());
+
+            first.release();
+            assertNotNull(spool.reserve(2 * BLOCK_SIZE));
+            assertEquals(2L, blocks.get());
+        }
+    }
+
+    @Test
+    public void shouldOnlySpoolConfiguredRoutesBetweenThresholdAndMaximum() throws Exception
+    {
+        try (Spool spool = newSpool(BLOCK_SIZE, new long[] { 1L, 0x10L }))
+        {
+            assertTrue(spool.shouldSpool(0x10L, 1025));
+            assertFalse(spool.shouldSpool(0x10L, 1024));
+            assertFalse(spool.shouldSpool(2L, 1025));
+            assertFalse(spool.shouldSpool(0x10L, 4 * BLOCK_SIZE + 1));
+        }
+    }
+
+    private Spool newSpool(
+        int capacity,
+        long[] routeRefs)
+    {
+        File file = new File(folder.getRoot(), "http/" + Spool.REQUEST_FILE_NAME);
+        return new Spool(Spool.map(file, capacity), 1024, 4 * BLOCK_SIZE, routeRefs, bytes, rejected, blocks);
+    }
+}
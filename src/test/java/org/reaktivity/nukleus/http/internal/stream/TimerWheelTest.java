@@ -0,0 +1,113 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+
+public class TimerWheelTest
+{
+    private long now;
+    private int expired;
+
+    @Test
+    public void shouldExpireAfterTimeoutBeyondOneTurn()
+    {
+        TimerWheel timers = newTimerWheel(4, 16);
+        timers.schedule(250L, () -> expired++);
+        timers.schedule(1000L, () -> expired++);
+
+        advance(200L);
+        assertEquals(0, timers.process());
+        advance(100L);
+        assertEquals(1, timers.process());
+        assertEquals(1, timers.size());
+
+        advance(600L);
+        assertEquals(0, timers.process());
+        advance(100L);
+        assertEquals(1, timers.process());
+        assertEquals(2, expired);
+        assertEquals(0, timers.size());
+    }
+
+    @Test
+    public void shouldNotExpireCancelledTimers()
+    {
+        TimerWheel timers = newTimerWheel(8, 16);
+        long timerId = timers.schedule(100L, () -> expired++);
+        assertEquals(TimerWheel.NO_TIMER, timers.cancel(timerId));
+        long reusedId = timers.schedule(100L, () -> expired++);
+
+        // the cancelled timer id no longer refers to the reused entry
+        timers.cancel(timerId);
+        assertNotEquals(timerId, reusedId);
+        assertEquals(1, timers.size());
+
+        advance(10_000L);
+        assertEquals(1, timers.process());
+        assertEquals(1, expired);
+    }
+
+    @Test
+    public void shouldNotScheduleWhenFull()
+    {
+        TimerWheel timers = newTimerWheel(8, 2);
+        timers.schedule(100L, () -> expired++);
+        timers.schedule(100L, () -> expired++);
+        assertEquals(TimerWheel.NO_TIMER, timers.schedule(100L, () -> expired++));
+
+        advance(100L);
+        assertEquals(2, timers.process());
+        assertNotEquals(TimerWheel.NO_TIMER, timers.schedule(100L, () -> expired++));
+    }
+
+    @Test
+    public void shouldNotExpireTimerCancelledByHandlerOnSameTick()
+    {
+        TimerWheel timers = newTimerWheel(8, 16);
+        long[] timerIds = new long[2];
+        timerIds[0] = timers.schedule(100L, () -> timers.cancel(timerIds[1]));
+        timerIds[1] = timers.schedule(100L, () -> timers.cancel(timerIds[0]));
+
+        advance(100L);
+        assertEquals(1, timers.process());
+        assertEquals(0, timers.size());
+    }
+
+    private void advance(
+        long millis)
+    {
+        now += millis * 1_000_000L;
+    }
+
+    private TimerWheel newTimerWheel(
+        int wheelSize,
+        int capacity)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.TIMER_TICK_PROPERTY_NAME, "100");
+        properties.setProperty(HttpConfiguration.TIMER_WHEEL_SIZE_PROPERTY_NAME, Integer.toString(wheelSize));
+        properties.setProperty(HttpConfiguration.TIMERS_CAPACITY_PROPERTY_NAME, Integer.toString(capacity));
+        return new TimerWheel(new HttpConfiguration(new Configuration(properties)), () -> now);
+    }
+}
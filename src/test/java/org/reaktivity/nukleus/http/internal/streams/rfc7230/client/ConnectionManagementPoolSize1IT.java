@@ -17,6 +17,7 @@ package org.reaktivity.nukleus.http.internal.streams.rfc7230.client;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.rules.RuleChain.outerRule;
 import static org.reaktivity.nukleus.http.internal.HttpConfiguration.MAXIMUM_QUEUED_REQUESTS_PROPERTY_NAME;
 
@@ -29,6 +30,7 @@ import org.junit.rules.Timeout;
 import org.kaazing.k3po.junit.annotation.Specification;
 import org.kaazing.k3po.junit.rules.K3poRule;
 import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.metrics.ConnectionPoolMetrics;
 import org.reaktivity.nukleus.http.internal.test.HttpCountersRule;
 import org.reaktivity.reaktor.test.ReaktorRule;
 import org.reaktivity.reaktor.test.annotation.Configure;
@@ -71,6 +73,10 @@ public class ConnectionManagementPoolSize1IT
         k3po.notifyBarrier("WRITE_RESPONSE_TWO");
         k3po.notifyBarrier("WRITE_RESPONSE_THREE");
         k3po.finish();
+        assertEquals(1, counters.connectionPool(ConnectionPoolMetrics.CONNECTIONS_CREATED, "target"));
+        assertEquals(2, counters.connectionPool(ConnectionPoolMetrics.CONNECTIONS_REUSED, "target"));
+        assertEquals(2, counters.connectionPool(ConnectionPoolMetrics.QUEUE_WAIT_MICROS, "target"));
+        assertTrue(counters.prometheus().contains("reaktivity_http_pool_connections_created_total{role=\"client\","));
     }
 
     @Test
@@ -53,7 +53,7 @@ public class TransferCodingsIT
         "${route}/client/controller",
         "${client}/request.transfer.encoding.chunked/client",
         "${server}/request.transfer.encoding.chunked/server" })
-    @Ignore // TODO: implement chunked request encoding
+    @Ignore // TODO: script expects response header status rather than :status
     public void requestTransferEncodingChunked() throws Exception
     {
         k3po.finish();
@@ -88,7 +88,7 @@ public class TransferCodingsIT
         "${route}/client/controller",
         "${client}/request.transfer.encoding.chunked.with.trailer/client",
         "${server}/request.transfer.encoding.chunked.with.trailer/server" })
-    @Ignore // TODO: implement chunked request encoding
+    @Ignore // TODO: implement chunked request trailer encoding
     public void requestTransferEncodingChunkedWithTrailer() throws Exception
     {
         k3po.finish();
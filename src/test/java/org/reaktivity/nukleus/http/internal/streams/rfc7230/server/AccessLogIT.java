@@ -0,0 +1,115 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.streams.rfc7230.server;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.rules.RuleChain.outerRule;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.METHOD_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.REQUEST_BYTES_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.STATUS_OFFSET;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+import org.reaktivity.reaktor.test.ReaktorRule;
+
+public class AccessLogIT
+{
+    private static final String ACCESS_LOG = "target/nukleus-itests/http/access.log";
+
+    private final K3poRule k3po = new K3poRule()
+            .addScriptRoot("route", "org/reaktivity/specification/nukleus/http/control/route")
+            .addScriptRoot("client", "org/reaktivity/specification/http/rfc7230/message.format")
+            .addScriptRoot("server", "org/reaktivity/specification/nukleus/http/streams/rfc7230/message.format");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(10, SECONDS));
+
+    private final ReaktorRule reaktor = new ReaktorRule()
+        .nukleus("http"::equals)
+        .directory("target/nukleus-itests")
+        .commandBufferCapacity(1024)
+        .responseBufferCapacity(1024)
+        .counterValuesBufferCapacity(1024)
+        .configure(HttpConfiguration.ACCESS_LOG_PROPERTY_NAME, ACCESS_LOG)
+        .clean();
+
+    private final TestRule accessLog = new ExternalResource()
+    {
+        @Override
+        protected void before()
+        {
+            new File(ACCESS_LOG).delete();
+        }
+    };
+
+    @Rule
+    public final TestRule chain = outerRule(accessLog).around(reaktor).around(k3po).around(timeout);
+
+    @Test
+    @Specification({
+        "${route}/server/controller",
+        "${client}/request.with.content.length/client",
+        "${server}/request.with.content.length/server" })
+    public void shouldLogRequestWithContentLength() throws Exception
+    {
+        k3po.finish();
+
+        List<String> records = awaitRecords(1);
+        assertEquals(1, records.size());
+
+        String[] fields = records.get(0).split(",");
+        assertEquals(String.valueOf(AccessLog.SERVER_RECORD_TYPE_ID), fields[0]);
+        assertEquals("POST", fields[1]);
+        assertEquals("200", fields[2]);
+        assertTrue(Long.parseLong(fields[3]) > "hello world".length());
+    }
+
+    private static List<String> awaitRecords(
+        int count) throws Exception
+    {
+        List<String> records = new ArrayList<>();
+
+        // the exchange completes on the reaktor thread, possibly after the scripts have finished
+        try (AccessLog accessLog = AccessLog.map(new File(ACCESS_LOG)))
+        {
+            for (int attempt = 0; attempt < 100 && records.size() < count; attempt++)
+            {
+                if (accessLog.read((t, b, i, l) -> records.add(String.format("%d,%s,%d,%d", t,
+                        AccessLogRecord.method(b.getInt(i + METHOD_OFFSET)), b.getInt(i + STATUS_OFFSET),
+                        b.getLong(i + REQUEST_BYTES_OFFSET)))) == 0)
+                {
+                    Thread.sleep(10);
+                }
+            }
+        }
+
+        return records;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.streams.rfc7230.server;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.reaktivity.nukleus.http.internal.HttpConfiguration;
+import org.reaktivity.nukleus.http.internal.jfr.HttpEvents;
+import org.reaktivity.reaktor.test.ReaktorRule;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class HttpEventsIT
+{
+    private static final String EVENT_PREFIX = "org.reaktivity.nukleus.http.";
+
+    private final K3poRule k3po = new K3poRule()
+            .addScriptRoot("route", "org/reaktivity/specification/nukleus/http/control/route")
+            .addScriptRoot("client", "org/reaktivity/specification/http/rfc7230/message.format")
+            .addScriptRoot("server", "org/reaktivity/specification/nukleus/http/streams/rfc7230/message.format");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(10, SECONDS));
+
+    private final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ReaktorRule reaktor = new ReaktorRule()
+        .nukleus("http"::equals)
+        .directory("target/nukleus-itests")
+        .commandBufferCapacity(1024)
+        .responseBufferCapacity(1024)
+        .counterValuesBufferCapacity(1024)
+        .configure(HttpConfiguration.JFR_EVENTS_PROPERTY_NAME, "true")
+        .clean();
+
+    @Rule
+    public final TestRule chain = outerRule(folder).around(reaktor).around(k3po).around(timeout);
+
+    @Test
+    @Specification({
+        "${route}/server/controller",
+        "${client}/request.with.content.length/client",
+        "${server}/request.with.content.length/server" })
+    public void shouldRecordRequestWithContentLength() throws Exception
+    {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording())
+        {
+            recording.enable(EVENT_PREFIX + "RequestReceived");
+            recording.enable(EVENT_PREFIX + "RequestRouted");
+            recording.enable(EVENT_PREFIX + "ResponseBegun");
+            recording.enable(EVENT_PREFIX + "ExchangeCompleted");
+            recording.start();
+
+            k3po.finish();
+
+            events = awaitEvents(recording, "ExchangeCompleted");
+        }
+
+        assertEquals(asList("RequestReceived", "RequestRouted", "ResponseBegun", "ExchangeCompleted"),
+                events.stream().map(e -> e.getEventType().getName().substring(EVENT_PREFIX.length())).collect(toList()));
+        events.forEach(e -> assertEquals(HttpEvents.SERVER, e.getString("role")));
+
+        RecordedEvent completed = events.get(3);
+        assertEquals("POST", completed.getString("method"));
+        assertEquals(200, completed.getInt("status"));
+    }
+
+    private List<RecordedEvent> awaitEvents(
+        Recording recording,
+        String lastEvent) throws Exception
+    {
+        // the exchange completes on the reaktor thread, possibly after the scripts have finished
+        Path file = folder.newFile("http.jfr").toPath();
+        List<RecordedEvent> events = null;
+        for (int attempt = 0; attempt < 100; attempt++)
+        {
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+            if (events.stream().anyMatch(e -> e.getEventType().getName().equals(EVENT_PREFIX + lastEvent)))
+            {
+                break;
+            }
+            Thread.sleep(10);
+        }
+
+        events.sort((e1, e2) -> e1.getStartTime().compareTo(e2.getStartTime()));
+        return events;
+    }
+}
@@ -21,6 +21,10 @@ import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 import org.reaktivity.nukleus.http.internal.HttpController;
+import org.reaktivity.nukleus.http.internal.metrics.HttpMetrics;
+import org.reaktivity.nukleus.http.internal.metrics.MetricsSnapshot;
+import org.reaktivity.nukleus.http.internal.metrics.PrometheusFormatter;
+import org.reaktivity.nukleus.http.internal.types.control.Role;
 import org.reaktivity.reaktor.test.ReaktorRule;
 
 public class HttpCountersRule implements TestRule
@@ -78,6 +82,26 @@ public class HttpCountersRule implements TestRule
         return controller().count("requests.rejected");
     }
 
+    public long connectionPool(String name, String target)
+    {
+        final long[] value = new long[1];
+        controller().metrics().forEach((typeId, name0, role, target0, routeRef, bucket, value0) ->
+        {
+            if (role == Role.CLIENT && name0.equals(name) && target0.equals(target) &&
+                typeId != HttpMetrics.HISTOGRAM_BUCKET_TYPE_ID && typeId != HttpMetrics.HISTOGRAM_SUM_TYPE_ID)
+            {
+                value[0] += value0;
+            }
+        });
+        return value[0];
+    }
+
+    public String prometheus()
+    {
+        MetricsSnapshot snapshot = controller().snapshot(new MetricsSnapshot());
+        return new PrometheusFormatter().format(snapshot, new StringBuilder()).toString();
+    }
+
     private HttpController controller()
     {
         return reaktor.controller(HttpController.class);
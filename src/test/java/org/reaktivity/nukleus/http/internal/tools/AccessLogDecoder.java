@@ -0,0 +1,117 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.tools;
+
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.METHOD_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.REQUEST_BYTES_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.REQUEST_NANOS_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.RESPONSE_BYTES_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.RESPONSE_LATENCY_NANOS_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.ROUTE_REF_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.STATUS_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.TIMESTAMP_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.TOTAL_NANOS_OFFSET;
+import static org.reaktivity.nukleus.http.internal.log.AccessLogRecord.TRACE_ID_OFFSET;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.Instant;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.http.internal.log.AccessLog;
+import org.reaktivity.nukleus.http.internal.log.AccessLogRecord;
+
+/**
+ * Drains a binary access log written by the HTTP nukleus, printing each record as text or CSV.
+ * <p>
+ * Usage: {@code AccessLogDecoder [--csv] <access-log-file>}
+ */
+public final class AccessLogDecoder
+{
+    private static final String CSV_HEADER =
+            "timestamp,role,route,trace,method,status,requestBytes,responseBytes,requestNanos,responseNanos,totalNanos";
+
+    private final PrintStream out;
+    private final boolean csv;
+
+    public AccessLogDecoder(
+        PrintStream out,
+        boolean csv)
+    {
+        this.out = out;
+        this.csv = csv;
+    }
+
+    public int decode(
+        AccessLog accessLog)
+    {
+        if (csv)
+        {
+            out.println(CSV_HEADER);
+        }
+
+        int records = 0;
+        int read;
+        while ((read = accessLog.read(this::decodeRecord)) != 0)
+        {
+            records += read;
+        }
+
+        return records;
+    }
+
+    private void decodeRecord(
+        int typeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final String role = typeId == AccessLog.SERVER_RECORD_TYPE_ID ? "server" : "client";
+        final long timestamp = buffer.getLong(index + TIMESTAMP_OFFSET);
+        final long routeRef = buffer.getLong(index + ROUTE_REF_OFFSET);
+        final long traceId = buffer.getLong(index + TRACE_ID_OFFSET);
+        final String method = AccessLogRecord.method(buffer.getInt(index + METHOD_OFFSET));
+        final int status = buffer.getInt(index + STATUS_OFFSET);
+        final long requestBytes = buffer.getLong(index + REQUEST_BYTES_OFFSET);
+        final long responseBytes = buffer.getLong(index + RESPONSE_BYTES_OFFSET);
+        final long requestNanos = buffer.getLong(index + REQUEST_NANOS_OFFSET);
+        final long responseNanos = buffer.getLong(index + RESPONSE_LATENCY_NANOS_OFFSET);
+        final long totalNanos = buffer.getLong(index + TOTAL_NANOS_OFFSET);
+
+        final String format = csv
+                ? "%s,%s,%d,%016x,%s,%d,%d,%d,%d,%d,%d%n"
+                : "%s %s route=%d trace=%016x %s %d request=%dB response=%dB request=%dns response=%dns total=%dns%n";
+
+        out.printf(format, Instant.ofEpochMilli(timestamp), role, routeRef, traceId, method, status,
+                requestBytes, responseBytes, requestNanos, responseNanos, totalNanos);
+    }
+
+    public static void main(
+        String[] args) throws Exception
+    {
+        final boolean csv = args.length == 2 && "--csv".equals(args[0]);
+        if (args.length != (csv ? 2 : 1))
+        {
+            System.err.println("Usage: AccessLogDecoder [--csv] <access-log-file>");
+            System.exit(1);
+        }
+
+        try (AccessLog accessLog = AccessLog.map(new File(args[args.length - 1])))
+        {
+            new AccessLogDecoder(System.out, csv).decode(accessLog);
+        }
+    }
+}
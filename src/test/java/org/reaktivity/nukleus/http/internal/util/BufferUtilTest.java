@@ -103,5 +103,15 @@ public class BufferUtilTest
         assertEquals(4, BufferUtil.limitOfBytes(buffer1, 0, 4, buffer2, 0, buffer2.capacity(), CRLFCRLF));
     }
 
+    @Test
+    public void shouldParseHex()
+    {
+        DirectBuffer buffer = new UnsafeBuffer("1aF;7fffffff 80000000 -1".getBytes(US_ASCII));
+        assertEquals(0x1af, BufferUtil.parseHex(buffer, 0, 3));
+        assertEquals(Integer.MAX_VALUE, BufferUtil.parseHex(buffer, 4, 12));
+        assertEquals(-1, BufferUtil.parseHex(buffer, 13, 21));
+        assertEquals(-1, BufferUtil.parseHex(buffer, 22, 24));
+        assertEquals(-1, BufferUtil.parseHex(buffer, 0, 4));
+        assertEquals(-1, BufferUtil.parseHex(buffer, 0, 0));
+    }
 }
-
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ObjectPoolTest
+{
+    @Test
+    public void shouldReuseReleasedObject()
+    {
+        ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, b -> b.setLength(0), 1);
+
+        StringBuilder first = pool.acquire();
+        first.append("request");
+        assertEquals(1, pool.acquired());
+
+        pool.release(first);
+        assertEquals(0, pool.acquired());
+        assertEquals(1, pool.available());
+
+        StringBuilder second = pool.acquire();
+        assertSame(first, second);
+        assertEquals(0, second.length());
+    }
+
+    @Test
+    public void shouldNotKeepMoreThanCapacity()
+    {
+        ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, b -> b.setLength(0), 1);
+
+        StringBuilder first = pool.acquire();
+        StringBuilder second = pool.acquire();
+        assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.available());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectDoubleReleaseInDebugMode()
+    {
+        ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, b -> b.setLength(0), 1, t -> { });
+
+        StringBuilder object = pool.acquire();
+        pool.release(object);
+        pool.release(object);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectForeignObjectInDebugMode()
+    {
+        ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, b -> b.setLength(0), 1, t -> { });
+
+        pool.release(new StringBuilder());
+    }
+
+    @Test
+    public void shouldReportObjectDroppedWithoutRelease() throws Exception
+    {
+        List<Throwable> leaks = new ArrayList<>();
+        ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, b -> b.setLength(0), 1, leaks::add);
+
+        pool.release(pool.acquire());
+        pool.acquire();
+
+        for (int attempt = 0; attempt < 50 && pool.leaks() == 0; attempt++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, pool.leaks());
+        assertEquals(1, leaks.size());
+        assertTrue(leaks.get(0).getMessage().contains("StringBuilder"));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+
+import org.agrona.MutableDirectBuffer;
+import org.junit.Test;
+
+public class TieredBufferPoolTest
+{
+    @Test
+    public void shouldPromoteBufferedBytesToLargeSlot()
+    {
+        SlabBufferPool small = new SlabBufferPool(2, 16);
+        TieredBufferPool pool = new TieredBufferPool(small, new SlabBufferPool(1, 64));
+
+        int slot = pool.acquire(1L);
+        assertEquals(16, pool.slotCapacity(slot));
+        MutableDirectBuffer buffer = pool.buffer(slot);
+        for (int i = 0; i < 16; i++)
+        {
+            buffer.putByte(i, (byte) i);
+        }
+
+        int promoted = pool.promote(slot, 1L, 4, 16);
+        assertNotEquals(NO_SLOT, promoted);
+        assertEquals(64, pool.slotCapacity(promoted));
+        assertEquals(0, small.acquiredSlots());
+        assertEquals(1, pool.acquiredSlots());
+        for (int i = 0; i < 12; i++)
+        {
+            assertEquals(i + 4, pool.buffer(promoted).getByte(i));
+        }
+
+        pool.release(promoted);
+        assertEquals(0, pool.acquiredSlots());
+    }
+
+    @Test
+    public void shouldNotPromoteWhenNoLargeSlotAvailable()
+    {
+        TieredBufferPool pool = new TieredBufferPool(new SlabBufferPool(2, 16), new SlabBufferPool(1, 64));
+
+        int first = pool.promote(pool.acquire(1L), 1L, 0, 0);
+        int slot = pool.acquire(2L);
+
+        assertNotEquals(NO_SLOT, first);
+        assertEquals(NO_SLOT, pool.promote(slot, 2L, 0, 0));
+        assertEquals(16, pool.slotCapacity(slot));
+        assertEquals(2, pool.acquiredSlots());
+    }
+
+    @Test
+    public void shouldNotPromoteWithoutLargeTier()
+    {
+        TieredBufferPool pool = new TieredBufferPool(new SlabBufferPool(1, 16), null);
+
+        int slot = pool.acquire(1L);
+
+        assertEquals(16, pool.maximumSlotCapacity());
+        assertEquals(NO_SLOT, pool.promote(slot, 1L, 0, 0));
+        assertEquals(NO_SLOT, pool.acquire(2L));
+    }
+}